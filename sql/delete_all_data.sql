@@ -48,6 +48,7 @@ TRUNCATE TABLE OH_USER;
 TRUNCATE TABLE OH_BILLITEMS;
 TRUNCATE TABLE OH_BILLPAYMENTS;
 TRUNCATE TABLE OH_BILLS;
+TRUNCATE TABLE OH_BILL_LEDGER;
 TRUNCATE TABLE OH_GROUPPERMISSION;
 TRUNCATE TABLE OH_LOG;
 TRUNCATE TABLE OH_MEDICALDSRSTOCKMOVWARD;
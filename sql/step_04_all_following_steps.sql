@@ -106,4 +106,8 @@ source step_a109_update_user_settings_table_constraints_and_add_usergroups_permi
 source step_a110_update_operations_table_change_ope_for_to_enum.sql;
 source step_a111_add_missing_lock_columns.sql;
 source step_a112_users_and_groups_soft_deletion.sql;
-source step_a113_alter_table_medicalinventory.sql;
\ No newline at end of file
+source step_a113_alter_table_medicalinventory.sql;
+source step_a114_create_sequence_table.sql;
+source step_a115_create_patient_search_token_table.sql;
+source step_a116_create_patient_duplicate_key_table.sql;
+source step_a117_create_bill_ledger_table.sql;
\ No newline at end of file
@@ -0,0 +1,5 @@
+CREATE TABLE OH_SEQUENCE (
+  SEQ_NAME varchar(50) NOT NULL,
+  SEQ_NEXT_VAL bigint NOT NULL,
+  PRIMARY KEY (SEQ_NAME)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
@@ -0,0 +1,8 @@
+CREATE TABLE OH_PATIENT_SEARCH_TOKEN (
+  PST_ID int(11) NOT NULL AUTO_INCREMENT,
+  PST_PAT_ID int(11) NOT NULL,
+  PST_TOKEN varchar(50) NOT NULL,
+  PRIMARY KEY (PST_ID),
+  KEY IDX_PATIENT_SEARCH_TOKEN (PST_TOKEN, PST_PAT_ID),
+  KEY IDX_PATIENT_SEARCH_PATIENT (PST_PAT_ID)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
@@ -0,0 +1,11 @@
+CREATE TABLE OH_PATIENT_DUPLICATE_KEY (
+  PDK_PAT_ID int(11) NOT NULL,
+  PDK_FIRST_KEY varchar(20) NOT NULL,
+  PDK_SECOND_KEY varchar(20) NOT NULL,
+  PDK_NAME varchar(100) NOT NULL,
+  PDK_BIRTH_YEAR int(11) DEFAULT NULL,
+  PDK_CITY varchar(50) DEFAULT NULL,
+  PRIMARY KEY (PDK_PAT_ID),
+  KEY IDX_PATIENT_DUPLICATE_FIRST_KEY (PDK_FIRST_KEY),
+  KEY IDX_PATIENT_DUPLICATE_SECOND_KEY (PDK_SECOND_KEY)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
@@ -0,0 +1,24 @@
+CREATE TABLE OH_BILL_LEDGER (
+  BLG_ID int(11) NOT NULL AUTO_INCREMENT,
+  BLG_DATE date NOT NULL,
+  BLG_TYPE char(1) NOT NULL,
+  BLG_USR_ID_A varchar(50) DEFAULT NULL,
+  BLG_LST_NAME varchar(255) DEFAULT NULL,
+  BLG_ITEM_DESC varchar(255) DEFAULT NULL,
+  BLG_AMOUNT double NOT NULL,
+  BLG_QTY bigint(20) NOT NULL,
+  PRIMARY KEY (BLG_ID),
+  KEY IDX_BILL_LEDGER_DATE (BLG_DATE, BLG_TYPE)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+INSERT INTO OH_BILL_LEDGER (BLG_DATE, BLG_TYPE, BLG_USR_ID_A, BLG_LST_NAME, BLG_ITEM_DESC, BLG_AMOUNT, BLG_QTY)
+  SELECT DATE(BLP_DATE), 'P', BLP_USR_ID_A, BLL_LST_NAME, NULL, SUM(BLP_AMOUNT), COUNT(*)
+  FROM OH_BILLPAYMENTS JOIN OH_BILLS ON BLP_ID_BILL = BLL_ID
+  WHERE BLL_STATUS IS NULL OR BLL_STATUS <> 'D'
+  GROUP BY DATE(BLP_DATE), BLP_USR_ID_A, BLL_LST_NAME;
+
+INSERT INTO OH_BILL_LEDGER (BLG_DATE, BLG_TYPE, BLG_USR_ID_A, BLG_LST_NAME, BLG_ITEM_DESC, BLG_AMOUNT, BLG_QTY)
+  SELECT DATE(BLL_DATE), 'I', BLL_USR_ID_A, BLL_LST_NAME, BLI_ITEM_DESC, SUM(BLI_ITEM_AMOUNT * BLI_QTY), SUM(BLI_QTY)
+  FROM OH_BILLITEMS JOIN OH_BILLS ON BLI_ID_BILL = BLL_ID
+  WHERE BLL_STATUS IS NULL OR BLL_STATUS <> 'D'
+  GROUP BY DATE(BLL_DATE), BLL_USR_ID_A, BLL_LST_NAME, BLI_ITEM_DESC;
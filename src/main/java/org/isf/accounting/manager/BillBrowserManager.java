@@ -21,12 +21,14 @@
  */
 package org.isf.accounting.manager;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.isf.accounting.model.Bill;
 import org.isf.accounting.model.BillItems;
+import org.isf.accounting.model.BillLedgerTotal;
 import org.isf.accounting.model.BillPayments;
 import org.isf.accounting.service.AccountingIoOperations;
 import org.isf.generaldata.MessageBundle;
@@ -310,6 +312,60 @@ public class BillBrowserManager {
 		return ioOperations.getPayments(billArray);
 	}
 
+	/**
+	 * Returns the {@link BillPayments} totals by user for the specified date range (e.g. for the cashier closing).
+	 * @param dateFrom the low date range endpoint, inclusive.
+	 * @param dateTo the high date range endpoint, inclusive.
+	 * @return the list of {@link BillLedgerTotal}s, ordered by user.
+	 * @throws OHServiceException
+	 */
+	public List<BillLedgerTotal> getPaymentTotalsByUser(LocalDate dateFrom, LocalDate dateTo) throws OHServiceException {
+		return ioOperations.getPaymentTotalsByUser(dateFrom, dateTo);
+	}
+
+	/**
+	 * Returns the {@link BillPayments} totals by price list for the specified date range.
+	 * @param dateFrom the low date range endpoint, inclusive.
+	 * @param dateTo the high date range endpoint, inclusive.
+	 * @return the list of {@link BillLedgerTotal}s, ordered by price list name.
+	 * @throws OHServiceException
+	 */
+	public List<BillLedgerTotal> getPaymentTotalsByPriceList(LocalDate dateFrom, LocalDate dateTo) throws OHServiceException {
+		return ioOperations.getPaymentTotalsByPriceList(dateFrom, dateTo);
+	}
+
+	/**
+	 * Returns the {@link BillItems} totals by user for the bills in the specified date range.
+	 * @param dateFrom the low date range endpoint, inclusive.
+	 * @param dateTo the high date range endpoint, inclusive.
+	 * @return the list of {@link BillLedgerTotal}s, ordered by user.
+	 * @throws OHServiceException
+	 */
+	public List<BillLedgerTotal> getItemTotalsByUser(LocalDate dateFrom, LocalDate dateTo) throws OHServiceException {
+		return ioOperations.getItemTotalsByUser(dateFrom, dateTo);
+	}
+
+	/**
+	 * Returns the {@link BillItems} totals by item description for the bills in the specified date range (e.g. for the income summary).
+	 * @param dateFrom the low date range endpoint, inclusive.
+	 * @param dateTo the high date range endpoint, inclusive.
+	 * @return the list of {@link BillLedgerTotal}s, ordered by item description.
+	 * @throws OHServiceException
+	 */
+	public List<BillLedgerTotal> getItemTotalsByDescription(LocalDate dateFrom, LocalDate dateTo) throws OHServiceException {
+		return ioOperations.getItemTotalsByDescription(dateFrom, dateTo);
+	}
+
+	/**
+	 * Recomputes the daily billing ledger for the specified date range.
+	 * @param dateFrom the low date range endpoint, inclusive.
+	 * @param dateTo the high date range endpoint, inclusive.
+	 * @throws OHServiceException
+	 */
+	public void rebuildLedger(LocalDate dateFrom, LocalDate dateTo) throws OHServiceException {
+		ioOperations.rebuildLedger(dateFrom, dateTo);
+	}
+
 	/**
 	 * Retrieves all the {@link Bill}s associated to the specified {@link Patient}.
 	 * @param patID - the Patient's ID
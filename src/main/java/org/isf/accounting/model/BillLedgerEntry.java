@@ -0,0 +1,160 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2024 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.isf.accounting.model;
+
+import java.time.LocalDate;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * A row of the daily billing ledger: the total of the {@link BillPayments} of a day by user and price list
+ * (type {@link #PAYMENT}), or the total of the {@link BillItems} of the bills of a day by user, price list and
+ * item description (type {@link #ITEM}). Bills with status {@code D} (deleted) are not counted.
+ */
+@Entity
+@Table(name = "OH_BILL_LEDGER", indexes = {
+	@Index(name = "IDX_BILL_LEDGER_DATE", columnList = "BLG_DATE, BLG_TYPE")
+})
+public class BillLedgerEntry {
+
+	public static final String PAYMENT = "P";
+
+	public static final String ITEM = "I";
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "BLG_ID")
+	private int id;
+
+	@NotNull
+	@Column(name = "BLG_DATE")
+	private LocalDate date;
+
+	@NotNull
+	@Column(name = "BLG_TYPE", length = 1)
+	private String type;
+
+	@Column(name = "BLG_USR_ID_A")
+	private String user;
+
+	@Column(name = "BLG_LST_NAME")
+	private String listName;
+
+	@Column(name = "BLG_ITEM_DESC")
+	private String itemDescription;
+
+	@NotNull
+	@Column(name = "BLG_AMOUNT")
+	private double amount;
+
+	@NotNull
+	@Column(name = "BLG_QTY")
+	private long quantity;
+
+	public BillLedgerEntry() {
+	}
+
+	public BillLedgerEntry(LocalDate date, String type, String user, String listName, String itemDescription, double amount, long quantity) {
+		this.date = date;
+		this.type = type;
+		this.user = user;
+		this.listName = listName;
+		this.itemDescription = itemDescription;
+		this.amount = amount;
+		this.quantity = quantity;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public void setId(int id) {
+		this.id = id;
+	}
+
+	public LocalDate getDate() {
+		return date;
+	}
+
+	public void setDate(LocalDate date) {
+		this.date = date;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public String getUser() {
+		return user;
+	}
+
+	public void setUser(String user) {
+		this.user = user;
+	}
+
+	public String getListName() {
+		return listName;
+	}
+
+	public void setListName(String listName) {
+		this.listName = listName;
+	}
+
+	public String getItemDescription() {
+		return itemDescription;
+	}
+
+	public void setItemDescription(String itemDescription) {
+		this.itemDescription = itemDescription;
+	}
+
+	public double getAmount() {
+		return amount;
+	}
+
+	public void setAmount(double amount) {
+		this.amount = amount;
+	}
+
+	/**
+	 * @return the number of payments for a {@link #PAYMENT} row, the item quantity for an {@link #ITEM} row.
+	 */
+	public long getQuantity() {
+		return quantity;
+	}
+
+	public void setQuantity(long quantity) {
+		this.quantity = quantity;
+	}
+
+}
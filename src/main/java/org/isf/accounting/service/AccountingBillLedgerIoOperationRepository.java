@@ -0,0 +1,87 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2024 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.isf.accounting.service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.isf.accounting.model.BillLedgerEntry;
+import org.isf.accounting.model.BillLedgerTotal;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface AccountingBillLedgerIoOperationRepository extends JpaRepository<BillLedgerEntry, Integer> {
+
+	@Modifying
+	@Query(value = "delete from BillLedgerEntry e where e.date = :date")
+	void deleteByDate(@Param("date") LocalDate date);
+
+	@Query(value = "select bp.user, b.listName, sum(bp.amount), count(bp) from BillPayments bp join bp.bill b "
+					+ "where bp.date >= :dateFrom and bp.date < :dateTo and (b.status is null or b.status <> 'D') "
+					+ "group by bp.user, b.listName")
+	List<Object[]> sumPaymentsBetweenDates(@Param("dateFrom") LocalDateTime dateFrom, @Param("dateTo") LocalDateTime dateTo);
+
+	@Query(value = "select b.user, b.listName, bi.itemDescription, sum(bi.itemAmount * bi.itemQuantity), sum(bi.itemQuantity) "
+					+ "from BillItems bi join bi.bill b "
+					+ "where b.date >= :dateFrom and b.date < :dateTo and (b.status is null or b.status <> 'D') "
+					+ "group by b.user, b.listName, bi.itemDescription")
+	List<Object[]> sumItemsBetweenDates(@Param("dateFrom") LocalDateTime dateFrom, @Param("dateTo") LocalDateTime dateTo);
+
+	@Query(value = "select BLL_DATE, BLL_USR_ID_A, BLL_LST_NAME, BLL_STATUS from OH_BILLS where BLL_ID = :billId for update", nativeQuery = true)
+	List<Object[]> findBillForUpdate(@Param("billId") int billId);
+
+	@Query(value = "select BLP_DATE, BLP_USR_ID_A, BLP_AMOUNT from OH_BILLPAYMENTS where BLP_ID_BILL = :billId for update", nativeQuery = true)
+	List<Object[]> findPaymentsForUpdate(@Param("billId") int billId);
+
+	@Query(value = "select BLI_ITEM_DESC, BLI_ITEM_AMOUNT, BLI_QTY from OH_BILLITEMS where BLI_ID_BILL = :billId for update", nativeQuery = true)
+	List<Object[]> findItemsForUpdate(@Param("billId") int billId);
+
+	@Query(value = "select e.id, e.user, e.listName, e.itemDescription from BillLedgerEntry e where e.date = :date and e.type = :type")
+	List<Object[]> findEntries(@Param("date") LocalDate date, @Param("type") String type);
+
+	@Modifying
+	@Query(value = "update BillLedgerEntry e set e.amount = e.amount + :amount, e.quantity = e.quantity + :quantity where e.id = :id")
+	int addToEntry(@Param("id") int id, @Param("amount") double amount, @Param("quantity") long quantity);
+
+	@Modifying
+	@Query(value = "delete from BillLedgerEntry e where e.id in :ids and e.quantity = 0")
+	void deleteEmptyEntries(@Param("ids") Collection<Integer> ids);
+
+	@Query(value = "select new org.isf.accounting.model.BillLedgerTotal(e.user, sum(e.amount), sum(e.quantity)) from BillLedgerEntry e "
+					+ "where e.type = :type and e.date >= :dateFrom and e.date <= :dateTo group by e.user order by e.user")
+	List<BillLedgerTotal> sumByUser(@Param("type") String type, @Param("dateFrom") LocalDate dateFrom, @Param("dateTo") LocalDate dateTo);
+
+	@Query(value = "select new org.isf.accounting.model.BillLedgerTotal(e.listName, sum(e.amount), sum(e.quantity)) from BillLedgerEntry e "
+					+ "where e.type = :type and e.date >= :dateFrom and e.date <= :dateTo group by e.listName order by e.listName")
+	List<BillLedgerTotal> sumByListName(@Param("type") String type, @Param("dateFrom") LocalDate dateFrom, @Param("dateTo") LocalDate dateTo);
+
+	@Query(value = "select new org.isf.accounting.model.BillLedgerTotal(e.itemDescription, sum(e.amount), sum(e.quantity)) from BillLedgerEntry e "
+					+ "where e.type = :type and e.date >= :dateFrom and e.date <= :dateTo group by e.itemDescription order by e.itemDescription")
+	List<BillLedgerTotal> sumByItemDescription(@Param("type") String type, @Param("dateFrom") LocalDate dateFrom, @Param("dateTo") LocalDate dateTo);
+
+}
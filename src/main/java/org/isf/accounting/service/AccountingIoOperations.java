@@ -21,14 +21,19 @@
  */
 package org.isf.accounting.service;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
 import org.isf.accounting.model.Bill;
 import org.isf.accounting.model.BillItems;
+import org.isf.accounting.model.BillLedgerTotal;
 import org.isf.accounting.model.BillPayments;
 import org.isf.patient.model.Patient;
 import org.isf.utils.db.TranslateOHServiceException;
@@ -48,13 +53,16 @@ public class AccountingIoOperations {
 	private AccountingBillIoOperationRepository billRepository;
 	private AccountingBillPaymentIoOperationRepository billPaymentRepository;
 	private AccountingBillItemsIoOperationRepository billItemsRepository;
+	private BillLedger billLedger;
 
 	public AccountingIoOperations(AccountingBillIoOperationRepository accountingBillIoOperationRepository,
 	                              AccountingBillPaymentIoOperationRepository accountingBillPaymentIoOperationRepository,
-	                              AccountingBillItemsIoOperationRepository accountingBillItemsIoOperationRepository) {
+	                              AccountingBillItemsIoOperationRepository accountingBillItemsIoOperationRepository,
+	                              BillLedger billLedger) {
 		this.billRepository = accountingBillIoOperationRepository;
 		this.billPaymentRepository = accountingBillPaymentIoOperationRepository;
 		this.billItemsRepository = accountingBillItemsIoOperationRepository;
+		this.billLedger = billLedger;
 	}
 
 	/**
@@ -151,31 +159,53 @@ public class AccountingIoOperations {
 	}
 
 	/**
-	 * Stores a list of {@link BillItems} associated to a {@link Bill}.
+	 * Stores a list of {@link BillItems} associated to a {@link Bill}, replacing the current ones.
+	 * Items already stored for the bill are updated only if changed, new items are inserted and
+	 * the items no longer in the list are deleted with a single statement.
 	 * @param bill the bill.
 	 * @param billItems the bill items to store.
 	 * @throws OHServiceException if an error occurs during the store operation.
 	 */
 	public void newBillItems(Bill bill, List<BillItems> billItems) throws OHServiceException {
-		billItemsRepository.deleteWhereId(bill.getId());
+		BillLedger.Contribution ledgerContribution = billLedger.getContribution(bill.getId());
+		Map<Integer, BillItems> removedItems = new HashMap<>();
+		for (BillItems item : billItemsRepository.findByBill_idOrderByIdAsc(bill.getId())) {
+			removedItems.put(item.getId(), item);
+		}
 		for (BillItems item : billItems) {
 			item.setBill(bill);
-			billItemsRepository.save(item);
+			if (removedItems.remove(item.getId()) == null) {
+				item.setId(0);
+			}
 		}
+		billItemsRepository.deleteAllInBatch(removedItems.values());
+		billItemsRepository.saveAll(billItems);
+		billLedger.update(bill.getId(), ledgerContribution);
 	}
 
 	/**
-	 * Stores a list of {@link BillPayments} associated to a {@link Bill}.
+	 * Stores a list of {@link BillPayments} associated to a {@link Bill}, replacing the current ones.
+	 * Payments already stored for the bill are updated only if changed, new payments are inserted and
+	 * the payments no longer in the list are deleted with a single statement.
 	 * @param bill the bill.
 	 * @param payItems the bill payments.
 	 * @throws OHServiceException if an error occurs during the store procedure.
 	 */
 	public void newBillPayments(Bill bill, List<BillPayments> payItems) throws OHServiceException {
-		billPaymentRepository.deleteWhereId(bill.getId());
+		BillLedger.Contribution ledgerContribution = billLedger.getContribution(bill.getId());
+		Map<Integer, BillPayments> removedPayments = new HashMap<>();
+		for (BillPayments payment : billPaymentRepository.findAllWherBillIdByOrderByBillAndDate(bill.getId())) {
+			removedPayments.put(payment.getId(), payment);
+		}
 		for (BillPayments payment : payItems) {
 			payment.setBill(bill);
-			billPaymentRepository.save(payment);
+			if (removedPayments.remove(payment.getId()) == null) {
+				payment.setId(0);
+			}
 		}
+		billPaymentRepository.deleteAllInBatch(removedPayments.values());
+		billPaymentRepository.saveAll(payItems);
+		billLedger.update(bill.getId(), ledgerContribution);
 	}
 
 	/**
@@ -185,7 +215,10 @@ public class AccountingIoOperations {
 	 * @throws OHServiceException if an error occurs during the update.
 	 */
 	public Bill updateBill(Bill updateBill) throws OHServiceException {
-		return billRepository.save(updateBill);
+		BillLedger.Contribution ledgerContribution = billLedger.getContribution(updateBill.getId());
+		Bill updatedBill = billRepository.save(updateBill);
+		billLedger.update(updatedBill.getId(), ledgerContribution);
+		return updatedBill;
 	}
 
 	/**
@@ -195,7 +228,9 @@ public class AccountingIoOperations {
 	 * @throws OHServiceException if an error occurs deleting the bill.
 	 */
 	public void deleteBill(Bill deleteBill) throws OHServiceException {
+		BillLedger.Contribution ledgerContribution = billLedger.getContribution(deleteBill.getId());
 		billRepository.deleteById(deleteBill.getId());
+		billLedger.update(deleteBill.getId(), ledgerContribution);
 	}
 
 	/**
@@ -209,6 +244,60 @@ public class AccountingIoOperations {
 		return billRepository.findByDateBetween(TimeTools.getBeginningOfDay(dateFrom), TimeTools.getBeginningOfNextDay(dateTo));
 	}
 
+	/**
+	 * Returns the {@link BillPayments} totals by user for the specified date range, read from the daily billing ledger.
+	 * @param dateFrom the low date range endpoint, inclusive.
+	 * @param dateTo the high date range endpoint, inclusive.
+	 * @return the list of {@link BillLedgerTotal}s, ordered by user.
+	 * @throws OHServiceException if an error occurs retrieving the totals.
+	 */
+	public List<BillLedgerTotal> getPaymentTotalsByUser(LocalDate dateFrom, LocalDate dateTo) throws OHServiceException {
+		return billLedger.getPaymentsByUser(dateFrom, dateTo);
+	}
+
+	/**
+	 * Returns the {@link BillPayments} totals by price list for the specified date range, read from the daily billing ledger.
+	 * @param dateFrom the low date range endpoint, inclusive.
+	 * @param dateTo the high date range endpoint, inclusive.
+	 * @return the list of {@link BillLedgerTotal}s, ordered by price list name.
+	 * @throws OHServiceException if an error occurs retrieving the totals.
+	 */
+	public List<BillLedgerTotal> getPaymentTotalsByPriceList(LocalDate dateFrom, LocalDate dateTo) throws OHServiceException {
+		return billLedger.getPaymentsByPriceList(dateFrom, dateTo);
+	}
+
+	/**
+	 * Returns the {@link BillItems} totals by user for the bills in the specified date range, read from the daily billing ledger.
+	 * @param dateFrom the low date range endpoint, inclusive.
+	 * @param dateTo the high date range endpoint, inclusive.
+	 * @return the list of {@link BillLedgerTotal}s, ordered by user.
+	 * @throws OHServiceException if an error occurs retrieving the totals.
+	 */
+	public List<BillLedgerTotal> getItemTotalsByUser(LocalDate dateFrom, LocalDate dateTo) throws OHServiceException {
+		return billLedger.getItemsByUser(dateFrom, dateTo);
+	}
+
+	/**
+	 * Returns the {@link BillItems} totals by item description for the bills in the specified date range, read from the daily billing ledger.
+	 * @param dateFrom the low date range endpoint, inclusive.
+	 * @param dateTo the high date range endpoint, inclusive.
+	 * @return the list of {@link BillLedgerTotal}s, ordered by item description.
+	 * @throws OHServiceException if an error occurs retrieving the totals.
+	 */
+	public List<BillLedgerTotal> getItemTotalsByDescription(LocalDate dateFrom, LocalDate dateTo) throws OHServiceException {
+		return billLedger.getItemsByDescription(dateFrom, dateTo);
+	}
+
+	/**
+	 * Recomputes the daily billing ledger for the specified date range.
+	 * @param dateFrom the low date range endpoint, inclusive.
+	 * @param dateTo the high date range endpoint, inclusive.
+	 * @throws OHServiceException if an error occurs rebuilding the ledger.
+	 */
+	public void rebuildLedger(LocalDate dateFrom, LocalDate dateTo) throws OHServiceException {
+		billLedger.rebuild(dateFrom, dateTo);
+	}
+
 	/**
 	 * Gets all the {@link Bill}s associated to the passed {@link BillPayments}.
 	 * @param payments the {@link BillPayments} associated to the bill to retrieve.
@@ -216,11 +305,11 @@ public class AccountingIoOperations {
 	 * @throws OHServiceException if an error occurs retrieving the bill list.
 	 */
 	public List<Bill> getBills(List<BillPayments> payments) throws OHServiceException {
-		Set<Bill> bills = new TreeSet<>((o1, o2) -> o1.getId() == o2.getId() ? 0 : -1);
+		Map<Integer, Bill> bills = new LinkedHashMap<>();
 		for (BillPayments bp : payments) {
-			bills.add(bp.getBill());
+			bills.putIfAbsent(bp.getBill().getId(), bp.getBill());
 		}
-		return new ArrayList<>(bills);
+		return new ArrayList<>(bills.values());
 	}
 
 	/**
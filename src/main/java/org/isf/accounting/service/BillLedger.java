@@ -0,0 +1,285 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2024 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.isf.accounting.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import jakarta.persistence.EntityManager;
+
+import org.isf.accounting.model.BillLedgerEntry;
+import org.isf.accounting.model.BillLedgerTotal;
+import org.isf.utils.db.TranslateOHServiceException;
+import org.isf.utils.exception.OHServiceException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Keeps the daily billing ledger ({@link BillLedgerEntry}) in sync with the bills, items and payments, and answers the
+ * totals over a date range from it. A write to a bill applies to the ledger only the difference between what the bill
+ * contributed before and after the write:
+ * <ul>
+ * <li>the contribution of the bill is read with locking reads of its own rows in {@code OH_BILLS},
+ * {@code OH_BILLITEMS} and {@code OH_BILLPAYMENTS}, so writers of the same bill are serialized and always see
+ * the contribution left by the previous one;</li>
+ * <li>the difference is added to the existing ledger rows with relative updates by id, in id order, so writers of
+ * different bills never overwrite each other's totals nor lock ranges of the ledger; a missing row is inserted, and
+ * if two clients insert the same row at once the ledger just holds two rows that add up.</li>
+ * </ul>
+ */
+@Service
+@Transactional(rollbackFor = OHServiceException.class)
+@TranslateOHServiceException
+public class BillLedger {
+
+	private final AccountingBillLedgerIoOperationRepository repository;
+
+	private final EntityManager entityManager;
+
+	public BillLedger(AccountingBillLedgerIoOperationRepository accountingBillLedgerIoOperationRepository, EntityManager entityManager) {
+		this.repository = accountingBillLedgerIoOperationRepository;
+		this.entityManager = entityManager;
+	}
+
+	/**
+	 * The totals a bill contributes to the ledger, by ledger row.
+	 */
+	public static final class Contribution {
+
+		private final Map<LedgerKey, LedgerTotals> totals;
+
+		private Contribution(Map<LedgerKey, LedgerTotals> totals) {
+			this.totals = totals;
+		}
+	}
+
+	private record LedgerKey(LocalDate date, String type, String user, String listName, String itemDescription) {
+	}
+
+	private record LedgerTotals(double amount, long quantity) {
+
+		LedgerTotals plus(LedgerTotals other) {
+			return new LedgerTotals(amount + other.amount, quantity + other.quantity);
+		}
+
+		LedgerTotals negate() {
+			return new LedgerTotals(-amount, -quantity);
+		}
+
+		boolean isZero() {
+			return amount == 0 && quantity == 0;
+		}
+	}
+
+	/**
+	 * Returns the totals the specified bill contributes to the ledger, as currently stored, locking the bill, its items
+	 * and its payments until the end of the transaction.
+	 *
+	 * @param billId the bill id.
+	 * @return the contribution (empty if the bill does not exist or is deleted).
+	 */
+	public Contribution getContribution(int billId) {
+		Map<LedgerKey, LedgerTotals> totals = new HashMap<>();
+		List<Object[]> bills = repository.findBillForUpdate(billId);
+		if (bills.isEmpty()) {
+			return new Contribution(totals);
+		}
+		Object[] bill = bills.get(0);
+		LocalDate billDay = toLocalDate(bill[0]);
+		String billUser = (String) bill[1];
+		String listName = (String) bill[2];
+		boolean deleted = "D".equals(bill[3]);
+		List<Object[]> payments = repository.findPaymentsForUpdate(billId);
+		List<Object[]> items = repository.findItemsForUpdate(billId);
+		if (deleted) {
+			return new Contribution(totals);
+		}
+		for (Object[] payment : payments) {
+			LedgerKey key = new LedgerKey(toLocalDate(payment[0]), BillLedgerEntry.PAYMENT, (String) payment[1], listName, null);
+			totals.merge(key, new LedgerTotals(((Number) payment[2]).doubleValue(), 1), LedgerTotals::plus);
+		}
+		for (Object[] item : items) {
+			LedgerKey key = new LedgerKey(billDay, BillLedgerEntry.ITEM, billUser, listName, (String) item[0]);
+			long quantity = ((Number) item[2]).longValue();
+			totals.merge(key, new LedgerTotals(((Number) item[1]).doubleValue() * quantity, quantity), LedgerTotals::plus);
+		}
+		return new Contribution(totals);
+	}
+
+	/**
+	 * Applies to the ledger the difference between the current contribution of the specified bill and the previous one.
+	 *
+	 * @param billId the bill id.
+	 * @param previous the contribution returned by {@link #getContribution(int)} before the write.
+	 */
+	public void update(int billId, Contribution previous) {
+		entityManager.flush();
+		Map<LedgerKey, LedgerTotals> deltas = new LinkedHashMap<>(getContribution(billId).totals);
+		for (Map.Entry<LedgerKey, LedgerTotals> entry : previous.totals.entrySet()) {
+			deltas.merge(entry.getKey(), entry.getValue().negate(), LedgerTotals::plus);
+		}
+		deltas.values().removeIf(LedgerTotals::isZero);
+		if (!deltas.isEmpty()) {
+			apply(deltas);
+		}
+	}
+
+	private void apply(Map<LedgerKey, LedgerTotals> deltas) {
+		// find the existing rows, with a plain read: the updates below are relative and by id
+		Map<LedgerKey, Integer> ids = new HashMap<>();
+		Map<LocalDate, List<String>> daysAndTypes = new HashMap<>();
+		for (LedgerKey key : deltas.keySet()) {
+			List<String> types = daysAndTypes.computeIfAbsent(key.date(), day -> new ArrayList<>());
+			if (!types.contains(key.type())) {
+				types.add(key.type());
+				for (Object[] row : repository.findEntries(key.date(), key.type())) {
+					ids.putIfAbsent(new LedgerKey(key.date(), key.type(), (String) row[1], (String) row[2], (String) row[3]), (Integer) row[0]);
+				}
+			}
+		}
+		Map<Integer, LedgerKey> updates = new TreeMap<>();
+		List<LedgerKey> inserts = new ArrayList<>();
+		for (LedgerKey key : deltas.keySet()) {
+			Integer id = ids.get(key);
+			if (id != null) {
+				updates.put(id, key);
+			} else {
+				inserts.add(key);
+			}
+		}
+		for (Map.Entry<Integer, LedgerKey> update : updates.entrySet()) {
+			LedgerTotals delta = deltas.get(update.getValue());
+			if (repository.addToEntry(update.getKey(), delta.amount(), delta.quantity()) == 0) {
+				// deleted meanwhile by another client
+				inserts.add(update.getValue());
+			}
+		}
+		if (!updates.isEmpty()) {
+			repository.deleteEmptyEntries(updates.keySet());
+		}
+		List<BillLedgerEntry> entries = new ArrayList<>(inserts.size());
+		for (LedgerKey key : inserts) {
+			LedgerTotals delta = deltas.get(key);
+			entries.add(new BillLedgerEntry(key.date(), key.type(), key.user(), key.listName(), key.itemDescription(), delta.amount(),
+							delta.quantity()));
+		}
+		repository.saveAll(entries);
+	}
+
+	private static LocalDate toLocalDate(Object value) {
+		if (value instanceof LocalDateTime localDateTime) {
+			return localDateTime.toLocalDate();
+		}
+		if (value instanceof Timestamp timestamp) {
+			return timestamp.toLocalDateTime().toLocalDate();
+		}
+		return LocalDate.parse(Objects.toString(value).substring(0, 10));
+	}
+
+	/**
+	 * Recomputes the ledger rows of every day in the specified range from the bills, items and payments, e.g. after a
+	 * bulk import. Meant for maintenance: bills written meanwhile by other clients may be counted twice or not at all.
+	 *
+	 * @param dateFrom the first day, inclusive.
+	 * @param dateTo the last day, inclusive.
+	 */
+	public void rebuild(LocalDate dateFrom, LocalDate dateTo) {
+		entityManager.flush();
+		List<LocalDate> days = new ArrayList<>();
+		for (LocalDate day = dateFrom; !day.isAfter(dateTo); day = day.plusDays(1)) {
+			days.add(day);
+		}
+		refresh(days);
+	}
+
+	private void refresh(Collection<LocalDate> days) {
+		List<BillLedgerEntry> entries = new ArrayList<>();
+		for (LocalDate day : days) {
+			repository.deleteByDate(day);
+			LocalDateTime dateFrom = day.atStartOfDay();
+			LocalDateTime dateTo = day.plusDays(1).atStartOfDay();
+			for (Object[] row : repository.sumPaymentsBetweenDates(dateFrom, dateTo)) {
+				entries.add(new BillLedgerEntry(day, BillLedgerEntry.PAYMENT, (String) row[0], (String) row[1], null,
+								((Number) row[2]).doubleValue(), ((Number) row[3]).longValue()));
+			}
+			for (Object[] row : repository.sumItemsBetweenDates(dateFrom, dateTo)) {
+				entries.add(new BillLedgerEntry(day, BillLedgerEntry.ITEM, (String) row[0], (String) row[1], (String) row[2],
+								((Number) row[3]).doubleValue(), ((Number) row[4]).longValue()));
+			}
+		}
+		repository.saveAll(entries);
+	}
+
+	/**
+	 * Returns the payments in the specified date range, totalled by user.
+	 *
+	 * @param dateFrom the first day, inclusive.
+	 * @param dateTo the last day, inclusive.
+	 * @return the totals, ordered by user.
+	 */
+	public List<BillLedgerTotal> getPaymentsByUser(LocalDate dateFrom, LocalDate dateTo) {
+		return repository.sumByUser(BillLedgerEntry.PAYMENT, dateFrom, dateTo);
+	}
+
+	/**
+	 * Returns the payments in the specified date range, totalled by price list name.
+	 *
+	 * @param dateFrom the first day, inclusive.
+	 * @param dateTo the last day, inclusive.
+	 * @return the totals, ordered by price list name.
+	 */
+	public List<BillLedgerTotal> getPaymentsByPriceList(LocalDate dateFrom, LocalDate dateTo) {
+		return repository.sumByListName(BillLedgerEntry.PAYMENT, dateFrom, dateTo);
+	}
+
+	/**
+	 * Returns the billed items of the bills in the specified date range, totalled by user.
+	 *
+	 * @param dateFrom the first day, inclusive.
+	 * @param dateTo the last day, inclusive.
+	 * @return the totals, ordered by user.
+	 */
+	public List<BillLedgerTotal> getItemsByUser(LocalDate dateFrom, LocalDate dateTo) {
+		return repository.sumByUser(BillLedgerEntry.ITEM, dateFrom, dateTo);
+	}
+
+	/**
+	 * Returns the billed items of the bills in the specified date range, totalled by item description.
+	 *
+	 * @param dateFrom the first day, inclusive.
+	 * @param dateTo the last day, inclusive.
+	 * @return the totals, ordered by item description.
+	 */
+	public List<BillLedgerTotal> getItemsByDescription(LocalDate dateFrom, LocalDate dateTo) {
+		return repository.sumByItemDescription(BillLedgerEntry.ITEM, dateFrom, dateTo);
+	}
+
+}
@@ -91,6 +91,36 @@ public class AdmissionBrowserManager {
 		return ioOperations.getAdmittedPatients(searchTerms, admissionRange, dischargeRange);
 	}
 
+	/**
+	 * Returns a page of the patients based on the applied filters. Pages are chained by patient code, so that every page
+	 * costs the same whatever its position: pass {@code null} for the first page and then the code of the last patient received.
+	 *
+	 * @param admissionRange (two-dimensions array) the patient admission dates range, both {@code null} if no filter have to be applied.
+	 * @param dischargeRange (two-dimensions array) the patient admission dates range, both {@code null} if no filter have to be applied.
+	 * @param searchTerms the search terms to use for filter the patient list, {@code null} if no filter have to be applied.
+	 * @param lastPatientCode the code of the last patient of the previous page, {@code null} for the first page.
+	 * @param size the page size.
+	 * @return the filtered patient page, highest patient code first.
+	 * @throws OHServiceException if an error occurs during database request.
+	 */
+	public List<AdmittedPatient> getAdmittedPatients(LocalDateTime[] admissionRange, LocalDateTime[] dischargeRange, String searchTerms,
+					Integer lastPatientCode, int size) throws OHServiceException {
+		return ioOperations.getAdmittedPatients(searchTerms, admissionRange, dischargeRange, lastPatientCode, size);
+	}
+
+	/**
+	 * Counts the patients based on the applied filters, to be requested once for the whole browsing.
+	 *
+	 * @param admissionRange (two-dimensions array) the patient admission dates range, both {@code null} if no filter have to be applied.
+	 * @param dischargeRange (two-dimensions array) the patient admission dates range, both {@code null} if no filter have to be applied.
+	 * @param searchTerms the search terms to use for filter the patient list, {@code null} if no filter have to be applied.
+	 * @return the number of patients.
+	 * @throws OHServiceException if an error occurs during database request.
+	 */
+	public long countAdmittedPatients(LocalDateTime[] admissionRange, LocalDateTime[] dischargeRange, String searchTerms) throws OHServiceException {
+		return ioOperations.countAdmittedPatients(searchTerms, admissionRange, dischargeRange);
+	}
+
 	public AdmittedPatient loadAdmittedPatients(int patientId) {
 		return ioOperations.loadAdmittedPatient(patientId);
 	}
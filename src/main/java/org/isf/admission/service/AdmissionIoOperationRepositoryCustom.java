@@ -32,6 +32,19 @@ public interface AdmissionIoOperationRepositoryCustom {
 	List<AdmittedPatient> findPatientAdmissionsBySearchAndDateRanges(String searchTerms, LocalDateTime[] admissionRange, LocalDateTime[] dischargeRange)
 			throws OHServiceException;
 
+	/**
+	 * Keyset-paginated variant of {@link #findPatientAdmissionsBySearchAndDateRanges(String, LocalDateTime[], LocalDateTime[])}:
+	 * returns at most {@code size} patients with code lower than {@code lastPatientCode}, highest code first.
+	 *
+	 * @param lastPatientCode the code of the last patient of the previous page, {@code null} for the first page.
+	 * @param size the maximum number of patients, {@code 0} for no limit.
+	 */
+	List<AdmittedPatient> findPatientAdmissionsBySearchAndDateRanges(String searchTerms, LocalDateTime[] admissionRange, LocalDateTime[] dischargeRange,
+			Integer lastPatientCode, int size) throws OHServiceException;
+
+	long countPatientAdmissionsBySearchAndDateRanges(String searchTerms, LocalDateTime[] admissionRange, LocalDateTime[] dischargeRange)
+			throws OHServiceException;
+
 	/**
 	 * @param patientId
 	 * @param admissionId
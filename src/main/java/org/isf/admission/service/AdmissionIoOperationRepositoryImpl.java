@@ -23,7 +23,10 @@ package org.isf.admission.service;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
@@ -31,9 +34,10 @@ import jakarta.persistence.Query;
 
 import org.isf.admission.model.Admission;
 import org.isf.admission.model.AdmittedPatient;
+import org.isf.generaldata.GeneralData;
 import org.isf.patient.model.Patient;
+import org.isf.patient.service.PatientSearchIndex;
 import org.isf.utils.exception.OHServiceException;
-import org.isf.utils.time.TimeTools;
 import org.springframework.transaction.annotation.Transactional;
 
 @Transactional
@@ -42,21 +46,25 @@ public class AdmissionIoOperationRepositoryImpl implements AdmissionIoOperationR
 	private static String nativeQueryTerms = "SELECT * from OH_PATIENT as p  "
 					+ " left join (select * from OH_ADMISSION where ADM_IN = 1 and ( (ADM_DELETED='N') or (ADM_DELETED is null ) ) ) as a on p.PAT_ID = a.ADM_PAT_ID "
 					+ " where ( ( p.PAT_DELETED='N' ) or ( p.PAT_DELETED is null ) )"
-					+ " and ( lower(concat_ws(' ', p.PAT_ID, p.PAT_SNAME, p.PAT_FNAME, p.PAT_NAME, p.PAT_NOTE, p.PAT_TAXCODE, p.PAT_CITY, p.PAT_ADDR, p.PAT_TELE)) like :param0 ) "
-					+ " order by p.PAT_ID desc";
+					+ " and ( searchPredicate ) ";
 
 	private static String nativeQueryRanges = "SELECT * from OH_PATIENT as p  "
 					+ " left join (select * from OH_ADMISSION where ADM_IN = 1 and ( (ADM_DELETED='N') or (ADM_DELETED is null ) ) ) as a on p.PAT_ID = a.ADM_PAT_ID "
 					+ " where (p.PAT_ID IN (SELECT ADM_PAT_ID from OH_ADMISSION where param1))"
-					+ " and ( lower(concat_ws(' ', p.PAT_ID, p.PAT_SNAME, p.PAT_FNAME, p.PAT_NAME, p.PAT_NOTE, p.PAT_TAXCODE, p.PAT_CITY, p.PAT_ADDR, p.PAT_TELE)) like :param0 ) "
-					+ " order by p.PAT_ID desc";
+					+ " and ( searchPredicate ) ";
 
 	private static String nativeQueryCode = "SELECT * from OH_PATIENT as p  "
 					+ " left join (select * from OH_ADMISSION where ADM_IN = 1 and ( (ADM_DELETED='N') or (ADM_DELETED is null ) ) order by ADM_ID desc) as a on p.PAT_ID = a.ADM_PAT_ID "
 					+ " where p.PAT_ID = :param0 "
 					+ " and ( ( p.PAT_DELETED='N' ) or ( p.PAT_DELETED is null ) )";
 
-	private static final String YYYY_MM_DD = "yyyy-MM-dd";
+	private static String keysetPredicate = " and p.PAT_ID < :lastCode ";
+
+	private static String orderBy = " order by p.PAT_ID desc";
+
+	private static String likePredicate = "lower(concat_ws(' ', p.PAT_ID, p.PAT_SNAME, p.PAT_FNAME, p.PAT_NAME, p.PAT_NOTE, p.PAT_TAXCODE, p.PAT_CITY, p.PAT_ADDR, p.PAT_TELE)) like :param0";
+
+	private static String indexPredicate = "p.PAT_ID IN (SELECT PST_PAT_ID from OH_PATIENT_SEARCH_TOKEN where PST_TOKEN like :termN)";
 
 	@PersistenceContext
 	private EntityManager entityManager;
@@ -64,11 +72,21 @@ public class AdmissionIoOperationRepositoryImpl implements AdmissionIoOperationR
 	@Override
 	public List<AdmittedPatient> findPatientAdmissionsBySearchAndDateRanges(String searchTerms, LocalDateTime[] admissionRange,
 					LocalDateTime[] dischargeRange) throws OHServiceException {
+		return findPatientAdmissionsBySearchAndDateRanges(searchTerms, admissionRange, dischargeRange, null, 0);
+	}
+
+	@Override
+	public List<AdmittedPatient> findPatientAdmissionsBySearchAndDateRanges(String searchTerms, LocalDateTime[] admissionRange,
+					LocalDateTime[] dischargeRange, Integer lastPatientCode, int size) throws OHServiceException {
 		String[] terms = getTermsToSearch(searchTerms);
 		List<AdmittedPatient> admittedPatients = new ArrayList<>();
 		if (terms.length == 1) {
 			try {
 				int code = Integer.parseInt(terms[0]);
+				if (lastPatientCode != null && code >= lastPatientCode) {
+					// the only matching patient was on a previous page
+					return admittedPatients;
+				}
 				Query nativeQuery = this.entityManager.createNativeQuery(nativeQueryCode, "AdmittedPatient");
 				nativeQuery.setParameter("param0", code);
 
@@ -79,44 +97,101 @@ public class AdmissionIoOperationRepositoryImpl implements AdmissionIoOperationR
 			}
 		}
 
+		Map<String, Object> parameters = new HashMap<>();
+		String sql = buildQuery(terms, admissionRange, dischargeRange, parameters);
+		if (lastPatientCode != null) {
+			sql += keysetPredicate;
+			parameters.put("lastCode", lastPatientCode);
+		}
+		Query nativeQuery = this.entityManager.createNativeQuery(sql + orderBy, "AdmittedPatient");
+		parameters.forEach(nativeQuery::setParameter);
+		if (size > 0) {
+			nativeQuery.setMaxResults(size);
+		}
+
+		return parseResultSet(admittedPatients, nativeQuery);
+	}
+
+	@Override
+	public long countPatientAdmissionsBySearchAndDateRanges(String searchTerms, LocalDateTime[] admissionRange, LocalDateTime[] dischargeRange)
+					throws OHServiceException {
+		String[] terms = getTermsToSearch(searchTerms);
+		if (terms.length == 1) {
+			try {
+				int code = Integer.parseInt(terms[0]);
+				Query nativeQuery = this.entityManager.createNativeQuery(countQuery(nativeQueryCode));
+				nativeQuery.setParameter("param0", code);
+				return ((Number) nativeQuery.getSingleResult()).longValue();
+			} catch (NumberFormatException nfe) {
+				// used to see if the search parameter is a patient code (number)
+			}
+		}
+
+		Map<String, Object> parameters = new HashMap<>();
+		Query nativeQuery = this.entityManager.createNativeQuery(countQuery(buildQuery(terms, admissionRange, dischargeRange, parameters)));
+		parameters.forEach(nativeQuery::setParameter);
+		return ((Number) nativeQuery.getSingleResult()).longValue();
+	}
+
+	private String countQuery(String query) {
+		// only the patient code, so that the joined columns do not clash in the derived table
+		return "SELECT count(*) from (" + query.replaceFirst("SELECT \\*", "SELECT p.PAT_ID") + ") as c";
+	}
+
+	private String buildQuery(String[] terms, LocalDateTime[] admissionRange, LocalDateTime[] dischargeRange, Map<String, Object> parameters) {
+		setSearchParameters(parameters, terms);
 		if ((admissionRange != null && (admissionRange[0] != null || admissionRange[1] != null)) ||
 						(dischargeRange != null && (dischargeRange[0] != null || dischargeRange[1] != null))) {
 			StringBuilder rangePredicate = new StringBuilder("( (ADM_DELETED='N') or (ADM_DELETED is null ) )");
 			if (admissionRange != null) {
 
 				if (admissionRange[0] != null) {
-					rangePredicate.append(" and ").append("DATE(ADM_DATE_ADM) >= '").append(TimeTools.formatDateTime(admissionRange[0], YYYY_MM_DD))
-									.append('\'');
+					rangePredicate.append(" and ").append("DATE(ADM_DATE_ADM) >= :admissionFrom");
+					parameters.put("admissionFrom", admissionRange[0].toLocalDate());
 				}
 				if (admissionRange[1] != null) {
-					rangePredicate.append(" and ").append("DATE(ADM_DATE_ADM) <= '").append(TimeTools.formatDateTime(admissionRange[1], YYYY_MM_DD))
-									.append('\'');
+					rangePredicate.append(" and ").append("DATE(ADM_DATE_ADM) <= :admissionTo");
+					parameters.put("admissionTo", admissionRange[1].toLocalDate());
 				}
 			}
 			if (dischargeRange != null) {
 
 				if (dischargeRange[0] != null) {
-					rangePredicate.append(" and ").append("DATE(ADM_DATE_DIS) >= '").append(TimeTools.formatDateTime(dischargeRange[0], YYYY_MM_DD))
-									.append('\'');
+					rangePredicate.append(" and ").append("DATE(ADM_DATE_DIS) >= :dischargeFrom");
+					parameters.put("dischargeFrom", dischargeRange[0].toLocalDate());
 				}
 				if (dischargeRange[1] != null) {
-					rangePredicate.append(" and ").append("DATE(ADM_DATE_DIS) <= '").append(TimeTools.formatDateTime(dischargeRange[1], YYYY_MM_DD))
-									.append('\'');
+					rangePredicate.append(" and ").append("DATE(ADM_DATE_DIS) <= :dischargeTo");
+					parameters.put("dischargeTo", dischargeRange[1].toLocalDate());
 				}
 			}
-			Query nativeQuery = this.entityManager.createNativeQuery(nativeQueryRanges.replace("param1", rangePredicate.toString()), "AdmittedPatient");
-			String paramTerms = like(terms);
-			nativeQuery.setParameter("param0", paramTerms);
-
-			return parseResultSet(admittedPatients, nativeQuery);
-
-		} else {
+			return nativeQueryRanges.replace("param1", rangePredicate.toString()).replace("searchPredicate", searchPredicate(terms));
+		}
+		return nativeQueryTerms.replace("searchPredicate", searchPredicate(terms));
+	}
 
-			Query nativeQuery = this.entityManager.createNativeQuery(nativeQueryTerms, "AdmittedPatient");
-			String paramTerms = like(terms);
-			nativeQuery.setParameter("param0", paramTerms);
+	private String searchPredicate(String[] terms) {
+		if (!GeneralData.PATIENTSEARCHINDEX) {
+			return likePredicate;
+		}
+		if (terms.length == 0) {
+			return "1 = 1";
+		}
+		// one lookup in the patient search index per term
+		StringJoiner predicate = new StringJoiner(" and ");
+		for (int i = 0; i < terms.length; i++) {
+			predicate.add(indexPredicate.replace("termN", "term" + i));
+		}
+		return predicate.toString();
+	}
 
-			return parseResultSet(admittedPatients, nativeQuery);
+	private void setSearchParameters(Map<String, Object> parameters, String[] terms) {
+		if (!GeneralData.PATIENTSEARCHINDEX) {
+			parameters.put("param0", like(terms));
+			return;
+		}
+		for (int i = 0; i < terms.length; i++) {
+			parameters.put("term" + i, PatientSearchIndex.normalize(terms[i]) + '%');
 		}
 	}
 
@@ -141,6 +216,10 @@ public class AdmissionIoOperationRepositoryImpl implements AdmissionIoOperationR
 	}
 
 	private String[] getTermsToSearch(String searchTerms) {
+		if (GeneralData.PATIENTSEARCHINDEX) {
+			return PatientSearchIndex.getWords(searchTerms);
+		}
+
 		String[] terms = {};
 
 		if (searchTerms != null && !searchTerms.isEmpty()) {
@@ -111,6 +111,36 @@ public class AdmissionIoOperations {
 		return repository.findPatientAdmissionsBySearchAndDateRanges(searchTerms, admissionRange, dischargeRange);
 	}
 
+	/**
+	 * Returns a page of the patients based on the applied filters, using the patient code as key: the page contains
+	 * the patients with code lower than {@code lastPatientCode}, highest code first.
+	 *
+	 * @param searchTerms the search terms to use for filter the patient list, {@code null} if no filter is to be applied.
+	 * @param admissionRange (two-dimensions array) the patient admission dates range, both {@code null} if no filter is to be applied.
+	 * @param dischargeRange (two-dimensions array) the patient discharge dates range, both {@code null} if no filter is to be applied.
+	 * @param lastPatientCode the code of the last patient of the previous page, {@code null} for the first page.
+	 * @param size the page size.
+	 * @return the filtered patient page.
+	 * @throws OHServiceException if an error occurs during database request.
+	 */
+	public List<AdmittedPatient> getAdmittedPatients(String searchTerms, LocalDateTime[] admissionRange, LocalDateTime[] dischargeRange,
+					Integer lastPatientCode, int size) throws OHServiceException {
+		return repository.findPatientAdmissionsBySearchAndDateRanges(searchTerms, admissionRange, dischargeRange, lastPatientCode, size);
+	}
+
+	/**
+	 * Counts the patients based on the applied filters.
+	 *
+	 * @param searchTerms the search terms to use for filter the patient list, {@code null} if no filter is to be applied.
+	 * @param admissionRange (two-dimensions array) the patient admission dates range, both {@code null} if no filter is to be applied.
+	 * @param dischargeRange (two-dimensions array) the patient discharge dates range, both {@code null} if no filter is to be applied.
+	 * @return the number of patients.
+	 * @throws OHServiceException if an error occurs during database request.
+	 */
+	public long countAdmittedPatients(String searchTerms, LocalDateTime[] admissionRange, LocalDateTime[] dischargeRange) throws OHServiceException {
+		return repository.countPatientAdmissionsBySearchAndDateRanges(searchTerms, admissionRange, dischargeRange);
+	}
+
 	/**
 	 * Load patient together with the profile photo, or {@code null} if there is no patient with the given id
 	 */
@@ -239,9 +269,9 @@ public class AdmissionIoOperations {
 			last = now.with(lastDayOfYear()).with(LocalTime.MAX).truncatedTo(ChronoUnit.SECONDS);
 		}
 
-		List<Admission> admissions = repository.findAllWhereWardAndDates(wardId, first, last);
-		if (!admissions.isEmpty()) {
-			next = admissions.get(0).getYProg() + 1;
+		Integer maxYProg = repository.findMaxYProgWhereWardAndDates(wardId, first, last);
+		if (maxYProg != null) {
+			next = maxYProg + 1;
 		}
 
 		return next;
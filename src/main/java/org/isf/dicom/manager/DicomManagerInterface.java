@@ -21,6 +21,9 @@
  */
 package org.isf.dicom.manager;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
 import org.isf.dicom.model.FileDicom;
 import org.isf.utils.exception.OHServiceException;
 
@@ -108,4 +111,28 @@ public interface DicomManagerInterface {
 	 * @throws OHServiceException
 	 */
 	void saveFile(FileDicom dicom) throws OHServiceException;
+
+	/**
+	 * Open the DICOM data of a file for reading, without loading it in memory. The caller must close the channel.
+	 *
+	 * @param idFile
+	 * @param patientID
+	 * @param seriesNumber
+	 * @return the channel to read the DICOM data from
+	 * @throws OHServiceException
+	 */
+	ReadableByteChannel openDicomData(long idFile, int patientID, String seriesNumber) throws OHServiceException;
+
+	/**
+	 * Read a range of the DICOM data of a file, e.g. a single frame. The range is truncated at the end of the data.
+	 *
+	 * @param idFile
+	 * @param patientID
+	 * @param seriesNumber
+	 * @param position - the offset of the range in the DICOM data, starting from 0
+	 * @param length - the length of the range
+	 * @return a read-only buffer with the range (memory-mapped when the storage allows it)
+	 * @throws OHServiceException
+	 */
+	ByteBuffer readDicomData(long idFile, int patientID, String seriesNumber, long position, int length) throws OHServiceException;
 }
@@ -0,0 +1,398 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2024 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.isf.dicom.manager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of a {@link FileSystemDicomManager} storage root, kept under {@code <root>/.index}: one file per series
+ * maps the file ids of the series to their DICOM instance UIDs and keeps the metadata of the series, the
+ * {@code .properties} of its first file.
+ * <p>
+ * The index is only a cache of the directory tree. Each series index records the last modified time of its series
+ * folder and is rebuilt from the {@code .properties} files whenever the folder changed afterwards (a crash between
+ * writing the files and the index, files copied by hand, a deleted index folder). Writes are serialized across
+ * processes sharing the storage with a lock file.
+ */
+class FileSystemDicomIndex {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(FileSystemDicomIndex.class);
+
+	private static final Map<Path, FileSystemDicomIndex> INDEXES = new ConcurrentHashMap<>();
+
+	private static final String INDEX_DIR = ".index";
+	private static final String LOCK_FILE = "write.lock";
+	private static final String SEQUENCE_FILE = "dicom.storage";
+	private static final String INDEX_EXTENSION = ".idx";
+	private static final String PROPERTIES_EXTENSION = ".properties";
+	private static final String MODIFIED_KEY = "modified";
+	private static final String METADATA_PREFIX = "meta.";
+
+	/**
+	 * File ids reserved in {@value #SEQUENCE_FILE} at a time
+	 */
+	private static final int ID_BLOCK_SIZE = 64;
+
+	private final Path root;
+	private final Path indexDir;
+	private final Map<Path, SeriesIndex> cache = new ConcurrentHashMap<>();
+	private long nextId;
+	private long lastId;
+
+	private FileSystemDicomIndex(Path root) {
+		this.root = root;
+		this.indexDir = root.resolve(INDEX_DIR);
+	}
+
+	/**
+	 * Return the index of the storage root, shared by all the managers using it.
+	 */
+	static FileSystemDicomIndex of(File root) {
+		return INDEXES.computeIfAbsent(root.toPath().toAbsolutePath().normalize(), FileSystemDicomIndex::new);
+	}
+
+	/**
+	 * The file ids of a series mapped to their instance UIDs, ordered by file id, and the metadata of the series.
+	 */
+	record SeriesIndex(FileTime indexModified, long seriesModified, NavigableMap<Long, String> instances, Map<String, Long> instanceIds,
+					Map<String, String> metadata) {
+
+		static SeriesIndex of(FileTime indexModified, long seriesModified, NavigableMap<Long, String> instances, Map<String, String> metadata) {
+			Map<String, Long> instanceIds = new HashMap<>(instances.size() * 2);
+			instances.forEach((idFile, instanceUID) -> instanceIds.put(instanceUID, idFile));
+			return new SeriesIndex(indexModified, seriesModified, Collections.unmodifiableNavigableMap(instances), instanceIds,
+							Collections.unmodifiableMap(metadata));
+		}
+
+		boolean contains(String instanceUID) {
+			return instanceIds.containsKey(instanceUID);
+		}
+
+		/**
+		 * @return the first file id of the series or {@code -1} if the series is empty
+		 */
+		long first() {
+			return instances.isEmpty() ? -1 : instances.firstKey();
+		}
+	}
+
+	/**
+	 * Writes the files of a new instance and returns its instance UID.
+	 */
+	@FunctionalInterface
+	interface InstanceWriter {
+
+		String write(long idFile) throws Exception;
+	}
+
+	/**
+	 * Return the index of a series, rebuilding it if the series folder changed since it was written.
+	 */
+	SeriesIndex getSeries(int patId, String series) throws IOException {
+		Path seriesDir = seriesDir(patId, series);
+		Path indexFile = indexFile(patId, series);
+		long seriesModified = lastModified(seriesDir);
+		SeriesIndex cached = cache.get(indexFile);
+		if (cached != null && cached.seriesModified() == seriesModified && cached.indexModified().equals(lastModifiedTime(indexFile))) {
+			return cached;
+		}
+		SeriesIndex stored = read(indexFile);
+		if (stored != null && stored.seriesModified() == seriesModified) {
+			cache.put(indexFile, stored);
+			return stored;
+		}
+		return rebuild(patId, series);
+	}
+
+	/**
+	 * Add an instance to a series: a new file id is allocated, the files are written by the writer and the
+	 * index is updated, all while holding the storage write lock. If the series already holds an instance with the
+	 * given instance UID nothing is written, the check being done under the same lock.
+	 * <p>
+	 * When the index of the series is up to date the new instance is appended to it, so that importing a series does
+	 * not read and rewrite its whole index for each file.
+	 *
+	 * @param instanceUID the instance UID, {@code null} if it is generated by the writer
+	 * @return the file id of the new instance, or of the existing one with the same instance UID
+	 */
+	synchronized long addInstance(int patId, String series, String instanceUID, InstanceWriter writer) throws Exception {
+		try (FileChannel lockChannel = openLock(); FileLock lock = lockChannel.lock()) {
+			Path seriesDir = seriesDir(patId, series);
+			Path indexFile = indexFile(patId, series);
+			long seriesModified = lastModified(seriesDir);
+			SeriesIndex current = cache.get(indexFile);
+			if (current == null || current.seriesModified() != seriesModified || !current.indexModified().equals(lastModifiedTime(indexFile))) {
+				current = read(indexFile);
+			}
+			boolean upToDate = current != null && current.seriesModified() == seriesModified;
+			if (!upToDate) {
+				current = scan(seriesDir);
+			}
+			if (instanceUID != null && current.contains(instanceUID)) {
+				return current.instanceIds().get(instanceUID);
+			}
+			long idFile = nextId();
+			String writtenUID = writer.write(idFile);
+			NavigableMap<Long, String> instances = new TreeMap<>(current.instances());
+			instances.put(idFile, writtenUID);
+			Map<String, String> metadata = current.metadata();
+			seriesModified = lastModified(seriesDir);
+			if (upToDate && !current.instances().isEmpty()) {
+				append(indexFile, idFile, writtenUID, seriesModified);
+			} else {
+				if (current.instances().isEmpty()) {
+					metadata = loadProperties(seriesDir.resolve(idFile + PROPERTIES_EXTENSION));
+				}
+				write(indexFile, seriesModified, instances, metadata);
+			}
+			cache.put(indexFile, SeriesIndex.of(lastModifiedTime(indexFile), seriesModified, instances, metadata));
+			return idFile;
+		}
+	}
+
+	/**
+	 * Remove the index of a deleted series.
+	 */
+	synchronized void removeSeries(int patId, String series) throws IOException {
+		try (FileChannel lockChannel = openLock(); FileLock lock = lockChannel.lock()) {
+			Path indexFile = indexFile(patId, series);
+			cache.remove(indexFile);
+			Files.deleteIfExists(indexFile);
+		}
+	}
+
+	private synchronized SeriesIndex rebuild(int patId, String series) throws IOException {
+		try (FileChannel lockChannel = openLock(); FileLock lock = lockChannel.lock()) {
+			Path seriesDir = seriesDir(patId, series);
+			Path indexFile = indexFile(patId, series);
+			SeriesIndex stored = read(indexFile);
+			if (stored != null && stored.seriesModified() == lastModified(seriesDir)) {
+				cache.put(indexFile, stored);
+				return stored;
+			}
+			LOGGER.debug("Rebuilding DICOM index for patient {} series {}", patId, series);
+			SeriesIndex scanned = scan(seriesDir);
+			if (Files.isDirectory(seriesDir)) {
+				write(indexFile, scanned.seriesModified(), scanned.instances(), scanned.metadata());
+				SeriesIndex rebuilt = SeriesIndex.of(lastModifiedTime(indexFile), scanned.seriesModified(), scanned.instances(), scanned.metadata());
+				cache.put(indexFile, rebuilt);
+				return rebuilt;
+			}
+			return scanned;
+		}
+	}
+
+	private SeriesIndex scan(Path seriesDir) throws IOException {
+		NavigableMap<Long, String> instances = new TreeMap<>();
+		Map<String, String> metadata = Collections.emptyMap();
+		long seriesModified = lastModified(seriesDir);
+		if (Files.isDirectory(seriesDir)) {
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(seriesDir, '*' + PROPERTIES_EXTENSION)) {
+				for (Path file : files) {
+					String name = file.getFileName().toString();
+					try {
+						long idFile = Long.parseLong(name.substring(0, name.length() - PROPERTIES_EXTENSION.length()));
+						Map<String, String> properties = loadProperties(file);
+						if (instances.isEmpty() || idFile < instances.firstKey()) {
+							metadata = properties;
+						}
+						instances.put(idFile, properties.getOrDefault("dicomInstanceUID", ""));
+					} catch (NumberFormatException numberFormatException) {
+						LOGGER.debug("Not a DICOM file id: {}", name);
+					}
+				}
+			}
+		}
+		return SeriesIndex.of(FileTime.fromMillis(0), seriesModified, instances, metadata);
+	}
+
+	private static Map<String, String> loadProperties(Path file) throws IOException {
+		Properties properties = new Properties();
+		try (Reader reader = new FileReader(file.toFile())) {
+			properties.load(reader);
+		}
+		Map<String, String> map = new HashMap<>();
+		for (String key : properties.stringPropertyNames()) {
+			map.put(key, properties.getProperty(key));
+		}
+		return map;
+	}
+
+	private SeriesIndex read(Path indexFile) throws IOException {
+		FileTime indexModified = lastModifiedTime(indexFile);
+		if (indexModified == null) {
+			return null;
+		}
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(indexFile)) {
+			properties.load(reader);
+		} catch (NoSuchFileException noSuchFileException) {
+			return null;
+		}
+		NavigableMap<Long, String> instances = new TreeMap<>();
+		Map<String, String> metadata = new HashMap<>();
+		long seriesModified;
+		try {
+			seriesModified = Long.parseLong(properties.getProperty(MODIFIED_KEY));
+			for (String key : properties.stringPropertyNames()) {
+				if (key.startsWith(METADATA_PREFIX)) {
+					metadata.put(key.substring(METADATA_PREFIX.length()), properties.getProperty(key));
+				} else if (!MODIFIED_KEY.equals(key)) {
+					instances.put(Long.parseLong(key), properties.getProperty(key));
+				}
+			}
+		} catch (NumberFormatException numberFormatException) {
+			LOGGER.warn("Unreadable DICOM index {}", indexFile);
+			return null;
+		}
+		if (!instances.isEmpty() && metadata.isEmpty()) {
+			// written before the index kept the metadata of the series
+			return null;
+		}
+		return SeriesIndex.of(indexModified, seriesModified, instances, metadata);
+	}
+
+	/**
+	 * Write the index to a temporary file and move it in place, so that readers never see a partial index.
+	 */
+	private void write(Path indexFile, long seriesModified, NavigableMap<Long, String> instances, Map<String, String> metadata) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(MODIFIED_KEY, String.valueOf(seriesModified));
+		instances.forEach((idFile, instanceUID) -> properties.setProperty(String.valueOf(idFile), instanceUID));
+		metadata.forEach((key, value) -> properties.setProperty(METADATA_PREFIX + key, value));
+		Files.createDirectories(indexFile.getParent());
+		Path tempFile = Files.createTempFile(indexFile.getParent(), null, ".tmp");
+		try {
+			try (Writer writer = Files.newBufferedWriter(tempFile)) {
+				properties.store(writer, null);
+			}
+			Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	/**
+	 * Append an instance to the index, followed by the new modified time of the series: a later entry overrides an
+	 * earlier one when the index is read. If the append is interrupted the modified time in the index does not match
+	 * the series folder any more and the index is rebuilt.
+	 */
+	private static void append(Path indexFile, long idFile, String instanceUID, long seriesModified) throws IOException {
+		StringWriter lines = new StringWriter();
+		appendEntry(lines, String.valueOf(idFile), instanceUID);
+		appendEntry(lines, MODIFIED_KEY, String.valueOf(seriesModified));
+		Files.writeString(indexFile, lines.toString(), StandardOpenOption.APPEND);
+	}
+
+	private static void appendEntry(StringWriter lines, String key, String value) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(key, value);
+		StringWriter entry = new StringWriter();
+		properties.store(entry, null);
+		// store() escapes the entry as load() expects it, only the date comment is dropped
+		entry.toString().lines().filter(line -> !line.startsWith("#")).forEach(line -> lines.append(line).append(System.lineSeparator()));
+	}
+
+	/**
+	 * Emulate an SQL sequence on filesystem, reserving {@value #ID_BLOCK_SIZE} ids at a time. Must be called with the
+	 * write lock held.
+	 */
+	private long nextId() throws IOException {
+		if (nextId == 0 || nextId > lastId) {
+			Path sequenceFile = root.resolve(SEQUENCE_FILE);
+			long current = 0;
+			if (Files.exists(sequenceFile) && Files.size(sequenceFile) > 0) {
+				try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(Files.readAllBytes(sequenceFile)))) {
+					current = ois.readLong();
+				}
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+				oos.writeLong(current + ID_BLOCK_SIZE);
+			}
+			try (FileChannel channel = FileChannel.open(sequenceFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+							StandardOpenOption.TRUNCATE_EXISTING)) {
+				channel.write(ByteBuffer.wrap(bytes.toByteArray()));
+				channel.force(false);
+			}
+			nextId = current + 1;
+			lastId = current + ID_BLOCK_SIZE;
+		}
+		return nextId++;
+	}
+
+	private FileChannel openLock() throws IOException {
+		Files.createDirectories(indexDir);
+		return FileChannel.open(indexDir.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+	}
+
+	private Path seriesDir(int patId, String series) {
+		return root.resolve(String.valueOf(patId)).resolve(series);
+	}
+
+	private Path indexFile(int patId, String series) {
+		return indexDir.resolve(String.valueOf(patId)).resolve(series + INDEX_EXTENSION);
+	}
+
+	private static long lastModified(Path path) throws IOException {
+		FileTime lastModified = lastModifiedTime(path);
+		return lastModified == null ? 0 : lastModified.to(TimeUnit.MICROSECONDS);
+	}
+
+	private static FileTime lastModifiedTime(Path path) throws IOException {
+		try {
+			return Files.getLastModifiedTime(path);
+		} catch (NoSuchFileException noSuchFileException) {
+			return null;
+		}
+	}
+}
@@ -22,21 +22,24 @@
 package org.isf.dicom.manager;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.sql.Blob;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Locale;
@@ -46,6 +49,7 @@ import java.util.Vector;
 import javax.sql.rowset.serial.SerialBlob;
 import javax.sql.rowset.serial.SerialException;
 
+import org.isf.dicom.manager.FileSystemDicomIndex.SeriesIndex;
 import org.isf.dicom.model.DicomData;
 import org.isf.dicom.model.FileDicom;
 import org.isf.generaldata.MessageBundle;
@@ -77,7 +81,7 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 	 * Root dir for data storage
 	 */
 	private File dir;
-	private FilterSerieDetail dsf = new FilterSerieDetail();
+	private FileSystemDicomIndex index;
 
 	/**
 	 * Constructor
@@ -87,6 +91,7 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 		try {
 			dir = new File(externalPrp.getProperty("dicom.storage.filesystem"));
 			recourse(dir);
+			index = FileSystemDicomIndex.of(dir);
 		} catch (Exception exception) {
 			LOGGER.error(exception.getMessage(), exception);
 			throw new OHDicomException(exception,
@@ -99,6 +104,7 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 	 */
 	public void setDir(Properties externalPrp) {
 		this.dir = new File(externalPrp.getProperty("dicom.storage.filesystem"));
+		this.index = FileSystemDicomIndex.of(dir);
 	}
 
 	/**
@@ -116,29 +122,7 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 			if (seriesNumber == null || seriesNumber.trim().isEmpty() || seriesNumber.equalsIgnoreCase("null")) {
 				return null;
 			}
-			File df = getSerieDir(patientID, seriesNumber, false);
-
-			File[] files = df.listFiles(dsf);
-
-			long[] _longs = new long[files.length];
-
-			for (int i = 0; i < _longs.length; i++) {
-
-				try {
-					_longs[i] = Long.parseLong(files[i].getName().substring(0, files[i].getName().indexOf('.')));
-				} catch (Exception e) {
-				}
-			}
-
-			Arrays.sort(_longs);
-
-			Long[] _Longs = new Long[_longs.length];
-
-			for (int i = 0; i < _Longs.length; i++) {
-				_Longs[i] = _longs[i];
-			}
-
-			return _Longs;
+			return index.getSeries(patientID, seriesNumber).instances().keySet().toArray(new Long[0]);
 		} catch (Exception exception) {
 			throw new OHDicomException(exception,
 			                           new OHExceptionMessage(MessageBundle.formatMessage("angal.dicommanager.genericerror.fmt.msg", exception.getMessage())));
@@ -170,6 +154,7 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 			if (!deleteFolder.delete()) {
 				throw new OHDicomException(new OHExceptionMessage("File deletion for " + deleteFolder.getName() + " failed."));
 			}
+			index.removeSeries(patientId, seriesNumber);
 
 		} catch (Exception exception) {
 			throw new OHDicomException(exception,
@@ -228,8 +213,10 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 			FileDicom[] db = new FileDicom[series.length];
 
 			for (int i = 0; i < series.length; i++) {
-				long idFile = getFirst(series[i]);
-				db[i] = loadMetadata(idFile, patientId, series[i].getName());
+				SeriesIndex seriesIndex = index.getSeries(patientId, series[i].getName());
+				if (seriesIndex.first() != -1) {
+					db[i] = loadMetadata(seriesIndex, patientId, series[i].getName());
+				}
 			}
 
 			db = compact(db);
@@ -248,13 +235,9 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 	 */
 	@Override
 	public void saveFile(FileDicom dicom) throws OHDicomException {
-		if (exist(dicom)) {
-			return;
-		}
 		try {
 			int patId = dicom.getPatId();
 			String seriesNumber = dicom.getDicomSeriesNumber();
-			String dicomInstanceUID = dicom.getDicomInstanceUID();
 
 			// some times this number could be null, it's wrong, but I add
 			// line to avoid exception
@@ -264,72 +247,88 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 				dicom.setDicomSeriesInstanceUID("<org_root>."+seriesNumber);
 			}
 
-			long idFile = nextId();
-			// dicomInstanceUID is used to identify a unique file in the series (like DM_FILE_ID in the DB)
-			// so cannot be empty and will be used only for this cycle
-			if (dicomInstanceUID == null || dicomInstanceUID.isEmpty()) {
-				dicomInstanceUID = seriesNumber + '.' + idFile;
-				dicom.setDicomInstanceUID(dicomInstanceUID);
-			}
-
-			File df = getSerieDir(patId, seriesNumber, true);
-			File properties = new File(df, idFile + ".properties");
-			try (FileOutputStream fos = new FileOutputStream(properties, false);	PrintStream ps = new PrintStream(fos)) {
-				ps.println("idFile =" + idFile);
-				ps.println("patId =" + patId);
-				ps.println("fileName =" + dicom.getFileName());
-				ps.println("dicomAccessionNumber =" + dicom.getDicomAccessionNumber());
-				ps.println("dicomInstitutionName =" + dicom.getDicomInstitutionName());
-				ps.println("dicomPatientID =" + dicom.getDicomPatientID());
-				ps.println("dicomPatientName =" + dicom.getDicomPatientName());
-				ps.println("dicomPatientAddress =" + dicom.getDicomPatientAddress());
-				ps.println("dicomPatientAge =" + dicom.getDicomPatientAge());
-				ps.println("dicomPatientSex =" + dicom.getDicomPatientSex());
-				ps.println("dicomPatientBirthDate =" + dicom.getDicomPatientBirthDate());
-				ps.println("dicomStudyId =" + dicom.getDicomStudyId());
-				ps.println("dicomStudyDate =" + dicom.getDicomStudyDate().atZone(ZoneId.systemDefault()).format(DATE_TIME_FORMATTER));
-				ps.println("dicomStudyDescription =" + dicom.getDicomStudyDescription());
-				ps.println("dicomSeriesUID =" + dicom.getDicomSeriesUID());
-				ps.println("dicomSeriesInstanceUID =" + dicom.getDicomSeriesInstanceUID());
-				ps.println("dicomSeriesNumber =" + dicom.getDicomSeriesNumber());
-				ps.println("dicomSeriesDescriptionCodeSequence =" + dicom.getDicomSeriesDescriptionCodeSequence());
-				ps.println("dicomSeriesDate =" + dicom.getDicomSeriesDate().atZone(ZoneId.systemDefault()).format(DATE_TIME_FORMATTER));
-				ps.println("dicomSeriesDescription =" + dicom.getDicomSeriesDescription());
-				// dicomInstanceUID is used to identify a unique file in the series
-				// so cannot be empty and will be used only for this cycle
-				ps.println("dicomInstanceUID =" + dicomInstanceUID);
-				ps.println("modality =" + dicom.getModality());
-				ps.flush();
+			String series = seriesNumber;
+			String instanceUID = dicom.getDicomInstanceUID();
+			if (instanceUID == null || instanceUID.trim().isEmpty() || instanceUID.equalsIgnoreCase("null")) {
+				instanceUID = null;
 			}
-			File data = new File(df, idFile + ".data");
-			Blob blob = dicom.getDicomData().getData();
-			int blobLength = (int) blob.length();
-			byte[] blobAsBytes = blob.getBytes(1, blobLength);
-			save(data, blobAsBytes);
-			File thumn = new File(df, idFile + ".thumn");
-			blob = dicom.getDicomThumbnail();
-			blobLength = (int) blob.length();
-			blobAsBytes = blob.getBytes(1, blobLength);
-			save(thumn, blobAsBytes);
+			// an instance already in the series is not saved again, the index checks it under its write lock
+			index.addInstance(patId, series, instanceUID, idFile -> writeInstance(dicom, patId, series, idFile));
 		} catch (Exception exception) {
 			throw new OHDicomException(exception,
 			                           new OHExceptionMessage(MessageBundle.formatMessage("angal.dicommanager.genericerror.fmt.msg", exception.getMessage())));
 		}
 	}
 
+	/**
+	 * Write the files of an instance and return its instance UID
+	 */
+	private String writeInstance(FileDicom dicom, int patId, String seriesNumber, long idFile) throws IOException, SQLException {
+		String dicomInstanceUID = dicom.getDicomInstanceUID();
+		// dicomInstanceUID is used to identify a unique file in the series (like DM_FILE_ID in the DB)
+		// so cannot be empty and will be used only for this cycle
+		if (dicomInstanceUID == null || dicomInstanceUID.isEmpty()) {
+			dicomInstanceUID = seriesNumber + '.' + idFile;
+			dicom.setDicomInstanceUID(dicomInstanceUID);
+		}
+
+		File df = getSerieDir(patId, seriesNumber, true);
+		File properties = new File(df, idFile + ".properties");
+		try (FileOutputStream fos = new FileOutputStream(properties, false);	PrintStream ps = new PrintStream(fos)) {
+			ps.println("idFile =" + idFile);
+			ps.println("patId =" + patId);
+			ps.println("fileName =" + dicom.getFileName());
+			ps.println("dicomAccessionNumber =" + dicom.getDicomAccessionNumber());
+			ps.println("dicomInstitutionName =" + dicom.getDicomInstitutionName());
+			ps.println("dicomPatientID =" + dicom.getDicomPatientID());
+			ps.println("dicomPatientName =" + dicom.getDicomPatientName());
+			ps.println("dicomPatientAddress =" + dicom.getDicomPatientAddress());
+			ps.println("dicomPatientAge =" + dicom.getDicomPatientAge());
+			ps.println("dicomPatientSex =" + dicom.getDicomPatientSex());
+			ps.println("dicomPatientBirthDate =" + dicom.getDicomPatientBirthDate());
+			ps.println("dicomStudyId =" + dicom.getDicomStudyId());
+			ps.println("dicomStudyDate =" + dicom.getDicomStudyDate().atZone(ZoneId.systemDefault()).format(DATE_TIME_FORMATTER));
+			ps.println("dicomStudyDescription =" + dicom.getDicomStudyDescription());
+			ps.println("dicomSeriesUID =" + dicom.getDicomSeriesUID());
+			ps.println("dicomSeriesInstanceUID =" + dicom.getDicomSeriesInstanceUID());
+			ps.println("dicomSeriesNumber =" + dicom.getDicomSeriesNumber());
+			ps.println("dicomSeriesDescriptionCodeSequence =" + dicom.getDicomSeriesDescriptionCodeSequence());
+			ps.println("dicomSeriesDate =" + dicom.getDicomSeriesDate().atZone(ZoneId.systemDefault()).format(DATE_TIME_FORMATTER));
+			ps.println("dicomSeriesDescription =" + dicom.getDicomSeriesDescription());
+			// dicomInstanceUID is used to identify a unique file in the series
+			// so cannot be empty and will be used only for this cycle
+			ps.println("dicomInstanceUID =" + dicomInstanceUID);
+			ps.println("modality =" + dicom.getModality());
+			ps.flush();
+		}
+		File data = new File(df, idFile + ".data");
+		// copied through a stream, the data could be backed by a large source file
+		try (InputStream dataStream = dicom.getDicomData().getData().getBinaryStream()) {
+			Files.copy(dataStream, data.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		File thumn = new File(df, idFile + ".thumn");
+		Blob blob = dicom.getDicomThumbnail();
+		int blobLength = (int) blob.length();
+		byte[] blobAsBytes = blob.getBytes(1, blobLength);
+		save(thumn, blobAsBytes);
+		return dicomInstanceUID;
+	}
+
 	/*
-	 * Load DICOM data + Thumbnail
+	 * Load DICOM data + Thumbnail, the data of the series being read from its index
 	 */
-	private FileDicom loadMetadata(long idFile, int patientId, String series) throws IOException, SQLException {
+	private FileDicom loadMetadata(SeriesIndex seriesIndex, int patientId, String series) throws IOException, SQLException {
 		// Series must exist, so we need to check it and return null in case
 		if (series == null || series.trim().isEmpty() || series.equalsIgnoreCase("null")) {
 			return null;
 		}
 		FileDicom rv = new FileDicom();
 		File sd = getSerieDir(patientId, series, false);
-		rv.setFrameCount(getFramesCount(patientId, series));
-		parseDicomProperties(idFile, rv, sd);
-		rv.setDicomThumbnail(loadThumbnail(sd, idFile));
+		rv.setFrameCount(seriesIndex.instances().size());
+		Properties p = new Properties();
+		p.putAll(seriesIndex.metadata());
+		parseDicomProperties(p, rv);
+		rv.setDicomThumbnail(loadThumbnail(sd, seriesIndex.first()));
 		return rv;
 	}
 
@@ -351,7 +350,10 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 	}
 
 	private void parseDicomProperties(long idFile, FileDicom rv, File sd) throws IOException {
-		Properties p = loadMetadata(sd, idFile);
+		parseDicomProperties(loadMetadata(sd, idFile), rv);
+	}
+
+	private void parseDicomProperties(Properties p, FileDicom rv) {
 		try {
 			rv.setIdFile(Long.parseLong(p.getProperty("idFile")));
 		} catch (Exception e) {
@@ -400,13 +402,7 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 	 * @throws SerialException 
 	 */
 	private Blob loadThumbnail(File sd, long idFile) throws IOException, SerialException, SQLException {
-		File fdc = new File(sd, idFile + ".thumn");
-		byte[] byteArray;
-		try (FileInputStream fis = new FileInputStream(fdc)) {
-			byteArray = new byte[fis.available()];
-			fis.read(byteArray);
-		}
-		return new SerialBlob(byteArray);
+		return new SerialBlob(Files.readAllBytes(new File(sd, idFile + ".thumn").toPath()));
 	}
 
 	/**
@@ -415,13 +411,56 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 	 * @throws SerialException 
 	 */
 	private Blob loadDicomData(File sd, long idFile) throws IOException, SQLException {
-		File fdc = new File(sd, idFile + ".data");
-		byte[] byteArray;
-		try (FileInputStream fis = new FileInputStream(fdc)) {
-			byteArray = new byte[fis.available()];
-			fis.read(byteArray);
+		return new SerialBlob(Files.readAllBytes(new File(sd, idFile + ".data").toPath()));
+	}
+
+	/**
+	 * Open the DICOM data of a file for reading, without loading it in memory. The caller must close the channel.
+	 *
+	 * @param idFile
+	 * @param patientId
+	 * @param seriesNumber
+	 * @return the channel to read the DICOM data from
+	 * @throws OHDicomException
+	 */
+	@Override
+	public ReadableByteChannel openDicomData(long idFile, int patientId, String seriesNumber) throws OHDicomException {
+		try {
+			return FileChannel.open(getDicomDataFile(idFile, patientId, seriesNumber), StandardOpenOption.READ);
+		} catch (IOException exception) {
+			throw new OHDicomException(exception,
+			                           new OHExceptionMessage(MessageBundle.formatMessage("angal.dicommanager.genericerror.fmt.msg", exception.getMessage())));
 		}
-		return new SerialBlob(byteArray);
+	}
+
+	/**
+	 * Map a range of the DICOM data of a file in memory, e.g. a single frame. The range is truncated at the end of the file.
+	 *
+	 * @param idFile
+	 * @param patientId
+	 * @param seriesNumber
+	 * @param position - the offset of the range in the DICOM data, starting from 0
+	 * @param length - the length of the range
+	 * @return a read-only memory-mapped buffer with the range
+	 * @throws OHDicomException
+	 */
+	@Override
+	public ByteBuffer readDicomData(long idFile, int patientId, String seriesNumber, long position, int length) throws OHDicomException {
+		if (position < 0 || length < 0) {
+			throw new OHDicomException(new OHExceptionMessage(MessageBundle.formatMessage("angal.dicommanager.genericerror.fmt.msg",
+							"invalid DICOM data range " + position + ", " + length)));
+		}
+		try (FileChannel channel = FileChannel.open(getDicomDataFile(idFile, patientId, seriesNumber), StandardOpenOption.READ)) {
+			long rangeLength = Math.max(0, Math.min(length, channel.size() - position));
+			return channel.map(FileChannel.MapMode.READ_ONLY, Math.min(position, channel.size()), rangeLength);
+		} catch (IOException exception) {
+			throw new OHDicomException(exception,
+			                           new OHExceptionMessage(MessageBundle.formatMessage("angal.dicommanager.genericerror.fmt.msg", exception.getMessage())));
+		}
+	}
+
+	private Path getDicomDataFile(long idFile, int patientId, String seriesNumber) throws IOException {
+		return new File(getSerieDir(patientId, seriesNumber, false), idFile + ".data").toPath();
 	}
 
 	@Override
@@ -437,18 +476,7 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 			if (diuid == null || diuid.trim().isEmpty() || diuid.equalsIgnoreCase("null")) {
 				return false;
 			}
-			File df = getSerieDir(patId, serieNumber, true);
-			File[] files = df.listFiles();
-			int i = 0;
-			while (!rv && i < files.length) {
-				String nf = files[i].getName();
-				if (nf.endsWith(".properties")) {
-					Properties p = loadMetadata(files[i]);
-					String vl = p.getProperty("dicomInstanceUID");
-					rv = diuid.equals(vl);
-				}
-				i++;
-			}
+			rv = index.getSeries(patId, serieNumber).contains(diuid);
 		} catch (Exception exception) {
 			throw new OHDicomException(exception,
 			                           new OHExceptionMessage(MessageBundle.formatMessage("angal.dicommanager.genericerror.fmt.msg", exception.getMessage())));
@@ -464,58 +492,6 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 		return p;
 	}
 
-	private Properties loadMetadata(File mdf) throws IOException {
-		Properties p = new Properties();
-		try (FileReader fr = new FileReader(mdf)) {
-			p.load(fr);
-		}
-		return p;
-	}
-
-	/**
-	 * frames counter
-	 */
-	private int getFramesCount(int patID, String serieNumber) throws IOException {
-		File df = getSerieDir(patID, serieNumber, false);
-		File[] files = df.listFiles(dsf);
-		return files.length;
-	}
-
-	/**
-	 * emulate SQL sequence on filesystem
-	 */
-	private synchronized long nextId() throws IOException {
-		long rv = 0;
-
-		try {
-			File i = new File(dir, "dicom.storage");
-			if (i.exists()) {
-				try (FileInputStream fis = new FileInputStream(i)) {
-					try (ObjectInputStream ois = new ObjectInputStream(fis)) {
-						rv = ois.readLong();
-					}
-				}
-			}
-
-			i.delete();
-
-			i = new File(dir, "dicom.storage");
-
-			rv++;
-
-			try (FileOutputStream fos = new FileOutputStream(i)) {
-				try (ObjectOutputStream oos = new ObjectOutputStream(fos)) {
-					oos.writeLong(rv);
-					oos.flush();
-					fos.flush();
-				}
-			}
-		} catch (Exception exc) {
-
-		}
-		return rv;
-	}
-
 	/**
 	 * retrieve patient's series folder
 	 */
@@ -570,29 +546,6 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 		}
 	}
 
-	/**
-	 * Return the first idFile in the serie
-	 */
-	private long getFirst(File df) {
-		File[] files = df.listFiles(dsf);
-
-		long[] _longs = new long[files.length];
-
-		for (int i = 0; i < _longs.length; i++) {
-			try {
-				_longs[i] = Long.parseLong(files[i].getName().substring(0, files[i].getName().indexOf('.')));
-			} catch (Exception e) {
-			}
-		}
-
-		Arrays.sort(_longs);
-
-		if (_longs.length > 0) {
-			return _longs[0];
-		}
-		return -1;
-	}
-
 	private FileDicom[] compact(FileDicom[] db) {
 		Vector<FileDicom> rv = new Vector<>(0);
 
@@ -642,20 +595,6 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 		}
 	}
 
-	/**
-	 * Filter for files .thumn
-	 */
-	class FilterSerieDetail implements FilenameFilter {
-
-		@Override
-		public boolean accept(File dir, String name) {
-			if (name == null) {
-				return false;
-			}
-			return name.endsWith(".thumn");
-		}
-	}
-
 	@Override
 	public boolean exist(int patientId, String seriesNumber) throws OHServiceException {
 		File seriesFolder = null;
@@ -22,16 +22,24 @@
 package org.isf.dicom.manager;
 
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.Path;
 import java.text.DateFormat;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
 
 import javax.imageio.IIOException;
 import javax.imageio.ImageIO;
@@ -73,11 +81,18 @@ public class SourceFiles extends Thread {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(SourceFiles.class);
 
+	private static final int DECODER_THREADS = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Decoded files waiting to be saved; when reached, the next file is read only after the oldest one is saved.
+	 */
+	private static final int MAX_PENDING_FILES = DECODER_THREADS * 2;
+
 	private File file;
 	private FileDicom fileDicom;
 	private int patient;
 	private int filesCount;
-	private int filesLoaded;
+	private volatile int filesLoaded;
 	private AbstractDicomLoader dicomLoader;
 	private AbstractThumbnailViewGui thumbnail;
 
@@ -94,7 +109,10 @@ public class SourceFiles extends Thread {
 	@Override
 	public void run() {
 		try {
-			loadDicomDir(fileDicom, file, patient);
+			loadDicomDir(fileDicom, file, patient, loaded -> {
+				filesLoaded = loaded;
+				dicomLoader.setLoaded(loaded);
+			});
 		} catch (Exception e) {
 			LOGGER.error("loadDicomDir", e);
 		}
@@ -103,12 +121,14 @@ public class SourceFiles extends Thread {
 	}
 
 	/**
-	 * Load a DICOM directory
+	 * Load a DICOM directory: files are decoded and thumbnailed in parallel and saved one at a time, in the order
+	 * they are read from disk. A file that cannot be decoded or saved is logged and skipped, any other error stops
+	 * the load.
 	 *
+	 * @param progress - receives the number of files processed so far, after each file
 	 * @throws Exception
 	 */
-	private void loadDicomDir(FileDicom fileDicom, File sourceFile, int patient) throws Exception {
-		File[] files = sourceFile.listFiles();
+	private static void loadDicomDir(FileDicom fileDicom, File sourceFile, int patient, IntConsumer progress) throws Exception {
 		String seriesNumber = fileDicom.getDicomSeriesNumber();
 		if (seriesNumber == null || seriesNumber.isEmpty()) {
 			try {
@@ -118,28 +138,105 @@ public class SourceFiles extends Thread {
 				seriesNumber = "";
 			}
 		}
-		for (File value : files) {
+		ExecutorService decoders = newDecoderPool();
+		Deque<Future<FileDicom>> pending = new ArrayDeque<>(MAX_PENDING_FILES);
+		int loaded = 0;
+		try (Stream<Path> paths = Files.walk(sourceFile.toPath())) {
+			Iterator<Path> files = paths.filter(Files::isRegularFile).iterator();
+			while (files.hasNext()) {
+				File value = files.next().toFile();
+				if (fileDicom.getDicomSeriesDate() == null || fileDicom.getDicomStudyDate() == null) {
+					resolveDates(fileDicom, value);
+				}
+				if (pending.size() == MAX_PENDING_FILES) {
+					saveDecoded(pending.removeFirst());
+					progress.accept(++loaded);
+				}
+				pending.addLast(decoders.submit(() -> decodeDicom(copyOf(fileDicom), value, patient)));
+			}
+			while (!pending.isEmpty()) {
+				saveDecoded(pending.removeFirst());
+				progress.accept(++loaded);
+			}
+		} finally {
+			pending.forEach(decoded -> decoded.cancel(true));
+			decoders.shutdownNow();
+		}
+	}
 
-			try {
-				Thread.sleep(10);
-			} catch (Exception e) {}
+	/**
+	 * Set the dates not entered by the user from a file, before the files are decoded in parallel: as when the files
+	 * were decoded one after the other into the same details, every file of a directory gets the dates of the first
+	 * file that has them.
+	 */
+	private static void resolveDates(FileDicom fileDicom, File sourceFile) {
+		String name = sourceFile.getName();
+		LocalDateTime seriesDate = null;
+		LocalDateTime studyDate = null;
+		if (StringUtils.endsWithIgnoreCase(name, ".jpg") || StringUtils.endsWithIgnoreCase(name, ".jpeg")) {
+			seriesDate = FileTools.getTimestamp(sourceFile);
+			studyDate = seriesDate;
+		} else if (StringUtils.endsWithIgnoreCase(name, ".dcm")) {
+			try (DicomInputStream dicomInputStream = new DicomInputStream(sourceFile)) {
+				Attributes attributes = dicomInputStream.readDatasetUntilPixelData();
+				seriesDate = getSeriesDateTime(attributes);
+				studyDate = getStudyDateTime(attributes);
+			} catch (IOException | RuntimeException exception) {
+				// reported when the file is decoded
+				return;
+			}
+		}
+		if (fileDicom.getDicomSeriesDate() == null) {
+			fileDicom.setDicomSeriesDate(seriesDate);
+		}
+		if (fileDicom.getDicomStudyDate() == null) {
+			fileDicom.setDicomStudyDate(studyDate);
+		}
+	}
 
-			if (!value.isDirectory()) {
-				try {
-					loadDicom(fileDicom, value, patient);
-				} catch (OHDicomException ohDicomException) {
-					LOGGER.error("loadDicomDir: {}", ohDicomException.getMessages().get(0).getMessage());
-				} catch (Exception e) {
-					throw e;
+	private static void saveDecoded(Future<FileDicom> decoded) throws Exception {
+		try {
+			FileDicom dicomFileDetail = decoded.get();
+			if (dicomFileDetail != null) {
+				saveDicom(dicomFileDetail);
+			}
+		} catch (ExecutionException executionException) {
+			if (!(executionException.getCause() instanceof OHDicomException ohDicomException)) {
+				if (executionException.getCause() instanceof Exception exception) {
+					throw exception;
 				}
-				filesLoaded++;
-				dicomLoader.setLoaded(filesLoaded);
-			} else if (!".".equals(value.getName()) && !"..".equals(value.getName())) {
-				loadDicomDir(fileDicom, value, patient);
+				throw executionException;
 			}
+			LOGGER.error("loadDicomDir: {}", ohDicomException.getMessages().get(0).getMessage());
+		} catch (OHDicomException ohDicomException) {
+			LOGGER.error("loadDicomDir: {}", ohDicomException.getMessages().get(0).getMessage());
 		}
 	}
 
+	private static ExecutorService newDecoderPool() {
+		AtomicInteger threadNumber = new AtomicInteger();
+		return Executors.newFixedThreadPool(DECODER_THREADS, runnable -> {
+			Thread thread = new Thread(runnable, "dicom-decode-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Copy the details entered by the user, so that each file of a directory is decoded into its own {@link FileDicom}
+	 */
+	private static FileDicom copyOf(FileDicom fileDicom) {
+		FileDicom copy = new FileDicom(fileDicom.getPatId(), null, fileDicom.getIdFile(), fileDicom.getFileName(), fileDicom.getDicomAccessionNumber(),
+						fileDicom.getDicomInstitutionName(), fileDicom.getDicomPatientID(), fileDicom.getDicomPatientName(), fileDicom.getDicomPatientAddress(),
+						fileDicom.getDicomPatientAge(), fileDicom.getDicomPatientSex(), fileDicom.getDicomPatientBirthDate(), fileDicom.getDicomStudyId(),
+						fileDicom.getDicomStudyDate(), fileDicom.getDicomStudyDescription(), fileDicom.getDicomSeriesUID(), fileDicom.getDicomSeriesInstanceUID(),
+						fileDicom.getDicomSeriesNumber(), fileDicom.getDicomSeriesDescriptionCodeSequence(), fileDicom.getDicomSeriesDate(),
+						fileDicom.getDicomSeriesDescription(), fileDicom.getDicomInstanceUID(), fileDicom.getModality(), fileDicom.getDicomThumbnail(),
+						fileDicom.getDicomType());
+		copy.setFrameCount(fileDicom.getFrameCount());
+		return copy;
+	}
+
 	public static boolean checkSize(File sourceFile) throws OHDicomException {
 
 		return DicomManagerFactory.getMaxDicomSizeLong() > sourceFile.length();
@@ -249,12 +346,28 @@ public class SourceFiles extends Thread {
 	 * @param patient
 	 * @throws Exception
 	 */
+	public static void loadDicom(FileDicom dicomFileDetail, File sourceFile, int patient) throws Exception {
+		if (decodeDicom(dicomFileDetail, sourceFile, patient) != null) {
+			saveDicom(dicomFileDetail);
+		}
+	}
+
+	/**
+	 * Decode dicom file, create its thumbnail and fill dicomFileDetail with its details. Does not save anything,
+	 * so it can run in parallel for different dicomFileDetail.
+	 *
+	 * @param dicomFileDetail
+	 * @param sourceFile
+	 * @param patient
+	 * @return dicomFileDetail, or {@code null} if the file is to be skipped
+	 * @throws Exception
+	 */
 	@SuppressWarnings("unused")
-	public static synchronized void loadDicom(FileDicom dicomFileDetail, File sourceFile, int patient) throws Exception {
+	private static FileDicom decodeDicom(FileDicom dicomFileDetail, File sourceFile, int patient) throws Exception {
 		// installLibs();
 
 		if (".DS_Store".equals(sourceFile.getName())) {
-			return;
+			return null;
 		}
 
 		try {
@@ -300,11 +413,8 @@ public class SourceFiles extends Thread {
 				reader = (ImageReader) iter.next();
 				param = reader.getDefaultReadParam();
 				DicomInputStream dicomStream = null;
-				ByteArrayInputStream byteArrayInputStream = null;
 				try {
-					byte[] data = Files.readAllBytes(Paths.get(sourceFile.getAbsolutePath()));
-					byteArrayInputStream = new ByteArrayInputStream(data);
-					dicomStream = new DicomInputStream(byteArrayInputStream);
+					dicomStream = new DicomInputStream(sourceFile);
 					reader.setInput(dicomStream);
 					originalImage = reader.read(0, param);
 				} catch (IOException | RuntimeException exception) {
@@ -312,8 +422,8 @@ public class SourceFiles extends Thread {
 							new OHExceptionMessage(MessageBundle.formatMessage("angal.dicom.thefileisnotindicomformat.fmt.msg", sourceFile.getName())));
 				}
 				finally {
+					reader.dispose();
 					SafeClose.close(dicomStream);
-					SafeClose.close(byteArrayInputStream);
 				}
 			} else {
 				throw new OHDicomException(
@@ -354,14 +464,13 @@ public class SourceFiles extends Thread {
 				studyUID = ""; 
 			} else if (isDicom) {
 
-				DicomInputStream dicomInputStream;
-				try {
-					dicomInputStream = new DicomInputStream(sourceFile);
+				Attributes attributes;
+				try (DicomInputStream dicomInputStream = new DicomInputStream(sourceFile)) {
+					attributes = dicomInputStream.readDatasetUntilPixelData();
 				} catch (DicomStreamException dicomStreamException) {
 					throw new OHDicomException(
 							new OHExceptionMessage(MessageBundle.formatMessage("angal.dicom.thefileisnotindicomformat.fmt.msg", sourceFile.getName())));
 				}
-				Attributes attributes = dicomInputStream.readDataset();
 
 				//overridden by the user
 				seriesDescription = seriesDescription != null ? seriesDescription : attributes.getString(Tag.SeriesDescription);
@@ -470,20 +579,30 @@ public class SourceFiles extends Thread {
 				dicomFileDetail.setModality(modality);
 			}
 			dicomFileDetail.setIdFile(0); //it will trigger the DB save with SqlDicomManager
-			try {
-				DicomManagerFactory.getManager().saveFile(dicomFileDetail);
-				//dicomFileDetail.setDicomSeriesNumber(dicom.getDicomSeriesNumber()); //series number could be generated if missing.
-			} catch (OHServiceException ex) {
-				if (ex.getMessages() != null) {
-					throw new OHDicomException(ex.getCause(), ex.getMessages());
-				}
-			}
+			return dicomFileDetail;
 
 		} catch (OHDicomException ecc) {
 			throw ecc;
 		}
 	}
 
+	/**
+	 * Save a decoded dicom file; saves are serialized as the managers allocate file ids one at a time.
+	 *
+	 * @param dicomFileDetail
+	 * @throws OHDicomException
+	 */
+	private static synchronized void saveDicom(FileDicom dicomFileDetail) throws OHDicomException {
+		try {
+			DicomManagerFactory.getManager().saveFile(dicomFileDetail);
+			//dicomFileDetail.setDicomSeriesNumber(dicom.getDicomSeriesNumber()); //series number could be generated if missing.
+		} catch (OHServiceException ex) {
+			if (ex.getMessages() != null) {
+				throw new OHDicomException(ex.getCause(), ex.getMessages());
+			}
+		}
+	}
+
 	public static int checkOrientation(File sourceFile) throws ImageProcessingException, IOException {
 		Metadata metadata = ImageMetadataReader.readMetadata(sourceFile);
 		ExifIFD0Directory exifIFD0Directory = metadata.getFirstDirectoryOfType(ExifIFD0Directory.class);
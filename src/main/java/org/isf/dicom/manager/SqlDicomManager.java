@@ -21,6 +21,9 @@
  */
 package org.isf.dicom.manager;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
 import org.isf.dicom.model.FileDicom;
 import org.isf.dicom.service.DicomIoOperations;
 import org.isf.utils.exception.OHServiceException;
@@ -142,4 +145,34 @@ public class SqlDicomManager implements DicomManagerInterface {
 		ioOperations.saveFile(dicom);
 	}
 
+	/**
+	 * Open the DICOM data of a file for reading, in ranges read one at a time from the database. The caller must close the channel.
+	 *
+	 * @param idFile
+	 * @param patientID
+	 * @param seriesNumber
+	 * @return the channel to read the DICOM data from
+	 * @throws OHServiceException
+	 */
+	@Override
+	public ReadableByteChannel openDicomData(long idFile, int patientID, String seriesNumber) throws OHServiceException {
+		return ioOperations.openDicomData(idFile);
+	}
+
+	/**
+	 * Read a range of the DICOM data of a file, e.g. a single frame.
+	 *
+	 * @param idFile
+	 * @param patientID
+	 * @param seriesNumber
+	 * @param position - the offset of the range in the DICOM data, starting from 0
+	 * @param length - the length of the range
+	 * @return a read-only buffer with the range
+	 * @throws OHServiceException
+	 */
+	@Override
+	public ByteBuffer readDicomData(long idFile, int patientID, String seriesNumber, long position, int length) throws OHServiceException {
+		return ioOperations.readDicomData(idFile, position, length);
+	}
+
 }
@@ -285,7 +285,7 @@ public class FileDicom extends Auditable<String> {
 	}
 
 	/**
-	 * Load bytes of DICOM file and store it in a Blob type
+	 * Store the DICOM file in a Blob type backed by the file, its bytes are read only when saved
 	 * 
 	 * @param dicomFile
 	 *            the dicomFile to set
@@ -38,6 +38,12 @@ public interface DicomIoOperationRepository extends JpaRepository<FileDicom, Lon
 	@Query(value = "select f from FileDicom f WHERE f.patId = :id AND f.dicomSeriesNumber = :file order by f.fileName")
 	List<FileDicom> findAllWhereIdAndNumberByOrderNameAsc(@Param("id") int id, @Param("file") String file);
 
+	@Query(value = "select f.idFile from FileDicom f WHERE f.patId = :id AND f.dicomSeriesNumber = :file order by f.fileName")
+	List<Long> findIdFileWhereIdAndNumberByOrderNameAsc(@Param("id") int id, @Param("file") String file);
+
+	@Query(value = "SELECT SUBSTRING(DMD_DATA, :position, :length) FROM OH_DICOM_DATA WHERE DMD_FILE_ID = :idFile", nativeQuery = true)
+	byte[] findDataRangeByIdFile(@Param("idFile") long idFile, @Param("position") long position, @Param("length") int length);
+
 	@Query(value = "select new org.isf.dicom.model.FileDicom(f.patId, f.idFile, f.fileName, f.dicomAccessionNumber, f.dicomInstitutionName, f.dicomPatientID, f.dicomPatientName, f.dicomPatientAddress, f.dicomPatientAge, f.dicomPatientSex, f.dicomPatientBirthDate, f.dicomStudyId, f.dicomStudyDate, f.dicomStudyDescription, f.dicomSeriesUID, f.dicomSeriesInstanceUID, f.dicomSeriesNumber, f.dicomSeriesDescriptionCodeSequence, f.dicomSeriesDate, f.dicomSeriesDescription, f.dicomInstanceUID, f.modality, f.dicomThumbnail, d.dicomTypeID, d.dicomTypeDescription) FROM FileDicom f LEFT JOIN f.dicomType d WHERE f.patId = :id group by f.dicomSeriesInstanceUID order by f.dicomSeriesDate desc")
 	List<FileDicom> findAllWhereIdGroupBySeriesInstanceUIDOrderSerDateDesc(@Param("id") int id);
 
@@ -21,11 +21,17 @@
  */
 package org.isf.dicom.service;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
 import java.util.List;
 
 import org.isf.dicom.model.FileDicom;
+import org.isf.generaldata.MessageBundle;
 import org.isf.utils.db.TranslateOHServiceException;
 import org.isf.utils.exception.OHServiceException;
+import org.isf.utils.exception.model.OHExceptionMessage;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -34,6 +40,11 @@ import org.springframework.transaction.annotation.Transactional;
 @TranslateOHServiceException
 public class DicomIoOperations {
 
+	/**
+	 * Bytes of DICOM data read from the database at a time by {@link #openDicomData(long)}
+	 */
+	private static final int DATA_CHUNK_SIZE = 1024 * 1024;
+
 	private DicomIoOperationRepository repository;
 
 	public DicomIoOperations(DicomIoOperationRepository dicomIoOperationRepository) {
@@ -49,14 +60,7 @@ public class DicomIoOperations {
 	 * @throws OHServiceException 
 	 */
 	public Long[] getSeriesDetail(int patientID, String seriesNumber) throws OHServiceException {
-		List<FileDicom> dicomList = repository.findAllWhereIdAndNumberByOrderNameAsc(patientID, seriesNumber);
-		Long[] dicomIdArray = new Long[dicomList.size()];
-
-		for (int i = 0; i < dicomList.size(); i++) {
-			dicomIdArray[i] = dicomList.get(i).getIdFile();
-		}
-
-		return dicomIdArray;
+		return repository.findIdFileWhereIdAndNumberByOrderNameAsc(patientID, seriesNumber).toArray(new Long[0]);
 	}
 
 	/**
@@ -147,4 +151,102 @@ public class DicomIoOperations {
 		return repository.seriesExists(dicomSeriesNumber) > 0;
 	}
 
+	/**
+	 * Open the DICOM data of a file for reading from the database. The data is read in ranges of
+	 * {@value #DATA_CHUNK_SIZE} bytes, each with its own query, so that neither the whole data is loaded in memory nor
+	 * a connection is held while the channel is open (the MySQL drivers read a whole BLOB cell at once, even when
+	 * streaming the rows).
+	 *
+	 * @param idFile
+	 * @return the channel to read the DICOM data from
+	 * @throws OHServiceException
+	 */
+	@Transactional(readOnly = true)
+	public ReadableByteChannel openDicomData(long idFile) throws OHServiceException {
+		return new DataChannel(idFile, readDataRange(idFile, 0, DATA_CHUNK_SIZE));
+	}
+
+	/**
+	 * Read a range of the DICOM data of a file, e.g. a single frame. The range is truncated at the end of the data.
+	 * Only the range is read from the database.
+	 *
+	 * @param idFile
+	 * @param position - the offset of the range in the DICOM data, starting from 0
+	 * @param length - the length of the range
+	 * @return a read-only buffer with the range
+	 * @throws OHServiceException
+	 */
+	@Transactional(readOnly = true)
+	public ByteBuffer readDicomData(long idFile, long position, int length) throws OHServiceException {
+		if (position < 0 || length < 0) {
+			throw new OHServiceException(new OHExceptionMessage(MessageBundle.formatMessage("angal.dicommanager.genericerror.fmt.msg",
+							"invalid DICOM data range " + position + ", " + length)));
+		}
+		return ByteBuffer.wrap(readDataRange(idFile, position, length)).asReadOnlyBuffer();
+	}
+
+	private byte[] readDataRange(long idFile, long position, int length) throws OHServiceException {
+		// SUBSTRING positions start from 1
+		byte[] range = length == 0 ? new byte[0] : repository.findDataRangeByIdFile(idFile, position + 1, length);
+		if (range == null || length == 0 && !repository.existsById(idFile)) {
+			throw new OHServiceException(new OHExceptionMessage(
+							MessageBundle.formatMessage("angal.dicommanager.genericerror.fmt.msg", "no DICOM data for file " + idFile)));
+		}
+		return range;
+	}
+
+	/**
+	 * Channel over the DICOM data of a file, reading the next range when the current one is consumed
+	 */
+	private final class DataChannel implements ReadableByteChannel {
+
+		private final long idFile;
+		private ByteBuffer chunk;
+		private long position;
+		private boolean open = true;
+
+		private DataChannel(long idFile, byte[] firstChunk) {
+			this.idFile = idFile;
+			this.chunk = ByteBuffer.wrap(firstChunk);
+			this.position = firstChunk.length;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			if (!open) {
+				throw new ClosedChannelException();
+			}
+			if (!chunk.hasRemaining()) {
+				if (chunk.capacity() < DATA_CHUNK_SIZE) {
+					return -1;
+				}
+				try {
+					chunk = ByteBuffer.wrap(readDataRange(idFile, position, DATA_CHUNK_SIZE));
+				} catch (OHServiceException ohServiceException) {
+					throw new IOException(ohServiceException);
+				}
+				position += chunk.capacity();
+				if (!chunk.hasRemaining()) {
+					return -1;
+				}
+			}
+			int read = Math.min(dst.remaining(), chunk.remaining());
+			ByteBuffer slice = chunk.slice();
+			slice.limit(read);
+			dst.put(slice);
+			chunk.position(chunk.position() + read);
+			return read;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public void close() {
+			open = false;
+		}
+	}
+
 }
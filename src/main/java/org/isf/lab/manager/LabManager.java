@@ -27,6 +27,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import org.isf.generaldata.GeneralData;
 import org.isf.generaldata.MessageBundle;
@@ -47,6 +48,8 @@ import org.springframework.transaction.annotation.Transactional;
 @Component
 public class LabManager {
 
+	private static final int PRINT_PAGE_SIZE = 500;
+
 	private LabIoOperations ioOperations;
 
 	protected HashMap<String, String> materialHashMap;
@@ -186,10 +189,30 @@ public class LabManager {
 	 */
 	public List<LaboratoryForPrint> getLaboratoryForPrint(String exam, LocalDateTime dateFrom, LocalDateTime dateTo) throws OHServiceException {
 		List<LaboratoryForPrint> labs = ioOperations.getLaboratoryForPrint(exam, dateFrom, dateTo);
-		setLabMultipleResults(labs);
+		setLabMultipleResults(labs, ioOperations.getLabRowDescriptions(exam, dateFrom, dateTo));
 		return labs;
 	}
 
+	/**
+	 * Pass the exams suitable for printing ({@link LaboratoryForPrint}s) between specified dates and matching passed
+	 * exam name to the consumer, in the same order as {@link #getLaboratoryForPrint(String, LocalDateTime, LocalDateTime)},
+	 * without holding the whole list in memory. If a lab has multiple results, these are concatenated and added to
+	 * the result string.
+	 *
+	 * @param exam - the exam name as {@code String}
+	 * @param dateFrom - the lower date for the range
+	 * @param dateTo - the highest date for the range
+	 * @param consumer - receives each {@link LaboratoryForPrint}
+	 * @throws OHServiceException
+	 */
+	public void forEachLaboratoryForPrint(String exam, LocalDateTime dateFrom, LocalDateTime dateTo, Consumer<LaboratoryForPrint> consumer)
+					throws OHServiceException {
+		ioOperations.forEachLaboratoryForPrintPage(exam, dateFrom, dateTo, PRINT_PAGE_SIZE, (labs, descriptions) -> {
+			setLabMultipleResults(labs, descriptions);
+			labs.forEach(consumer);
+		});
+	}
+
 	/**
 	 * Return a list of exams suitable for printing ({@link LaboratoryForPrint}s)
 	 * between specified dates and matching passed exam name. If a lab has multiple
@@ -389,23 +412,16 @@ public class LabManager {
 		ioOperations.deleteLaboratory(laboratory);
 	}
 
-	private void setLabMultipleResults(List<LaboratoryForPrint> labs) throws OHServiceException {
-
-		List<LaboratoryRow> rows;
-
+	private void setLabMultipleResults(List<LaboratoryForPrint> labs, Map<Integer, List<String>> descriptions) {
+		String multipleResults = MessageBundle.getMessage("angal.lab.multipleresults.txt");
 		for (LaboratoryForPrint lab : labs) {
 			String labResult = lab.getResult();
-			if (labResult.equalsIgnoreCase(MessageBundle.getMessage("angal.lab.multipleresults.txt"))) {
-				rows = ioOperations.getLabRow(lab.getCode());
-
+			if (labResult.equalsIgnoreCase(multipleResults)) {
+				List<String> rows = descriptions.get(lab.getCode());
 				if (rows == null || rows.isEmpty()) {
 					lab.setResult(MessageBundle.getMessage("angal.lab.allnegative.txt"));
 				} else {
-					lab.setResult(MessageBundle.getMessage("angal.lab.positive.txt") + " : " + rows.get(0).getDescription());
-					for (LaboratoryRow row : rows) {
-						labResult += ',' + row.getDescription();
-					}
-					lab.setResult(labResult);
+					lab.setResult(labResult + ',' + String.join(",", rows));
 				}
 			}
 		}
@@ -49,6 +49,14 @@ public class LaboratoryForPrint {
 		patName = patientName;
 	}
 
+	public LaboratoryForPrint(Integer aCode, String examDescription, LocalDateTime aDate, String aResult, String patientName) {
+		code = aCode;
+		exam = examDescription;
+		date = aDate;
+		result = aResult;
+		patName = patientName;
+	}
+
 	public LaboratoryForPrint(Integer aCode, Exam aExam, LocalDateTime aDate, String aResult) {
 		code = aCode;
 		exam = aExam.getDescription();
@@ -25,6 +25,7 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 import org.isf.lab.model.Laboratory;
+import org.isf.lab.model.LaboratoryForPrint;
 import org.isf.patient.model.Patient;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -40,11 +41,6 @@ public interface LabIoOperationRepository extends JpaRepository<Laboratory, Inte
 
 	List<Laboratory> findByPatient_CodeOrderByLabDate(Integer patient);
 
-	List<Laboratory> findByLabDateBetweenOrderByExam_Examtype_DescriptionDesc(LocalDateTime dateFrom, LocalDateTime dateTo);
-
-	List<Laboratory> findByLabDateBetweenAndExam_DescriptionContainingOrderByExam_Examtype_DescriptionDesc(LocalDateTime dateFrom, LocalDateTime dateTo,
-					String exam);
-
 	List<Laboratory> findByLabDateBetweenAndPatientCode(LocalDateTime dateFrom, LocalDateTime dateTo, Integer patientCode);
 
 	List<Laboratory> findByLabDateBetweenAndExamDescriptionAndPatientCode(LocalDateTime dateFrom, LocalDateTime dateTo, String exam, Integer patient);
@@ -65,6 +61,28 @@ public interface LabIoOperationRepository extends JpaRepository<Laboratory, Inte
 	Page<Laboratory> findByLabDateBetweenAndExamDescriptionAndPatientCodePage(@Param("dateFrom") LocalDateTime dateFrom, @Param("dateTo") LocalDateTime dateTo,
 					@Param("exam") String exam, @Param("patient") Patient patient, Pageable pageable);
 
+	/**
+	 * Returns the exams for the lab register, ordered by exam type description (descending) and code, as rows of
+	 * code, exam description, date, result, patient name and exam type description. Pages after the first one start
+	 * after the passed exam type description and code.
+	 */
+	@Query(value = "select lab.code, e.description, lab.labDate, lab.result, lab.patName, t.description "
+					+ "from Laboratory lab join lab.exam e join e.examtype t "
+					+ "where lab.labDate >= :dateFrom and lab.labDate <= :dateTo "
+					+ "and (:exam is null or e.description like concat('%', :exam, '%')) "
+					+ "and (:lastType is null or t.description < :lastType or (t.description = :lastType and lab.code > :lastCode)) "
+					+ "order by t.description desc, lab.code")
+	List<Object[]> findForPrint(@Param("dateFrom") LocalDateTime dateFrom, @Param("dateTo") LocalDateTime dateTo, @Param("exam") String exam,
+					@Param("lastType") String lastType, @Param("lastCode") Integer lastCode, Pageable pageable);
+
+	@Query(value = "select new org.isf.lab.model.LaboratoryForPrint(lab.code, e.description, lab.labDate, lab.result, lab.patName) "
+					+ "from Laboratory lab join lab.exam e left join lab.patient p "
+					+ "where lab.labDate >= :dateFrom and lab.labDate <= :dateTo "
+					+ "and (:exam is null or e.description = :exam) and (:patientCode is null or p.code = :patientCode) "
+					+ "order by lab.labDate desc")
+	List<LaboratoryForPrint> findForPrintByExamAndPatient(@Param("dateFrom") LocalDateTime dateFrom, @Param("dateTo") LocalDateTime dateTo,
+					@Param("exam") String exam, @Param("patientCode") Integer patientCode);
+
 	@Query("select count(l) from Laboratory l where active=1")
 	long countAllActiveLabs();
 
@@ -24,8 +24,11 @@ package org.isf.lab.service;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.BiConsumer;
 
 import org.isf.lab.model.Laboratory;
 import org.isf.lab.model.LaboratoryForPrint;
@@ -183,34 +186,9 @@ public class LabIoOperations {
 	 */
 	public List<LaboratoryForPrint> getLaboratoryForPrint(String exam, LocalDateTime dateFrom, LocalDateTime dateTo, Patient patient)
 					throws OHServiceException {
-		List<LaboratoryForPrint> pLaboratory = new ArrayList<>();
-		List<Laboratory> laboritories = new ArrayList<>();
 		LocalDateTime truncatedDateFrom = TimeTools.truncateToSeconds(dateFrom.with(LocalTime.MIN));
 		LocalDateTime truncatedDateTo = TimeTools.truncateToSeconds(dateTo.with(LocalTime.MAX));
-
-		if (exam != null && patient != null) {
-			laboritories = repository.findByLabDateBetweenAndExamDescriptionAndPatientCode(truncatedDateFrom, truncatedDateTo, exam, patient.getCode());
-		}
-		if (exam != null && patient == null) {
-			laboritories = repository.findByLabDateBetweenAndExamDescriptionOrderByLabDateDesc(truncatedDateFrom, truncatedDateTo, exam);
-		}
-		if (patient != null && exam == null) {
-			laboritories = repository.findByLabDateBetweenAndPatientCode(truncatedDateFrom, truncatedDateTo, patient.getCode());
-		}
-		if (patient == null && exam == null) {
-			laboritories = repository.findByLabDateBetweenOrderByLabDateDesc(truncatedDateFrom, truncatedDateTo);
-		}
-		for (Laboratory laboratory : laboritories) {
-
-			pLaboratory.add(new LaboratoryForPrint(
-							laboratory.getCode(),
-							laboratory.getExam(),
-							laboratory.getLabDate(),
-							laboratory.getResult(),
-							laboratory.getPatName(),
-							laboratory.getPatient().getCode()));
-		}
-		return pLaboratory;
+		return repository.findForPrintByExamAndPatient(truncatedDateFrom, truncatedDateTo, exam, patient != null ? patient.getCode() : null);
 	}
 
 	/**
@@ -267,23 +245,78 @@ public class LabIoOperations {
 	 * @throws OHServiceException
 	 */
 	public List<LaboratoryForPrint> getLaboratoryForPrint(String exam, LocalDateTime dateFrom, LocalDateTime dateTo) throws OHServiceException {
-		List<LaboratoryForPrint> pLaboratory = new ArrayList<>();
 		LocalDateTime truncatedDateFrom = TimeTools.truncateToSeconds(dateFrom.with(LocalTime.MIN));
 		LocalDateTime truncatedDateTo = TimeTools.truncateToSeconds(dateTo.with(LocalTime.MAX));
+		return toLaboratoryForPrint(repository.findForPrint(truncatedDateFrom, truncatedDateTo, exam, null, null, Pageable.unpaged()));
+	}
 
-		Iterable<Laboratory> laboratories = exam != null
-						? repository.findByLabDateBetweenAndExam_DescriptionContainingOrderByExam_Examtype_DescriptionDesc(truncatedDateFrom, truncatedDateTo, exam)
-						: repository.findByLabDateBetweenOrderByExam_Examtype_DescriptionDesc(truncatedDateFrom, truncatedDateTo);
+	/**
+	 * Return the descriptions of the results of the multiple results exams between specified dates and matching
+	 * passed exam name, grouped by exam code.
+	 *
+	 * @param exam - the exam name as {@code String}
+	 * @param dateFrom - the starting date for the date range
+	 * @param dateTo - the ending date for the date range
+	 * @return the result descriptions by exam code
+	 * @throws OHServiceException
+	 */
+	public Map<Integer, List<String>> getLabRowDescriptions(String exam, LocalDateTime dateFrom, LocalDateTime dateTo) throws OHServiceException {
+		LocalDateTime truncatedDateFrom = TimeTools.truncateToSeconds(dateFrom.with(LocalTime.MIN));
+		LocalDateTime truncatedDateTo = TimeTools.truncateToSeconds(dateTo.with(LocalTime.MAX));
+		return groupDescriptions(rowRepository.findDescriptionsForPrint(truncatedDateFrom, truncatedDateTo, exam));
+	}
+
+	/**
+	 * Pass the exams suitable for printing ({@link LaboratoryForPrint}s) between specified dates and matching passed
+	 * exam name to the consumer, one page at a time and together with the result descriptions of the exams in the page.
+	 * Pages are read by key (exam type and code) so that each page is a short query on its own.
+	 *
+	 * @param exam - the exam name as {@code String}
+	 * @param dateFrom - the starting date for the date range
+	 * @param dateTo - the ending date for the date range
+	 * @param pageSize - the number of exams in each page
+	 * @param consumer - receives each page of exams and their result descriptions by exam code
+	 * @throws OHServiceException
+	 */
+	@Transactional(readOnly = true)
+	public void forEachLaboratoryForPrintPage(String exam, LocalDateTime dateFrom, LocalDateTime dateTo, int pageSize,
+					BiConsumer<List<LaboratoryForPrint>, Map<Integer, List<String>>> consumer) throws OHServiceException {
+		LocalDateTime truncatedDateFrom = TimeTools.truncateToSeconds(dateFrom.with(LocalTime.MIN));
+		LocalDateTime truncatedDateTo = TimeTools.truncateToSeconds(dateTo.with(LocalTime.MAX));
+		Pageable firstPage = PageRequest.of(0, pageSize);
+		String lastType = null;
+		Integer lastCode = null;
+		List<Object[]> rows;
+		do {
+			rows = repository.findForPrint(truncatedDateFrom, truncatedDateTo, exam, lastType, lastCode, firstPage);
+			if (rows.isEmpty()) {
+				break;
+			}
+			List<LaboratoryForPrint> labs = toLaboratoryForPrint(rows);
+			List<Integer> codes = labs.stream().map(LaboratoryForPrint::getCode).toList();
+			consumer.accept(labs, groupDescriptions(rowRepository.findDescriptionsByLaboratoryCodes(codes)));
+			Object[] last = rows.get(rows.size() - 1);
+			lastCode = (Integer) last[0];
+			lastType = (String) last[5];
+		} while (rows.size() == pageSize);
+	}
 
-		for (Laboratory laboratory : laboratories) {
-			pLaboratory.add(new LaboratoryForPrint(
-							laboratory.getCode(),
-							laboratory.getExam(),
-							laboratory.getLabDate(),
-							laboratory.getResult()));
+	private static List<LaboratoryForPrint> toLaboratoryForPrint(List<Object[]> rows) {
+		List<LaboratoryForPrint> labs = new ArrayList<>(rows.size());
+		for (Object[] row : rows) {
+			labs.add(new LaboratoryForPrint((Integer) row[0], (String) row[1], (LocalDateTime) row[2], (String) row[3], (String) row[4]));
 		}
-		return pLaboratory;
+		return labs;
 	}
+
+	private static Map<Integer, List<String>> groupDescriptions(List<Object[]> rows) {
+		Map<Integer, List<String>> descriptions = new HashMap<>();
+		for (Object[] row : rows) {
+			descriptions.computeIfAbsent((Integer) row[0], code -> new ArrayList<>()).add((String) row[1]);
+		}
+		return descriptions;
+	}
+
 	/**
 	 * Inserts one Laboratory exam {@link Laboratory} with multiple results (Procedure Two)
 	 *
@@ -21,11 +21,15 @@
  */
 package org.isf.lab.service;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 import org.isf.lab.model.LaboratoryRow;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface LabRowIoOperationRepository extends JpaRepository<LaboratoryRow, Integer> {
 
@@ -33,4 +37,13 @@ public interface LabRowIoOperationRepository extends JpaRepository<LaboratoryRow
 	void deleteByLaboratory_Code(Integer code);
 
 	List<LaboratoryRow> findByLaboratory_Code(Integer id);
+
+	@Query(value = "select lab.code, r.description from LaboratoryRow r join r.laboratory lab join lab.exam e "
+					+ "where lab.labDate >= :dateFrom and lab.labDate <= :dateTo "
+					+ "and (:exam is null or e.description like concat('%', :exam, '%')) order by r.code")
+	List<Object[]> findDescriptionsForPrint(@Param("dateFrom") LocalDateTime dateFrom, @Param("dateTo") LocalDateTime dateTo,
+					@Param("exam") String exam);
+
+	@Query(value = "select lab.code, r.description from LaboratoryRow r join r.laboratory lab where lab.code in :codes order by r.code")
+	List<Object[]> findDescriptionsByLaboratoryCodes(@Param("codes") Collection<Integer> codes);
 }
\ No newline at end of file
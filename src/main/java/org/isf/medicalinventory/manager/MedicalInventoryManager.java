@@ -23,8 +23,9 @@ package org.isf.medicalinventory.manager;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -36,7 +37,6 @@ import org.isf.medicalinventory.model.MedicalInventory;
 import org.isf.medicalinventory.model.MedicalInventoryRow;
 import org.isf.medicalinventory.service.MedicalInventoryIoOperation;
 import org.isf.medicals.model.Medical;
-import org.isf.medicalstock.manager.MovBrowserManager;
 import org.isf.medicalstock.manager.MovStockInsertingManager;
 import org.isf.medicalstock.model.Lot;
 import org.isf.medicalstock.model.Movement;
@@ -64,8 +64,6 @@ public class MedicalInventoryManager {
 
 	private MovStockInsertingManager movStockInsertingManager;
 
-	private MovBrowserManager movBrowserManager;
-
 	private MedicalDsrStockMovementTypeBrowserManager medicalDsrStockMovementTypeBrowserManager;
 
 	private SupplierBrowserManager supplierManager;
@@ -74,15 +72,13 @@ public class MedicalInventoryManager {
 
 	public MedicalInventoryManager(MedicalInventoryIoOperation medicalInventoryIoOperation, MedicalInventoryRowManager medicalInventoryRowManager,
 					MedicalDsrStockMovementTypeBrowserManager medicalDsrStockMovementTypeBrowserManager,
-					SupplierBrowserManager supplierManager, MovStockInsertingManager movStockInsertingManager, WardBrowserManager wardManager,
-					MovBrowserManager movBrowserManager) {
+					SupplierBrowserManager supplierManager, MovStockInsertingManager movStockInsertingManager, WardBrowserManager wardManager) {
 		this.ioOperations = medicalInventoryIoOperation;
 		this.medicalInventoryRowManager = medicalInventoryRowManager;
 		this.medicalDsrStockMovementTypeBrowserManager = medicalDsrStockMovementTypeBrowserManager;
 		this.supplierManager = supplierManager;
 		this.movStockInsertingManager = movStockInsertingManager;
 		this.wardManager = wardManager;
-		this.movBrowserManager = movBrowserManager;
 	}
 
 	/**
@@ -260,46 +256,22 @@ public class MedicalInventoryManager {
 
 		// TODO: To decide if to make allMedicals parameter
 		boolean allMedicals = true;
-		List<Movement> movs = new ArrayList<>();
-		List<Medical> inventoryMedicalsList = inventoryRowSearchList.stream()
-						.map(MedicalInventoryRow::getMedical)
-						.distinct()
-						.collect(Collectors.toList());
-		if (allMedicals) {
-			// Fetch all movements without filtering by medical code
-			movs.addAll(movBrowserManager.getMovements(null, null, null, null, movFrom, movTo, null, null, null, null));
-		} else {
-			// Fetch only movements concerning inventoryRowSearchList list
-			for (Medical medical : inventoryMedicalsList) {
-				movs.addAll(movBrowserManager.getMovements(medical.getCode(), null, null, null, movFrom, movTo, null, null, null, null));
+		Set<Integer> inventoryMedicalCodes = getMedicalCodes(inventoryRowSearchList);
+		Map<String, MedicalInventoryRow> rowsByLotCode = indexByLotCode(inventoryRowSearchList);
+		// Cycle the lots moved since the inventory date to see if they impact inventoryRowSearchList
+		for (Lot lot : movStockInsertingManager.getLotsMovedBetween(movFrom, movTo)) {
+			Medical medical = lot.getMedical();
+			if (!allMedicals && !inventoryMedicalCodes.contains(medical.getCode())) {
+				// Consider only movements concerning inventoryRowSearchList list
+				continue;
 			}
-		}
-		// Get all the lot of the movements
-		List<Lot> lotOfMovements = movs.stream().map(Movement::getLot).collect(Collectors.toList());
-		// Remove duplicates by converting the list to a set
-		Set<Lot> uniqueLots = new HashSet<>(lotOfMovements);
-		// Convert the set back to a list
-		List<Lot> uniqueLotList = new ArrayList<>(uniqueLots);
-		// Cycle fetched movements to see if they impact inventoryRowSearchList
-		for (Lot lot : uniqueLotList) {
-			String lotCodeOfMovement = lot.getCode();
 			String lotExpiringDate = TimeTools.formatDateTime(lot.getDueDate(), TimeTools.DD_MM_YYYY);
-			String lotInfo = GeneralData.AUTOMATICLOT_IN ? lotExpiringDate : lotCodeOfMovement;
-			Medical medical = lot.getMedical();
+			String lotInfo = GeneralData.AUTOMATICLOT_IN ? lotExpiringDate : lot.getCode();
 			String medicalDesc = medical.getDescription();
-			Integer medicalCode = medical.getCode();
-			double mainStoreQty = 0.0;
-			// Fetch also empty lots because some movements may have discharged them completely
-			Optional<Lot> optLot = movStockInsertingManager.getLotByMedical(medical, false).stream().filter(l -> l.getCode().equals(lotCodeOfMovement))
-							.findFirst();
-			if (optLot.isPresent()) {
-				mainStoreQty = optLot.get().getMainStoreQuantity();	
-			}
+			double mainStoreQty = lot.getMainStoreQuantity();
 
 			// Search for the specific Lot and Medical in inventoryRowSearchList (Lot should be enough)
-			Optional<MedicalInventoryRow> matchingRow = inventoryRowSearchList.stream()
-							.filter(row -> row.getLot().getCode().equals(lotCodeOfMovement) && row.getMedical().getCode().equals(medicalCode))
-							.findFirst();
+			Optional<MedicalInventoryRow> matchingRow = findRow(rowsByLotCode, lot);
 
 			if (matchingRow.isPresent()) {
 				MedicalInventoryRow medicalInventoryRow = matchingRow.get();
@@ -315,7 +287,7 @@ public class MedicalInventoryManager {
 				}
 			} else {
 				// TODO: to decide if to give control to the user about this
-				if (!inventoryMedicalsList.contains(medical)) {
+				if (!inventoryMedicalCodes.contains(medical.getCode())) {
 					// New medical
 					medicalAdded = true;
 					medDescriptionForNewMedical
@@ -399,7 +371,7 @@ public class MedicalInventoryManager {
 		Supplier supplier = supplierManager.getByID(inventory.getSupplier());
 		Ward ward = wardManager.findWard(inventory.getDestination());
 		LocalDateTime now = TimeTools.getNow();
-		// prepare movements
+		// prepare movements, charges first
 		List<Movement> chargeMovements = new ArrayList<>();
 		List<Movement> dischargeMovements = new ArrayList<>();
 		for (MedicalInventoryRow medicalInventoryRow : inventoryRowSearchList) {
@@ -416,14 +388,10 @@ public class MedicalInventoryManager {
 				dischargeMovements.add(movement);
 			} // else ajustQty = 0, continue
 		}
-		// create movements
-		List<Movement> insertedMovements = new ArrayList<>();
-		if (!chargeMovements.isEmpty()) {
-			insertedMovements.addAll(movStockInsertingManager.newMultipleChargingMovements(chargeMovements, chargeReferenceNumber));
-		}
-		if (!dischargeMovements.isEmpty()) {
-			insertedMovements.addAll(movStockInsertingManager.newMultipleDischargingMovements(dischargeMovements, dischargeReferenceNumber));
-		}
+		// create all the movements in a single pass
+		List<Movement> movements = new ArrayList<>(chargeMovements);
+		movements.addAll(dischargeMovements);
+		List<Movement> insertedMovements = movStockInsertingManager.newInventoryMovements(movements);
 		String status = InventoryStatus.done.toString();
 		inventory.setStatus(status);
 		this.updateMedicalInventory(inventory, false);
@@ -461,40 +429,20 @@ public class MedicalInventoryManager {
 		List<MedicalInventoryRow> inventoryRowList = medicalInventoryRowManager.getMedicalInventoryRowByInventoryId(id);
 		// TODO: To decide if to make allMedicals parameter
 		boolean allMedicals = true;
-		List<Movement> movs = new ArrayList<>();
-		List<Medical> inventoryMedicalsList = inventoryRowList.stream()
-						.map(MedicalInventoryRow::getMedical)
-						.distinct()
-						.collect(Collectors.toList());
-		if (allMedicals) {
-			// Fetch all movements without filtering by medical code
-			movs.addAll(movBrowserManager.getMovements(null, null, null, null, movFrom, movTo, null, null, null, null));
-		} else {
-			// Fetch only movements concerning inventoryRowSearchList list
-			for (Medical medical : inventoryMedicalsList) {
-				movs.addAll(movBrowserManager.getMovements(medical.getCode(), null, null, null, movFrom, movTo, null, null, null, null));
-			}
-		}
-		// Get all the lot of the movements
-		List<Lot> lotOfMovements = movs.stream().map(Movement::getLot).collect(Collectors.toList());
-		// Remove duplicates by converting the list to a set
-		Set<Lot> uniqueLots = new HashSet<>(lotOfMovements);
-		// Convert the set back to a list
-		List<Lot> uniqueLotList = new ArrayList<>(uniqueLots);
-		// Cycle fetched movements to see if they impact inventoryRowSearchList
-		for (Lot lot : uniqueLotList) {
-			String lotCodeOfMovement = lot.getCode();
+		Set<Integer> inventoryMedicalCodes = getMedicalCodes(inventoryRowList);
+		Map<String, MedicalInventoryRow> rowsByLotCode = indexByLotCode(inventoryRowList);
+		List<MedicalInventoryRow> rowsToSave = new ArrayList<>();
+		// Cycle the lots moved since the inventory date to see if they impact inventoryRowList
+		for (Lot lot : movStockInsertingManager.getLotsMovedBetween(movFrom, movTo)) {
 			Medical medical = lot.getMedical();
-			Integer medicalCode = medical.getCode();
-			// Fetch also empty lots because some movements may have discharged them completely
-			Optional<Lot> optLot = movStockInsertingManager.getLotByMedical(medical, false).stream().filter(l -> l.getCode().equals(lotCodeOfMovement))
-							.findFirst();
-			double mainStoreQty = optLot.get().getMainStoreQuantity();
+			if (!allMedicals && !inventoryMedicalCodes.contains(medical.getCode())) {
+				// Consider only movements concerning inventoryRowList list
+				continue;
+			}
+			double mainStoreQty = lot.getMainStoreQuantity();
 
-			// Search for the specific Lot and Medical in inventoryRowSearchList (Lot should be enough)
-			Optional<MedicalInventoryRow> matchingRow = inventoryRowList.stream()
-							.filter(row -> row.getLot().getCode().equals(lotCodeOfMovement) && row.getMedical().getCode().equals(medicalCode))
-							.findFirst();
+			// Search for the specific Lot and Medical in inventoryRowList (Lot should be enough)
+			Optional<MedicalInventoryRow> matchingRow = findRow(rowsByLotCode, lot);
 
 			if (matchingRow.isPresent()) {
 				MedicalInventoryRow medicalInventoryRow = matchingRow.get();
@@ -502,16 +450,38 @@ public class MedicalInventoryManager {
 				if (mainStoreQty != theoQty) {
 					// Update Lot
 					medicalInventoryRow.setTheoreticQty(mainStoreQty);
-					medicalInventoryRowManager.updateMedicalInventoryRow(medicalInventoryRow);
+					rowsToSave.add(medicalInventoryRow);
 				}
 			} else {
 				// TODO: to decide if to give control to the user about this
 				double realQty = mainStoreQty;
 				MedicalInventoryRow newMedicalInventoryRow = new MedicalInventoryRow(null, mainStoreQty, realQty, inventory, medical,
 								lot);
-				medicalInventoryRowManager.newMedicalInventoryRow(newMedicalInventoryRow);
+				rowsToSave.add(newMedicalInventoryRow);
 			}
 		}
+		medicalInventoryRowManager.saveMedicalInventoryRows(rowsToSave);
 		return this.updateMedicalInventory(inventory, true);
 	}
+
+	private static Set<Integer> getMedicalCodes(List<MedicalInventoryRow> inventoryRows) {
+		return inventoryRows.stream()
+						.map(row -> row.getMedical().getCode())
+						.collect(Collectors.toSet());
+	}
+
+	private static Map<String, MedicalInventoryRow> indexByLotCode(List<MedicalInventoryRow> inventoryRows) {
+		Map<String, MedicalInventoryRow> rowsByLotCode = new HashMap<>(inventoryRows.size() * 2);
+		for (MedicalInventoryRow row : inventoryRows) {
+			if (row.getLot() != null) {
+				rowsByLotCode.putIfAbsent(row.getLot().getCode(), row);
+			}
+		}
+		return rowsByLotCode;
+	}
+
+	private static Optional<MedicalInventoryRow> findRow(Map<String, MedicalInventoryRow> rowsByLotCode, Lot lot) {
+		return Optional.ofNullable(rowsByLotCode.get(lot.getCode()))
+						.filter(row -> row.getMedical().getCode().equals(lot.getMedical().getCode()));
+	}
 }
@@ -71,6 +71,23 @@ public class MedicalInventoryRowManager {
 		return ioOperation.updateMedicalInventoryRow(medicalInventoryRow);
 	}
 	
+	/**
+	 * Insert or update a list of {@link MedicalInventoryRow}s in a single batch.
+	 *
+	 * @param medicalInventoryRows - the {@link MedicalInventoryRow}s to insert or update.
+	 * @return the persisted {@link MedicalInventoryRow}s.
+	 * @throws OHServiceException
+	 */
+	public List<MedicalInventoryRow> saveMedicalInventoryRows(List<MedicalInventoryRow> medicalInventoryRows) throws OHServiceException {
+		if (medicalInventoryRows.isEmpty()) {
+			return medicalInventoryRows;
+		}
+		for (MedicalInventoryRow medicalInventoryRow : medicalInventoryRows) {
+			validateMedicalInventoryRow(medicalInventoryRow);
+		}
+		return ioOperation.saveMedicalInventoryRows(medicalInventoryRows);
+	}
+
 	/**
 	 * Delete the specified {@link MedicalInventoryRow}.
 	 * @param medicalInventoryRow - the {@link MedicalInventoryRow} to delete.
@@ -63,6 +63,17 @@ public class MedicalInventoryRowIoOperation {
 		return repository.save(medicalInventoryRow);
 	}
 	
+	/**
+	 * Insert or update a list of {@link MedicalInventoryRow}s.
+	 *
+	 * @param medicalInventoryRows - the {@link MedicalInventoryRow}s to insert or update.
+	 * @return the persisted {@link MedicalInventoryRow}s.
+	 * @throws OHServiceException
+	 */
+	public List<MedicalInventoryRow> saveMedicalInventoryRows(List<MedicalInventoryRow> medicalInventoryRows) throws OHServiceException {
+		return repository.saveAll(medicalInventoryRows);
+	}
+	
 	/**
 	 * Delete the specified {@link MedicalInventoryRow}.
 	 * @param medicalInventoryRow - the {@link MedicalInventoryRow} to delete.
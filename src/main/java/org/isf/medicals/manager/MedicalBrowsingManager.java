@@ -22,6 +22,7 @@
 package org.isf.medicals.manager;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.isf.generaldata.MessageBundle;
@@ -74,6 +75,17 @@ public class MedicalBrowsingManager {
 		return ioOperations.getMedicalByMedicalCode(prod_code);
 	}
 
+	/**
+	 * Returns the medicals with the specified codes.
+	 *
+	 * @param codes the medical codes.
+	 * @return the retrieved medicals, in no particular order.
+	 * @throws OHServiceException
+	 */
+	public List<Medical> getMedicalsByCodes(Collection<Integer> codes) throws OHServiceException {
+		return ioOperations.getMedicalsByCodes(codes);
+	}
+
 	/**
 	 * Returns all the medicals.
 	 *
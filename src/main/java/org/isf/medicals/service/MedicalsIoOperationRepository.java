@@ -21,12 +21,16 @@
  */
 package org.isf.medicals.service;
 
+import java.util.Collection;
 import java.util.List;
 
+import jakarta.persistence.LockModeType;
+
 import org.isf.medicals.model.Medical;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -34,6 +38,10 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface MedicalsIoOperationRepository extends JpaRepository<Medical, Integer> {
 
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query(value = "SELECT m FROM Medical m where m.code in :codes order BY m.code")
+	List<Medical> findAllByCodeForUpdate(@Param("codes") Collection<Integer> codes);
+
 	@Query(value = "SELECT m FROM Medical m where m.description like :description order BY m.description")
 	List<Medical> findAllWhereDescriptionOrderByDescription(@Param("description") String description);
 
@@ -21,6 +21,7 @@
  */
 package org.isf.medicals.service;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.isf.medicals.model.Medical;
@@ -78,6 +79,16 @@ public class MedicalsIoOperations {
 		return repository.findOneWhereProductCode(prod_code);
 	}
 
+	/**
+	 * Retrieves the {@link Medical}s with the specified codes.
+	 * @param codes the medical codes.
+	 * @return the stored medicals, in no particular order.
+	 * @throws OHServiceException if an error occurs retrieving the stored medicals.
+	 */
+	public List<Medical> getMedicalsByCodes(Collection<Integer> codes) throws OHServiceException {
+		return repository.findAllById(codes);
+	}
+
 	/**
 	 * Gets all stored {@link Medical}s.
 	 * @return all the stored medicals.
@@ -21,8 +21,10 @@
  */
 package org.isf.medicalstock.manager;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.isf.generaldata.MessageBundle;
 import org.isf.medicalinventory.model.MedicalInventoryRow;
@@ -41,6 +43,7 @@ import org.isf.medstockmovtype.model.MovementType;
 import org.isf.utils.exception.OHDataValidationException;
 import org.isf.utils.exception.OHServiceException;
 import org.isf.utils.exception.model.OHExceptionMessage;
+import org.isf.utils.pagination.PagedResponse;
 import org.isf.ward.model.Ward;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
@@ -148,6 +151,64 @@ public class MovBrowserManager {
 		return ioOperations.getMovements(medicalCode, medicalType, wardId, movType, movFrom, movTo, lotPrepFrom, lotPrepTo, lotDueFrom, lotDueTo);
 	}
 
+	/**
+	 * Reads all the {@link Movement}s with the specified criteria one at a time, without loading the whole
+	 * result in memory. Meant for exports over long periods.
+	 *
+	 * @param medicalCode the medical code.
+	 * @param medicalType the medical type.
+	 * @param wardId the ward type.
+	 * @param movType the movement type.
+	 * @param movFrom the lower bound for the movement date range.
+	 * @param movTo the upper bound for the movement date range.
+	 * @param lotPrepFrom the lower bound for the lot preparation date range.
+	 * @param lotPrepTo the upper bound for the lot preparation date range.
+	 * @param lotDueFrom the lower bound for the lot due date range.
+	 * @param lotDueTo the lower bound for the lot due date range.
+	 * @param consumer the callback receiving each movement.
+	 * @throws OHServiceException
+	 */
+	public void forEachMovement(Integer medicalCode, String medicalType,
+					String wardId, String movType, LocalDateTime movFrom, LocalDateTime movTo,
+					LocalDateTime lotPrepFrom, LocalDateTime lotPrepTo,
+					LocalDateTime lotDueFrom, LocalDateTime lotDueTo, Consumer<Movement> consumer) throws OHServiceException {
+		check(movFrom, movTo, "angal.medicalstock.chooseavalidmovementdate.msg");
+		check(lotPrepFrom, lotPrepTo, "angal.medicalstock.chooseavalidmovementdate.msg");
+		check(lotDueFrom, lotDueTo, "angal.medicalstock.chooseavalidduedate.msg");
+
+		ioOperations.forEachMovement(medicalCode, medicalType, wardId, movType, movFrom, movTo, lotPrepFrom, lotPrepTo, lotDueFrom, lotDueTo, consumer);
+	}
+
+	/**
+	 * Retrieves a page of the {@link Movement}s with the specified criteria.
+	 *
+	 * @param medicalCode the medical code.
+	 * @param medicalType the medical type.
+	 * @param wardId the ward type.
+	 * @param movType the movement type.
+	 * @param movFrom the lower bound for the movement date range.
+	 * @param movTo the upper bound for the movement date range.
+	 * @param lotPrepFrom the lower bound for the lot preparation date range.
+	 * @param lotPrepTo the upper bound for the lot preparation date range.
+	 * @param lotDueFrom the lower bound for the lot due date range.
+	 * @param lotDueTo the lower bound for the lot due date range.
+	 * @param page the page number.
+	 * @param size the page size.
+	 * @return the requested page of movements.
+	 * @throws OHServiceException
+	 */
+	public PagedResponse<Movement> getMovementsPageable(Integer medicalCode, String medicalType,
+					String wardId, String movType, LocalDateTime movFrom, LocalDateTime movTo,
+					LocalDateTime lotPrepFrom, LocalDateTime lotPrepTo,
+					LocalDateTime lotDueFrom, LocalDateTime lotDueTo, int page, int size) throws OHServiceException {
+		check(movFrom, movTo, "angal.medicalstock.chooseavalidmovementdate.msg");
+		check(lotPrepFrom, lotPrepTo, "angal.medicalstock.chooseavalidmovementdate.msg");
+		check(lotDueFrom, lotDueTo, "angal.medicalstock.chooseavalidduedate.msg");
+
+		return ioOperations.getMovementsPageable(medicalCode, medicalType, wardId, movType, movFrom, movTo, lotPrepFrom, lotPrepTo, lotDueFrom, lotDueTo,
+						page, size);
+	}
+
 	private void check(LocalDateTime from, LocalDateTime to, String errMsgKey) throws OHDataValidationException {
 		if (from == null || to == null) {
 			if (!(from == null && to == null)) {
@@ -157,6 +218,18 @@ public class MovBrowserManager {
 		}
 	}
 
+	/**
+	 * Rebuilds the daily stock balances of all the medicals moved from the specified date on, starting from the last
+	 * balance before that date.
+	 *
+	 * @param dateFrom the first day to rebuild.
+	 * @throws OHServiceException
+	 */
+	@Transactional(rollbackFor = OHServiceException.class)
+	public void rebuildMedicalStockBalances(LocalDate dateFrom) throws OHServiceException {
+		ioOperations.rebuildMedicalStockTable(dateFrom);
+	}
+
 	/**
 	 * Get the last Movement.
 	 *
@@ -24,7 +24,12 @@ package org.isf.medicalstock.manager;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.isf.generaldata.GeneralData;
 import org.isf.generaldata.MessageBundle;
@@ -68,12 +73,44 @@ public class MovStockInsertingManager {
 	 * @throws OHServiceException
 	 */
 	protected void validateMovement(Movement movement, boolean checkReference) throws OHServiceException {
+		validateMovement(movement, checkReference, getLastMovementDate(), new HashSet<>(), new HashMap<>());
+	}
+
+	/**
+	 * Verify if the object is valid for CRUD as part of a list of movements to be stored together and throw the list of errors, if any.
+	 *
+	 * @param movement - the movement to validate
+	 * @param checkReference - if {@code true} it will use {@link #checkReferenceNumber(String) checkReferenceNumber}
+	 * @param lastDate - the date of the last movement, including the ones already validated in the same list
+	 * @param pendingRefNos - the reference numbers of the movements already validated in the same list
+	 * @param pendingLots - the lot codes of the movements already validated in the same list, with the medical code they refer to
+	 * @throws OHServiceException
+	 */
+	protected void validateMovement(Movement movement, boolean checkReference, LocalDateTime lastDate, Set<String> pendingRefNos,
+					Map<String, Integer> pendingLots) throws OHServiceException {
+		validateMovement(movement, checkReference, lastDate, pendingRefNos, pendingLots, null);
+	}
+
+	/**
+	 * Verify if the object is valid for CRUD as part of a list of movements to be stored together and throw the list of errors, if any.
+	 *
+	 * @param movement - the movement to validate
+	 * @param checkReference - if {@code true} it will use {@link #checkReferenceNumber(String) checkReferenceNumber}
+	 * @param lastDate - the date of the last movement, including the ones already validated in the same list
+	 * @param pendingRefNos - the reference numbers of the movements already validated in the same list
+	 * @param pendingLots - the lot codes of the movements already validated in the same list, with the medical code they refer to
+	 * @param lotQuantities - if not {@code null}, the main store quantities of the locked lots, updated with the movements already
+	 *            validated in the same list; the quantity of a discharge is then checked against it whatever the
+	 *            {@code AUTOMATICLOT_OUT} setting
+	 * @throws OHServiceException
+	 */
+	protected void validateMovement(Movement movement, boolean checkReference, LocalDateTime lastDate, Set<String> pendingRefNos,
+					Map<String, Integer> pendingLots, Map<String, Integer> lotQuantities) throws OHServiceException {
 		List<OHExceptionMessage> errors = new ArrayList<>();
 
 		// Check the Date
 		LocalDateTime today = TimeTools.getNow();
 		LocalDateTime movDate = movement.getDate();
-		LocalDateTime lastDate = getLastMovementDate();
 		if (movDate.isAfter(today)) {
 			errors.add(new OHExceptionMessage(MessageBundle.getMessage("angal.medicalstock.multiplecharging.adateinthefutureisnotallowed.msg")));
 		}
@@ -85,6 +122,9 @@ public class MovStockInsertingManager {
 		if (checkReference) {
 			String refNo = movement.getRefNo();
 			errors.addAll(checkReferenceNumber(refNo));
+			if (refNo != null && !refNo.isEmpty() && !pendingRefNos.add(refNo)) {
+				errors.add(new OHExceptionMessage(MessageBundle.getMessage("angal.medicalstock.multiplecharging.theinsertedreferencenumberalreadyexists.msg")));
+			}
 		}
 
 		// Check Movement Type
@@ -162,6 +202,11 @@ public class MovStockInsertingManager {
 			if (movement.getMedical() != null && !(medicalIds.isEmpty() || medicalIds.size() == 1 && medicalIds.get(0).intValue() == movement
 				.getMedical().getCode().intValue())) {
 				errors.add(new OHExceptionMessage(MessageBundle.getMessage("angal.medicalstock.thislotreferstoanothermedical.msg")));
+			} else if (movement.getMedical() != null && lot.getCode() != null && !lot.getCode().isEmpty()) {
+				Integer pendingMedicalCode = pendingLots.putIfAbsent(lot.getCode(), movement.getMedical().getCode());
+				if (pendingMedicalCode != null && pendingMedicalCode.intValue() != movement.getMedical().getCode().intValue()) {
+					errors.add(new OHExceptionMessage(MessageBundle.getMessage("angal.medicalstock.thislotreferstoanothermedical.msg")));
+				}
 			}
 
 			/*
@@ -187,8 +232,21 @@ public class MovStockInsertingManager {
 			 * AUTOMATICLOT_OUT=no, specified quantity must be equal or lower than the lot quantity
 			 * 
 			 * AUTOMATICLOT_OUT=yes, no check: the quantity will be split automatically between available lots
+			 *
+			 * locked lot quantities given, the quantity is checked against them anyway: the movements are stored on their own lots
 			 */
-			if (!isAutomaticLotOut()) {
+			if (lotQuantities != null) {
+				if (movement.getType() != null && lot.getCode() != null && !lot.getCode().isEmpty()) {
+					int lotQuantity = lotQuantities.getOrDefault(lot.getCode(), 0);
+					if (isCharge) {
+						lotQuantities.put(lot.getCode(), lotQuantity + movement.getQuantity());
+					} else if (movement.getQuantity() > lotQuantity) {
+						errors.add(new OHExceptionMessage(MessageBundle.formatMessage("angal.medicalstock.movementquantityisgreaterthanthequantityof.fmt.msg", movement.getQuantity(), lotQuantity)));
+					} else {
+						lotQuantities.put(lot.getCode(), lotQuantity - movement.getQuantity());
+					}
+				}
+			} else if (!isAutomaticLotOut()) {
 
 				if (movement.getType() != null && !isCharge && movement.getQuantity() > lot.getMainStoreQuantity()) {
 					errors.add(new OHExceptionMessage(MessageBundle.formatMessage("angal.medicalstock.movementquantityisgreaterthanthequantityof.fmt.msg", movement.getQuantity(), lot.getMainStoreQuantity())));
@@ -284,6 +342,19 @@ public class MovStockInsertingManager {
 		return ioOperations.getLotsByMedical(medical, removeEmpty);
 	}
 
+	/**
+	 * Retrieves all the {@link Lot}s moved in the main store within the specified dates, with their current main store quantity
+	 * (empty lots included).
+	 *
+	 * @param dateFrom the lower bound of the movement date range.
+	 * @param dateTo the upper bound of the movement date range.
+	 * @return the list of retrieved {@link Lot}s.
+	 * @throws OHServiceException
+	 */
+	public List<Lot> getLotsMovedBetween(LocalDateTime dateFrom, LocalDateTime dateTo) throws OHServiceException {
+		return ioOperations.getLotsMovedBetween(dateFrom, dateTo);
+	}
+
 	/**
 	 * Checks if the provided quantity is under the medical limits.
 	 *
@@ -340,10 +411,13 @@ public class MovStockInsertingManager {
 				throw new OHDataValidationException(errors);
 			}
 		}
-		List<Movement> insertedMovements = new ArrayList<>();
+		// validate the whole list first, then store it in a single pass
+		LocalDateTime lastDate = getLastMovementDate();
+		Set<String> pendingRefNos = new HashSet<>();
+		Map<String, Integer> pendingLots = new HashMap<>();
 		for (Movement mov : movements) {
 			try {
-				insertedMovements.add(prepareChargingMovement(mov, checkReference));
+				validateMovement(mov, checkReference, lastDate, pendingRefNos, pendingLots);
 			} catch (OHServiceException e) {
 				List<OHExceptionMessage> errors = e.getMessages();
 				errors.add(new OHExceptionMessage(
@@ -351,22 +425,11 @@ public class MovStockInsertingManager {
 						: MessageBundle.getMessage("angal.medicalstock.nodescription.txt")));
 				throw new OHDataValidationException(errors);
 			}
+			if (lastDate == null || mov.getDate().isAfter(lastDate)) {
+				lastDate = mov.getDate();
+			}
 		}
-		return insertedMovements;
-	}
-
-	/**
-	 * Prepare the insert of the specified charging {@link Movement}.
-	 *
-	 * @param movement - the movement to store.
-	 * @param checkReference - if {@code true} every movement must have unique reference number
-	 * @return the prepared {@link Movement}.
-	 * @throws OHServiceException
-	 */
-	@Transactional(rollbackFor = OHServiceException.class)
-	protected Movement prepareChargingMovement(Movement movement, boolean checkReference) throws OHServiceException {
-		validateMovement(movement, checkReference);
-		return ioOperations.prepareChargingMovement(movement);
+		return ioOperations.newMovements(movements);
 	}
 
 	/**
@@ -440,6 +503,53 @@ public class MovStockInsertingManager {
 		return dischargingMovements;
 	}
 
+	/**
+	 * Insert the charging and discharging {@link Movement}s adjusting the stock to an inventory, each on the {@link Lot} it
+	 * refers to. The medicals and lots involved are locked first, in code order, then the whole list is validated against
+	 * the locked lot quantities, whatever the {@code AUTOMATICLOT_OUT} setting, and the errors of all the movements are
+	 * reported together, after the reference number errors, each group followed by the description of its medical; finally lots, movements, medical
+	 * quantities, stock balances and ward quantities are stored in a single pass.
+	 *
+	 * @param movements - the list of {@link Movement}s; the movements sharing a reference number are checked against it once
+	 * @return a list of inserted {@link Movement}s.
+	 * @throws OHServiceException
+	 */
+	@Transactional(rollbackFor = OHServiceException.class)
+	@TranslateOHServiceException
+	public List<Movement> newInventoryMovements(List<Movement> movements) throws OHServiceException {
+		if (movements.isEmpty()) {
+			return new ArrayList<>();
+		}
+		Map<String, Integer> lotQuantities = ioOperations.lockStock(ioOperations.getMedicalCodes(movements), ioOperations.getLotCodes(movements));
+		List<OHExceptionMessage> errors = new ArrayList<>();
+		Set<String> referenceNumbers = new LinkedHashSet<>();
+		for (Movement mov : movements) {
+			referenceNumbers.add(mov.getRefNo());
+		}
+		for (String referenceNumber : referenceNumbers) {
+			errors.addAll(checkReferenceNumber(referenceNumber));
+		}
+		LocalDateTime lastDate = getLastMovementDate();
+		Map<String, Integer> pendingLots = new HashMap<>();
+		for (Movement mov : movements) {
+			try {
+				validateMovement(mov, false, lastDate, new HashSet<>(), pendingLots, lotQuantities);
+			} catch (OHServiceException e) {
+				errors.addAll(e.getMessages());
+				errors.add(new OHExceptionMessage(
+					mov.getMedical() != null ? mov.getMedical().getDescription()
+						: MessageBundle.getMessage("angal.medicalstock.nodescription.txt")));
+			}
+			if (lastDate == null || mov.getDate().isAfter(lastDate)) {
+				lastDate = mov.getDate();
+			}
+		}
+		if (!errors.isEmpty()) {
+			throw new OHDataValidationException(errors);
+		}
+		return ioOperations.newMovements(movements);
+	}
+
 	/**
 	 * Stores the specified {@link Lot}.
 	 * 
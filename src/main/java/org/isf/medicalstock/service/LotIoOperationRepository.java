@@ -21,11 +21,16 @@
  */
 package org.isf.medicalstock.service;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
+import jakarta.persistence.LockModeType;
+
 import org.isf.medicalstock.model.Lot;
 import org.isf.ward.model.Ward;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -59,4 +64,29 @@ public interface LotIoOperationRepository extends JpaRepository<Lot, String> {
 	@Query("SELECT w.id.lot.code, COALESCE(SUM(w.in_quantity - w.out_quantity), 0.0) " +
 					"FROM MedicalWard w WHERE w.id.lot.code IN :lotCodes GROUP BY w.id.lot.code")
 	List<Object[]> getWardsTotalQuantities(@Param("lotCodes") List<String> lotCodes);
+
+	@Query("SELECT m.lot.code, COALESCE(SUM(CASE WHEN m.type.type LIKE '+%' THEN m.quantity ELSE -m.quantity END), 0) " +
+					"FROM Movement m WHERE m.lot.medical.code = :medical GROUP BY m.lot.code")
+	List<Object[]> getMainStoreQuantitiesByMedical(@Param("medical") int medicalCode);
+
+	@Query("SELECT w.id.lot.code, COALESCE(SUM(w.in_quantity - w.out_quantity), 0.0) " +
+					"FROM MedicalWard w WHERE w.id.lot.medical.code = :medical GROUP BY w.id.lot.code")
+	List<Object[]> getWardsTotalQuantitiesByMedical(@Param("medical") int medicalCode);
+
+	@Query("SELECT m.lot.code, COALESCE(SUM(CASE WHEN m.type.type LIKE '+%' THEN m.quantity ELSE -m.quantity END), 0) " +
+					"FROM Movement m WHERE m.lot.code IN (SELECT mv.lot.code FROM Movement mv WHERE mv.date BETWEEN :dateFrom AND :dateTo) " +
+					"GROUP BY m.lot.code")
+	List<Object[]> getMainStoreQuantitiesMovedBetween(@Param("dateFrom") LocalDateTime dateFrom, @Param("dateTo") LocalDateTime dateTo);
+
+	@Query("select l from Lot l join fetch l.medical where l.code in :codes")
+	List<Lot> findByCodeIn(@Param("codes") Collection<String> codes);
+
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select l from Lot l where l.code in :codes order by l.code")
+	List<Lot> findByCodeInForUpdate(@Param("codes") Collection<String> codes);
+
+	@Query(value = "select MMV_LT_ID_A, case when MMV_MMVT_ID_A in "
+			+ "(select MMVT_ID_A from OH_MEDICALDSRSTOCKMOVTYPE where MMVT_TYPE like '+%') then MMV_QTY else -MMV_QTY end "
+			+ "from OH_MEDICALDSRSTOCKMOV where MMV_LT_ID_A in (:codes) for update", nativeQuery = true)
+	List<Object[]> getMainStoreMovedQuantitiesForUpdate(@Param("codes") Collection<String> codes);
 }
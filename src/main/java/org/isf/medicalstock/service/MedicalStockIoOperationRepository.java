@@ -21,10 +21,14 @@
  */
 package org.isf.medicalstock.service;
 
+import java.time.LocalDate;
 import java.util.List;
 
 import org.isf.medicalstock.model.MedicalStock;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -32,4 +36,17 @@ public interface MedicalStockIoOperationRepository extends JpaRepository<Medical
 
 	List<MedicalStock> findByMedicalCodeOrderByBalanceDateDesc(int medicalCode);
 
+	MedicalStock findFirstByMedicalCodeOrderByBalanceDateDesc(int medicalCode);
+
+	List<MedicalStock> findTop2ByMedicalCodeOrderByBalanceDateDesc(int medicalCode);
+
+	MedicalStock findFirstByMedicalCodeAndBalanceDateBeforeOrderByBalanceDateDesc(int medicalCode, LocalDate balanceDate);
+
+	@Query(value = "select distinct ms.medical.code from MedicalStock ms where ms.balanceDate >= :balanceDate")
+	List<Integer> findMedicalCodesWhereBalanceDateFrom(@Param("balanceDate") LocalDate balanceDate);
+
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query(value = "delete from MedicalStock ms where ms.medical.code = :medicalCode and ms.balanceDate >= :balanceDate")
+	void deleteByMedicalCodeAndBalanceDateFrom(@Param("medicalCode") int medicalCode, @Param("balanceDate") LocalDate balanceDate);
+
 }
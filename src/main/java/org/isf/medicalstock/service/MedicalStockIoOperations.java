@@ -24,11 +24,21 @@ package org.isf.medicalstock.service;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Optional;
-import java.util.Random;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.isf.generaldata.GeneralData;
 import org.isf.generaldata.MessageBundle;
@@ -41,13 +51,18 @@ import org.isf.medicalstockward.model.MedicalWard;
 import org.isf.medicalstockward.service.MedicalStockWardIoOperationRepository;
 import org.isf.medstockmovtype.model.MovementType;
 import org.isf.medtype.model.MedicalType;
+import org.isf.sequence.service.SequenceAllocator;
 import org.isf.utils.db.TranslateOHServiceException;
 import org.isf.utils.exception.OHServiceException;
 import org.isf.utils.exception.model.OHExceptionMessage;
+import org.isf.utils.pagination.PageInfo;
+import org.isf.utils.pagination.PagedResponse;
 import org.isf.utils.time.TimeTools;
 import org.isf.ward.model.Ward;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -61,6 +76,10 @@ public class MedicalStockIoOperations {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(MedicalStockIoOperations.class);
 
+	private static final String LOT_SEQUENCE = "LOT";
+
+	private static final int LOT_SEQUENCE_BLOCK_SIZE = 50;
+
 	private MovementIoOperationRepository movRepository;
 
 	private LotIoOperationRepository lotRepository;
@@ -71,15 +90,19 @@ public class MedicalStockIoOperations {
 
 	private MedicalStockWardIoOperationRepository medicalStockWardRepository;
 
+	private SequenceAllocator sequenceAllocator;
+
 	public MedicalStockIoOperations(MovementIoOperationRepository movementIoOperationRepository, LotIoOperationRepository lotIoOperationRepository,
 					MedicalsIoOperationRepository medicalsIoOperationRepository,
 					MedicalStockIoOperationRepository medicalStockIoOperationRepository,
-					MedicalStockWardIoOperationRepository medicalStockWardIoOperationRepository) {
+					MedicalStockWardIoOperationRepository medicalStockWardIoOperationRepository,
+					SequenceAllocator sequenceAllocator) {
 		this.movRepository = movementIoOperationRepository;
 		this.lotRepository = lotIoOperationRepository;
 		this.medicalRepository = medicalsIoOperationRepository;
 		this.medicalStockRepository = medicalStockIoOperationRepository;
 		this.medicalStockWardRepository = medicalStockWardIoOperationRepository;
+		this.sequenceAllocator = sequenceAllocator;
 	}
 
 	public enum MovementOrder {
@@ -124,8 +147,6 @@ public class MedicalStockIoOperations {
 	 * @throws OHServiceException
 	 */
 	public List<Movement> newAutomaticDischargingMovement(Movement movement) throws OHServiceException {
-		List<Movement> dischargingMovements = new ArrayList<>();
-		List<Lot> lots = getLotsByMedical(movement.getMedical(), true);
 		Medical medical = movement.getMedical();
 		double medicalQty = medical.getTotalQuantity();
 		int qty = movement.getQuantity(); // movement initial quantity
@@ -135,6 +156,8 @@ public class MedicalStockIoOperations {
 							"angal.medicalstock.multipledischarging.movementexceedstheavailablequantityformedical.fmt.msg", medicalQty,
 							medical.getDescription())));
 		}
+		// ward quantities are not needed to choose the lots to discharge
+		List<Lot> lots = getLotsByMedical(medical, true, false);
 		if (lots.isEmpty()) {
 			String message = MessageBundle.formatMessage(
 							"angal.medicalstock.multipledischarging.nolotswithavailablequantityfoundformedicalpleasereport.fmt.msg",
@@ -142,38 +165,28 @@ public class MedicalStockIoOperations {
 			LOGGER.error(message);
 			throw new OHServiceException(new OHExceptionMessage(message));
 		}
+		// lots are ordered by due date, so the first ones expiring are discharged first
+		List<Movement> splitMovements = new ArrayList<>();
 		for (Lot lot : lots) {
-			String lotCode = lot.getCode();
+			int qtLot = lot.getMainStoreQuantity();
 			Movement splitMovement = new Movement(medical, movement.getType(), movement.getWard(),
-							null, // lot to be set
+							lot,
 							movement.getDate(),
-							qty, // quantity can remain the same or changed if greater than lot quantity
+							Math.min(qtLot, qty), // quantity can remain the same or changed if greater than lot quantity
 							null,
 							movement.getRefNo());
-			int qtLot = lot.getMainStoreQuantity();
-			if (qtLot < qty) {
-				splitMovement.setQuantity(qtLot);
-				try {
-					dischargingMovements.add(storeMovement(splitMovement, lotCode));
-					// medical stock movement inserted updates quantity of the medical
-					updateStockQuantity(splitMovement);
-				} catch (OHServiceException serviceException) {
-					throw new OHServiceException(new OHExceptionMessage(serviceException.getMessage()));
-				}
-				qty = qty - qtLot;
-			} else {
-				splitMovement.setQuantity(qty);
-				try {
-					dischargingMovements.add(storeMovement(splitMovement, lotCode));
-					// medical stock movement inserted updates quantity of the medical
-					updateStockQuantity(splitMovement);
-				} catch (OHServiceException serviceException) {
-					throw new OHServiceException(new OHExceptionMessage(serviceException.getMessage()));
-				}
+			splitMovements.add(splitMovement);
+			qty = qty - splitMovement.getQuantity();
+			if (qty == 0) {
 				break;
 			}
 		}
-		return dischargingMovements;
+		try {
+			// medical stock movements inserted update quantity of the medical
+			return newMovements(splitMovements);
+		} catch (OHServiceException serviceException) {
+			throw new OHServiceException(new OHExceptionMessage(serviceException.getMessage()));
+		}
 	}
 
 	/**
@@ -205,6 +218,113 @@ public class MedicalStockIoOperations {
 		return movementStored;
 	}
 
+	/**
+	 * Stores the specified {@link Movement}s in a single pass. Lots are looked up and inserted once for the whole list,
+	 * movements are inserted together and {@link Medical} quantities, stock balances and ward quantities are updated
+	 * once per medical (per day for the balances) instead of once per movement. The medicals and the stored lots are
+	 * locked with {@link #lockStock(Collection, Collection)} before anything is inserted.
+	 * 
+	 * @param movements - the movements to store, in chronological order.
+	 * @return the stored {@link Movement}s.
+	 * @throws OHServiceException if an error occurs during the store operation.
+	 */
+	public List<Movement> newMovements(List<Movement> movements) throws OHServiceException {
+		if (movements.isEmpty()) {
+			return new ArrayList<>();
+		}
+		Set<String> lotCodes = getLotCodes(movements);
+		lockStock(getMedicalCodes(movements), lotCodes);
+		Map<String, Lot> lots = lotRepository.findAllById(lotCodes).stream()
+						.collect(Collectors.toMap(Lot::getCode, Function.identity()));
+
+		// if charging we have to manage the Lot, if discharging the lot should be given
+		List<Lot> newLots = new ArrayList<>();
+		for (Movement movement : movements) {
+			Lot lot = movement.getLot();
+			String lotCode = lot != null ? lot.getCode() : null;
+			Lot storedLot = lotCode != null ? lots.get(lotCode) : null;
+			if (storedLot == null && lot != null && movement.getType().getType().contains("+")) {
+				storedLot = prepareLot(lotCode, lot, movement.getMedical());
+				lots.put(storedLot.getCode(), storedLot);
+				newLots.add(storedLot);
+			}
+			if (storedLot == null) {
+				throw new OHServiceException(new OHExceptionMessage("Lot '" + lotCode + "' not found."));
+			}
+			movement.setLot(storedLot);
+		}
+		// lots have an assigned code, so they are merged: the movements must point to the returned managed instances
+		for (Lot savedLot : lotRepository.saveAll(newLots)) {
+			lots.put(savedLot.getCode(), savedLot);
+		}
+		for (Movement movement : movements) {
+			movement.setLot(lots.get(movement.getLot().getCode()));
+		}
+		List<Movement> storedMovements = movRepository.saveAll(movements);
+
+		// medical stock movements inserted update quantities of the medicals
+		updateStockQuantities(movements);
+		return storedMovements;
+	}
+
+	/**
+	 * Locks the specified {@link Medical}s and {@link Lot}s until the end of the transaction and returns the main store
+	 * quantity of the locked lots. The rows are always locked in the same order, medicals first and then lots, each by
+	 * code, so that writers locking them this way wait for each other instead of deadlocking. The quantities are read
+	 * with a locking read too, so they include the movements committed by other clients up to the lock and not just the
+	 * ones visible in the transaction snapshot.
+	 * 
+	 * @param medicalCodes - the codes of the medicals to lock.
+	 * @param lotCodes - the codes of the lots to lock, lots not stored yet are ignored.
+	 * @return the main store quantities of the stored lots, by lot code.
+	 * @throws OHServiceException if an error occurs locking the rows.
+	 */
+	public Map<String, Integer> lockStock(Collection<Integer> medicalCodes, Collection<String> lotCodes) throws OHServiceException {
+		if (!medicalCodes.isEmpty()) {
+			medicalRepository.findAllByCodeForUpdate(new TreeSet<>(medicalCodes));
+		}
+		Map<String, Integer> quantities = new HashMap<>();
+		if (lotCodes.isEmpty()) {
+			return quantities;
+		}
+		for (Lot lot : lotRepository.findByCodeInForUpdate(new TreeSet<>(lotCodes))) {
+			quantities.put(lot.getCode(), 0);
+		}
+		for (Object[] row : lotRepository.getMainStoreMovedQuantitiesForUpdate(lotCodes)) {
+			quantities.merge((String) row[0], ((Number) row[1]).intValue(), Integer::sum);
+		}
+		return quantities;
+	}
+
+	/**
+	 * Returns the codes of the {@link Medical}s of the specified {@link Movement}s.
+	 * 
+	 * @param movements - the movements.
+	 * @return the medical codes.
+	 */
+	public Set<Integer> getMedicalCodes(List<Movement> movements) {
+		return movements.stream()
+						.map(Movement::getMedical)
+						.filter(Objects::nonNull)
+						.map(Medical::getCode)
+						.collect(Collectors.toCollection(TreeSet::new));
+	}
+
+	/**
+	 * Returns the codes of the {@link Lot}s of the specified {@link Movement}s, empty codes excluded.
+	 * 
+	 * @param movements - the movements.
+	 * @return the lot codes.
+	 */
+	public Set<String> getLotCodes(List<Movement> movements) {
+		return movements.stream()
+						.map(Movement::getLot)
+						.filter(Objects::nonNull)
+						.map(Lot::getCode)
+						.filter(lotCode -> lotCode != null && !lotCode.isEmpty())
+						.collect(Collectors.toCollection(TreeSet::new));
+	}
+
 	/**
 	 * Prepare the insert of the specified {@link Movement} (no commit)
 	 * 
@@ -261,16 +381,14 @@ public class MedicalStockIoOperations {
 	 * @throws OHServiceException if an error occurs during the code generation.
 	 */
 	protected String generateLotCode() throws OHServiceException {
-		Random random = new Random();
-		long candidateCode;
-		Lot lot;
+		String candidateCode;
 
 		do {
-			candidateCode = Math.abs(random.nextLong());
-			lot = lotRepository.findById(String.valueOf(candidateCode)).orElse(null);
-		} while (lot != null);
+			// lot codes can also be entered manually, so skip the values already taken
+			candidateCode = String.valueOf(sequenceAllocator.next(LOT_SEQUENCE, 1, LOT_SEQUENCE_BLOCK_SIZE));
+		} while (lotRepository.existsById(candidateCode));
 
-		return String.valueOf(candidateCode);
+		return candidateCode;
 	}
 
 	/**
@@ -338,6 +456,19 @@ public class MedicalStockIoOperations {
 	 */
 	// TODO: verify why lotCode and medical params are needed
 	public Lot storeLot(String lotCode, Lot lot, Medical medical) throws OHServiceException {
+		return lotRepository.save(prepareLot(lotCode, lot, medical));
+	}
+
+	/**
+	 * Sets code and medical of the specified {@link Lot} before it is stored.
+	 * 
+	 * @param lotCode the {@link Lot} code. If {@code null} or {@code empty} it will be generated.
+	 * @param lot the lot to prepare.
+	 * @param medical the {@link Medical} the lot refers to.
+	 * @return the prepared {@link Lot} object.
+	 * @throws OHServiceException if an error occurred generating the lot code.
+	 */
+	private Lot prepareLot(String lotCode, Lot lot, Medical medical) throws OHServiceException {
 		if (lotCode == null || lotCode.isEmpty()) {
 			lotCode = this.generateLotCode();
 			if (!isAutomaticLotInMode()) {
@@ -346,7 +477,7 @@ public class MedicalStockIoOperations {
 		}
 		lot.setCode(lotCode);
 		lot.setMedical(medical);
-		return lotRepository.save(lot);
+		return lot;
 	}
 
 	/**
@@ -382,6 +513,63 @@ public class MedicalStockIoOperations {
 		}
 	}
 
+	/**
+	 * Updates {@link Medical} stock quantities for the specified {@link Movement}s, aggregating them by medical so that
+	 * each medical is read and saved once, each stock balance is touched once per day and each ward quantity once
+	 * per ward and lot. The medicals are processed in code order and are expected to be already locked by
+	 * {@link #lockStock(Collection, Collection)}, before the movements referencing them were inserted.
+	 * 
+	 * @param movements the movements, in chronological order.
+	 * @throws OHServiceException if an error occurs during the update.
+	 */
+	protected void updateStockQuantities(List<Movement> movements) throws OHServiceException {
+		Map<Integer, List<Movement>> movementsByMedical = movements.stream()
+						.collect(Collectors.groupingBy(movement -> movement.getMedical().getCode(), TreeMap::new, Collectors.toList()));
+		Map<Integer, Medical> medicals = medicalRepository.findAllByCodeForUpdate(movementsByMedical.keySet()).stream()
+						.collect(Collectors.toMap(Medical::getCode, Function.identity()));
+
+		for (Map.Entry<Integer, List<Movement>> entry : movementsByMedical.entrySet()) {
+			Medical medical = medicals.get(entry.getKey());
+			if (medical == null) {
+				throw new OHServiceException(new OHExceptionMessage("Medical '" + entry.getKey() + "' not found."));
+			}
+			double incomingQuantity = 0;
+			double outgoingQuantity = 0;
+			Map<LocalDate, Integer> dailyIncrements = new TreeMap<>();
+			Map<WardLot, Integer> wardQuantities = new LinkedHashMap<>();
+			for (Movement movement : entry.getValue()) {
+				int quantity = movement.getQuantity();
+				LocalDate date = movement.getDate().toLocalDate();
+				if (movement.getType().getType().contains("+")) {
+					incomingQuantity += quantity;
+					dailyIncrements.merge(date, quantity, Integer::sum);
+				} else {
+					outgoingQuantity += quantity;
+					dailyIncrements.merge(date, -quantity, Integer::sum);
+					if (movement.getWard() != null) {
+						wardQuantities.merge(new WardLot(movement.getWard(), movement.getLot()), quantity, Integer::sum);
+					}
+				}
+			}
+			medical.setInqty(medical.getInqty() + incomingQuantity);
+			medical.setOutqty(medical.getOutqty() + outgoingQuantity);
+			Medical updatedMedical = medicalRepository.save(medical);
+			for (Map.Entry<LocalDate, Integer> dailyIncrement : dailyIncrements.entrySet()) {
+				updateMedicalStockTable(updatedMedical, dailyIncrement.getKey(), dailyIncrement.getValue());
+			}
+			for (Map.Entry<WardLot, Integer> wardQuantity : wardQuantities.entrySet()) {
+				// updates stock quantity for wards
+				updateMedicalWardQuantity(wardQuantity.getKey().ward(), updatedMedical, wardQuantity.getValue(), wardQuantity.getKey().lot());
+			}
+		}
+	}
+
+	/**
+	 * A ward and lot pair, used to aggregate the quantities discharged to a ward.
+	 */
+	private record WardLot(Ward ward, Lot lot) {
+	}
+
 	/**
 	 * Updates the incoming quantity for the specified medical.
 	 * 
@@ -428,14 +616,13 @@ public class MedicalStockIoOperations {
 	 */
 	private MedicalStock updateMedicalStockTable(Medical medical, LocalDate date, int incrementQuantity) throws OHServiceException {
 
-		List<MedicalStock> medicalStockList = medicalStockRepository.findByMedicalCodeOrderByBalanceDateDesc(medical.getCode());
-		MedicalStock medicalStock;
+		MedicalStock medicalStock = medicalStockRepository.findFirstByMedicalCodeOrderByBalanceDateDesc(medical.getCode());
 
-		if (medicalStockList.isEmpty() && incrementQuantity < 0) {
+		if (medicalStock == null && incrementQuantity < 0) {
 			throw new OHServiceException(
 							new OHExceptionMessage("Medical '" + medical.getDescription() + "' (" + medical.getCode() + ") not found (not possible)."));
 		}
-		if (medicalStockList.isEmpty()) {
+		if (medicalStock == null) {
 			// first insert
 			medicalStock = new MedicalStock();
 			medicalStock.setMedical(medical);
@@ -444,7 +631,6 @@ public class MedicalStockIoOperations {
 			return medicalStockRepository.save(medicalStock);
 		}
 
-		medicalStock = medicalStockList.get(0);
 		if (TimeTools.isSameDay(date, medicalStock.getBalanceDate())) {
 			// update if the same date
 			int balance = medicalStock.getBalance();
@@ -467,6 +653,64 @@ public class MedicalStockIoOperations {
 		return medicalStockRepository.save(newMedicalStock);
 	}
 
+	/**
+	 * Rebuilds the medical stock balances of the specified {@link Medical} from the specified date on, starting from the
+	 * last balance before that date and applying the daily quantities of the movements recorded since then.
+	 *
+	 * @param medicalCode the medical code.
+	 * @param dateFrom the first day to rebuild.
+	 * @return the rebuilt balances, oldest first.
+	 * @throws OHServiceException if an error occurs during the rebuild.
+	 */
+	public List<MedicalStock> rebuildMedicalStockTable(int medicalCode, LocalDate dateFrom) throws OHServiceException {
+		// the delete clears the persistence context, entities are read after it
+		medicalStockRepository.deleteByMedicalCodeAndBalanceDateFrom(medicalCode, dateFrom);
+		Medical medical = medicalRepository.findById(medicalCode).orElse(null);
+		if (medical == null) {
+			throw new OHServiceException(new OHExceptionMessage("Medical '" + medicalCode + "' not found."));
+		}
+		MedicalStock lastStock = medicalStockRepository.findFirstByMedicalCodeAndBalanceDateBeforeOrderByBalanceDateDesc(medicalCode, dateFrom);
+		if (lastStock != null) {
+			lastStock.setNextMovDate(null);
+			lastStock.setDays(null);
+		}
+
+		List<MedicalStock> medicalStocks = new ArrayList<>();
+		MedicalStock previousStock = lastStock;
+		int balance = lastStock != null ? lastStock.getBalance() : 0;
+		List<Object[]> dailyQuantities = movRepository.findDailyQuantitiesByMedicalCodeFrom(medicalCode, dateFrom.atStartOfDay());
+		for (Object[] dailyQuantity : dailyQuantities) {
+			LocalDate date = (LocalDate) dailyQuantity[0];
+			balance += ((Number) dailyQuantity[1]).intValue();
+			if (previousStock != null) {
+				previousStock.setNextMovDate(date);
+				previousStock.setDays(TimeTools.getDaysBetweenDates(previousStock.getBalanceDate(), date, true));
+			}
+			MedicalStock medicalStock = new MedicalStock(medical, date, balance, null, null);
+			medicalStocks.add(medicalStock);
+			previousStock = medicalStock;
+		}
+		if (lastStock != null) {
+			medicalStockRepository.save(lastStock);
+		}
+		return medicalStockRepository.saveAll(medicalStocks);
+	}
+
+	/**
+	 * Rebuilds the medical stock balances of all the {@link Medical}s moved from the specified date on.
+	 *
+	 * @param dateFrom the first day to rebuild.
+	 * @throws OHServiceException if an error occurs during the rebuild.
+	 * @see #rebuildMedicalStockTable(int, LocalDate)
+	 */
+	public void rebuildMedicalStockTable(LocalDate dateFrom) throws OHServiceException {
+		Set<Integer> medicalCodes = new LinkedHashSet<>(movRepository.findMedicalCodesWhereDateFrom(dateFrom.atStartOfDay()));
+		medicalCodes.addAll(medicalStockRepository.findMedicalCodesWhereBalanceDateFrom(dateFrom));
+		for (Integer medicalCode : medicalCodes) {
+			rebuildMedicalStockTable(medicalCode, dateFrom);
+		}
+	}
+
 	/**
 	 * Updates medical quantity for the specified ward.
 	 * 
@@ -510,20 +754,7 @@ public class MedicalStockIoOperations {
 	 * @throws OHServiceException if an error occurs retrieving the movements.
 	 */
 	public List<Movement> getMovements(String wardId, LocalDateTime dateFrom, LocalDateTime dateTo) throws OHServiceException {
-		List<Movement> pMovement = new ArrayList<>();
-		// TODO: investigate whether findMovementWhereDatesAndId() could return a List<Movement> directly
-		// to remove the need to fetch the movements later in the loop below
-		List<Integer> pMovementCode = movRepository.findMovementWhereDatesAndId(wardId, TimeTools.truncateToSeconds(dateFrom),
-						TimeTools.truncateToSeconds(dateTo));
-		for (int i = 0; i < pMovementCode.size(); i++) {
-			Integer code = pMovementCode.get(i);
-			Movement movement = movRepository.findById(code).orElse(null);
-			if (movement == null) {
-				throw new OHServiceException(new OHExceptionMessage("Movement '" + code + "' not found."));
-			}
-			pMovement.add(i, movement);
-		}
-		return pMovement;
+		return movRepository.findMovementWhereDatesAndId(wardId, TimeTools.truncateToSeconds(dateFrom), TimeTools.truncateToSeconds(dateTo));
 	}
 
 	/**
@@ -553,24 +784,100 @@ public class MedicalStockIoOperations {
 					LocalDateTime lotPrepTo,
 					LocalDateTime lotDueFrom,
 					LocalDateTime lotDueTo) throws OHServiceException {
-		List<Movement> pMovement = new ArrayList<>();
-
-		List<Integer> pMovementCode = movRepository.findMovementWhereData(medicalCode, medicalType, wardId, movType,
+		return movRepository.findMovementWhereData(medicalCode, medicalType, wardId, movType,
 						TimeTools.truncateToSeconds(movFrom),
 						TimeTools.truncateToSeconds(movTo),
 						TimeTools.truncateToSeconds(lotPrepFrom),
 						TimeTools.truncateToSeconds(lotPrepTo),
 						TimeTools.truncateToSeconds(lotDueFrom),
 						TimeTools.truncateToSeconds(lotDueTo));
-		for (int i = 0; i < pMovementCode.size(); i++) {
-			Integer code = pMovementCode.get(i);
-			Movement movement = movRepository.findById(code).orElse(null);
-			if (movement == null) {
-				throw new OHServiceException(new OHExceptionMessage("Movement '" + code + "' not found."));
-			}
-			pMovement.add(i, movement);
+	}
+
+	/**
+	 * Reads all the stored {@link Movement} with the specified criteria one at a time, handing each one to the
+	 * specified consumer. Rows are read through a forward-only cursor and detached once handed over, so memory
+	 * does not grow with the size of the result.
+	 * 
+	 * @param medicalCode the {@link Medical} code (optional).
+	 * @param medicalType the {@link MedicalType} code (optional).
+	 * @param wardId the {@link Ward} id (optional).
+	 * @param movType the {@link MovementType} code or {@code "+"}/{@code "-"} for all charge/discharge types (optional).
+	 * @param movFrom the lower bound for the movement date range (optional).
+	 * @param movTo the upper bound for the movement date range (optional).
+	 * @param lotPrepFrom the lower bound for the lot preparation date range (optional).
+	 * @param lotPrepTo the upper bound for the lot preparation date range (optional).
+	 * @param lotDueFrom the lower bound for the lot due date range (optional).
+	 * @param lotDueTo the lower bound for the lot due date range (optional).
+	 * @param consumer the callback receiving each {@link Movement}.
+	 * @throws OHServiceException
+	 */
+	@Transactional(readOnly = true, rollbackFor = OHServiceException.class)
+	public void forEachMovement(
+					Integer medicalCode,
+					String medicalType,
+					String wardId,
+					String movType,
+					LocalDateTime movFrom,
+					LocalDateTime movTo,
+					LocalDateTime lotPrepFrom,
+					LocalDateTime lotPrepTo,
+					LocalDateTime lotDueFrom,
+					LocalDateTime lotDueTo,
+					Consumer<Movement> consumer) throws OHServiceException {
+		try (Stream<Movement> movements = movRepository.streamMovementWhereData(medicalCode, medicalType, wardId, movType,
+						TimeTools.truncateToSeconds(movFrom),
+						TimeTools.truncateToSeconds(movTo),
+						TimeTools.truncateToSeconds(lotPrepFrom),
+						TimeTools.truncateToSeconds(lotPrepTo),
+						TimeTools.truncateToSeconds(lotDueFrom),
+						TimeTools.truncateToSeconds(lotDueTo))) {
+			movements.forEach(consumer);
 		}
-		return pMovement;
+	}
+
+	/**
+	 * Retrieves a page of the stored {@link Movement} with the specified criteria.
+	 * 
+	 * @param medicalCode the {@link Medical} code (optional).
+	 * @param medicalType the {@link MedicalType} code (optional).
+	 * @param wardId the {@link Ward} id (optional).
+	 * @param movType the {@link MovementType} code or {@code "+"}/{@code "-"} for all charge/discharge types (optional).
+	 * @param movFrom the lower bound for the movement date range (optional).
+	 * @param movTo the upper bound for the movement date range (optional).
+	 * @param lotPrepFrom the lower bound for the lot preparation date range (optional).
+	 * @param lotPrepTo the upper bound for the lot preparation date range (optional).
+	 * @param lotDueFrom the lower bound for the lot due date range (optional).
+	 * @param lotDueTo the lower bound for the lot due date range (optional).
+	 * @param page the page number.
+	 * @param size the page size.
+	 * @return the requested page of movements.
+	 * @throws OHServiceException
+	 */
+	public PagedResponse<Movement> getMovementsPageable(
+					Integer medicalCode,
+					String medicalType,
+					String wardId,
+					String movType,
+					LocalDateTime movFrom,
+					LocalDateTime movTo,
+					LocalDateTime lotPrepFrom,
+					LocalDateTime lotPrepTo,
+					LocalDateTime lotDueFrom,
+					LocalDateTime lotDueTo,
+					int page,
+					int size) throws OHServiceException {
+		Page<Movement> pagedResult = movRepository.findMovementWhereData(medicalCode, medicalType, wardId, movType,
+						TimeTools.truncateToSeconds(movFrom),
+						TimeTools.truncateToSeconds(movTo),
+						TimeTools.truncateToSeconds(lotPrepFrom),
+						TimeTools.truncateToSeconds(lotPrepTo),
+						TimeTools.truncateToSeconds(lotDueFrom),
+						TimeTools.truncateToSeconds(lotDueTo),
+						PageRequest.of(page, size));
+		PagedResponse<Movement> data = new PagedResponse<>();
+		data.setData(pagedResult.getContent());
+		data.setPageInfo(PageInfo.from(pagedResult));
+		return data;
 	}
 
 	/**
@@ -596,18 +903,31 @@ public class MedicalStockIoOperations {
 					LocalDateTime movTo,
 					String lotCode,
 					MovementOrder order) throws OHServiceException {
-		List<Movement> pMovement = new ArrayList<>();
-
-		List<Integer> pMovementCode = movRepository.findMovementForPrint(medicalDescription, medicalTypeCode, wardId, movType, movFrom, movTo, lotCode, order);
-		for (int i = 0; i < pMovementCode.size(); i++) {
-			Integer code = pMovementCode.get(i);
-			Movement movement = movRepository.findById(code).orElse(null);
-			if (movement == null) {
-				throw new OHServiceException(new OHExceptionMessage("Movement '" + code + "' not found."));
-			}
-			pMovement.add(i, movement);
+		return movRepository.findMovementForPrint(medicalDescription, medicalTypeCode, wardId, movType, movFrom, movTo, lotCode, order);
+	}
+
+	/**
+	 * Retrieves the {@link Lot}s moved in the main store within the specified dates, empty ones included, with their current
+	 * main store quantity computed by a single aggregate query.
+	 *
+	 * @param dateFrom the lower bound of the movement date range.
+	 * @param dateTo the upper bound of the movement date range.
+	 * @return the lots moved, with their {@link Medical}.
+	 * @throws OHServiceException if an error occurs retrieving the lots.
+	 */
+	public List<Lot> getLotsMovedBetween(LocalDateTime dateFrom, LocalDateTime dateTo) throws OHServiceException {
+		Map<String, Integer> quantities = new LinkedHashMap<>();
+		for (Object[] result : lotRepository.getMainStoreQuantitiesMovedBetween(TimeTools.truncateToSeconds(dateFrom), TimeTools.truncateToSeconds(dateTo))) {
+			quantities.put((String) result[0], ((Number) result[1]).intValue());
+		}
+		if (quantities.isEmpty()) {
+			return new ArrayList<>();
+		}
+		List<Lot> lots = lotRepository.findByCodeIn(quantities.keySet());
+		for (Lot lot : lots) {
+			lot.setMainStoreQuantity(quantities.get(lot.getCode()));
 		}
-		return pMovement;
+		return lots;
 	}
 
 	/**
@@ -620,41 +940,43 @@ public class MedicalStockIoOperations {
 	 * @throws OHServiceException if an error occurs retrieving the lot list.
 	 */
 	public List<Lot> getLotsByMedical(Medical medical, boolean removeEmpty) throws OHServiceException {
+		return getLotsByMedical(medical, removeEmpty, true);
+	}
+
+	/**
+	 * Retrieves lot referred to the specified {@link Medical}, expiring first on top, computing their quantities with one aggregate query
+	 * per kind of quantity over all the lots of the medical.
+	 * 
+	 * @param medical the medical.
+	 * @param removeEmpty if {@code true} lots with no quantity in the main store are stripped out.
+	 * @param withWardsQuantities if {@code true} the quantities in the wards are computed as well.
+	 * @return a list of {@link Lot}.
+	 */
+	private List<Lot> getLotsByMedical(Medical medical, boolean removeEmpty, boolean withWardsQuantities) {
 		List<Lot> lots = lotRepository.findByMedicalOrderByDueDate(medical.getCode());
 
 		if (lots.isEmpty()) {
 			return Collections.emptyList();
 		}
 
-		// Get all lot IDs
-		List<String> lotCodes = lots.stream().map(Lot::getCode).collect(Collectors.toList());
-
-		// Retrieve quantities in batch
-		List<Object[]> mainStoreQuantities = lotRepository.getMainStoreQuantities(lotCodes);
-		List<Object[]> wardsTotalQuantities = lotRepository.getWardsTotalQuantities(lotCodes);
+		Map<String, Lot> lotsByCode = lots.stream().collect(Collectors.toMap(Lot::getCode, Function.identity()));
 
 		// Process mainStoreQuantities and update lots
-		for (Object[] result : mainStoreQuantities) {
-			String lotCode = (String) result[0];
-			int mainStoreQuantity = ((Long) result[1]).intValue();
-
-			// Find the corresponding lot in the lots list
-			Optional<Lot> matchingLot = lots.stream().filter(lot -> lot.getCode().equals(lotCode)).findFirst();
-
-			// Update the lot if found
-			matchingLot.ifPresent(lot -> lot.setMainStoreQuantity(mainStoreQuantity));
+		for (Object[] result : lotRepository.getMainStoreQuantitiesByMedical(medical.getCode())) {
+			Lot lot = lotsByCode.get((String) result[0]);
+			if (lot != null) {
+				lot.setMainStoreQuantity(((Long) result[1]).intValue());
+			}
 		}
 
 		// Process wardsTotalQuantities and update lots
-		for (Object[] result : wardsTotalQuantities) {
-			String lotCode = (String) result[0];
-			Double wardsTotalQuantity = (Double) result[1];
-
-			// Find the corresponding lot in the lots list
-			Optional<Lot> matchingLot = lots.stream().filter(lot -> lot.getCode().equals(lotCode)).findFirst();
-
-			// Update the lot if found
-			matchingLot.ifPresent(lot -> lot.setWardsTotalQuantity(wardsTotalQuantity));
+		if (withWardsQuantities) {
+			for (Object[] result : lotRepository.getWardsTotalQuantitiesByMedical(medical.getCode())) {
+				Lot lot = lotsByCode.get((String) result[0]);
+				if (lot != null) {
+					lot.setWardsTotalQuantity((Double) result[1]);
+				}
+			}
 		}
 
 		// Remove empty lots
@@ -715,7 +1037,8 @@ public class MedicalStockIoOperations {
 	public void deleteMovement(Movement movement) throws OHServiceException {
 		Medical medical = movement.getMedical();
 		int code = medical.getCode();
-		List<MedicalStock> medicalStockList = medicalStockRepository.findByMedicalCodeOrderByBalanceDateDesc(code);
+		// only the latest balance and the one before it can be affected
+		List<MedicalStock> medicalStockList = medicalStockRepository.findTop2ByMedicalCodeOrderByBalanceDateDesc(code);
 		if (medicalStockList.isEmpty()) {
 			throw new OHServiceException(new OHExceptionMessage("Medical '" + medical.getDescription() + "' (" + code + ") not found (not possible)."));
 		}
@@ -65,6 +65,17 @@ public interface MovementIoOperationRepository extends JpaRepository<Movement, I
 	@Query(value = "SELECT * FROM OH_MEDICALDSRSTOCKMOV ORDER BY MMV_ID DESC limit 1", nativeQuery = true)
 	Movement findLastMovement();
 
+	@Query(value = "select cast(mov.date as LocalDate), sum(case when movtype.type like '%+%' then mov.quantity else -mov.quantity end) " +
+					"from Movement mov " +
+					"join mov.type movtype " +
+					"where mov.medical.code = :code and mov.date >= :dateFrom " +
+					"group by cast(mov.date as LocalDate) " +
+					"order by cast(mov.date as LocalDate)")
+	List<Object[]> findDailyQuantitiesByMedicalCodeFrom(@Param("code") int code, @Param("dateFrom") LocalDateTime dateFrom);
+
+	@Query(value = "select distinct mov.medical.code from Movement mov where mov.date >= :dateFrom")
+	List<Integer> findMedicalCodesWhereDateFrom(@Param("dateFrom") LocalDateTime dateFrom);
+
 	@Query("select count(m) from Movement m where active=1")
 	long countAllActiveMovements();
 
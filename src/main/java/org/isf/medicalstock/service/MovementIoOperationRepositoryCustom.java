@@ -23,20 +23,39 @@ package org.isf.medicalstock.service;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
+import org.isf.medicalstock.model.Movement;
 import org.isf.medicalstock.service.MedicalStockIoOperations.MovementOrder;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface MovementIoOperationRepositoryCustom {
 
-	List<Integer> findMovementWhereDatesAndId(String wardId, LocalDateTime dateFrom, LocalDateTime dateTo);
+	List<Movement> findMovementWhereDatesAndId(String wardId, LocalDateTime dateFrom, LocalDateTime dateTo);
 
-	List<Integer> findMovementWhereData(Integer medicalCode, String medicalType, String wardId, String movType,
+	List<Movement> findMovementWhereData(Integer medicalCode, String medicalType, String wardId, String movType,
 			LocalDateTime movFrom, LocalDateTime movTo, LocalDateTime lotPrepFrom,
 			LocalDateTime lotPrepTo, LocalDateTime lotDueFrom, LocalDateTime lotDueTo);
 
-	List<Integer> findMovementForPrint(String medicalDescription, String medicalTypeCode, String wardId,
+	/**
+	 * Same as {@link #findMovementWhereData(Integer, String, String, String, LocalDateTime, LocalDateTime, LocalDateTime, LocalDateTime,
+	 * LocalDateTime, LocalDateTime) findMovementWhereData} but reads the rows through a forward-only cursor, clearing the
+	 * persistence context at regular intervals, so the returned {@link Movement}s end up detached. Pending changes are flushed
+	 * before reading. The stream must be consumed inside a transaction and closed afterwards; with MySQL Connector/J the rows
+	 * are streamed only if the JDBC url sets {@code useCursorFetch=true}.
+	 */
+	Stream<Movement> streamMovementWhereData(Integer medicalCode, String medicalType, String wardId, String movType,
+			LocalDateTime movFrom, LocalDateTime movTo, LocalDateTime lotPrepFrom,
+			LocalDateTime lotPrepTo, LocalDateTime lotDueFrom, LocalDateTime lotDueTo);
+
+	Page<Movement> findMovementWhereData(Integer medicalCode, String medicalType, String wardId, String movType,
+			LocalDateTime movFrom, LocalDateTime movTo, LocalDateTime lotPrepFrom,
+			LocalDateTime lotPrepTo, LocalDateTime lotDueFrom, LocalDateTime lotDueTo, Pageable pageable);
+
+	List<Movement> findMovementForPrint(String medicalDescription, String medicalTypeCode, String wardId,
 			String movType, LocalDateTime movFrom, LocalDateTime movTo, String lotCode, MovementOrder order);
 
 }
@@ -24,15 +24,19 @@ package org.isf.medicalstock.service;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.JoinType;
 import jakarta.persistence.criteria.Order;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
 
+import org.hibernate.jpa.HibernateHints;
 import org.isf.medicals.model.Medical;
 import org.isf.medicalstock.model.Lot;
 import org.isf.medicalstock.model.Movement;
@@ -41,6 +45,9 @@ import org.isf.medstockmovtype.model.MovementType;
 import org.isf.medtype.model.MedicalType;
 import org.isf.utils.time.TimeTools;
 import org.isf.ward.model.Ward;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
 import org.springframework.transaction.annotation.Transactional;
 
 @Transactional
@@ -53,20 +60,42 @@ public class MovementIoOperationRepositoryImpl implements MovementIoOperationRep
 	private static final String MEDICAL = "medical";
 	private static final String LOT = "lot";
 	private static final String TYPE = "type";
+	private static final String SUPPLIER = "supplier";
 	private static final String DESCRIPTION = "description";
 
+	/**
+	 * Number of rows fetched per round trip when streaming movements with a forward-only cursor, and read between two
+	 * clears of the persistence context. The MariaDB driver honours the fetch size as is, MySQL Connector/J only when the
+	 * JDBC url sets {@code useCursorFetch=true} (otherwise it reads the whole result set on execute).
+	 */
+	private static final int STREAM_FETCH_SIZE = 500;
+
 	@PersistenceContext
 	private EntityManager entityManager;
 
-	@SuppressWarnings("unchecked")
 	@Override
-	public List<Integer> findMovementWhereDatesAndId(String wardId, LocalDateTime dateFrom, LocalDateTime dateTo) {
+	public List<Movement> findMovementWhereDatesAndId(String wardId, LocalDateTime dateFrom, LocalDateTime dateTo) {
 		return getMovementWhereDatesAndId(wardId, dateFrom, dateTo);
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
-	public List<Integer> findMovementWhereData(
+	public List<Movement> findMovementWhereData(
+					Integer medicalCode,
+					String medicalType,
+					String wardId,
+					String movType,
+					LocalDateTime movFrom,
+					LocalDateTime movTo,
+					LocalDateTime lotPrepFrom,
+					LocalDateTime lotPrepTo,
+					LocalDateTime lotDueFrom,
+					LocalDateTime lotDueTo) {
+		return entityManager.createQuery(getMovementWhereDataQuery(medicalCode, medicalType, wardId, movType, movFrom, movTo,
+						lotPrepFrom, lotPrepTo, lotDueFrom, lotDueTo)).getResultList();
+	}
+
+	@Override
+	public Stream<Movement> streamMovementWhereData(
 					Integer medicalCode,
 					String medicalType,
 					String wardId,
@@ -77,13 +106,47 @@ public class MovementIoOperationRepositoryImpl implements MovementIoOperationRep
 					LocalDateTime lotPrepTo,
 					LocalDateTime lotDueFrom,
 					LocalDateTime lotDueTo) {
-		return getMovementWhereData(medicalCode, medicalType, wardId, movType, movFrom, movTo,
+		// clearing would discard the pending changes
+		entityManager.flush();
+		return entityManager.createQuery(getMovementWhereDataQuery(medicalCode, medicalType, wardId, movType, movFrom, movTo,
+						lotPrepFrom, lotPrepTo, lotDueFrom, lotDueTo))
+						.setHint(HibernateHints.HINT_FETCH_SIZE, STREAM_FETCH_SIZE)
+						.setHint(HibernateHints.HINT_READ_ONLY, true)
+						.getResultStream()
+						.map(clearEvery(STREAM_FETCH_SIZE));
+	}
+
+	@Override
+	public Page<Movement> findMovementWhereData(
+					Integer medicalCode,
+					String medicalType,
+					String wardId,
+					String movType,
+					LocalDateTime movFrom,
+					LocalDateTime movTo,
+					LocalDateTime lotPrepFrom,
+					LocalDateTime lotPrepTo,
+					LocalDateTime lotDueFrom,
+					LocalDateTime lotDueTo,
+					Pageable pageable) {
+		List<Movement> movements = entityManager.createQuery(getMovementWhereDataQuery(medicalCode, medicalType, wardId, movType, movFrom, movTo,
+						lotPrepFrom, lotPrepTo, lotDueFrom, lotDueTo))
+						.setFirstResult((int) pageable.getOffset())
+						.setMaxResults(pageable.getPageSize())
+						.getResultList();
+
+		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Long> countQuery = builder.createQuery(Long.class);
+		Root<Movement> countRoot = countQuery.from(Movement.class);
+		List<Predicate> countPredicates = getMovementWhereDataPredicates(builder, countRoot, medicalCode, medicalType, wardId, movType, movFrom, movTo,
 						lotPrepFrom, lotPrepTo, lotDueFrom, lotDueTo);
+		countQuery.select(builder.count(countRoot)).where(countPredicates.toArray(new Predicate[] {}));
+		Long total = entityManager.createQuery(countQuery).getSingleResult();
+		return new PageImpl<>(movements, pageable, total);
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
-	public List<Integer> findMovementForPrint(
+	public List<Movement> findMovementForPrint(
 					String medicalDescription,
 					String medicalTypeCode,
 					String wardId,
@@ -96,11 +159,63 @@ public class MovementIoOperationRepositoryImpl implements MovementIoOperationRep
 						lotCode, order);
 	}
 
-	private List<Integer> getMovementWhereDatesAndId(String wardId, LocalDateTime dateFrom, LocalDateTime dateTo) {
+	/**
+	 * Fetches in the same query all the associations of a {@link Movement}, so that each row
+	 * comes back fully hydrated and no further select is issued to resolve them.
+	 *
+	 * @param root the {@link Movement} query root.
+	 */
+	private static void fetchAssociations(Root<Movement> root) {
+		root.fetch(MEDICAL, JoinType.INNER).fetch(TYPE, JoinType.LEFT);
+		root.fetch(TYPE, JoinType.INNER);
+		root.fetch(WARD, JoinType.LEFT);
+		root.fetch(LOT, JoinType.LEFT);
+		root.fetch(SUPPLIER, JoinType.LEFT);
+	}
+
+	/**
+	 * Clears the persistence context every {@code rows} streamed rows, so that neither the streamed entities nor their
+	 * associations pile up in it while the cursor is read. Pending changes must be flushed before opening the cursor.
+	 *
+	 * @param rows the number of rows read between two clears.
+	 * @return the identity mapping of the streamed rows, clearing the context as a side effect.
+	 */
+	private <T> UnaryOperator<T> clearEvery(int rows) {
+		int[] read = { 0 };
+		return row -> {
+			if (++read[0] % rows == 0) {
+				entityManager.clear();
+			}
+			return row;
+		};
+	}
+
+	private CriteriaQuery<Movement> getMovementWhereDataQuery(
+					Integer medicalCode,
+					String medicalType,
+					String wardId,
+					String movType,
+					LocalDateTime movFrom,
+					LocalDateTime movTo,
+					LocalDateTime lotPrepFrom,
+					LocalDateTime lotPrepTo,
+					LocalDateTime lotDueFrom,
+					LocalDateTime lotDueTo) {
+		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Movement> query = builder.createQuery(Movement.class);
+		Root<Movement> root = query.from(Movement.class);
+		fetchAssociations(root);
+		List<Predicate> predicates = getMovementWhereDataPredicates(builder, root, medicalCode, medicalType, wardId, movType, movFrom, movTo,
+						lotPrepFrom, lotPrepTo, lotDueFrom, lotDueTo);
+		return query.select(root).where(predicates.toArray(new Predicate[] {})).orderBy(getMovementWhereDataOrder(builder, root));
+	}
+
+	private List<Movement> getMovementWhereDatesAndId(String wardId, LocalDateTime dateFrom, LocalDateTime dateTo) {
 		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
-		CriteriaQuery<Integer> query = builder.createQuery(Integer.class);
+		CriteriaQuery<Movement> query = builder.createQuery(Movement.class);
 		Root<Movement> root = query.from(Movement.class);
-		query.select(root.<Integer> get(CODE));
+		fetchAssociations(root);
+		query.select(root);
 		List<Predicate> predicates = new ArrayList<>();
 
 		if ((dateFrom != null) && (dateTo != null)) {
@@ -117,7 +232,9 @@ public class MovementIoOperationRepositoryImpl implements MovementIoOperationRep
 		return entityManager.createQuery(query).getResultList();
 	}
 
-	private List<Integer> getMovementWhereData(
+	private List<Predicate> getMovementWhereDataPredicates(
+					CriteriaBuilder builder,
+					Root<Movement> root,
 					Integer medicalCode,
 					String medicalType,
 					String wardId,
@@ -128,10 +245,6 @@ public class MovementIoOperationRepositoryImpl implements MovementIoOperationRep
 					LocalDateTime lotPrepTo,
 					LocalDateTime lotDueFrom,
 					LocalDateTime lotDueTo) {
-		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
-		CriteriaQuery<Integer> query = builder.createQuery(Integer.class);
-		Root<Movement> root = query.from(Movement.class);
-		query.select(root.<Integer> get(CODE));
 		List<Predicate> predicates = new ArrayList<>();
 
 		if (medicalCode != null) {
@@ -161,15 +274,17 @@ public class MovementIoOperationRepositoryImpl implements MovementIoOperationRep
 		if (wardId != null) {
 			predicates.add(builder.equal(root.<Ward> get(WARD).<String> get(CODE), wardId));
 		}
+		return predicates;
+	}
 
+	private List<Order> getMovementWhereDataOrder(CriteriaBuilder builder, Root<Movement> root) {
 		List<Order> orderList = new ArrayList<>();
 		orderList.add(builder.desc(root.get(CODE)));
 		orderList.add(builder.desc(root.get(REF_NO)));
-		query.where(predicates.toArray(new Predicate[] {})).orderBy(orderList);
-		return entityManager.createQuery(query).getResultList();
+		return orderList;
 	}
 
-	private List<Integer> getMovementForPrint(
+	private List<Movement> getMovementForPrint(
 					String medicalDescription,
 					String medicalTypeCode,
 					String wardId,
@@ -179,9 +294,10 @@ public class MovementIoOperationRepositoryImpl implements MovementIoOperationRep
 					String lotCode,
 					MovementOrder order) {
 		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
-		CriteriaQuery<Integer> query = builder.createQuery(Integer.class);
+		CriteriaQuery<Movement> query = builder.createQuery(Movement.class);
 		Root<Movement> root = query.from(Movement.class);
-		query.select(root.<Integer> get(CODE));
+		fetchAssociations(root);
+		query.select(root);
 		List<Predicate> predicates = new ArrayList<>();
 
 		if (medicalDescription != null) {
@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 
 import org.isf.generaldata.MessageBundle;
 import org.isf.medicals.model.Medical;
@@ -115,6 +116,17 @@ public class MovWardBrowserManager {
 		return ioOperations.getMedicalsWardTotalQuantity(wardId);
 	}
 
+	/**
+	 * Gets the current quantity of each medical in the specified ward, regardless the lot.
+	 *
+	 * @param wardId the ward id, if {@code null} the quantities are counted for the whole hospital.
+	 * @return the quantities by medical code.
+	 * @throws OHServiceException
+	 */
+	public Map<Integer, Double> getQuantitiesInWard(String wardId) throws OHServiceException {
+		return ioOperations.getQuantitiesInWard(wardId);
+	}
+
 	/**
 	 * Gets all the movement ward with the specified criteria.
 	 *
@@ -61,6 +61,12 @@ public interface MedicalStockWardIoOperationRepository extends JpaRepository<Med
 	@Query(value = "UPDATE OH_MEDICALDSRWARD SET MDSRWRD_OUT_QTI = MDSRWRD_OUT_QTI + :quantity WHERE MDSRWRD_WRD_ID_A = :ward AND MDSRWRD_MDSR_ID = :medical AND MDSRWRD_LT_ID_A = :lot ", nativeQuery = true)
 	void updateOutQuantity(@Param("quantity") Double quantity, @Param("ward") String ward, @Param("medical") int medical, @Param("lot") String lot);
 
+	@Modifying
+	@Query(value = "UPDATE OH_MEDICALDSRWARD SET MDSRWRD_IN_QTI = MDSRWRD_IN_QTI + :inQuantity, MDSRWRD_OUT_QTI = MDSRWRD_OUT_QTI + :outQuantity " +
+			"WHERE MDSRWRD_WRD_ID_A = :ward AND MDSRWRD_MDSR_ID = :medical AND MDSRWRD_LT_ID_A = :lot", nativeQuery = true)
+	int updateQuantity(@Param("inQuantity") Double inQuantity, @Param("outQuantity") Double outQuantity, @Param("ward") String ward,
+			@Param("medical") int medical, @Param("lot") String lot);
+
 	@Modifying
 	@Query(value = "INSERT INTO OH_MEDICALDSRWARD (MDSRWRD_WRD_ID_A, MDSRWRD_MDSR_ID, MDSRWRD_IN_QTI, MDSRWRD_OUT_QTI, MDSRWRD_LT_ID_A) VALUES (?, ?, ?, '0', ?)", nativeQuery = true)
 	void insertMedicalWard(@Param("ward") String ward, @Param("medical") int medical, @Param("quantity") Double quantity, @Param("lot") String lot);
@@ -72,10 +78,20 @@ public interface MedicalStockWardIoOperationRepository extends JpaRepository<Med
 	@Query(value = "update MedicalWard set out_quantity=out_quantity+:quantity where id.ward.code=:ward and id.medical.code=:medical")
 	void updateOutQuantity(@Param("quantity") Double quantity, @Param("ward") String ward, @Param("medical") int medical);
 
-	@Query(value = "select medWard from MedicalWard medWard where medWard.id.ward.code=:ward")
+	@Query(value = "select medWard from MedicalWard medWard join fetch medWard.id.ward join fetch medWard.id.medical join fetch medWard.id.lot " +
+			"where medWard.id.ward.code=:ward")
 	List<MedicalWard> findAllWhereWard(@Param("ward") String wordCode);
 
-	@Query(value = "select medWard from MedicalWard medWard where medWard.id.ward.code=:ward and medWard.id.medical.code = :medical")
+	@Query(value = "select medWard from MedicalWard medWard join fetch medWard.id.ward join fetch medWard.id.medical join fetch medWard.id.lot " +
+			"where medWard.id.ward.code=:ward and medWard.id.medical.code = :medical")
 	List<MedicalWard> findAllWhereWardAndMedical(@Param("ward") String wardId, @Param("medical") int medId);
 
+	@Query(value = "select medWard.id.medical.code, sum(medWard.in_quantity-medWard.out_quantity) from MedicalWard medWard " +
+			"where medWard.id.ward.code=:ward group by medWard.id.medical.code")
+	List<Object[]> findQuantitiesInWardGroupByMedical(@Param("ward") String ward);
+
+	@Query(value = "select medWard.id.medical.code, sum(medWard.in_quantity-medWard.out_quantity) from MedicalWard medWard " +
+			"group by medWard.id.medical.code")
+	List<Object[]> findQuantitiesGroupByMedical();
+
 }
@@ -29,6 +29,7 @@ import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.JoinType;
 import jakarta.persistence.criteria.Order;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
@@ -45,18 +46,22 @@ public class MedicalStockWardIoOperationRepositoryImpl implements MedicalStockWa
 	private static final String WARD = "ward";
 	private static final String DATE = "date";
 	private static final String CODE = "code";
+	private static final String[] FETCHED_ASSOCIATIONS = { WARD, "lot", "patient", "medical", "wardTo", "wardFrom" };
 
 	@PersistenceContext
 	private EntityManager entityManager;
 
-	@SuppressWarnings("unchecked")
 	@Override
-	public List<Integer> findAllWardMovement(String wardId, LocalDateTime dateFrom, LocalDateTime dateTo) {
+	public List<MovementWard> findAllWardMovement(String wardId, LocalDateTime dateFrom, LocalDateTime dateTo) {
 
 		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
-		CriteriaQuery<Integer> query = builder.createQuery(Integer.class);
+		CriteriaQuery<MovementWard> query = builder.createQuery(MovementWard.class);
 		Root<MovementWard> root = query.from(MovementWard.class);
-		query.select(root.<Integer>get(CODE));
+		// the to-one associations are eager: fetch them with the movements instead of one select per row
+		for (String association : FETCHED_ASSOCIATIONS) {
+			root.fetch(association, JoinType.LEFT);
+		}
+		query.select(root);
 		List<Predicate> predicates = new ArrayList<>();
 
 		if (StringUtils.isNotEmpty(wardId)) {
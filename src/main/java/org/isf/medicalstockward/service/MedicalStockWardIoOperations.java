@@ -23,7 +23,10 @@ package org.isf.medicalstockward.service;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.isf.medicals.model.Medical;
 import org.isf.medicalstock.model.Lot;
@@ -70,15 +73,7 @@ public class MedicalStockWardIoOperations {
 	 * @throws OHServiceException if an error occurs retrieving the movements.
 	 */
 	public List<MovementWard> getWardMovements(String wardId, LocalDateTime dateFrom, LocalDateTime dateTo) throws OHServiceException {
-		List<MovementWard> pMovementWard = new ArrayList<>();
-
-		List<Integer> pMovementWardCode = new ArrayList<>(repository.findAllWardMovement(wardId, TimeTools.truncateToSeconds(dateFrom),
-						TimeTools.truncateToSeconds(dateTo)));
-		for (Integer code : pMovementWardCode) {
-			MovementWard movementWard = movementRepository.findById(code).orElse(null);
-			pMovementWard.add(movementWard);
-		}
-		return pMovementWard;
+		return repository.findAllWardMovement(wardId, TimeTools.truncateToSeconds(dateFrom), TimeTools.truncateToSeconds(dateTo));
 	}
 
 	/**
@@ -133,6 +128,26 @@ public class MedicalStockWardIoOperations {
 	 * @throws OHServiceException if an error occurs.
 	 */
 	public void newMovementWard(MovementWard movement) throws OHServiceException {
+		MedicalWardDeltas deltas = new MedicalWardDeltas();
+		saveMovementWard(movement, deltas);
+		deltas.apply(repository);
+	}
+
+	/**
+	 * Stores the specified {@link Movement} list. The quantities of the ward stock are updated once for each ward, medical and
+	 * lot, after all the movements are stored.
+	 * @param movements the movement to store.
+	 * @throws OHServiceException if an error occurs.
+	 */
+	public void newMovementWard(List<MovementWard> movements) throws OHServiceException {
+		MedicalWardDeltas deltas = new MedicalWardDeltas();
+		for (MovementWard movement : movements) {
+			saveMovementWard(movement, deltas);
+		}
+		deltas.apply(repository);
+	}
+
+	private void saveMovementWard(MovementWard movement, MedicalWardDeltas deltas) {
 		MovementWard savedMovement = movementRepository.save(movement);
 		if (savedMovement.getWardTo() != null) {
 			// We have to register also the income movement for the destination Ward
@@ -147,18 +162,7 @@ public class MedicalStockWardIoOperations {
 			destinationWardIncomeMovement.setlot(savedMovement.getLot());
 			movementRepository.save(destinationWardIncomeMovement);
 		}
-		updateStockWardQuantity(movement);
-	}
-
-	/**
-	 * Stores the specified {@link Movement} list.
-	 * @param movements the movement to store.
-	 * @throws OHServiceException if an error occurs.
-	 */
-	public void newMovementWard(List<MovementWard> movements) throws OHServiceException {
-		for (MovementWard movement : movements) {
-			newMovementWard(movement);
-		}
+		addStockWardQuantity(movement, deltas);
 	}
 
 	/**
@@ -186,48 +190,21 @@ public class MedicalStockWardIoOperations {
 	 * @throws OHServiceException if an error occurs during the update.
 	 */
 	protected void updateStockWardQuantity(MovementWard movement) throws OHServiceException {
-		Double qty = movement.getQuantity();
-		String ward = movement.getWard().getCode();
-		String lot = movement.getLot().getCode();
-		String wardTo = null;
+		MedicalWardDeltas deltas = new MedicalWardDeltas();
+		addStockWardQuantity(movement, deltas);
+		deltas.apply(repository);
+	}
+
+	private void addStockWardQuantity(MovementWard movement, MedicalWardDeltas deltas) {
+		double qty = movement.getQuantity();
 		if (movement.getWardTo() != null) {
 			// in case of a mvnt from the ward movement.getWard() to the ward movement.getWardTO()
-			wardTo = movement.getWardTo().getCode();
-		}
-		Integer medical = movement.getMedical().getCode();
-
-		if (wardTo != null) {
-			MedicalWard medicalWardTo = repository.findOneWhereCodeAndMedicalAndLot(wardTo, medical, lot);
-			if (medicalWardTo != null) {
-				repository.updateInQuantity(Math.abs(qty), wardTo, medical, lot);
-			} else {
-				MedicalWard medicalWard = new MedicalWard();
-				medicalWard.setWard(movement.getWardTo());
-				medicalWard.setMedical(movement.getMedical());
-				medicalWard.setIn_quantity((float) Math.abs(qty));
-				medicalWard.setOut_quantity(0.0f);
-				medicalWard.setLot(movement.getLot());
-				repository.save(medicalWard);
-			}
-			repository.updateOutQuantity(Math.abs(qty), ward, medical, lot);
-			return;
-		}
-
-		MedicalWard medicalWard = repository.findOneWhereCodeAndMedicalAndLot(ward, medical, lot);
-		if (medicalWard == null) {
-			medicalWard = new MedicalWard();
-			medicalWard.setWard(movement.getWard());
-			medicalWard.setMedical(movement.getMedical());
-			medicalWard.setIn_quantity((float) -qty);
-			medicalWard.setOut_quantity(0.0f);
-			medicalWard.setLot(movement.getLot());
-			repository.save(medicalWard);
+			deltas.addIn(movement.getWardTo(), movement.getMedical(), movement.getLot(), Math.abs(qty));
+			deltas.addOut(movement.getWard(), movement.getMedical(), movement.getLot(), Math.abs(qty));
+		} else if (qty < 0) {
+			deltas.addIn(movement.getWard(), movement.getMedical(), movement.getLot(), -qty);
 		} else {
-			if (qty < 0) {
-				repository.updateInQuantity(-qty, ward, medical, lot); // TODO: change to jpa
-			} else {
-				repository.updateOutQuantity(qty, ward, medical, lot); // TODO: change to jpa
-			}
+			deltas.addOut(movement.getWard(), movement.getMedical(), movement.getLot(), qty);
 		}
 	}
 
@@ -259,14 +236,11 @@ public class MedicalStockWardIoOperations {
 		} else {
 			medicalWards = repository.findAllWhereWardAndMedical(wardId, medId);
 		}
-		for (int i = 0; i < medicalWards.size(); i++) {
-			double qty = medicalWards.get(i).getIn_quantity() - medicalWards.get(i).getOut_quantity();
-			medicalWards.get(i).setQty(qty);
-
-			if (stripeEmpty && qty == 0) {
-				medicalWards.remove(i);
-				i = i - 1;
-			}
+		for (MedicalWard medicalWard : medicalWards) {
+			medicalWard.setQty((double) (medicalWard.getIn_quantity() - medicalWard.getOut_quantity()));
+		}
+		if (stripeEmpty) {
+			medicalWards.removeIf(medicalWard -> medicalWard.getQty() == 0);
 		}
 		return medicalWards;
 
@@ -288,20 +262,34 @@ public class MedicalStockWardIoOperations {
 	 * @throws OHServiceException
 	 */
 	public List<MedicalWard> getMedicalsWardTotalQuantity(String wardId) throws OHServiceException {
-		String wardID = String.valueOf(wardId);
 		List<MedicalWard> medicalWards = getMedicalsWard(wardId, true);
+		Map<Integer, Double> quantities = getQuantitiesInWard(wardId);
 
-		List<MedicalWard> medicalWardsQty = new ArrayList<>();
-
+		Map<Integer, MedicalWard> medicalWardsQty = new LinkedHashMap<>();
 		for (MedicalWard medicalWard : medicalWards) {
-
-			if (!medicalWardsQty.contains(medicalWard)) {
-				Double qty = repository.findQuantityInWardWhereMedicalAndWard(medicalWard.getId().getMedical().getCode(), wardID);
-				medicalWard.setQty(qty);
-				medicalWardsQty.add(medicalWard);
+			Integer medicalCode = medicalWard.getMedical().getCode();
+			if (!medicalWardsQty.containsKey(medicalCode)) {
+				medicalWard.setQty(quantities.get(medicalCode));
+				medicalWardsQty.put(medicalCode, medicalWard);
 			}
 		}
-		return medicalWardsQty;
+		return new ArrayList<>(medicalWardsQty.values());
+	}
+
+	/**
+	 * Gets the current quantity of each {@link Medical} in the specified {@link Ward}, regardless the lot, with a single
+	 * grouped query. The per-lot quantities are returned by {@link #getMedicalsWard(String, boolean)}.
+	 * @param wardId the ward id, if {@code null} the quantities are counted for the whole hospital.
+	 * @return the quantities by medical code.
+	 * @throws OHServiceException if an error occurs retrieving the quantities.
+	 */
+	public Map<Integer, Double> getQuantitiesInWard(String wardId) throws OHServiceException {
+		Map<Integer, Double> quantities = new HashMap<>();
+		List<Object[]> rows = wardId != null ? repository.findQuantitiesInWardGroupByMedical(wardId) : repository.findQuantitiesGroupByMedical();
+		for (Object[] row : rows) {
+			quantities.put((Integer) row[0], row[1] != null ? ((Number) row[1]).doubleValue() : 0.0);
+		}
+		return quantities;
 	}
 
 	/**
@@ -0,0 +1,89 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2024 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.isf.medicalstockward.service;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.isf.medicals.model.Medical;
+import org.isf.medicalstock.model.Lot;
+import org.isf.medicalstockward.model.MedicalWard;
+import org.isf.ward.model.Ward;
+
+/**
+ * The quantities to add to the {@link MedicalWard} rows touched by a set of ward movements, coalesced by ward, medical
+ * and lot. Every row is then changed with a single relative update, so concurrent dispensing never reads and writes
+ * back a stale quantity, and rows are always updated in the same order to keep concurrent transactions from
+ * deadlocking on each other.
+ */
+final class MedicalWardDeltas {
+
+	private static final Comparator<Key> KEY_ORDER = Comparator.comparing(Key::ward).thenComparingInt(Key::medical).thenComparing(Key::lot);
+
+	private record Key(String ward, int medical, String lot) {
+	}
+
+	private static final class Delta {
+
+		private final Ward ward;
+		private final Medical medical;
+		private final Lot lot;
+		private double inQuantity;
+		private double outQuantity;
+
+		private Delta(Ward ward, Medical medical, Lot lot) {
+			this.ward = ward;
+			this.medical = medical;
+			this.lot = lot;
+		}
+	}
+
+	private final Map<Key, Delta> deltas = new TreeMap<>(KEY_ORDER);
+
+	void addIn(Ward ward, Medical medical, Lot lot, double quantity) {
+		delta(ward, medical, lot).inQuantity += quantity;
+	}
+
+	void addOut(Ward ward, Medical medical, Lot lot, double quantity) {
+		delta(ward, medical, lot).outQuantity += quantity;
+	}
+
+	/**
+	 * Applies the deltas, creating the {@link MedicalWard} rows not stored yet.
+	 */
+	void apply(MedicalStockWardIoOperationRepository repository) {
+		for (Map.Entry<Key, Delta> entry : deltas.entrySet()) {
+			Key key = entry.getKey();
+			Delta delta = entry.getValue();
+			int updated = repository.updateQuantity(delta.inQuantity, delta.outQuantity, key.ward(), key.medical(), key.lot());
+			if (updated == 0) {
+				repository.save(new MedicalWard(delta.ward, delta.medical, (float) delta.inQuantity, (float) delta.outQuantity, delta.lot));
+			}
+		}
+		deltas.clear();
+	}
+
+	private Delta delta(Ward ward, Medical medical, Lot lot) {
+		return deltas.computeIfAbsent(new Key(ward.getCode(), medical.getCode(), lot.getCode()), key -> new Delta(ward, medical, lot));
+	}
+}
@@ -33,7 +33,10 @@ import org.isf.accounting.model.Bill;
 import org.isf.admission.manager.AdmissionBrowserManager;
 import org.isf.generaldata.MessageBundle;
 import org.isf.patient.model.Patient;
+import org.isf.patient.model.PatientDuplicate;
+import org.isf.patient.model.PatientDuplicatePair;
 import org.isf.patient.model.PatientProfilePhoto;
+import org.isf.patient.service.PatientDuplicateIoOperations;
 import org.isf.patient.service.PatientIoOperations;
 import org.isf.utils.exception.OHDataValidationException;
 import org.isf.utils.exception.OHServiceException;
@@ -47,6 +50,8 @@ public class PatientBrowserManager {
 
 	private final PatientIoOperations ioOperations;
 
+	private final PatientDuplicateIoOperations duplicateIoOperations;
+
 	private final AdmissionBrowserManager admissionManager;
 
 	private final BillBrowserManager billManager;
@@ -55,8 +60,10 @@ public class PatientBrowserManager {
 
 	protected LinkedHashMap<String, String> professionHashMap;
 
-	public PatientBrowserManager(PatientIoOperations ioOperations, AdmissionBrowserManager admissionManager, BillBrowserManager billManager) {
+	public PatientBrowserManager(PatientIoOperations ioOperations, PatientDuplicateIoOperations duplicateIoOperations,
+					AdmissionBrowserManager admissionManager, BillBrowserManager billManager) {
 		this.ioOperations = ioOperations;
+		this.duplicateIoOperations = duplicateIoOperations;
 		this.admissionManager = admissionManager;
 		this.billManager = billManager;
 	}
@@ -277,6 +284,29 @@ public class PatientBrowserManager {
 		return ioOperations.isPatientPresentByName(name);
 	}
 
+	/**
+	 * Method that returns the registered {@link Patient}s that could be the same person as the passed one, comparing
+	 * names phonetically and with a similarity score, birth year and city. To be used while registering a new patient.
+	 *
+	 * @param patient
+	 *            - the {@link Patient} to check
+	 * @return the likely duplicates, the most similar first (could be empty)
+	 * @throws OHServiceException
+	 */
+	public List<PatientDuplicate> getDuplicatePatients(Patient patient) throws OHServiceException {
+		return duplicateIoOperations.getDuplicates(patient, PatientDuplicateIoOperations.DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Method that scans the whole registry for {@link Patient}s that could be registered more than once.
+	 *
+	 * @return the likely duplicates, the most similar first (could be empty)
+	 * @throws OHServiceException
+	 */
+	public List<PatientDuplicatePair> getAllDuplicatePatients() throws OHServiceException {
+		return duplicateIoOperations.getAllDuplicates(PatientDuplicateIoOperations.DEFAULT_THRESHOLD);
+	}
+
 	/**
 	 * Method that returns the full list of {@link Patient}s not logically deleted, having the passed String in:<br>
 	 * - code<br>
@@ -294,10 +324,50 @@ public class PatientBrowserManager {
 		return ioOperations.getPatientsByOneOfFieldsLike(keyword);
 	}
 
+	/**
+	 * Method that returns a page of the {@link Patient}s not logically deleted, having the passed String in one of the
+	 * fields searched by {@link #getPatientsByOneOfFieldsLike(String)}.
+	 *
+	 * @param keyword
+	 *            - String to search, {@code null} for full list
+	 * @param page
+	 *            - the page number
+	 * @param size
+	 *            - the page size
+	 * @return the requested page of {@link Patient}s (could be empty)
+	 * @throws OHServiceException
+	 */
+	public PagedResponse<Patient> getPatientsByOneOfFieldsLikePageable(String keyword, int page, int size) throws OHServiceException {
+		return ioOperations.getPatientsByOneOfFieldsLikePageable(keyword, page, size);
+	}
+
+	/**
+	 * Rebuilds the patient search index and the duplicate detection keys, to be run once after upgrading
+	 * and every time {@code PATIENTSEARCHINDEX} is switched on.
+	 *
+	 * @return the number of indexed patients.
+	 * @throws OHServiceException
+	 */
+	public int rebuildSearchIndex() throws OHServiceException {
+		return ioOperations.rebuildSearchIndex();
+	}
+
 	public PatientProfilePhoto retrievePatientProfilePhoto(Patient patient) throws OHServiceException {
 		return ioOperations.retrievePatientProfilePhoto(patient);
 	}
 
+	/**
+	 * Method that returns a thumbnail of the {@link Patient}'s photo, for list views.
+	 *
+	 * @param code
+	 *            - the patient code
+	 * @return the PNG thumbnail or {@code null} if the patient has no photo
+	 * @throws OHServiceException
+	 */
+	public byte[] getPatientPhotoThumbnail(Integer code) throws OHServiceException {
+		return ioOperations.getPatientPhotoThumbnail(code);
+	}
+
 	/**
 	 * Method that merges {@link Patient}s and all clinic details under the same PAT_ID.
 	 *
@@ -0,0 +1,130 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2024 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.isf.patient.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * The blocking keys of a {@link Patient} used to look for duplicates: the phonetic encodings of the first and second name,
+ * together with the normalized name, birth year and city used to score the candidates without reading {@code OH_PATIENT}.
+ */
+@Entity
+@Table(name = "OH_PATIENT_DUPLICATE_KEY", indexes = {
+	@Index(name = "IDX_PATIENT_DUPLICATE_FIRST_KEY", columnList = "PDK_FIRST_KEY"),
+	@Index(name = "IDX_PATIENT_DUPLICATE_SECOND_KEY", columnList = "PDK_SECOND_KEY")
+})
+public class PatientDuplicateKey {
+
+	@Id
+	@Column(name = "PDK_PAT_ID")
+	private int patientCode;
+
+	@NotNull
+	@Column(name = "PDK_FIRST_KEY", length = 20)
+	private String firstKey;
+
+	@NotNull
+	@Column(name = "PDK_SECOND_KEY", length = 20)
+	private String secondKey;
+
+	@NotNull
+	@Column(name = "PDK_NAME", length = 100)
+	private String name;
+
+	@Column(name = "PDK_BIRTH_YEAR")
+	private Integer birthYear;
+
+	@Column(name = "PDK_CITY", length = 50)
+	private String city;
+
+	public PatientDuplicateKey() {
+	}
+
+	public PatientDuplicateKey(int patientCode, String firstKey, String secondKey, String name, Integer birthYear, String city) {
+		this.patientCode = patientCode;
+		this.firstKey = firstKey;
+		this.secondKey = secondKey;
+		this.name = name;
+		this.birthYear = birthYear;
+		this.city = city;
+	}
+
+	public int getPatientCode() {
+		return patientCode;
+	}
+
+	public void setPatientCode(int patientCode) {
+		this.patientCode = patientCode;
+	}
+
+	public String getFirstKey() {
+		return firstKey;
+	}
+
+	public void setFirstKey(String firstKey) {
+		this.firstKey = firstKey;
+	}
+
+	public String getSecondKey() {
+		return secondKey;
+	}
+
+	public void setSecondKey(String secondKey) {
+		this.secondKey = secondKey;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public Integer getBirthYear() {
+		return birthYear;
+	}
+
+	public void setBirthYear(Integer birthYear) {
+		this.birthYear = birthYear;
+	}
+
+	public String getCity() {
+		return city;
+	}
+
+	public void setCity(String city) {
+		this.city = city;
+	}
+
+	@Override
+	public String toString() {
+		return "PatientDuplicateKey [patientCode=" + patientCode + ", firstKey=" + firstKey + ", secondKey=" + secondKey + ", name=" + name
+			+ ", birthYear=" + birthYear + ", city=" + city + ']';
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2024 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.isf.patient.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * An entry of the patient search index: one word found in the searchable fields of a {@link Patient}.
+ * Looking up {@code token like 'word%'} therefore finds every patient having a word starting with {@code word}.
+ */
+@Entity
+@Table(name = "OH_PATIENT_SEARCH_TOKEN", indexes = {
+	@Index(name = "IDX_PATIENT_SEARCH_TOKEN", columnList = "PST_TOKEN, PST_PAT_ID"),
+	@Index(name = "IDX_PATIENT_SEARCH_PATIENT", columnList = "PST_PAT_ID")
+})
+public class PatientSearchToken {
+
+	public static final int MAX_TOKEN_LENGTH = 50;
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "PST_ID")
+	private int id;
+
+	@NotNull
+	@Column(name = "PST_PAT_ID")
+	private int patientCode;
+
+	@NotNull
+	@Column(name = "PST_TOKEN", length = MAX_TOKEN_LENGTH)
+	private String token;
+
+	public PatientSearchToken() {
+	}
+
+	public PatientSearchToken(int patientCode, String token) {
+		this.patientCode = patientCode;
+		this.token = token;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public void setId(int id) {
+		this.id = id;
+	}
+
+	public int getPatientCode() {
+		return patientCode;
+	}
+
+	public void setPatientCode(int patientCode) {
+		this.patientCode = patientCode;
+	}
+
+	public String getToken() {
+		return token;
+	}
+
+	public void setToken(String token) {
+		this.token = token;
+	}
+
+	@Override
+	public String toString() {
+		return "PatientSearchToken [patientCode=" + patientCode + ", token=" + token + ']';
+	}
+
+}
@@ -21,15 +21,23 @@
  */
 package org.isf.patient.service;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.sql.Blob;
-import java.sql.SQLException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
-import javax.sql.rowset.serial.SerialBlob;
+import javax.imageio.ImageIO;
 
+import org.imgscalr.Scalr;
+import org.isf.generaldata.GeneralData;
 import org.isf.generaldata.MessageBundle;
 import org.isf.patient.model.Patient;
 import org.isf.patient.model.PatientProfilePhoto;
@@ -39,6 +47,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+/**
+ * Stores the patient photos as PNG files, one per patient.
+ * Recently read photos and their thumbnails are kept in size-bounded LRU caches; a cached entry is served only while the
+ * file keeps the same modification time and size, so that photos changed by other clients are read again.
+ */
 @Component
 public class FileSystemPatientPhotoRepository {
 
@@ -48,6 +61,14 @@ public class FileSystemPatientPhotoRepository {
 
 	private static final String IMAGE_FORMAT = ".png";
 
+	private static final long PHOTO_CACHE_MAX_BYTES = 16L * 1024 * 1024;
+
+	private static final long THUMBNAIL_CACHE_MAX_BYTES = 4L * 1024 * 1024;
+
+	private final PhotoCache photos = new PhotoCache(PHOTO_CACHE_MAX_BYTES);
+
+	private final PhotoCache thumbnails = new PhotoCache(THUMBNAIL_CACHE_MAX_BYTES);
+
 	public boolean exist(String path, Integer patientId) {
 		File patientIdFolder = new File(path);
 		File f = new File(patientIdFolder, patientId + IMAGE_FORMAT);
@@ -55,20 +76,86 @@ public class FileSystemPatientPhotoRepository {
 	}
 
 	public void loadInPatient(Patient patient, String path) throws OHServiceException {
+		PatientProfilePhoto patientProfilePhoto = new PatientProfilePhoto();
+		patient.setPatientProfilePhoto(patientProfilePhoto);
+		patientProfilePhoto.setPatient(patient);
+		patientProfilePhoto.setPhoto(load(path, patient.getCode()));
+	}
+
+	/**
+	 * Reads the photo of the specified patient. The returned array is a copy of the cached one and can be modified.
+	 *
+	 * @param path the photos folder.
+	 * @param patientId the patient code.
+	 * @return the PNG content, or {@code null} if the patient has no photo.
+	 * @throws OHServiceException if an error occurs reading the file.
+	 */
+	public byte[] load(String path, Integer patientId) throws OHServiceException {
+		Path file = getFile(path, patientId);
+		try {
+			BasicFileAttributes attributes = readAttributes(file);
+			if (attributes == null || attributes.isDirectory()) {
+				return null;
+			}
+			byte[] photo = photos.get(file, attributes);
+			if (photo == null) {
+				photo = Files.readAllBytes(file);
+				photos.put(file, attributes, photo);
+			}
+			return photo.clone();
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage(), e);
+			throw new OHServiceException(new OHExceptionMessage(MessageBundle.formatMessage(KEY_FILE_NOT_FOUND)));
+		}
+	}
+
+	/**
+	 * Returns a thumbnail of the photo of the specified patient, for list views. The returned array is a copy of the cached
+	 * one and can be modified.
+	 *
+	 * @param path the photos folder.
+	 * @param patientId the patient code.
+	 * @return the PNG thumbnail, or {@code null} if the patient has no photo.
+	 * @throws OHServiceException if an error occurs reading the file or scaling the image.
+	 */
+	public byte[] loadThumbnail(String path, Integer patientId) throws OHServiceException {
+		Path file = getFile(path, patientId);
 		try {
-			PatientProfilePhoto patientProfilePhoto = new PatientProfilePhoto();
-			patient.setPatientProfilePhoto(patientProfilePhoto);
-			patientProfilePhoto.setPatient(patient);
-			if (exist(path, patient.getCode())) {
-				Blob blob = this.load(patient.getCode(), path);
-				byte[] blobAsBytes =  blob.getBytes(1, (int) blob.length());
-				patientProfilePhoto.setPhoto(blobAsBytes);
+			BasicFileAttributes attributes = readAttributes(file);
+			if (attributes == null || attributes.isDirectory()) {
+				return null;
 			}
-		} catch (SQLException e) {
+			byte[] thumbnail = thumbnails.get(file, attributes);
+			if (thumbnail == null) {
+				thumbnail = createThumbnail(Files.readAllBytes(file));
+				thumbnails.put(file, attributes, thumbnail);
+			}
+			return thumbnail.clone();
+		} catch (IOException e) {
 			LOGGER.error(e.getMessage(), e);
 			throw new OHServiceException(new OHExceptionMessage(MessageBundle.formatMessage(KEY_FILE_NOT_FOUND)));
 		}
+	}
 
+	/**
+	 * Scales a photo down to {@link GeneralData#IMAGE_THUMBNAIL_MAX_WIDTH}, smaller photos are returned unchanged.
+	 *
+	 * @param photo the photo content.
+	 * @return the PNG thumbnail.
+	 * @throws IOException if the photo is not a readable image.
+	 */
+	public byte[] createThumbnail(byte[] photo) throws IOException {
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(photo));
+		if (image == null) {
+			throw new IOException("Unsupported image format");
+		}
+		if (image.getWidth() <= GeneralData.IMAGE_THUMBNAIL_MAX_WIDTH) {
+			return photo;
+		}
+		BufferedImage scaled = Scalr.resize(image, GeneralData.IMAGE_THUMBNAIL_MAX_WIDTH);
+		ByteArrayOutputStream thumbnail = new ByteArrayOutputStream();
+		ImageIO.write(scaled, "png", thumbnail);
+		return thumbnail.toByteArray();
 	}
 
 	public void save(String path, Integer patId, byte[] blob) throws OHServiceException {
@@ -77,6 +164,7 @@ public class FileSystemPatientPhotoRepository {
 			this.recurse(patientIdFolder);
 			File data = new File(patientIdFolder, patId + IMAGE_FORMAT);
 			save(data, blob);
+			evict(data.toPath());
 		} catch (Exception exception) {
 			LOGGER.error(exception.getMessage(), exception);
 			throw new OHServiceException(new OHExceptionMessage(MessageBundle.formatMessage("angal.dicommanager.genericerror.fmt.msg")));
@@ -87,24 +175,27 @@ public class FileSystemPatientPhotoRepository {
 		File patientIdFolder = new File(path);
 		File fdc = new File(patientIdFolder, patientId + IMAGE_FORMAT);
 		fdc.delete();
+		evict(fdc.toPath());
+	}
+
+	private Path getFile(String path, Integer patientId) {
+		return new File(new File(path), patientId + IMAGE_FORMAT).toPath();
 	}
 
-	private Blob load(Integer patientId, String path) throws OHServiceException {
+	private BasicFileAttributes readAttributes(Path file) throws IOException {
 		try {
-			File patientIdFolder = new File(path);
-			File fdc = new File(patientIdFolder, patientId + IMAGE_FORMAT);
-			byte[] byteArray;
-			try (FileInputStream fis = new FileInputStream(fdc)) {
-				byteArray = new byte[fis.available()];
-				fis.read(byteArray);
-			}
-			return new SerialBlob(byteArray);
-		} catch (IOException | SQLException e) {
-			LOGGER.error(e.getMessage(), e);
-			throw new OHServiceException(new OHExceptionMessage(MessageBundle.formatMessage(KEY_FILE_NOT_FOUND)));
+			return Files.readAttributes(file, BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			evict(file);
+			return null;
 		}
 	}
 
+	private void evict(Path file) {
+		photos.remove(file);
+		thumbnails.remove(file);
+	}
+
 	private void recurse(File f) throws IOException {
 		if (f.exists()) {
 			return;
@@ -127,4 +218,60 @@ public class FileSystemPatientPhotoRepository {
 		}
 	}
 
+	/**
+	 * Least recently used cache of file contents, bounded by the total size of the cached contents.
+	 */
+	private static final class PhotoCache {
+
+		private final long maxBytes;
+
+		private final LinkedHashMap<Path, CachedPhoto> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+		private long bytes;
+
+		private PhotoCache(long maxBytes) {
+			this.maxBytes = maxBytes;
+		}
+
+		private synchronized byte[] get(Path file, BasicFileAttributes attributes) {
+			CachedPhoto cached = entries.get(file);
+			if (cached == null) {
+				return null;
+			}
+			if (cached.lastModified() != attributes.lastModifiedTime().toMillis() || cached.size() != attributes.size()) {
+				remove(file);
+				return null;
+			}
+			return cached.content();
+		}
+
+		private synchronized void put(Path file, BasicFileAttributes attributes, byte[] content) {
+			remove(file);
+			if (content.length > maxBytes) {
+				return;
+			}
+			entries.put(file, new CachedPhoto(content, attributes.lastModifiedTime().toMillis(), attributes.size()));
+			bytes += content.length;
+			Iterator<CachedPhoto> eldest = entries.values().iterator();
+			while (bytes > maxBytes) {
+				bytes -= eldest.next().content().length;
+				eldest.remove();
+			}
+		}
+
+		private synchronized void remove(Path file) {
+			CachedPhoto removed = entries.remove(file);
+			if (removed != null) {
+				bytes -= removed.content().length;
+			}
+		}
+	}
+
+	/**
+	 * A cached file content, with the file modification time and size it was read with.
+	 */
+	private record CachedPhoto(byte[] content, long lastModified, long size) {
+
+	}
+
 }
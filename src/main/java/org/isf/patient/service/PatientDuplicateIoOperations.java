@@ -0,0 +1,304 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2024 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.isf.patient.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.apache.commons.codec.language.DoubleMetaphone;
+import org.isf.patient.model.Patient;
+import org.isf.patient.model.PatientDuplicate;
+import org.isf.patient.model.PatientDuplicateKey;
+import org.isf.patient.model.PatientDuplicatePair;
+import org.isf.utils.db.TranslateOHServiceException;
+import org.isf.utils.exception.OHServiceException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Looks for {@link Patient}s registered more than once. Candidates are selected by blocking keys, the phonetic encodings
+ * of first and second name kept in {@link PatientDuplicateKey} by {@link PatientSearchIndex}, and then scored on name
+ * similarity (Jaro-Winkler on the sorted name words, so that swapped names still match), birth year and city.
+ */
+@Service
+@Transactional(rollbackFor = OHServiceException.class)
+@TranslateOHServiceException
+public class PatientDuplicateIoOperations {
+
+	public static final double DEFAULT_THRESHOLD = 0.8;
+
+	private static final double NAME_WEIGHT = 0.75;
+
+	private static final double BIRTH_YEAR_WEIGHT = 0.15;
+
+	private static final double CITY_WEIGHT = 0.1;
+
+	private static final int KEY_LENGTH = 6;
+
+	private static final int MAX_NAME_LENGTH = 100;
+
+	private static final int MAX_CITY_LENGTH = 50;
+
+	/**
+	 * Blocks larger than this are split by birth year before being compared pair by pair.
+	 */
+	private static final int MAX_BLOCK_SIZE = 1000;
+
+	private static final DoubleMetaphone ENCODER = new DoubleMetaphone();
+
+	static {
+		ENCODER.setMaxCodeLen(KEY_LENGTH);
+	}
+
+	private final PatientDuplicateKeyIoOperationRepository repository;
+
+	private final PatientIoOperationRepository patientRepository;
+
+	public PatientDuplicateIoOperations(PatientDuplicateKeyIoOperationRepository patientDuplicateKeyIoOperationRepository,
+					PatientIoOperationRepository patientIoOperationRepository) {
+		this.repository = patientDuplicateKeyIoOperationRepository;
+		this.patientRepository = patientIoOperationRepository;
+	}
+
+	/**
+	 * Returns the registered {@link Patient}s that could be the same person as the specified one, typically a patient
+	 * about to be registered. The patient itself, if already registered, is not returned.
+	 *
+	 * @param patient the {@link Patient} to check.
+	 * @param threshold the minimum score, from 0 to 1.
+	 * @return the likely duplicates, the most similar first (could be empty).
+	 * @throws OHServiceException if an error occurs reading the candidates.
+	 */
+	public List<PatientDuplicate> getDuplicates(Patient patient, double threshold) throws OHServiceException {
+		PatientDuplicateKey key = getKey(patient);
+		List<String> blockKeys = getBlockKeys(key);
+		if (blockKeys.isEmpty()) {
+			return new ArrayList<>();
+		}
+		Map<Integer, Double> scores = new HashMap<>();
+		for (PatientDuplicateKey candidate : repository.findAllWhereKeys(blockKeys.get(0), blockKeys.get(blockKeys.size() - 1))) {
+			if (Objects.equals(candidate.getPatientCode(), patient.getCode())) {
+				continue;
+			}
+			double score = score(key, candidate);
+			if (score >= threshold) {
+				scores.put(candidate.getPatientCode(), score);
+			}
+		}
+		return patientRepository.findAllById(scores.keySet()).stream()
+			.map(candidate -> new PatientDuplicate(candidate, scores.get(candidate.getCode())))
+			.sorted(Comparator.comparingDouble(PatientDuplicate::score).reversed())
+			.toList();
+	}
+
+	/**
+	 * Scans the whole registry for {@link Patient}s that could be the same person. Each patient is put in the group of
+	 * the phonetic encoding of its first name and in the one of its second name, so that swapped names or a typo in one
+	 * of them still bring two patients together, and the groups are compared in parallel. A pair sharing both encodings
+	 * is compared only in the group of the smaller one. Patients whose names have no encoding at all are not compared.
+	 *
+	 * @param threshold the minimum score, from 0 to 1.
+	 * @return the likely duplicates, the most similar first (could be empty).
+	 * @throws OHServiceException if an error occurs reading the keys.
+	 */
+	@Transactional(readOnly = true, rollbackFor = OHServiceException.class)
+	public List<PatientDuplicatePair> getAllDuplicates(double threshold) throws OHServiceException {
+		Map<String, List<PatientDuplicateKey>> blocks = new HashMap<>();
+		for (PatientDuplicateKey key : repository.findAll()) {
+			for (String blockKey : getBlockKeys(key)) {
+				blocks.computeIfAbsent(blockKey, k -> new ArrayList<>()).add(key);
+			}
+		}
+		return blocks.entrySet().parallelStream()
+			.flatMap(block -> compareBlock(block.getKey(), block.getValue(), threshold).stream())
+			.sorted(Comparator.comparingDouble(PatientDuplicatePair::score).reversed())
+			.toList();
+	}
+
+	/**
+	 * Returns the distinct, non-empty phonetic encodings of the names of a patient.
+	 */
+	private static List<String> getBlockKeys(PatientDuplicateKey key) {
+		List<String> blockKeys = new ArrayList<>(2);
+		if (key.getFirstKey() != null && !key.getFirstKey().isEmpty()) {
+			blockKeys.add(key.getFirstKey());
+		}
+		if (key.getSecondKey() != null && !key.getSecondKey().isEmpty() && !blockKeys.contains(key.getSecondKey())) {
+			blockKeys.add(key.getSecondKey());
+		}
+		return blockKeys;
+	}
+
+	/**
+	 * Whether the specified group is the one where the pair is compared: the group of the smallest encoding the two
+	 * patients share.
+	 */
+	private static boolean isFirstSharedBlock(String blockKey, PatientDuplicateKey key, PatientDuplicateKey candidate) {
+		List<String> candidateKeys = getBlockKeys(candidate);
+		for (String otherKey : getBlockKeys(key)) {
+			if (otherKey.compareTo(blockKey) < 0 && candidateKeys.contains(otherKey)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static List<PatientDuplicatePair> compareBlock(String blockKey, List<PatientDuplicateKey> block, double threshold) {
+		if (block.size() > MAX_BLOCK_SIZE) {
+			Collection<List<PatientDuplicateKey>> subBlocks = block.stream()
+				.collect(Collectors.groupingBy(key -> Objects.requireNonNullElse(key.getBirthYear(), 0)))
+				.values();
+			if (subBlocks.size() > 1) {
+				return subBlocks.stream().flatMap(subBlock -> compareBlock(blockKey, subBlock, threshold).stream()).toList();
+			}
+		}
+		List<PatientDuplicatePair> pairs = new ArrayList<>();
+		for (int i = 0; i < block.size(); i++) {
+			PatientDuplicateKey key = block.get(i);
+			for (int j = i + 1; j < block.size(); j++) {
+				PatientDuplicateKey candidate = block.get(j);
+				if (!isFirstSharedBlock(blockKey, key, candidate)) {
+					continue;
+				}
+				double score = score(key, candidate);
+				if (score >= threshold) {
+					pairs.add(new PatientDuplicatePair(key.getPatientCode(), candidate.getPatientCode(), score));
+				}
+			}
+		}
+		return pairs;
+	}
+
+	/**
+	 * Computes the blocking keys of the specified {@link Patient}.
+	 *
+	 * @param patient the {@link Patient}.
+	 * @return the keys, with the patient code set if the patient is already registered.
+	 */
+	static PatientDuplicateKey getKey(Patient patient) {
+		String[] firstName = getWords(patient.getFirstName());
+		String[] secondName = getWords(patient.getSecondName());
+		String[] name = new String[firstName.length + secondName.length];
+		System.arraycopy(firstName, 0, name, 0, firstName.length);
+		System.arraycopy(secondName, 0, name, firstName.length, secondName.length);
+		Arrays.sort(name);
+		String city = patient.getCity() == null ? null : cut(patient.getCity().trim().toLowerCase(), MAX_CITY_LENGTH);
+		Integer birthYear = patient.getBirthDate() == null ? null : patient.getBirthDate().getYear();
+		return new PatientDuplicateKey(patient.getCode() == null ? 0 : patient.getCode(), encode(firstName), encode(secondName),
+			cut(String.join(" ", name), MAX_NAME_LENGTH), birthYear, city);
+	}
+
+	static double score(PatientDuplicateKey key, PatientDuplicateKey candidate) {
+		double score = NAME_WEIGHT * similarity(key.getName(), candidate.getName());
+		if (key.getBirthYear() != null && candidate.getBirthYear() != null) {
+			int gap = Math.abs(key.getBirthYear() - candidate.getBirthYear());
+			if (gap == 0) {
+				score += BIRTH_YEAR_WEIGHT;
+			} else if (gap == 1) {
+				score += BIRTH_YEAR_WEIGHT / 2;
+			}
+		}
+		if (key.getCity() != null && !key.getCity().isEmpty() && key.getCity().equals(candidate.getCity())) {
+			score += CITY_WEIGHT;
+		}
+		return score;
+	}
+
+	/**
+	 * Jaro-Winkler similarity of two strings.
+	 *
+	 * @return the similarity, from 0 (nothing in common) to 1 (equal).
+	 */
+	static double similarity(String first, String second) {
+		if (first.equals(second)) {
+			return 1;
+		}
+		int firstLength = first.length();
+		int secondLength = second.length();
+		if (firstLength == 0 || secondLength == 0) {
+			return 0;
+		}
+		int range = Math.max(0, Math.max(firstLength, secondLength) / 2 - 1);
+		boolean[] firstMatched = new boolean[firstLength];
+		boolean[] secondMatched = new boolean[secondLength];
+		int matches = 0;
+		for (int i = 0; i < firstLength; i++) {
+			int to = Math.min(secondLength, i + range + 1);
+			for (int j = Math.max(0, i - range); j < to; j++) {
+				if (!secondMatched[j] && first.charAt(i) == second.charAt(j)) {
+					firstMatched[i] = true;
+					secondMatched[j] = true;
+					matches++;
+					break;
+				}
+			}
+		}
+		if (matches == 0) {
+			return 0;
+		}
+		int transpositions = 0;
+		for (int i = 0, j = 0; i < firstLength; i++) {
+			if (firstMatched[i]) {
+				while (!secondMatched[j]) {
+					j++;
+				}
+				if (first.charAt(i) != second.charAt(j)) {
+					transpositions++;
+				}
+				j++;
+			}
+		}
+		double jaro = ((double) matches / firstLength + (double) matches / secondLength + (matches - transpositions / 2.0) / matches) / 3;
+		int prefix = 0;
+		int maxPrefix = Math.min(4, Math.min(firstLength, secondLength));
+		while (prefix < maxPrefix && first.charAt(prefix) == second.charAt(prefix)) {
+			prefix++;
+		}
+		return jaro + prefix * 0.1 * (1 - jaro);
+	}
+
+	private static String[] getWords(String text) {
+		if (text == null) {
+			return new String[0];
+		}
+		String plain = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "").toLowerCase().replaceAll("[^a-z]+", " ").trim();
+		return plain.isEmpty() ? new String[0] : plain.split(" ");
+	}
+
+	private static String encode(String[] words) {
+		String encoded = ENCODER.doubleMetaphone(String.join("", words));
+		return encoded == null ? "" : encoded;
+	}
+
+	private static String cut(String text, int length) {
+		return text.length() > length ? text.substring(0, length) : text;
+	}
+
+}
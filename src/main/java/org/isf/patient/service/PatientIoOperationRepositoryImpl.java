@@ -28,13 +28,22 @@ import java.util.Map;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Order;
 import jakarta.persistence.criteria.Path;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
 
+import org.isf.generaldata.GeneralData;
 import org.isf.patient.model.Patient;
+import org.isf.patient.model.PatientSearchToken;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
 import org.springframework.transaction.annotation.Transactional;
 
 @Transactional
@@ -43,7 +52,6 @@ public class PatientIoOperationRepositoryImpl implements PatientIoOperationRepos
 	@PersistenceContext
 	private EntityManager entityManager;
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public List<Patient> findByFieldsContainingWordsFromLiteral(String literal) {
 		return this.entityManager.
@@ -51,12 +59,33 @@ public class PatientIoOperationRepositoryImpl implements PatientIoOperationRepos
 				getResultList();
 	}
 
+	@Override
+	public Page<Patient> findByFieldsContainingWordsFromLiteral(String literal, Pageable pageable) {
+		String[] words = getWordsToSearchForInPatientsRepository(literal);
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Long> countQuery = cb.createQuery(Long.class);
+		Root<Patient> countRoot = countQuery.from(Patient.class);
+		countQuery.select(cb.count(countRoot)).where(getSearchPredicate(words, cb, countQuery, countRoot));
+		long total = entityManager.createQuery(countQuery).getSingleResult();
+
+		TypedQuery<Patient> query = entityManager.createQuery(buildSearchQuery(literal));
+		if (pageable.isPaged()) {
+			query.setFirstResult((int) pageable.getOffset());
+			query.setMaxResults(pageable.getPageSize());
+		}
+		return new PageImpl<>(query.getResultList(), pageable, total);
+	}
+
 	private CriteriaQuery<Patient> buildSearchQuery(String regex) {
 		String[] words = getWordsToSearchForInPatientsRepository(regex);
 		return createQuerySearchingForPatientContainingGivenWordsInHisProperties(words);
 	}
 
 	private String[] getWordsToSearchForInPatientsRepository(String regex) {
+		if (GeneralData.PATIENTSEARCHINDEX) {
+			return PatientSearchIndex.getWords(regex);
+		}
+
 		String[] words = new String[0];
 
 		if (regex != null && !regex.isEmpty()) {
@@ -72,10 +101,17 @@ public class PatientIoOperationRepositoryImpl implements PatientIoOperationRepos
 		CriteriaQuery<Patient> query = cb.createQuery(Patient.class);
 		Root<Patient> patientRoot = query.from(Patient.class);
 		query.select(patientRoot);
+		query.where(getSearchPredicate(words, cb, query, patientRoot));
+		query.orderBy(getSearchOrder(words, cb, query, patientRoot));
+
+		return query;
+	}
+
+	private Predicate getSearchPredicate(String[] words, CriteriaBuilder cb, CriteriaQuery<?> query, Root<Patient> patientRoot) {
 		List<Predicate> where = new ArrayList<>();
 
 		for (String word : words) {
-			where.add(wordExistsInOneOfPatientFields(word, cb, patientRoot));
+			where.add(wordExistsInOneOfPatientFields(word, cb, query, patientRoot));
 		}
 
 		where.add(cb.or(
@@ -83,13 +119,36 @@ public class PatientIoOperationRepositoryImpl implements PatientIoOperationRepos
 				cb.isNull(patientRoot.get("deleted"))
 		));
 
-		query.where(cb.and(where.toArray(new Predicate[0])));
-		query.orderBy(cb.desc(patientRoot.get("code")));
+		return cb.and(where.toArray(new Predicate[0]));
+	}
 
-		return query;
+	private List<Order> getSearchOrder(String[] words, CriteriaBuilder cb, CriteriaQuery<?> query, Root<Patient> patientRoot) {
+		List<Order> order = new ArrayList<>();
+		if (GeneralData.PATIENTSEARCHINDEX && words.length > 0) {
+			// patients having the searched words as whole words come first
+			Expression<Integer> rank = null;
+			for (String word : words) {
+				Subquery<Integer> wholeWord = query.subquery(Integer.class);
+				Root<PatientSearchToken> token = wholeWord.from(PatientSearchToken.class);
+				wholeWord.select(token.get("patientCode")).where(
+						cb.equal(token.get("patientCode"), patientRoot.get("code")),
+						cb.equal(token.get("token"), PatientSearchIndex.normalize(word)));
+				Expression<Integer> wordRank = cb.<Integer>selectCase().when(cb.exists(wholeWord), 1).otherwise(0);
+				rank = rank == null ? wordRank : cb.sum(rank, wordRank);
+			}
+			order.add(cb.desc(rank));
+		}
+		order.add(cb.desc(patientRoot.get("code")));
+		return order;
 	}
 
-	private Predicate wordExistsInOneOfPatientFields(String word, CriteriaBuilder cb, Root<Patient> root) {
+	private Predicate wordExistsInOneOfPatientFields(String word, CriteriaBuilder cb, CriteriaQuery<?> query, Root<Patient> root) {
+		if (GeneralData.PATIENTSEARCHINDEX) {
+			Subquery<Integer> tokens = query.subquery(Integer.class);
+			Root<PatientSearchToken> token = tokens.from(PatientSearchToken.class);
+			tokens.select(token.get("patientCode")).where(cb.like(token.get("token"), PatientSearchIndex.normalize(word) + '%'));
+			return root.get("code").in(tokens);
+		}
 		return cb.or(
 				cb.like(cb.lower(root.get("code").as(String.class)), like(word)),
 				cb.like(cb.lower(root.get("firstName").as(String.class)), like(word)),
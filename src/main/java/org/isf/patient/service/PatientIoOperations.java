@@ -21,6 +21,7 @@
  */
 package org.isf.patient.service;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -42,6 +43,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -65,11 +67,15 @@ public class PatientIoOperations {
 
 	private final EntityManager entityManager;
 
-	public PatientIoOperations(PatientIoOperationRepository repository, ApplicationEventPublisher applicationEventPublisher, FileSystemPatientPhotoRepository fileSystemPatientPhotoRepository, EntityManager entityManager) {
+	private final PatientSearchIndex patientSearchIndex;
+
+	public PatientIoOperations(PatientIoOperationRepository repository, ApplicationEventPublisher applicationEventPublisher, FileSystemPatientPhotoRepository fileSystemPatientPhotoRepository, EntityManager entityManager,
+					PatientSearchIndex patientSearchIndex) {
 		this.repository = repository;
 		this.applicationEventPublisher = applicationEventPublisher;
 		this.fileSystemPatientPhotoRepository = fileSystemPatientPhotoRepository;
 		this.entityManager = entityManager;
+		this.patientSearchIndex = patientSearchIndex;
 	}
 	/**
 	 * Method that returns the full list of {@link Patient}s not logically deleted,
@@ -124,6 +130,21 @@ public class PatientIoOperations {
 		return repository.findByFieldsContainingWordsFromLiteral(keyword);
 	}
 
+	/**
+	 * Method that returns a page of the {@link Patient}s not logically deleted, having the passed String in
+	 * one of the fields searched by {@link #getPatientsByOneOfFieldsLike(String)}.
+	 * When the search index is enabled, patients having the searched words as whole words come first.
+	 *
+	 * @param keyword - String to search, use {@code null} for full list
+	 * @param page - the page number
+	 * @param size - the page size
+	 * @return the requested page of {@link Patient}s (could be empty),
+	 * @throws OHServiceException
+	 */
+	public PagedResponse<Patient> getPatientsByOneOfFieldsLikePageable(String keyword, int page, int size) throws OHServiceException {
+		return setPaginationData(repository.findByFieldsContainingWordsFromLiteral(keyword, PageRequest.of(page, size)));
+	}
+
 	/**
 	 * Method that gets a {@link Patient}s by his/her ID.
 	 *
@@ -182,12 +203,15 @@ public class PatientIoOperations {
 	public Patient savePatient(Patient patient) {
 		boolean isLoadProfilePhotoFromDB = LOAD_FROM_DB.equals(GeneralData.PATIENTPHOTOSTORAGE);
 		if (isLoadProfilePhotoFromDB) {
-			return repository.save(patient);
+			Patient patientSaved = repository.save(patient);
+			patientSearchIndex.index(patientSaved);
+			return patientSaved;
 		}
 		try {
 			PatientProfilePhoto photo = patient.getPatientProfilePhoto();
 			patient.setPatientProfilePhoto(null);
 			Patient patientSaved = repository.save(patient);
+			patientSearchIndex.index(patientSaved);
 			((Session) this.entityManager.getDelegate()).evict(patient);
 			if (photo != null && photo.getPhoto() != null) {
 				fileSystemPatientPhotoRepository.save(GeneralData.PATIENTPHOTOSTORAGE, patient.getCode(), photo.getPhoto());
@@ -209,7 +233,9 @@ public class PatientIoOperations {
 	 * @throws OHServiceException
 	 */
 	public Patient updatePatient(Patient patient) throws OHServiceException {
-		return repository.save(patient);
+		Patient patientSaved = repository.save(patient);
+		patientSearchIndex.index(patientSaved);
+		return patientSaved;
 	}
 
 	/**
@@ -232,6 +258,7 @@ public class PatientIoOperations {
 			fileSystemPatientPhotoRepository.delete(GeneralData.PATIENTPHOTOSTORAGE, patient.getCode());
 		}
 		repository.updateDeleted(patient.getCode());
+		patientSearchIndex.remove(patient.getCode());
 	}
 
 	/**
@@ -265,6 +292,8 @@ public class PatientIoOperations {
 	 */
 	public void mergePatientHistory(Patient mergedPatient, Patient obsoletePatient) throws OHServiceException {
 		repository.updateDeleted(obsoletePatient.getCode());
+		patientSearchIndex.remove(obsoletePatient.getCode());
+		patientSearchIndex.index(mergedPatient);
 		applicationEventPublisher.publishEvent(new PatientMergedEvent(obsoletePatient, mergedPatient));
 	}
 
@@ -300,6 +329,30 @@ public class PatientIoOperations {
 		return patient.getPatientProfilePhoto();
 	}
 
+	/**
+	 * Returns a thumbnail of the {@link Patient}'s photo, to be used in list views instead of the full size photo.
+	 *
+	 * @param code the patient code.
+	 * @return the PNG thumbnail or {@code null} if the patient has no photo.
+	 * @throws OHServiceException
+	 */
+	public byte[] getPatientPhotoThumbnail(Integer code) throws OHServiceException {
+		boolean isLoadProfilePhotoFromDB = LOAD_FROM_DB.equals(GeneralData.PATIENTPHOTOSTORAGE);
+		if (!isLoadProfilePhotoFromDB) {
+			return fileSystemPatientPhotoRepository.loadThumbnail(GeneralData.PATIENTPHOTOSTORAGE, code);
+		}
+		PatientProfilePhoto photo = repository.findById(code).map(Patient::getPatientProfilePhoto).orElse(null);
+		if (photo == null || photo.getPhoto() == null) {
+			return null;
+		}
+		try {
+			return fileSystemPatientPhotoRepository.createThumbnail(photo.getPhoto());
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage(), e);
+			throw new OHServiceException(new OHExceptionMessage(e.getMessage()));
+		}
+	}
+
 	PagedResponse<Patient> setPaginationData(Page<Patient> pages){
 		PagedResponse<Patient> data = new PagedResponse<>();
 		data.setData(pages.getContent());
@@ -317,4 +370,14 @@ public class PatientIoOperations {
 		return repository.countAllActiveNotDeletedPatients();
 	}
 
+	/**
+	 * Rebuilds the patient search index from all the {@link Patient}s not logically deleted.
+	 *
+	 * @return the number of indexed patients.
+	 * @throws OHServiceException
+	 */
+	public int rebuildSearchIndex() throws OHServiceException {
+		return patientSearchIndex.rebuild();
+	}
+
 }
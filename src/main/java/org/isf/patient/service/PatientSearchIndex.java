@@ -0,0 +1,205 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2024 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.isf.patient.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.StringJoiner;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+
+import org.isf.generaldata.GeneralData;
+import org.isf.patient.model.Patient;
+import org.isf.patient.model.PatientDuplicateKey;
+import org.isf.patient.model.PatientSearchToken;
+import org.isf.utils.db.TranslateOHServiceException;
+import org.isf.utils.exception.OHServiceException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Keeps the patient search index ({@link PatientSearchToken}) in sync with the searchable fields of the patients:
+ * code, first and second name, city, address, telephone, note and tax code. The index is written only when
+ * {@code PATIENTSEARCHINDEX} is enabled. The blocking keys used to detect duplicated patients ({@link PatientDuplicateKey})
+ * are maintained along with it in any case.
+ * The index lives in the database, so that every client sharing it sees the same entries.
+ */
+@Service
+@Transactional(rollbackFor = OHServiceException.class)
+@TranslateOHServiceException
+public class PatientSearchIndex {
+
+	private static final int REBUILD_PAGE_SIZE = 500;
+
+	private static final int INSERT_BATCH_SIZE = 500;
+
+	private final PatientSearchTokenIoOperationRepository repository;
+
+	private final PatientDuplicateKeyIoOperationRepository duplicateKeyRepository;
+
+	private final PatientIoOperationRepository patientRepository;
+
+	private final EntityManager entityManager;
+
+	public PatientSearchIndex(PatientSearchTokenIoOperationRepository patientSearchTokenIoOperationRepository,
+					PatientDuplicateKeyIoOperationRepository patientDuplicateKeyIoOperationRepository,
+					PatientIoOperationRepository patientIoOperationRepository, EntityManager entityManager) {
+		this.repository = patientSearchTokenIoOperationRepository;
+		this.duplicateKeyRepository = patientDuplicateKeyIoOperationRepository;
+		this.patientRepository = patientIoOperationRepository;
+		this.entityManager = entityManager;
+	}
+
+	/**
+	 * Replaces the index entries of the specified {@link Patient}, a logically deleted patient is just removed from the index.
+	 *
+	 * @param patient the {@link Patient} to index.
+	 */
+	public void index(Patient patient) {
+		repository.deleteByPatientCode(patient.getCode());
+		if (patient.getDeleted() != 'Y') {
+			if (GeneralData.PATIENTSEARCHINDEX) {
+				insert(tokenize(patient));
+			}
+			duplicateKeyRepository.save(PatientDuplicateIoOperations.getKey(patient));
+		} else {
+			duplicateKeyRepository.deleteById(patient.getCode());
+		}
+	}
+
+	/**
+	 * Removes the index entries of the specified {@link Patient}.
+	 *
+	 * @param code the patient code.
+	 */
+	public void remove(int code) {
+		repository.deleteByPatientCode(code);
+		duplicateKeyRepository.deleteById(code);
+	}
+
+	/**
+	 * Rebuilds the whole index from the {@link Patient}s not logically deleted, reading them in pages.
+	 * With {@code PATIENTSEARCHINDEX} disabled only the duplicate detection keys are rebuilt.
+	 *
+	 * @return the number of indexed patients.
+	 * @throws OHServiceException if an error occurs rebuilding the index.
+	 */
+	public int rebuild() throws OHServiceException {
+		repository.deleteAllInBatch();
+		duplicateKeyRepository.deleteAllInBatch();
+		entityManager.clear();
+		int indexed = 0;
+		int lastCode = 0;
+		Slice<Patient> patients;
+		do {
+			patients = patientRepository.findByCodeGreaterThanOrderByCode(lastCode, PageRequest.of(0, REBUILD_PAGE_SIZE));
+			List<PatientSearchToken> tokens = new ArrayList<>();
+			for (Patient patient : patients) {
+				lastCode = patient.getCode();
+				if (patient.getDeleted() != 'Y') {
+					if (GeneralData.PATIENTSEARCHINDEX) {
+						tokens.addAll(tokenize(patient));
+					}
+					// the keys table is empty, persist them without the merge lookup done by save()
+					entityManager.persist(PatientDuplicateIoOperations.getKey(patient));
+					indexed++;
+				}
+			}
+			entityManager.flush();
+			insert(tokens);
+			entityManager.clear();
+		} while (patients.hasNext());
+		return indexed;
+	}
+
+	/**
+	 * Writes the specified index entries with multi-row inserts, instead of one insert per entry.
+	 *
+	 * @param tokens the index entries.
+	 */
+	private void insert(List<PatientSearchToken> tokens) {
+		for (int from = 0; from < tokens.size(); from += INSERT_BATCH_SIZE) {
+			List<PatientSearchToken> batch = tokens.subList(from, Math.min(from + INSERT_BATCH_SIZE, tokens.size()));
+			StringJoiner values = new StringJoiner(", ");
+			for (int i = 0; i < batch.size(); i++) {
+				values.add("(?" + (2 * i + 1) + ", ?" + (2 * i + 2) + ')');
+			}
+			Query query = entityManager.createNativeQuery("insert into OH_PATIENT_SEARCH_TOKEN (PST_PAT_ID, PST_TOKEN) values " + values);
+			for (int i = 0; i < batch.size(); i++) {
+				query.setParameter(2 * i + 1, batch.get(i).getPatientCode());
+				query.setParameter(2 * i + 2, batch.get(i).getToken());
+			}
+			query.executeUpdate();
+		}
+	}
+
+	/**
+	 * Splits the searchable fields of the specified {@link Patient} into index entries: one for each word.
+	 *
+	 * @param patient the {@link Patient}.
+	 * @return the index entries, without duplicates.
+	 */
+	static List<PatientSearchToken> tokenize(Patient patient) {
+		String[] fields = {
+			String.valueOf(patient.getCode()), patient.getFirstName(), patient.getSecondName(), patient.getCity(),
+			patient.getAddress(), patient.getTelephone(), patient.getNote(), patient.getTaxCode()
+		};
+		Set<String> words = new LinkedHashSet<>();
+		for (String field : fields) {
+			for (String word : getWords(field)) {
+				words.add(normalize(word));
+			}
+		}
+		List<PatientSearchToken> tokens = new ArrayList<>(words.size());
+		words.forEach(word -> tokens.add(new PatientSearchToken(patient.getCode(), word)));
+		return tokens;
+	}
+
+	/**
+	 * Splits a text into the lower case words used both to index and to search.
+	 *
+	 * @param text the text, can be {@code null}.
+	 * @return the words (could be empty).
+	 */
+	public static String[] getWords(String text) {
+		if (text == null || text.isBlank()) {
+			return new String[0];
+		}
+		return text.trim().toLowerCase().split("\\s+");
+	}
+
+	/**
+	 * Cuts a word to the length stored in the index.
+	 *
+	 * @param word a word as returned by {@link #getWords(String)}.
+	 * @return the indexed form of the word.
+	 */
+	public static String normalize(String word) {
+		return word.length() > PatientSearchToken.MAX_TOKEN_LENGTH ? word.substring(0, PatientSearchToken.MAX_TOKEN_LENGTH) : word;
+	}
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2024 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.isf.sequence.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * A named counter from which identifiers are handed out in blocks.
+ * {@code nextValue} is the first value not yet reserved by any node.
+ */
+@Entity
+@Table(name = "OH_SEQUENCE")
+public class Sequence {
+
+	@Id
+	@Column(name = "SEQ_NAME")
+	private String name;
+
+	@NotNull
+	@Column(name = "SEQ_NEXT_VAL")
+	private long nextValue;
+
+	public Sequence() {
+	}
+
+	public Sequence(String name, long nextValue) {
+		this.name = name;
+		this.nextValue = nextValue;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public long getNextValue() {
+		return nextValue;
+	}
+
+	public void setNextValue(long nextValue) {
+		this.nextValue = nextValue;
+	}
+
+	@Override
+	public String toString() {
+		return "Sequence [name=" + name + ", nextValue=" + nextValue + ']';
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2024 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.isf.sequence.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.isf.utils.exception.OHDataIntegrityViolationException;
+import org.isf.utils.exception.OHServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hands out identifiers from named sequences stored in the database, using a hi/lo scheme: each node reserves a block of
+ * values at once and then serves them from memory, so that the database is hit once per block instead of once per identifier
+ * and concurrent nodes never receive the same value. Values of a block not used before shutdown are lost, so identifiers are
+ * unique and increasing per node but not gap-free.
+ */
+@Component
+public class SequenceAllocator {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SequenceAllocator.class);
+
+	private static final int MAX_RESERVE_ATTEMPTS = 3;
+
+	private final Map<String, Block> blocks = new ConcurrentHashMap<>();
+
+	private SequenceIoOperations ioOperations;
+
+	public SequenceAllocator(SequenceIoOperations sequenceIoOperations) {
+		this.ioOperations = sequenceIoOperations;
+	}
+
+	/**
+	 * Returns the next value of the specified sequence.
+	 *
+	 * @param name the sequence name.
+	 * @param initialValue the first value of the sequence, used only if the sequence does not exist yet.
+	 * @param blockSize the number of values to reserve each time the current block is exhausted.
+	 * @return the next value.
+	 * @throws OHServiceException if an error occurs reserving a new block.
+	 */
+	public long next(String name, long initialValue, int blockSize) throws OHServiceException {
+		Block block = blocks.computeIfAbsent(name, key -> new Block());
+		synchronized (block) {
+			if (block.next >= block.limit) {
+				long first = reserveBlock(name, initialValue, blockSize);
+				block.next = first;
+				block.limit = first + blockSize;
+			}
+			return block.next++;
+		}
+	}
+
+	private long reserveBlock(String name, long initialValue, int blockSize) throws OHServiceException {
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return ioOperations.reserveBlock(name, initialValue, blockSize);
+			} catch (OHDataIntegrityViolationException e) {
+				// another node created the sequence at the same time, its row can be locked now
+				if (attempt == MAX_RESERVE_ATTEMPTS) {
+					throw e;
+				}
+				LOGGER.debug("Sequence '{}' created concurrently, retrying the reservation.", name);
+			}
+		}
+	}
+
+	/**
+	 * The range of values reserved by this node: from {@code next} (included) to {@code limit} (excluded).
+	 */
+	private static final class Block {
+
+		private long next;
+		private long limit;
+	}
+
+}
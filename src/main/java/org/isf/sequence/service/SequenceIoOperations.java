@@ -0,0 +1,65 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2024 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.isf.sequence.service;
+
+import org.isf.sequence.model.Sequence;
+import org.isf.utils.db.TranslateOHServiceException;
+import org.isf.utils.exception.OHServiceException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Persistence class for the sequences from which identifiers are allocated.
+ */
+@Service
+@Transactional(propagation = Propagation.REQUIRES_NEW, rollbackFor = OHServiceException.class)
+@TranslateOHServiceException
+public class SequenceIoOperations {
+
+	private SequenceIoOperationRepository repository;
+
+	public SequenceIoOperations(SequenceIoOperationRepository sequenceIoOperationRepository) {
+		this.repository = sequenceIoOperationRepository;
+	}
+
+	/**
+	 * Reserves a block of values of the specified sequence, creating the sequence if it does not exist yet.
+	 * The sequence row is locked until the reservation is committed, in a transaction of its own, so that
+	 * concurrent nodes always receive disjoint blocks and the lock is not held by the caller's transaction.
+	 *
+	 * @param name the sequence name.
+	 * @param initialValue the first value of the sequence, used only if the sequence does not exist yet.
+	 * @param blockSize the number of values to reserve.
+	 * @return the first value of the reserved block.
+	 * @throws OHServiceException
+	 */
+	public long reserveBlock(String name, long initialValue, int blockSize) throws OHServiceException {
+		Sequence sequence = repository.findByNameForUpdate(name)
+						.orElseGet(() -> repository.saveAndFlush(new Sequence(name, initialValue)));
+		long first = sequence.getNextValue();
+		sequence.setNextValue(first + blockSize);
+		repository.save(sequence);
+		return first;
+	}
+
+}
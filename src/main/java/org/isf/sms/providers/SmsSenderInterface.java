@@ -50,4 +50,13 @@ public interface SmsSenderInterface {
 
 	boolean terminate();
 
+	/**
+	 * 
+	 * @return {@code true} if {@link #sendSMS(Sms)} may be called by several threads at the same time, {@code false} if the
+	 *         gateway needs a single writer (e.g. a serial modem)
+	 */
+	default boolean isConcurrent() {
+		return true;
+	}
+
 }
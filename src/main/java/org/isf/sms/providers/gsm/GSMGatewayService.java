@@ -24,6 +24,9 @@ package org.isf.sms.providers.gsm;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.isf.sms.model.Sms;
 import org.isf.sms.providers.SmsSenderInterface;
@@ -45,13 +48,19 @@ public class GSMGatewayService implements SmsSenderInterface, SerialPortDataList
 	public static final String SERVICE_NAME = "gsm-gateway-service";
 	private static final Logger LOGGER = LoggerFactory.getLogger(GSMGatewayService.class);
 	private static final String EOF = "\r";
+	private static final String ANSWER_OK = "OK";
+	private static final String ANSWER_PROMPT = ">";
+	private static final String ANSWER_SENT = "+CMGS";
+	private static final String ANSWER_ERROR = "ERROR";
+	private static final long COMMAND_TIMEOUT_MILLIS = 1000;
+	private static final long SEND_TIMEOUT_MILLIS = 2000;
 
 	private SerialPort serialPort;
 	private boolean connected;
 	private OutputStream outputStream;
 	private InputStream inputStream;
 
-	private boolean sent = true;
+	private final BlockingQueue<String> answers = new LinkedBlockingQueue<>();
 
 	public GSMGatewayService() {
 		LOGGER.info("SMS Sender GSM started...");
@@ -122,7 +131,12 @@ public class GSMGatewayService implements SmsSenderInterface, SerialPortDataList
 		return this.sendSMS(sms, false);
 	}
 
-	public boolean sendSMS(Sms sms, boolean debug) {
+	/**
+	 * Sends one {@link Sms} through the modem. Each AT command waits for the modem answer (at most the time the modem
+	 * used to be given) instead of sleeping a fixed time, so consecutive messages are written as soon as the modem is
+	 * ready; the method is synchronized to keep a single writer on the serial port.
+	 */
+	public synchronized boolean sendSMS(Sms sms, boolean debug) {
 		if (connected) {
 			LOGGER.debug("Sending SMS ({}) to: {}", sms.getSmsId(), sms.getSmsNumber());
 			LOGGER.debug("Sending text: {}", sms.getSmsText());
@@ -134,59 +148,84 @@ public class GSMGatewayService implements SmsSenderInterface, SerialPortDataList
 			String text = sms.getSmsText() + EOF;
 
 			try {
+				answers.clear();
 
 				// SET SMS MODE
 				LOGGER.trace(GSMParameters.CMGF);
 				if (!debug) {
 					outputStream.write(GSMParameters.CMGF.getBytes());
 				}
-				Thread.sleep(1000);
+				if (!awaitAnswer(ANSWER_OK, COMMAND_TIMEOUT_MILLIS, debug)) {
+					return false;
+				}
 
 				// SET SMS PARAMETERS
 //				logger.trace(SmsParameters.CSMP);
 //				outputStream.write(SmsParameters.CSMP.getBytes());
-//				Thread.sleep(1000);
+//				awaitAnswer(ANSWER_OK, COMMAND_TIMEOUT_MILLIS, debug);
 
 				// SET SMS NUMBER
 				LOGGER.trace(buildCMGS.toString());
 				if (!debug) {
 					outputStream.write(buildCMGS.toString().getBytes());
 				}
-				Thread.sleep(1000);
+				if (!awaitAnswer(ANSWER_PROMPT, COMMAND_TIMEOUT_MILLIS, debug)) {
+					return false;
+				}
 
-				// SET SMS TEXT
+				// SET SMS TEXT AND SEND SMS
 				LOGGER.trace(text);
 				if (!debug) {
 					outputStream.write(text.getBytes());
-				}
-				Thread.sleep(1000);
-
-				// SEND SMS
-				if (!debug) {
 					outputStream.write("\u001A".getBytes()); // Ctrl-Z();
 				}
-				Thread.sleep(1000);
 
 				// FLUSH STREAM
 //				if (!debug) outputStream.flush(); // missing callback function on Windows OS
-//				Thread.sleep(1000);
-
-				if (!sent) {
-					sent = true; // for next message but return false (not sent)
-					return false;
-				}
 
+				return awaitAnswer(ANSWER_SENT, SEND_TIMEOUT_MILLIS, debug);
 			} catch (IOException | InterruptedException exception) {
 				LOGGER.error(exception.getMessage(), exception);
 				return false;
 			}
-			return true;
 		} else {
 			LOGGER.error("Device not connected. Please initialize stream first.");
 		}
 		return false;
 	}
 
+	/**
+	 * Waits for the modem to answer the last command.
+	 *
+	 * @return {@code false} if the modem answered with an error, {@code true} otherwise (also when the modem stays silent,
+	 *         as some modems do not echo every answer)
+	 */
+	private boolean awaitAnswer(String expected, long timeoutMillis, boolean debug) throws InterruptedException {
+		if (debug) {
+			return true;
+		}
+		StringBuilder answer = new StringBuilder();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		long remaining = timeoutMillis;
+		while (remaining > 0) {
+			String chunk = answers.poll(remaining, TimeUnit.MILLISECONDS);
+			if (chunk == null) {
+				break;
+			}
+			answer.append(chunk);
+			if (answer.indexOf(ANSWER_ERROR) >= 0) {
+				LOGGER.error("ERROR: {}", answer);
+				return false;
+			}
+			if (answer.indexOf(expected) >= 0) {
+				return true;
+			}
+			remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+		}
+		LOGGER.debug("No '{}' answer from the modem within {} ms", expected.trim(), timeoutMillis);
+		return true;
+	}
+
 	@Override
 	public void serialEvent(SerialPortEvent event) {
 		StringBuilder sb = new StringBuilder();
@@ -198,9 +237,8 @@ public class GSMGatewayService implements SmsSenderInterface, SerialPortDataList
 			}
 			String answer = sb.toString();
 			LOGGER.debug(answer);
-			if (answer.contains("ERROR")) {
-				LOGGER.error("ERROR: {}", answer);
-				sent = false;
+			if (!answer.isEmpty()) {
+				answers.add(answer);
 			}
 		} catch (IOException e) {
 			LOGGER.error("Exception in serialEvent method.", e);
@@ -217,6 +255,11 @@ public class GSMGatewayService implements SmsSenderInterface, SerialPortDataList
 		return SERVICE_NAME;
 	}
 
+	@Override
+	public boolean isConcurrent() {
+		return false;
+	}
+
 	@Override
 	public int getListeningEvents() {
 		return SerialPort.LISTENING_EVENT_DATA_AVAILABLE;
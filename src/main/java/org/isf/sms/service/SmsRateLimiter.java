@@ -0,0 +1,76 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2024 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.isf.sms.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket shared by the workers sending through the same gateway: it allows bursts of up to one second of traffic
+ * and then paces the callers to the configured rate.
+ */
+class SmsRateLimiter {
+
+	private final double permitsPerSecond;
+	private final double maxPermits;
+
+	private double storedPermits;
+	private long lastRefill;
+
+	/**
+	 * @param permitsPerSecond - the number of messages per second allowed; {@code 0} or less means unlimited
+	 */
+	SmsRateLimiter(double permitsPerSecond) {
+		this.permitsPerSecond = permitsPerSecond;
+		this.maxPermits = Math.max(1.0, permitsPerSecond);
+		this.storedPermits = maxPermits;
+		this.lastRefill = System.nanoTime();
+	}
+
+	/**
+	 * Waits until a message may be sent.
+	 *
+	 * @throws InterruptedException if the calling worker is interrupted while waiting
+	 */
+	void acquire() throws InterruptedException {
+		if (permitsPerSecond <= 0) {
+			return;
+		}
+		long waitNanos = reserve();
+		if (waitNanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+	}
+
+	/**
+	 * Takes a permit, possibly going into debt, and returns how long the caller must wait before using it.
+	 */
+	private synchronized long reserve() {
+		long now = System.nanoTime();
+		storedPermits = Math.min(maxPermits, storedPermits + (now - lastRefill) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+		lastRefill = now;
+		storedPermits -= 1.0;
+		if (storedPermits >= 0) {
+			return 0;
+		}
+		return (long) (-storedPermits * TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+	}
+}
@@ -21,7 +21,17 @@
  */
 package org.isf.sms.service;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.isf.generaldata.SmsParameters;
 import org.isf.menu.manager.Context;
@@ -32,13 +42,24 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Drains the outbound queue (the {@link Sms} not sent yet) through the configured gateway. Messages are handed to a pool
+ * of workers sized on the gateway ({@code <rootKey>.workers}, one for single-writer gateways like the GSM modem) and
+ * paced by a token bucket ({@code <rootKey>.rate-limit}); failed sendings are retried with exponential backoff and the
+ * sent messages are saved in batches.
+ * 
  * @author Mwithi 31/gen/2014
  */
 public class SmsSender implements Runnable {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(SmsSender.class);
 
-	private boolean running = true;
+	private static final int MAX_ATTEMPTS = 3;
+	private static final long RETRY_BACKOFF_MILLIS = 1000;
+	private static final int UPDATE_BATCH_SIZE = 100;
+
+	private static final AtomicInteger WORKER_NUMBER = new AtomicInteger();
+
+	private volatile boolean running = true;
 	private int delay;
 
 	public SmsSender() {
@@ -63,22 +84,7 @@ public class SmsSender implements Runnable {
 			if (smsList != null && !smsList.isEmpty()) {
 				LOGGER.info("Found {} SMS to send", smsList.size());
 				if (sender.initialize()) {
-					for (Sms sms : smsList) {
-						if (sms.getSmsDateSched().isBefore(TimeTools.getNow())) {
-							boolean result = sender.sendSMS(sms);
-							if (result) {
-								sms.setSmsDateSent(TimeTools.getNow());
-								try {
-									smsOp.saveOrUpdate(sms);
-								} catch (OHServiceException e) {
-									LOGGER.error("Failed saving: {}", e.getMessage());
-								}
-								LOGGER.debug("Sent");
-							} else {
-								LOGGER.error("Not sent");
-							}
-						}
-					}
+					dispatch(smsOp, sender, smsList);
 					boolean terminationResult = sender.terminate();
 					LOGGER.debug("termination result: {}", terminationResult);
 				} else {
@@ -97,6 +103,98 @@ public class SmsSender implements Runnable {
 		}
 	}
 
+	/**
+	 * Sends the scheduled {@link Sms}s with the gateway workers while this thread saves the sent ones.
+	 */
+	private void dispatch(SmsOperations smsOp, SmsSenderOperations sender, List<Sms> smsList) {
+		LocalDateTime now = TimeTools.getNow();
+		Queue<Sms> pending = new ConcurrentLinkedQueue<>();
+		for (Sms sms : smsList) {
+			if (sms.getSmsDateSched().isBefore(now)) {
+				pending.add(sms);
+			}
+		}
+		if (pending.isEmpty()) {
+			return;
+		}
+		int workers = Math.min(Math.max(1, sender.getWorkers()), pending.size());
+		SmsRateLimiter rateLimiter = new SmsRateLimiter(sender.getRateLimit());
+		BlockingQueue<Sms> sent = new LinkedBlockingQueue<>();
+		ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+			Thread thread = new Thread(runnable, "sms-sender-" + WORKER_NUMBER.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		for (int i = 0; i < workers; i++) {
+			executor.execute(() -> {
+				try {
+					Sms sms;
+					while (running && (sms = pending.poll()) != null) {
+						if (send(sender, rateLimiter, sms)) {
+							sms.setSmsDateSent(TimeTools.getNow());
+							sent.add(sms);
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+		executor.shutdown();
+
+		List<Sms> batch = new ArrayList<>(UPDATE_BATCH_SIZE);
+		try {
+			while (!executor.isTerminated() || !sent.isEmpty()) {
+				Sms sms = sent.poll(1, TimeUnit.SECONDS);
+				if (sms != null) {
+					batch.add(sms);
+					sent.drainTo(batch, UPDATE_BATCH_SIZE - batch.size());
+				}
+				if (batch.size() >= UPDATE_BATCH_SIZE || (sms == null && !batch.isEmpty())) {
+					save(smsOp, batch);
+				}
+			}
+		} catch (InterruptedException e) {
+			LOGGER.error(e.getMessage());
+			executor.shutdownNow();
+			sent.drainTo(batch);
+			Thread.currentThread().interrupt();
+		}
+		save(smsOp, batch);
+	}
+
+	private boolean send(SmsSenderOperations sender, SmsRateLimiter rateLimiter, Sms sms) throws InterruptedException {
+		for (int attempt = 1; attempt <= MAX_ATTEMPTS && running; attempt++) {
+			rateLimiter.acquire();
+			try {
+				if (sender.sendSMS(sms)) {
+					LOGGER.debug("Sent");
+					return true;
+				}
+			} catch (RuntimeException e) {
+				LOGGER.error("Error sending SMS ({}): {}", sms.getSmsId(), e.getMessage());
+			}
+			if (attempt < MAX_ATTEMPTS) {
+				Thread.sleep(RETRY_BACKOFF_MILLIS << (attempt - 1));
+			}
+		}
+		LOGGER.error("Not sent");
+		return false;
+	}
+
+	private void save(SmsOperations smsOp, List<Sms> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		try {
+			smsOp.saveOrUpdate(batch);
+			LOGGER.debug("Saved {} sent SMS", batch.size());
+		} catch (OHServiceException e) {
+			LOGGER.error("Failed saving: {}", e.getMessage());
+		}
+		batch.clear();
+	}
+
 	/**
 	 * @param running
 	 *            the running to set
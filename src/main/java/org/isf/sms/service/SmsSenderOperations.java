@@ -41,6 +41,9 @@ import org.springframework.transaction.annotation.Transactional;
 public class SmsSenderOperations {
 
 	private static final String KEY_SMS_GATEWAY = "sms.gateway";
+	private static final String KEY_WORKERS = ".workers";
+	private static final String KEY_RATE_LIMIT = ".rate-limit";
+	private static final int DEFAULT_WORKERS = 4;
 	private static final Logger LOGGER = LoggerFactory.getLogger(SmsSenderOperations.class);
 
 	private final Environment smsProperties;
@@ -96,6 +99,37 @@ public class SmsSenderOperations {
 		return smsGatewayOpt.map(SmsSenderInterface::terminate).orElse(false);
 	}
 
+	/**
+	 * Returns how many messages may be sent in parallel through the configured gateway ({@code <rootKey>.workers}).
+	 * Gateways that need a single writer always get one worker.
+	 * 
+	 * @return the number of workers, {@code 0} if no gateway is configured
+	 */
+	public int getWorkers() {
+		String gateway = this.smsProperties.getProperty(KEY_SMS_GATEWAY);
+		if (gateway == null || gateway.isEmpty()) {
+			return 0;
+		}
+		return findSmsGatewayService(gateway).map(smsGateway -> smsGateway.isConcurrent()
+						? Math.max(1, this.smsProperties.getProperty(smsGateway.getRootKey() + KEY_WORKERS, Integer.class, DEFAULT_WORKERS))
+						: 1).orElse(0);
+	}
+
+	/**
+	 * Returns the maximum number of messages per second accepted by the configured gateway ({@code <rootKey>.rate-limit}).
+	 * 
+	 * @return the rate limit, {@code 0} if unlimited
+	 */
+	public double getRateLimit() {
+		String gateway = this.smsProperties.getProperty(KEY_SMS_GATEWAY);
+		if (gateway == null || gateway.isEmpty()) {
+			return 0;
+		}
+		return findSmsGatewayService(gateway)
+						.map(smsGateway -> this.smsProperties.getProperty(smsGateway.getRootKey() + KEY_RATE_LIMIT, Double.class, 0.0))
+						.orElse(0.0);
+	}
+
 	private Optional<SmsSenderInterface> findSmsGatewayService(String gateway) {
 		return this.smsGateways.stream().filter(smsGateway -> gateway.equals(smsGateway.getName())).findFirst();
 	}
@@ -0,0 +1,123 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2024 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.isf.stat.manager;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.jasperreports.engine.JRBand;
+import net.sf.jasperreports.engine.JRChild;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JRExpressionChunk;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.base.JRBaseSubreport;
+import net.sf.jasperreports.engine.util.JRLoader;
+
+/**
+ * Keeps the compiled reports loaded from {@code .jasper} files, together with the names of their subreports.
+ * An entry is reloaded when the file modification time changes, so that updated reports are picked up without a restart.
+ */
+class JasperReportCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(JasperReportCache.class);
+
+	private static final Pattern SUBREPORT_NAME = Pattern.compile("\"(.*)\"");
+
+	private final Map<String, CachedReport> reports = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the compiled report stored in the specified file.
+	 *
+	 * @param jasperFile the {@code .jasper} file.
+	 * @return the report, shared between callers.
+	 * @throws JRException if the file cannot be loaded.
+	 */
+	JasperReport getReport(File jasperFile) throws JRException {
+		return getCachedReport(jasperFile).report();
+	}
+
+	/**
+	 * Returns the names of the subreports used by the report stored in the specified file, in band order.
+	 *
+	 * @param jasperFile the {@code .jasper} file.
+	 * @return the subreport names (could be empty).
+	 * @throws JRException if the file cannot be loaded.
+	 */
+	List<String> getSubreportNames(File jasperFile) throws JRException {
+		return getCachedReport(jasperFile).subreportNames();
+	}
+
+	private CachedReport getCachedReport(File jasperFile) throws JRException {
+		long lastModified = jasperFile.lastModified();
+		String key = jasperFile.getAbsolutePath();
+		CachedReport cached = reports.get(key);
+		if (cached != null && lastModified != 0 && cached.lastModified() == lastModified) {
+			return cached;
+		}
+		JasperReport report = (JasperReport) JRLoader.loadObject(jasperFile);
+		cached = new CachedReport(report, lastModified, findSubreportNames(report));
+		if (lastModified != 0) {
+			reports.put(key, cached);
+		}
+		return cached;
+	}
+
+	private static List<String> findSubreportNames(JasperReport jasperReport) {
+		List<String> subreportNames = new ArrayList<>();
+		JRBand[] bands = jasperReport.getAllBands();
+		if (bands == null) {
+			return subreportNames;
+		}
+		for (JRBand band : bands) {
+			for (JRChild child : band.getChildren()) {
+				if (child instanceof JRBaseSubreport subreport) {
+					StringBuilder expression = new StringBuilder();
+					for (JRExpressionChunk chunk : subreport.getExpression().getChunks()) {
+						expression.append(chunk.getText());
+					}
+					Matcher matcher = SUBREPORT_NAME.matcher(expression);
+					if (matcher.find()) {
+						String subreportName = matcher.group(1).split("\\.")[0];
+						LOGGER.debug("found a subreport: {}", subreportName);
+						subreportNames.add(subreportName);
+					} else {
+						LOGGER.error(">> unexpected subreport expression {}", expression);
+					}
+				}
+			}
+		}
+		return List.copyOf(subreportNames);
+	}
+
+	private record CachedReport(JasperReport report, long lastModified, List<String> subreportNames) {
+
+	}
+
+}
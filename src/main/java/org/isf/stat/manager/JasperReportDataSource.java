@@ -0,0 +1,157 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2024 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.isf.stat.manager;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.isf.utils.exception.OHException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.jasperreports.engine.JasperReport;
+
+/**
+ * Runs the main query of a report outside of the Jasper fill, e.g. for the Excel exports.
+ * <p>
+ * {@code $P{name}} placeholders are bound as prepared statement parameters; {@code $P!{name}} placeholders are substituted as text, like Jasper does, but
+ * only with a list of columns, each optionally qualified and followed by {@code ASC} or {@code DESC}, as in an {@code ORDER BY}. The translated SQL is kept
+ * per query text, and each query runs on its own pooled connection with a forward-only, read-only cursor and a bounded fetch size.
+ * <p>
+ * The fetch size streams the rows to the handler with the MariaDB driver. MySQL Connector/J ignores it and loads all the rows unless the JDBC url sets
+ * {@code useCursorFetch=true}.
+ */
+class JasperReportDataSource {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(JasperReportDataSource.class);
+
+	private static final Pattern PARAMETER = Pattern.compile("\\$P(!?)\\{([^}]+)}");
+
+	private static final Pattern TEXT_PARAMETER = Pattern.compile("\\$P!\\{([^}]+)}");
+
+	private static final String SAFE_COLUMN = "\\w+(\\.\\w+)?( (?i:ASC|DESC))?";
+
+	private static final Pattern SAFE_TEXT = Pattern.compile("(" + SAFE_COLUMN + "(, ?" + SAFE_COLUMN + ")*)?");
+
+	/**
+	 * Rows fetched at a time; needs {@code useCursorFetch=true} in the JDBC url with MySQL Connector/J
+	 */
+	private static final int FETCH_SIZE = 500;
+
+	private final DataSource dataSource;
+
+	private final Map<String, ReportQuery> queries = new ConcurrentHashMap<>();
+
+	/**
+	 * Handles the rows returned by a report query.
+	 */
+	@FunctionalInterface
+	interface ResultSetHandler {
+
+		void handle(ResultSet resultSet) throws IOException, OHException;
+	}
+
+	JasperReportDataSource(DataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	/**
+	 * Runs the main query of the report with the specified parameters.
+	 *
+	 * @param jasperReport the report.
+	 * @param parameters the report parameters, by name; missing parameters are bound as {@code null}.
+	 * @param handler the handler of the rows; the {@link ResultSet} is closed when it returns.
+	 * @throws SQLException if the query fails.
+	 * @throws IOException if the handler fails writing.
+	 * @throws OHException if the handler fails.
+	 */
+	void query(JasperReport jasperReport, Map<String, Object> parameters, ResultSetHandler handler) throws SQLException, IOException, OHException {
+		ReportQuery reportQuery = queries.computeIfAbsent(jasperReport.getMainDataset().getQuery().getText(), ReportQuery::parse);
+		String sql = reportQuery.sql(parameters);
+		LOGGER.debug("Report query {}", sql);
+		try (Connection connection = dataSource.getConnection();
+						PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+			statement.setFetchSize(FETCH_SIZE);
+			List<String> parameterNames = reportQuery.parameterNames();
+			for (int i = 0; i < parameterNames.size(); i++) {
+				statement.setObject(i + 1, parameters.get(parameterNames.get(i)));
+			}
+			try (ResultSet resultSet = statement.executeQuery()) {
+				handler.handle(resultSet);
+			}
+		}
+	}
+
+	/**
+	 * A report query translated to JDBC: the SQL with a {@code ?} for each bound parameter, and the names of the bound parameters in order.
+	 */
+	private record ReportQuery(String sql, List<String> parameterNames, boolean hasTextParameters) {
+
+		static ReportQuery parse(String queryText) {
+			List<String> parameterNames = new ArrayList<>();
+			boolean hasTextParameters = false;
+			StringBuilder sql = new StringBuilder();
+			Matcher matcher = PARAMETER.matcher(queryText);
+			while (matcher.find()) {
+				if (matcher.group(1).isEmpty()) {
+					parameterNames.add(matcher.group(2));
+					matcher.appendReplacement(sql, "?");
+				} else {
+					hasTextParameters = true;
+					matcher.appendReplacement(sql, Matcher.quoteReplacement(matcher.group()));
+				}
+			}
+			matcher.appendTail(sql);
+			return new ReportQuery(sql.toString(), List.copyOf(parameterNames), hasTextParameters);
+		}
+
+		String sql(Map<String, Object> parameters) {
+			if (!hasTextParameters) {
+				return sql;
+			}
+			StringBuilder result = new StringBuilder();
+			Matcher matcher = TEXT_PARAMETER.matcher(sql);
+			while (matcher.find()) {
+				Object value = parameters.get(matcher.group(1));
+				String text = value == null ? "" : value.toString();
+				if (!SAFE_TEXT.matcher(text).matches()) {
+					throw new IllegalArgumentException("Invalid value for report parameter " + matcher.group(1) + ": " + text);
+				}
+				matcher.appendReplacement(result, Matcher.quoteReplacement(text));
+			}
+			matcher.appendTail(result);
+			return result.toString();
+		}
+	}
+
+}
@@ -22,8 +22,8 @@
 package org.isf.stat.manager;
 
 import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
@@ -40,8 +40,11 @@ import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.Optional;
 import java.util.ResourceBundle;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sql.DataSource;
 
@@ -54,9 +57,9 @@ import org.isf.medicals.model.Medical;
 import org.isf.patient.model.Patient;
 import org.isf.patient.service.PatientIoOperations;
 import org.isf.stat.dto.JasperReportResultDto;
-import org.isf.utils.db.DbQueryLogger;
 import org.isf.utils.db.UTF8Control;
 import org.isf.utils.excel.ExcelExporter;
+import org.isf.utils.exception.OHException;
 import org.isf.utils.exception.OHReportException;
 import org.isf.utils.exception.OHServiceException;
 import org.isf.utils.exception.model.OHExceptionMessage;
@@ -66,18 +69,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
-import net.sf.jasperreports.engine.JRBand;
-import net.sf.jasperreports.engine.JRChild;
+import jakarta.annotation.PreDestroy;
+
 import net.sf.jasperreports.engine.JRException;
-import net.sf.jasperreports.engine.JRExpressionChunk;
 import net.sf.jasperreports.engine.JRParameter;
-import net.sf.jasperreports.engine.JRQuery;
 import net.sf.jasperreports.engine.JasperExportManager;
 import net.sf.jasperreports.engine.JasperFillManager;
 import net.sf.jasperreports.engine.JasperPrint;
 import net.sf.jasperreports.engine.JasperReport;
-import net.sf.jasperreports.engine.base.JRBaseSubreport;
-import net.sf.jasperreports.engine.util.JRLoader;
 
 @Component
 public class JasperReportsManager {
@@ -92,13 +91,66 @@ public class JasperReportsManager {
 
 	private static final String RPT_BASE = "rpt_base";
 
+	private static final int REPORT_QUEUE_CAPACITY = 64;
+
 	private HospitalBrowsingManager hospitalManager;
 
 	private DataSource dataSource;
 
+	private final JasperReportCache reportCache = new JasperReportCache();
+
+	private final JasperReportDataSource reportDataSource;
+
+	private final ThreadPoolExecutor reportExecutor;
+
 	public JasperReportsManager(HospitalBrowsingManager hospitalBrowsingManager, DataSource dataSource) {
 		this.hospitalManager = hospitalBrowsingManager;
 		this.dataSource = dataSource;
+		this.reportDataSource = new JasperReportDataSource(dataSource);
+		int poolSize = Runtime.getRuntime().availableProcessors();
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.reportExecutor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(REPORT_QUEUE_CAPACITY),
+						runnable -> {
+							Thread thread = new Thread(runnable, "report-fill-" + threadNumber.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}, new ThreadPoolExecutor.CallerRunsPolicy());
+		this.reportExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * A report generation, typically one of the {@code get...Pdf} methods of this manager.
+	 *
+	 * @param <T> the type of the result.
+	 */
+	@FunctionalInterface
+	public interface ReportTask<T> {
+
+		T generate() throws OHServiceException;
+	}
+
+	/**
+	 * Runs a report generation on the bounded report pool, so that several reports can be filled and exported concurrently.
+	 * When the pool queue is full the task runs in the calling thread.
+	 *
+	 * @param task the report generation, e.g. {@code () -> manager.getGenericReportBillPdf(billId, jasperFileName, false, false)}.
+	 * @return a future completed with the report, or exceptionally with the {@link OHServiceException} thrown by the task.
+	 */
+	public <T> CompletableFuture<T> submitReport(ReportTask<T> task) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		reportExecutor.execute(() -> {
+			try {
+				future.complete(task.generate());
+			} catch (Exception e) {
+				future.completeExceptionally(e);
+			}
+		});
+		return future;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		reportExecutor.shutdown();
 	}
 
 	public JasperReportResultDto getExamsListPdf() throws OHServiceException {
@@ -465,29 +517,14 @@ public class JasperReportsManager {
 			}
 			HashMap<String, Object> parameters = compileGenericReportPharmaceuticalAMCparameters(date);
 
-			String dateTodayQuery = TimeTools.formatDateTime((LocalDateTime) parameters.get("TODAY_DATE"), YYYY_MM_DD);
-			String dateStartQuery = TimeTools.formatDateTime((LocalDateTime) parameters.get("START_DATE"), YYYY_MM_DD);
-			String dateEndQuery = TimeTools.formatDateTime((LocalDateTime) parameters.get("END_DATE"), YYYY_MM_DD);
+			Map<String, Object> queryParameters = new HashMap<>();
+			queryParameters.put("TODAY_DATE", ((LocalDateTime) parameters.get("TODAY_DATE")).toLocalDate());
+			queryParameters.put("START_DATE", ((LocalDateTime) parameters.get("START_DATE")).toLocalDate());
+			queryParameters.put("END_DATE", ((LocalDateTime) parameters.get("END_DATE")).toLocalDate());
 			File jasperFile = new File(compileJasperFilename(RPT_BASE, jasperFileName));
 
-			JasperReport jasperReport = (JasperReport) JRLoader.loadObject(jasperFile);
-			JRQuery query = jasperReport.getMainDataset().getQuery();
-
-			String queryString = query.getText();
-			queryString = queryString.replace("$P{TODAY_DATE}", '\'' + dateTodayQuery + '\'');
-			queryString = queryString.replace("$P{START_DATE}", '\'' + dateStartQuery + '\'');
-			queryString = queryString.replace("$P{END_DATE}", '\'' + dateEndQuery + '\'');
-
-			DbQueryLogger dbQuery = new DbQueryLogger();
-			ResultSet resultSet = dbQuery.getData(queryString, true);
-
-			File exportFile = new File(exportFilename);
-			ExcelExporter xlsExport = new ExcelExporter();
-			if (exportFile.getName().endsWith(".xls")) {
-				xlsExport.exportResultsetToExcelOLD(resultSet, exportFile);
-			} else {
-				xlsExport.exportResultsetToExcel(resultSet, exportFile);
-			}
+			JasperReport jasperReport = reportCache.getReport(jasperFile);
+			exportReportQuery(jasperReport, queryParameters, exportFilename);
 		} catch (Exception e) {
 			LOGGER.error("", e);
 			throw new OHReportException(e, new OHExceptionMessage(MessageBundle.getMessage(STAT_REPORTERROR_MSG)));
@@ -513,34 +550,15 @@ public class JasperReportsManager {
 			if (date == null) {
 				date = TimeTools.getNow();
 			}
-			String dateQuery = TimeTools.formatDateTime(date, YYYY_MM_DD);
+			Map<String, Object> queryParameters = new HashMap<>();
+			queryParameters.put("todate", date.toLocalDate());
+			queryParameters.put("groupBy", groupBy);
+			queryParameters.put("sortBy", sortBy);
+			queryParameters.put("filter", filter);
 			File jasperFile = new File(compileJasperFilename(RPT_BASE, jasperFileName));
 
-			JasperReport jasperReport = (JasperReport) JRLoader.loadObject(jasperFile);
-			JRQuery query = jasperReport.getMainDataset().getQuery();
-
-			String queryString = query.getText();
-			queryString = queryString.replace("$P{todate}", '\'' + dateQuery + '\'');
-			if (groupBy != null) {
-				queryString = queryString.replace("$P{groupBy}", '\'' + groupBy + '\'');
-			}
-			if (sortBy != null) {
-				queryString = queryString.replace("$P!{sortBy}", '\'' + sortBy + '\'');
-			}
-			if (filter != null) {
-				queryString = queryString.replace("$P{filter}", '\'' + filter + '\'');
-			}
-
-			DbQueryLogger dbQuery = new DbQueryLogger();
-			ResultSet resultSet = dbQuery.getData(queryString, true);
-
-			File exportFile = new File(exportFilename);
-			ExcelExporter xlsExport = new ExcelExporter();
-			if (exportFile.getName().endsWith(".xls")) {
-				xlsExport.exportResultsetToExcelOLD(resultSet, exportFile);
-			} else {
-				xlsExport.exportResultsetToExcel(resultSet, exportFile);
-			}
+			JasperReport jasperReport = reportCache.getReport(jasperFile);
+			exportReportQuery(jasperReport, queryParameters, exportFilename);
 		} catch (Exception e) {
 			LOGGER.error("", e);
 			throw new OHReportException(e, new OHExceptionMessage(MessageBundle.getMessage(STAT_REPORTERROR_MSG)));
@@ -632,34 +650,20 @@ public class JasperReportsManager {
 			if (dateTo == null) {
 				dateTo = TimeTools.getNow();
 			}
-			String dateFromQuery = TimeTools.formatDateTime(dateFrom, YYYY_MM_DD);
-			String dateToQuery = TimeTools.formatDateTime(dateTo, YYYY_MM_DD);
-
-			File jasperFile = new File(compileJasperFilename(RPT_BASE, jasperFileName));
-
-			JasperReport jasperReport = (JasperReport) JRLoader.loadObject(jasperFile);
-			JRQuery query = jasperReport.getMainDataset().getQuery();
-
-			String queryString = query.getText();
-			queryString = queryString.replace("$P{fromdate}", '\'' + dateFromQuery + '\'');
-			queryString = queryString.replace("$P{todate}", '\'' + dateToQuery + '\'');
+			Map<String, Object> queryParameters = new HashMap<>();
+			queryParameters.put("fromdate", dateFrom.toLocalDate());
+			queryParameters.put("todate", dateTo.toLocalDate());
 			if (medical != null) {
-				queryString = queryString.replace("$P{productID}", "'" + medical.getCode() + '\'');
+				queryParameters.put("productID", medical.getCode());
 			}
 			if (ward != null) {
-				queryString = queryString.replace("$P{WardCode}", '\'' + ward.getCode() + '\'');
+				queryParameters.put("WardCode", ward.getCode());
 			}
 
-			DbQueryLogger dbQuery = new DbQueryLogger();
-			ResultSet resultSet = dbQuery.getData(queryString, true);
+			File jasperFile = new File(compileJasperFilename(RPT_BASE, jasperFileName));
 
-			File exportFile = new File(exportFileName);
-			ExcelExporter xlsExport = new ExcelExporter();
-			if (exportFile.getName().endsWith(".xls")) {
-				xlsExport.exportResultsetToExcelOLD(resultSet, exportFile);
-			} else {
-				xlsExport.exportResultsetToExcel(resultSet, exportFile);
-			}
+			JasperReport jasperReport = reportCache.getReport(jasperFile);
+			exportReportQuery(jasperReport, queryParameters, exportFileName);
 
 		} catch (Exception e) {
 			LOGGER.error("", e);
@@ -802,23 +806,12 @@ public class JasperReportsManager {
 			String filename = compileJasperFilename(jasperFileFolder, jasperFileName);
 			File jasperFile = new File(filename);
 
-			JasperReport jasperReport = (JasperReport) JRLoader.loadObject(jasperFile);
-			JRQuery query = jasperReport.getMainDataset().getQuery();
-			String queryString = query.getText();
-
-			queryString = queryString.replace("$P{fromdate}", "'" + java.sql.Date.valueOf(fromDate) + '\'');
-			queryString = queryString.replace("$P{todate}", "'" + java.sql.Date.valueOf(toDate) + '\'');
-
-			DbQueryLogger dbQuery = new DbQueryLogger();
-			ResultSet resultSet = dbQuery.getData(queryString, true);
+			JasperReport jasperReport = reportCache.getReport(jasperFile);
+			Map<String, Object> queryParameters = new HashMap<>();
+			queryParameters.put("fromdate", fromDate);
+			queryParameters.put("todate", toDate);
 
-			File exportFile = new File(exportFilename);
-			ExcelExporter xlsExport = new ExcelExporter();
-			if (exportFile.getName().endsWith(".xls")) {
-				xlsExport.exportResultsetToExcelOLD(resultSet, exportFile);
-			} else {
-				xlsExport.exportResultsetToExcel(resultSet, exportFile);
-			}
+			exportReportQuery(jasperReport, queryParameters, exportFilename);
 		} catch (Exception exception) {
 			throw new OHReportException(exception, new OHExceptionMessage(MessageBundle.getMessage(STAT_REPORTERROR_MSG)));
 		}
@@ -829,26 +822,12 @@ public class JasperReportsManager {
 
 		try {
 			File jasperFile = new File(compileJasperFilename(jasperFileFolder, jasperFileName));
-			JasperReport jasperReport = (JasperReport) JRLoader.loadObject(jasperFile);
-			JRQuery query = jasperReport.getMainDataset().getQuery();
-			String queryString = query.getText();
+			JasperReport jasperReport = reportCache.getReport(jasperFile);
+			Map<String, Object> queryParameters = new HashMap<>();
+			queryParameters.put("fromdate", TimeTools.getDate(fromDate, DD_MM_YYYY).toLocalDate());
+			queryParameters.put("todate", TimeTools.getDate(toDate, DD_MM_YYYY).toLocalDate());
 
-			String dateFromQuery = TimeTools.formatDateTime(TimeTools.getDate(fromDate, DD_MM_YYYY), YYYY_MM_DD);
-			String dateToQuery = TimeTools.formatDateTime(TimeTools.getDate(toDate, DD_MM_YYYY), YYYY_MM_DD);
-
-			queryString = queryString.replace("$P{fromdate}", '\'' + dateFromQuery + '\'');
-			queryString = queryString.replace("$P{todate}", '\'' + dateToQuery + '\'');
-
-			DbQueryLogger dbQuery = new DbQueryLogger();
-			ResultSet resultSet = dbQuery.getData(queryString, true);
-
-			File exportFile = new File(exportFilename);
-			ExcelExporter xlsExport = new ExcelExporter();
-			if (exportFile.getName().endsWith(".xls")) {
-				xlsExport.exportResultsetToExcelOLD(resultSet, exportFile);
-			} else {
-				xlsExport.exportResultsetToExcel(resultSet, exportFile);
-			}
+			exportReportQuery(jasperReport, queryParameters, exportFilename);
 		} catch (Exception exception) {
 			throw new OHReportException(exception, new OHExceptionMessage(MessageBundle.getMessage(STAT_REPORTERROR_MSG)));
 		}
@@ -874,22 +853,12 @@ public class JasperReportsManager {
 
 		try {
 			File jasperFile = new File(compileJasperFilename(jasperFileFolder, jasperFileName));
-			JasperReport jasperReport = (JasperReport) JRLoader.loadObject(jasperFile);
-			JRQuery query = jasperReport.getMainDataset().getQuery();
-			String queryString = query.getText();
-			queryString = queryString.replace("$P{year}", "'" + year + '\'');
-			queryString = queryString.replace("$P{month}", "'" + month + '\'');
+			JasperReport jasperReport = reportCache.getReport(jasperFile);
+			Map<String, Object> queryParameters = new HashMap<>();
+			queryParameters.put("year", year);
+			queryParameters.put("month", month);
 
-			DbQueryLogger dbQuery = new DbQueryLogger();
-			ResultSet resultSet = dbQuery.getData(queryString, true);
-
-			File exportFile = new File(exportFilename);
-			ExcelExporter xlsExport = new ExcelExporter();
-			if (exportFile.getName().endsWith(".xls")) {
-				xlsExport.exportResultsetToExcelOLD(resultSet, exportFile);
-			} else {
-				xlsExport.exportResultsetToExcel(resultSet, exportFile);
-			}
+			exportReportQuery(jasperReport, queryParameters, exportFilename);
 		} catch (Exception e) {
 			LOGGER.error("", e);
 			throw new OHReportException(e, new OHExceptionMessage(MessageBundle.getMessage(STAT_REPORTERROR_MSG)));
@@ -986,33 +955,12 @@ public class JasperReportsManager {
 
 	private void addSubReportsBundleParameters(String jasperFileFolder, String jasperFileName, Map<String, Object> parameters) throws JRException {
 		File jasperFile = new File(compileJasperFilename(jasperFileFolder, jasperFileName));
-		final JasperReport jasperReport = (JasperReport) JRLoader.loadObject(jasperFile);
-		JRBand[] bands = jasperReport.getAllBands(); // Get all bands
-		for (JRBand band : bands) {
-			List<JRChild> elements = band.getChildren(); // Get all children
-			for (JRChild child : elements) {
-				int index = 1;
-				if (child instanceof JRBaseSubreport subreport) { // This is a subreport
-					String expression = ""; // Lets find out the expression used
-					JRExpressionChunk[] chunks = subreport.getExpression().getChunks();
-					for (JRExpressionChunk c : chunks) {
-						expression += c.getText();
-					}
-
-					/*
-					 * add indexed subreport bundle
-					 */
-					Pattern pattern = Pattern.compile("\"(.*)\"");
-					Matcher matcher = pattern.matcher(expression);
-					if (matcher.find()) {
-						String subreportName = matcher.group(1).split("\\.")[0];
-						LOGGER.debug("found a subreport: {}", subreportName);
-						addReportBundleParameter("SUBREPORT_RESOURCE_BUNDLE_" + index, subreportName, parameters);
-					} else {
-						LOGGER.error(">> unexpected subreport expression {}", expression);
-					}
-				}
-			}
+		int index = 1;
+		for (String subreportName : reportCache.getSubreportNames(jasperFile)) {
+			/*
+			 * add indexed subreport bundle
+			 */
+			addReportBundleParameter("SUBREPORT_RESOURCE_BUNDLE_" + index++, subreportName, parameters);
 		}
 	}
 
@@ -1041,11 +989,29 @@ public class JasperReportsManager {
 	private JasperReportResultDto generateJasperReport(String jasperFilename, String filename, Map<String, Object> parameters)
 					throws JRException, SQLException {
 		File jasperFile = new File(jasperFilename);
-		final JasperReport jasperReport = (JasperReport) JRLoader.loadObject(jasperFile);
-		Connection connection = dataSource.getConnection();
-		JasperPrint jasperPrint = JasperFillManager.fillReport(jasperReport, parameters, connection);
-		connection.close();
-		return new JasperReportResultDto(jasperPrint, jasperFilename, filename);
+		final JasperReport jasperReport = reportCache.getReport(jasperFile);
+		try (Connection connection = dataSource.getConnection()) {
+			JasperPrint jasperPrint = JasperFillManager.fillReport(jasperReport, parameters, connection);
+			return new JasperReportResultDto(jasperPrint, jasperFilename, filename);
+		}
+	}
+
+	/**
+	 * Exports the rows of the main query of the report to Excel, Excel 97-2003 or CSV, depending on the extension of the export file.
+	 */
+	private void exportReportQuery(JasperReport jasperReport, Map<String, Object> queryParameters, String exportFilename)
+					throws SQLException, IOException, OHException {
+		File exportFile = new File(exportFilename);
+		ExcelExporter xlsExport = new ExcelExporter();
+		reportDataSource.query(jasperReport, queryParameters, resultSet -> {
+			if (exportFile.getName().endsWith(".xls")) {
+				xlsExport.exportResultsetToExcelOLD(resultSet, exportFile);
+			} else if (exportFile.getName().endsWith(".csv")) {
+				xlsExport.exportResultsetToCSV(resultSet, exportFile);
+			} else {
+				xlsExport.exportResultsetToExcel(resultSet, exportFile);
+			}
+		});
 	}
 
 	private String compileJasperFilename(String folderName, String jasperFileName) {
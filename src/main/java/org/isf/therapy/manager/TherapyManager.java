@@ -21,9 +21,16 @@
  */
 package org.isf.therapy.manager;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.isf.generaldata.MessageBundle;
 import org.isf.medicals.manager.MedicalBrowsingManager;
@@ -74,17 +81,20 @@ public class TherapyManager {
 	 * @throws OHServiceException
 	 */
 	public Therapy createTherapy(TherapyRow th) throws OHServiceException {
-		return createTherapy(th.getTherapyID(), th.getPatient().getCode(), th.getMedical(), th.getQty(), th.getStartDate(), th.getEndDate(),
+		return createTherapy(th, medManager.getMedical(th.getMedical()));
+	}
+
+	private Therapy createTherapy(TherapyRow th, Medical med) {
+		return createTherapy(th.getTherapyID(), th.getPatient().getCode(), med, th.getQty(), th.getStartDate(), th.getEndDate(),
 				th.getFreqInPeriod(), th.getFreqInDay(), th.getNote(), th.isNotify(), th.isSms());
 	}
 
 	/**
-	 * Creates a {@link Therapy} from its parameters, fetching the {@link Medical}
-	 * and building the array of Dates ({@link LocalDateTime})
+	 * Creates a {@link Therapy} from its parameters, building the array of Dates ({@link LocalDateTime})
 	 *
 	 * @param therapyID
 	 * @param patID
-	 * @param medId
+	 * @param med
 	 * @param qty
 	 * @param startDate
 	 * @param endDate
@@ -95,31 +105,35 @@ public class TherapyManager {
 	 * @param sms
 	 * @return the {@link Therapy}
 	 */
-	private Therapy createTherapy(int therapyID, int patID, Integer medId, Double qty,
+	private Therapy createTherapy(int therapyID, int patID, Medical med, Double qty,
 			LocalDateTime startDate, LocalDateTime endDate, int freqInPeriod,
-			int freqInDay, String note, boolean notify, boolean sms) throws OHServiceException {
-
-		List<LocalDateTime> datesArray = new ArrayList<>();
-
-		LocalDateTime stepDate = TimeTools.truncateToSeconds(startDate);
-		datesArray.add(stepDate);
-
-		endDate = TimeTools.truncateToSeconds(endDate);
-
-		while (stepDate.isBefore(endDate)) {
-			LocalDateTime newDate = stepDate.plusDays(freqInPeriod);
-			datesArray.add(newDate);
-			stepDate = newDate;
-		}
-
-		LocalDateTime[] dates = new LocalDateTime[datesArray.size()];
+			int freqInDay, String note, boolean notify, boolean sms) {
+		LocalDateTime[] dates = getTherapyDates(startDate, endDate, freqInPeriod);
+		return new Therapy(therapyID, patID, dates, med, qty, "", freqInDay, note, notify, sms);
+	}
 
-		for (int i = 0; i < datesArray.size(); i++) {
-			dates[i] = datesArray.get(i);
+	/**
+	 * Builds the array of Dates ({@link LocalDateTime}) of a therapy: one every {@code freqInPeriod} days
+	 * from {@code startDate} up to the first date not before {@code endDate}.
+	 *
+	 * @param startDate
+	 * @param endDate
+	 * @param freqInPeriod - the number of days between two dates
+	 * @return the array of Dates
+	 */
+	private static LocalDateTime[] getTherapyDates(LocalDateTime startDate, LocalDateTime endDate, int freqInPeriod) {
+		LocalDateTime start = TimeTools.truncateToSeconds(startDate);
+		LocalDateTime end = TimeTools.truncateToSeconds(endDate);
+		int days = Math.max(freqInPeriod, 1);
+		long period = Duration.ofDays(days).toSeconds();
+		long seconds = Math.max(ChronoUnit.SECONDS.between(start, end), 0);
+		int steps = (int) ((seconds + period - 1) / period);
+
+		LocalDateTime[] dates = new LocalDateTime[steps + 1];
+		for (int i = 0; i <= steps; i++) {
+			dates[i] = start.plusDays((long) i * days);
 		}
-
-		Medical med = medManager.getMedical(medId);
-		return new Therapy(therapyID, patID, dates, med, qty, "", freqInDay, note, notify, sms);
+		return dates;
 	}
 
 	/**
@@ -132,15 +146,35 @@ public class TherapyManager {
 	public List<Therapy> getTherapies(List<TherapyRow> thRows) throws OHServiceException {
 
 		if (thRows != null) {
-			List<Therapy> therapies = new ArrayList<>();
+			Map<Integer, Medical> medicals = getMedicals(thRows);
+			List<Therapy> therapies = new ArrayList<>(thRows.size());
 			for (TherapyRow thRow : thRows) {
-				therapies.add(createTherapy(thRow));
+				therapies.add(createTherapy(thRow, medicals.get(thRow.getMedical())));
 			}
 			return therapies;
 		}
 		return null;
 	}
 
+	/**
+	 * Fetches once the {@link Medical}s referenced by the specified {@link TherapyRow}s
+	 *
+	 * @param thRows - the list of {@link TherapyRow}s
+	 * @return the {@link Medical}s by code
+	 * @throws OHServiceException
+	 */
+	private Map<Integer, Medical> getMedicals(List<TherapyRow> thRows) throws OHServiceException {
+		Set<Integer> codes = new HashSet<>();
+		for (TherapyRow thRow : thRows) {
+			codes.add(thRow.getMedical());
+		}
+		Map<Integer, Medical> medicals = new HashMap<>();
+		for (Medical medical : medManager.getMedicalsByCodes(codes)) {
+			medicals.put(medical.getCode(), medical);
+		}
+		return medicals;
+	}
+
 	/**
 	 * Return the list of {@link TherapyRow}s (therapies) for specified Patient ID
 	 * or
@@ -167,6 +201,8 @@ public class TherapyManager {
 
 	/**
 	 * Replace all {@link TherapyRow}s (therapies) for related Patient
+	 * The {@link Patient} and the {@link Medical}s are fetched once and all the scheduled {@link Sms} reminders
+	 * are inserted together
 	 *
 	 * @param thRows - the list of {@link TherapyRow}s (therapies)
 	 * @return {@code true} if the row has been inserted, {@code false} otherwise
@@ -180,29 +216,43 @@ public class TherapyManager {
 			int patID = thRows.get(0).getPatient().getCode();
 			smsOp.deleteByModuleModuleID("therapy", String.valueOf(patID));
 
-			for (TherapyRow thRow : thRows) {
+			ioOperations.newTherapies(thRows);
 
-				ioOperations.newTherapy(thRow);
+			List<TherapyRow> smsRows = new ArrayList<>();
+			for (TherapyRow thRow : thRows) {
 				if (thRow.isSms()) {
-					Therapy th = createTherapy(thRow);
-					LocalDateTime[] dates = th.getDates();
-					for (LocalDateTime date : dates) {
-						date = date.withHour(8);
-						if (date.isAfter(TimeTools.getDateToday24())) {
-							Patient pat = patientManager.getPatientById(patID);
-
-							Sms sms = new Sms();
-							sms.setSmsDateSched(date);
-							sms.setSmsNumber(pat.getTelephone());
-							sms.setSmsText(prepareSmsFromTherapy(th));
-							sms.setSmsUser(UserBrowsingManager.getCurrentUser());
-							sms.setModule("therapy");
-							sms.setModuleID(String.valueOf(patID));
-							smsOp.saveOrUpdate(sms);
-						}
+					smsRows.add(thRow);
+				}
+			}
+			if (smsRows.isEmpty()) {
+				return true;
+			}
+
+			Patient pat = patientManager.getPatientById(patID);
+			Map<Integer, Medical> medicals = getMedicals(smsRows);
+			LocalDateTime today24 = TimeTools.getDateToday24();
+			String user = UserBrowsingManager.getCurrentUser();
+			List<Sms> smsList = new ArrayList<>();
+			for (TherapyRow thRow : smsRows) {
+				Therapy th = createTherapy(thRow, medicals.get(thRow.getMedical()));
+				String text = prepareSmsFromTherapy(th);
+				for (LocalDateTime date : th.getDates()) {
+					date = date.withHour(8);
+					if (date.isAfter(today24)) {
+						Sms sms = new Sms();
+						sms.setSmsDateSched(date);
+						sms.setSmsNumber(pat.getTelephone());
+						sms.setSmsText(text);
+						sms.setSmsUser(user);
+						sms.setModule("therapy");
+						sms.setModuleID(String.valueOf(patID));
+						smsList.add(sms);
 					}
 				}
 			}
+			if (!smsList.isEmpty()) {
+				smsOp.saveOrUpdate(smsList);
+			}
 		}
 		return true;
 	}
@@ -248,6 +298,8 @@ public class TherapyManager {
 
 	/**
 	 * Returns the {@link Medical}s that are not available for the specified list of {@link Therapy}s
+	 * The quantities needed by all the therapies are summed up by {@link Medical} and checked against
+	 * a single snapshot of the main store and wards stock
 	 *
 	 * @param therapies - the list of {@link Therapy}s
 	 * @return the list of {@link Medical}s out of stock
@@ -256,39 +308,38 @@ public class TherapyManager {
 	@Transactional(rollbackFor = OHServiceException.class)
 	@TranslateOHServiceException
 	public List<Medical> getMedicalsOutOfStock(List<Therapy> therapies) throws OHServiceException {
-		List<Medical> medOutStock = new ArrayList<>();
-		List<Medical> medArray = medManager.getMedicals();
-
-		double neededQty;
-		double actualQty;
-
+		// CALCULATING NEEDINGS
+		LocalDateTime todayDate = TimeTools.getDateToday0();
+		Map<Integer, Double> neededQtys = new LinkedHashMap<>();
 		for (Therapy th : therapies) {
-
-			// CALCULATING NEEDINGS
-			Double qty = th.getQty();
-			int freq = th.getFreqInDay();
-			LocalDateTime todayDate = TimeTools.getDateToday0();
-
 			int dayCount = 0;
 			for (LocalDateTime date : th.getDates()) {
-				if (date.isAfter(todayDate) || date.equals(todayDate)) {
+				if (!date.isBefore(todayDate)) {
 					dayCount++;
 				}
 			}
-
 			if (dayCount != 0) {
+				neededQtys.merge(th.getMedical().getCode(), th.getQty() * th.getFreqInDay() * dayCount, Double::sum);
+			}
+		}
+		if (neededQtys.isEmpty()) {
+			return new ArrayList<>();
+		}
 
-				neededQty = qty * freq * dayCount;
-
-				// CALCULATING STOCK QUANTITIES
-				Medical med = medArray.get(medArray.indexOf(th.getMedical()));
-				actualQty = med.getInitialqty() + med.getInqty() - med.getOutqty(); // MAIN STORE
-				int currentQuantity = wardManager.getCurrentQuantityInWard(null, med);
-				actualQty += currentQuantity;
+		// CALCULATING STOCK QUANTITIES
+		Map<Integer, Medical> medicals = new HashMap<>();
+		for (Medical medical : medManager.getMedicalsByCodes(neededQtys.keySet())) {
+			medicals.put(medical.getCode(), medical);
+		}
+		Map<Integer, Double> wardQtys = wardManager.getQuantitiesInWard(null);
 
-				if (neededQty > actualQty && !medOutStock.contains(med)) {
-					medOutStock.add(med);
-				}
+		List<Medical> medOutStock = new ArrayList<>();
+		for (Map.Entry<Integer, Double> needed : neededQtys.entrySet()) {
+			Medical med = medicals.get(needed.getKey());
+			double actualQty = med.getInitialqty() + med.getInqty() - med.getOutqty(); // MAIN STORE
+			actualQty += wardQtys.getOrDefault(med.getCode(), 0.0);
+			if (needed.getValue() > actualQty) {
+				medOutStock.add(med);
 			}
 		}
 		return medOutStock;
@@ -52,6 +52,17 @@ public class TherapyIoOperations {
 		return repository.save(thRow);
 	}
 
+	/**
+	 * Insert the specified {@link TherapyRow}s (therapies) into the DB.
+	 *
+	 * @param thRows - the list of {@link TherapyRow}s (therapies)
+	 * @return the newly inserted {@link TherapyRow} objects.
+	 * @throws OHServiceException
+	 */
+	public List<TherapyRow> newTherapies(List<TherapyRow> thRows) throws OHServiceException {
+		return repository.saveAll(thRows);
+	}
+
 	/**
 	 * Return the list of {@link TherapyRow}s (therapies) for specified Patient ID
 	 * or
@@ -23,15 +23,18 @@ package org.isf.utils.excel;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.sql.Date;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
@@ -63,12 +66,22 @@ import org.apache.poi.ss.usermodel.RichTextString;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.isf.generaldata.MessageBundle;
 import org.isf.utils.exception.OHException;
 
 public class ExcelExporter {
 
+	private static final byte[] BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+	/**
+	 * Number of rows kept in memory by the streaming exports; older rows are flushed to a temporary file.
+	 */
+	private static final int ROW_ACCESS_WINDOW = 100;
+
+	private static final int CSV_BUFFER_SIZE = 64 * 1024;
+
 	private CharsetEncoder encoder;
 	private Locale currentLocale;
 	private Workbook workbook;
@@ -119,8 +132,7 @@ public class ExcelExporter {
 	 * @throws IOException
 	 */
 	private void writeBOM(FileOutputStream fileStream) throws IOException {
-		byte[] bom = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
-		fileStream.write(bom);
+		fileStream.write(BOM);
 	}
 
 	/**
@@ -214,13 +226,14 @@ public class ExcelExporter {
 	 */
 	private void exportResultsetToCSV(ResultSet resultSet, File exportFile, String separator) throws IOException, OHException {
 
-		/*
-		 * write BOM for Excel UTF-8 automatic handling
-		 */
-		FileOutputStream fileStream = new FileOutputStream(exportFile);
-		writeBOM(fileStream);
+		try (FileChannel channel = FileChannel.open(exportFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+						StandardOpenOption.WRITE)) {
+			/*
+			 * write BOM for Excel UTF-8 automatic handling
+			 */
+			channel.write(ByteBuffer.wrap(BOM));
 
-		try (BufferedWriter output = new BufferedWriter(new OutputStreamWriter(fileStream, encoder))) {
+			BufferedWriter output = new BufferedWriter(Channels.newWriter(channel, encoder, CSV_BUFFER_SIZE), CSV_BUFFER_SIZE);
 			SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
 			NumberFormat numFormat = NumberFormat.getInstance(currentLocale);
 
@@ -229,11 +242,10 @@ public class ExcelExporter {
 
 				int colCount = rsmd.getColumnCount();
 				for (int i = 1; i <= colCount; i++) {
-					if (i == colCount) {
-						output.write(rsmd.getColumnName(i));
-					} else {
-						output.write(rsmd.getColumnName(i) + separator);
+					if (i > 1) {
+						output.write(separator);
 					}
+					output.write(rsmd.getColumnName(i));
 				}
 				output.write("\n");
 
@@ -256,16 +268,16 @@ public class ExcelExporter {
 						} else {
 							strVal = " ";
 						}
-						if (i == colCount - 1) {
-							output.write(strVal);
-						} else {
-							output.write(strVal + separator);
+						if (i > 1) {
+							output.write(separator);
 						}
+						output.write(strVal);
 
 					}
 					output.write("\n");
 
 				}
+				output.flush();
 			} catch (SQLException e) {
 				throw new OHException(MessageBundle.getMessage("angal.sql.problemsoccurredwiththesqlinstruction.msg"), e);
 			}
@@ -399,44 +411,38 @@ public class ExcelExporter {
 	 * @throws OHException
 	 */
 	public void exportResultsetToExcel(ResultSet resultSet, File exportFile) throws IOException, OHException {
+		SXSSFWorkbook streamingWorkbook = createStreamingWorkbook();
 		try (FileOutputStream fileStream = new FileOutputStream(exportFile)) {
-
-			workbook = new XSSFWorkbook();
-			createHelper = workbook.getCreationHelper();
-
 			Sheet worksheet = workbook.createSheet();
-			initStyles();
 
-			Row headers = worksheet.createRow((short) 0);
-			try {
-				ResultSetMetaData rsmd = resultSet.getMetaData();
+			Row headers = worksheet.createRow(0);
+			ResultSetMetaData rsmd = resultSet.getMetaData();
 
-				int colCount = rsmd.getColumnCount();
-				for (int i = 0; i < colCount; i++) {
-					Cell cell = headers.createCell((short) i);
-					RichTextString value = createHelper.createRichTextString(rsmd.getColumnName(i + 1));
-					cell.setCellStyle(headerStyle);
-					cell.setCellValue(value);
-				}
+			int colCount = rsmd.getColumnCount();
+			for (int i = 0; i < colCount; i++) {
+				Cell cell = headers.createCell(i);
+				RichTextString value = createHelper.createRichTextString(rsmd.getColumnName(i + 1));
+				cell.setCellStyle(headerStyle);
+				cell.setCellValue(value);
+			}
 
-				int index = 1;
-				while (resultSet.next()) {
-					Row row = worksheet.createRow(index);
+			int index = 1;
+			while (resultSet.next()) {
+				Row row = worksheet.createRow(index);
 
-					for (int j = 0; j < colCount; j++) {
-						Object value = resultSet.getObject(j + 1);
-						Cell cell = row.createCell((short) j);
-						setValueForExcel(cell, value);
-					}
-					index++;
+				for (int j = 0; j < colCount; j++) {
+					Object value = resultSet.getObject(j + 1);
+					Cell cell = row.createCell(j);
+					setValueForExcel(cell, value);
 				}
-				workbook.write(fileStream);
-				fileStream.flush();
-			} catch (FileNotFoundException e) {
-				throw new OHException(e.getLocalizedMessage());
+				index++;
 			}
+			workbook.write(fileStream);
+			fileStream.flush();
 		} catch (SQLException e) {
 			throw new OHException(MessageBundle.getMessage("angal.sql.problemsoccurredwiththesqlinstruction.msg"), e);
+		} finally {
+			disposeStreamingWorkbook(streamingWorkbook);
 		}
 	}
 
@@ -449,45 +455,71 @@ public class ExcelExporter {
 	 * @throws OHException
 	 */
 	public void exportDataToExcel(Collection data, File exportFile) throws IOException, OHException {
-		FileOutputStream fileStream = new FileOutputStream(exportFile);
+		SXSSFWorkbook streamingWorkbook = createStreamingWorkbook();
+		try (FileOutputStream fileStream = new FileOutputStream(exportFile)) {
+			Sheet worksheet = workbook.createSheet();
 
-		workbook = new XSSFWorkbook();
-		createHelper = workbook.getCreationHelper();
-		Sheet worksheet = workbook.createSheet();
-		initStyles();
+			Row headers = worksheet.createRow(0);
+			boolean header = false;
+			int index = 1;
+			for (Object map : data) {
+				Map thisMap = ((Map) map);
+				if (!header) {
+					Set columns = thisMap.keySet();
+					int h = 0;
+					for (Object column : columns) {
+						Cell cell = headers.createCell(h);
+						RichTextString value = createHelper.createRichTextString(column.toString());
+						cell.setCellStyle(headerStyle);
+						cell.setCellValue(value);
+						h++;
+					}
+					header = true;
+				}
 
-		Row headers = worksheet.createRow((short) 0);
-		boolean header = false;
-		int index = 1;
-		for (Object map : data) {
-			Map thisMap = ((Map) map);
-			if (!header) {
-				Set columns = thisMap.keySet();
-				int h = 0;
-				for (Object column : columns) {
-					Cell cell = headers.createCell((short) h);
-					RichTextString value = createHelper.createRichTextString(column.toString());
-					cell.setCellStyle(headerStyle);
-					cell.setCellValue(value);
-					h++;
+				Row row = worksheet.createRow(index);
+				Collection values = thisMap.values();
+				int j = 0;
+				for (Object value : values) {
+					Cell cell = row.createCell(j);
+					setValueForExcel(cell, value);
+					j++;
 				}
-				header = true;
-				continue;
+				index++;
 			}
+			workbook.write(fileStream);
+			fileStream.flush();
+		} finally {
+			disposeStreamingWorkbook(streamingWorkbook);
+		}
+	}
 
-			Row row = worksheet.createRow(index);
-			Collection values = thisMap.values();
-			int j = 0;
-			for (Object value : values) {
-				Cell cell = row.createCell((short) j);
-				setValueForExcel(cell, value);
-				j++;
-			}
-			index++;
+	/**
+	 * Creates a streaming workbook that keeps only {@link #ROW_ACCESS_WINDOW} rows in memory, with compressed temporary files and inline strings, and
+	 * initializes the shared cell styles on it.
+	 *
+	 * @return the streaming workbook
+	 */
+	private SXSSFWorkbook createStreamingWorkbook() {
+		SXSSFWorkbook streamingWorkbook = new SXSSFWorkbook(null, ROW_ACCESS_WINDOW, true, false);
+		workbook = streamingWorkbook;
+		createHelper = workbook.getCreationHelper();
+		initStyles();
+		return streamingWorkbook;
+	}
+
+	/**
+	 * Closes the streaming workbook and deletes the temporary files backing its sheets.
+	 *
+	 * @param streamingWorkbook
+	 * @throws IOException
+	 */
+	private void disposeStreamingWorkbook(SXSSFWorkbook streamingWorkbook) throws IOException {
+		try {
+			streamingWorkbook.dispose();
+		} finally {
+			streamingWorkbook.close();
 		}
-		workbook.write(fileStream);
-		fileStream.flush();
-		fileStream.close();
 	}
 
 	private void setValueForExcel(Cell cell, Object value) {
@@ -0,0 +1,124 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2024 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.isf.utils.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.sql.Blob;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+/**
+ * A read-only {@link Blob} backed by a file: the bytes are read from the file each time they are requested, so that the
+ * content is never held in memory as a whole, e.g. while a large file waits to be saved.
+ */
+public class FileBlob implements Blob, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final File file;
+
+	public FileBlob(File file) {
+		this.file = file;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public long length() {
+		return file.length();
+	}
+
+	@Override
+	public byte[] getBytes(long pos, int length) throws SQLException {
+		if (pos < 1 || length < 0) {
+			throw new SQLException("Invalid range " + pos + ", " + length + " of " + file);
+		}
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+			int rangeLength = (int) Math.max(0, Math.min(length, randomAccessFile.length() - pos + 1));
+			byte[] range = new byte[rangeLength];
+			randomAccessFile.seek(pos - 1);
+			randomAccessFile.readFully(range);
+			return range;
+		} catch (IOException ioException) {
+			throw new SQLException(ioException);
+		}
+	}
+
+	@Override
+	public InputStream getBinaryStream() throws SQLException {
+		try {
+			return Files.newInputStream(file.toPath());
+		} catch (IOException ioException) {
+			throw new SQLException(ioException);
+		}
+	}
+
+	@Override
+	public InputStream getBinaryStream(long pos, long length) throws SQLException {
+		return new ByteArrayInputStream(getBytes(pos, (int) Math.min(length, Integer.MAX_VALUE)));
+	}
+
+	@Override
+	public long position(byte[] pattern, long start) throws SQLException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public long position(Blob pattern, long start) throws SQLException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public int setBytes(long pos, byte[] bytes) throws SQLException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public int setBytes(long pos, byte[] bytes, int offset, int len) throws SQLException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public OutputStream setBinaryStream(long pos) throws SQLException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public void truncate(long len) throws SQLException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public void free() {
+		// nothing is held open
+	}
+
+}
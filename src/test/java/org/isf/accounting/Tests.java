@@ -25,6 +25,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.data.Offset.offset;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -33,6 +34,7 @@ import org.isf.OHCoreTestCase;
 import org.isf.accounting.manager.BillBrowserManager;
 import org.isf.accounting.model.Bill;
 import org.isf.accounting.model.BillItems;
+import org.isf.accounting.model.BillLedgerTotal;
 import org.isf.accounting.model.BillPayments;
 import org.isf.accounting.service.AccountingBillIoOperationRepository;
 import org.isf.accounting.service.AccountingBillItemsIoOperationRepository;
@@ -53,6 +55,9 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 class Tests extends OHCoreTestCase {
 
@@ -78,6 +83,8 @@ class Tests extends OHCoreTestCase {
 	PricesListIoOperationRepository priceListIoOperationRepository;
 	@Autowired
 	PatientIoOperationRepository patientIoOperationRepository;
+	@Autowired
+	PlatformTransactionManager transactionManager;
 
 	@BeforeAll
 	static void setUpClass() {
@@ -311,6 +318,107 @@ class Tests extends OHCoreTestCase {
 		assertThat(foundBillItems.getBill().getId()).isEqualTo(bill.getId());
 	}
 
+	@Test
+	void testIoNewBillItemsKeepsExistingItems() throws Exception {
+		int existingId = setupTestBillItems(false);
+		BillItems existingBillItem = accountingBillItemsIoOperationRepository.findById(existingId).orElse(null);
+		assertThat(existingBillItem).isNotNull();
+		Bill bill = existingBillItem.getBill();
+
+		existingBillItem.setItemQuantity(7);
+		BillItems insertBillItem = testBillItems.setup(null, false);
+		List<BillItems> billItems = new ArrayList<>();
+		billItems.add(existingBillItem);
+		billItems.add(insertBillItem);
+		accountingIoOperation.newBillItems(bill, billItems);
+
+		List<BillItems> foundBillItems = accountingBillItemsIoOperationRepository.findByBill_idOrderByIdAsc(bill.getId());
+		assertThat(foundBillItems).hasSize(2);
+		assertThat(foundBillItems.get(0).getId()).isEqualTo(existingId);
+		assertThat(foundBillItems.get(0).getItemQuantity()).isEqualTo(7);
+		assertThat(foundBillItems.get(1).getId()).isEqualTo(insertBillItem.getId());
+
+		accountingIoOperation.newBillItems(bill, List.of(insertBillItem));
+		assertThat(accountingBillItemsIoOperationRepository.findByBill_idOrderByIdAsc(bill.getId()))
+						.extracting(BillItems::getId)
+						.containsExactly(insertBillItem.getId());
+	}
+
+	@Test
+	void testIoBillLedger() throws Exception {
+		int paymentId = setupTestBillPayments(false);
+		BillPayments billPayment = accountingBillPaymentIoOperationRepository.findById(paymentId).orElse(null);
+		assertThat(billPayment).isNotNull();
+		Bill bill = billPayment.getBill();
+		LocalDate paymentDay = billPayment.getDate().toLocalDate();
+		LocalDate billDay = bill.getDate().toLocalDate();
+		// the payment has been stored bypassing the ledger
+		accountingIoOperation.rebuildLedger(paymentDay, paymentDay);
+
+		accountingIoOperation.newBillItems(bill, List.of(testBillItems.setup(null, false)));
+		BillPayments secondPayment = testBillPayments.setup(null, false);
+		accountingIoOperation.newBillPayments(bill, List.of(billPayment, secondPayment));
+
+		List<BillLedgerTotal> payments = billBrowserManager.getPaymentTotalsByUser(paymentDay, paymentDay);
+		assertThat(payments).hasSize(1);
+		assertThat(payments.get(0).key()).isEqualTo(billPayment.getUser());
+		assertThat(payments.get(0).amount()).isCloseTo(billPayment.getAmount() * 2, offset(0.001));
+		assertThat(payments.get(0).quantity()).isEqualTo(2);
+		assertThat(accountingIoOperation.getBills(List.of(billPayment, secondPayment))).hasSize(1);
+
+		List<BillLedgerTotal> items = billBrowserManager.getItemTotalsByDescription(billDay, billDay);
+		assertThat(items).hasSize(1);
+		assertThat(items.get(0).amount()).isCloseTo(10.10 * 20, offset(0.001));
+		assertThat(items.get(0).quantity()).isEqualTo(20);
+
+		bill.setStatus("D");
+		accountingIoOperation.updateBill(bill);
+		assertThat(billBrowserManager.getPaymentTotalsByUser(paymentDay, paymentDay)).isEmpty();
+		assertThat(billBrowserManager.getItemTotalsByDescription(billDay, billDay)).isEmpty();
+	}
+
+	@Test
+	void testIoBillLedgerInterleavedWriters() throws Exception {
+		TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+		transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		// two committed bills with the same price list and user
+		int[] billIds = transaction.execute(status -> {
+			try {
+				int firstId = setupTestBill(false);
+				Bill first = accountingBillIoOperationRepository.findById(firstId).orElseThrow();
+				Bill second = testBill.setup(first.getPriceList(), first.getBillPatient(), null, false);
+				accountingBillIoOperationRepository.saveAndFlush(second);
+				return new int[] { firstId, second.getId() };
+			} catch (OHException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+
+		// a cashier pays the first bill and, before that is committed, another one pays the second bill on the same day
+		transaction.executeWithoutResult(firstWriter -> {
+			try {
+				Bill bill = accountingBillIoOperationRepository.findById(billIds[0]).orElseThrow();
+				accountingIoOperation.newBillPayments(bill, List.of(testBillPayments.setup(bill, false)));
+				transaction.executeWithoutResult(secondWriter -> {
+					try {
+						Bill otherBill = accountingBillIoOperationRepository.findById(billIds[1]).orElseThrow();
+						accountingIoOperation.newBillPayments(otherBill, List.of(testBillPayments.setup(otherBill, false)));
+					} catch (Exception e) {
+						throw new IllegalStateException(e);
+					}
+				});
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+
+		LocalDate paymentDay = testBillPayments.paymentDate.toLocalDate();
+		List<BillLedgerTotal> payments = billBrowserManager.getPaymentTotalsByUser(paymentDay, paymentDay);
+		assertThat(payments).hasSize(1);
+		assertThat(payments.get(0).amount()).isCloseTo(10.10 * 2, offset(0.001));
+		assertThat(payments.get(0).quantity()).isEqualTo(2);
+	}
+
 	@Test
 	void testIoNewBillPayments() throws Exception {
 		List<BillPayments> billPayments = new ArrayList<>();
@@ -408,6 +408,31 @@ class Tests extends OHCoreTestCase {
 		assertThat(patients).isEmpty();
 	}
 
+	@ParameterizedTest(name = "Test with MATERNITYRESTARTINJUNE={0}")
+	@MethodSource("maternityRestartInJune")
+	void testMgrGetAdmittedPatientsKeyset(boolean maternityRestartInJune) throws Exception {
+		GeneralData.MATERNITYRESTARTINJUNE = maternityRestartInJune;
+		int id = setupTestAdmission(false);
+		Admission foundAdmission = admissionIoOperation.getAdmission(id);
+		Patient foundPatient = foundAdmission.getPatient();
+		LocalDateTime[] admissionRange = {
+			foundAdmission.getAdmDate().minusDays(1),
+			foundAdmission.getAdmDate().plusDays(1)
+		};
+		LocalDateTime[] dischargeRange = {
+			foundAdmission.getDisDate().minusDays(1),
+			foundAdmission.getDisDate().plusDays(1)
+		};
+
+		List<AdmittedPatient> firstPage = admissionBrowserManager.getAdmittedPatients(admissionRange, dischargeRange, null, null, 10);
+		assertThat(firstPage).extracting(admittedPatient -> admittedPatient.getPatient().getCode()).containsExactly(foundPatient.getCode());
+		assertThat(admissionBrowserManager.countAdmittedPatients(admissionRange, dischargeRange, null)).isEqualTo(1);
+		assertThat(admissionBrowserManager.countAdmittedPatients(null, null, foundPatient.getFirstName())).isEqualTo(1);
+
+		assertThat(admissionBrowserManager.getAdmittedPatients(admissionRange, dischargeRange, null, foundPatient.getCode(), 10)).isEmpty();
+		assertThat(admissionBrowserManager.getAdmittedPatients(null, null, null, foundPatient.getCode() + 1, 10)).hasSize(1);
+	}
+
 	@ParameterizedTest(name = "Test with MATERNITYRESTARTINJUNE={0}")
 	@MethodSource("maternityRestartInJune")
 	void testIoGetAdmittedPatientsShouldNotFindWhenAdmissionOutsideOfDateRange(boolean maternityRestartInJune) throws Exception {
@@ -27,10 +27,17 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import java.io.File;
 import java.io.FileReader;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
 import java.text.ParseException;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.Properties;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.aspectj.util.FileUtil;
 import org.isf.OHCoreTestCase;
@@ -179,6 +186,39 @@ class TestFileSystemDicomManager extends OHCoreTestCase {
 		cleanupDicomFiles(dicomFile.getPatId());
 	}
 
+	@Test
+	void testSaveFileTwice() throws Exception {
+		DicomType dicomType = testDicomType.setup(true);
+		FileDicom dicomFile = testFileDicom.setup(dicomType, true);
+		fileSystemDicomManager.saveFile(dicomFile);
+		fileSystemDicomManager.saveFile(testFileDicom.setup(dicomType, true));
+
+		// the same instance saved concurrently by two managers sharing the storage
+		DicomManagerInterface otherManager = new FileSystemDicomManager(getDicomProperties());
+		FileDicom concurrentFile = testFileDicom.setup(dicomType, true);
+		concurrentFile.setDicomInstanceUID("ConcurrentInstanceUid");
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<?> first = executor.submit(() -> {
+				fileSystemDicomManager.saveFile(concurrentFile);
+				return null;
+			});
+			Future<?> second = executor.submit(() -> {
+				otherManager.saveFile(concurrentFile);
+				return null;
+			});
+			first.get();
+			second.get();
+		} finally {
+			executor.shutdown();
+		}
+
+		assertThat(fileSystemDicomManager.getSeriesDetail(dicomFile.getPatId(), dicomFile.getDicomSeriesNumber())).hasSize(2);
+		assertThat(new File("rsc-test/dicom/0/TestSeriesNumber").listFiles()).hasSize(6);
+
+		cleanupDicomFiles(dicomFile.getPatId());
+	}
+
 	@Test
 	void testSaveFileNoSeriesNumber() throws Exception {
 		DicomType dicomType = testDicomType.setup(true);
@@ -214,6 +254,26 @@ class TestFileSystemDicomManager extends OHCoreTestCase {
 		cleanupDicomFiles(dicomFile.getPatId());
 	}
 
+	@Test
+	void testLoadPatientFilesFromIndex() throws Exception {
+		DicomType dicomType = testDicomType.setup(true);
+		FileDicom dicomFile = testFileDicom.setup(dicomType, true);
+		fileSystemDicomManager.saveFile(dicomFile);
+		FileDicom otherFile = testFileDicom.setup(dicomType, true);
+		otherFile.setDicomInstanceUID("OtherInstanceUid");
+		fileSystemDicomManager.saveFile(otherFile);
+
+		// the metadata of the series is kept in its index, the properties of the files are not read again
+		Long[] idFiles = fileSystemDicomManager.getSeriesDetail(dicomFile.getPatId(), dicomFile.getDicomSeriesNumber());
+		Files.writeString(new File("rsc-test/dicom/0/TestSeriesNumber/" + idFiles[0] + ".properties").toPath(), "dicomSeriesDescription =changed");
+
+		FileDicom[] fileDicoms = fileSystemDicomManager.loadPatientFiles(0);
+		assertThat(fileDicoms).hasSize(1);
+		assertThat(fileDicoms[0].getFrameCount()).isEqualTo(2);
+		assertThat(fileDicoms[0].getDicomSeriesDescription()).isEqualTo(dicomFile.getDicomSeriesDescription());
+		cleanupDicomFiles(dicomFile.getPatId());
+	}
+
 	@Test
 	void testLoadDetails() throws Exception {
 		FileDicom fileDicom = fileSystemDicomManager.loadDetails(2, 1, "TestSeriesNumber");
@@ -279,6 +339,44 @@ class TestFileSystemDicomManager extends OHCoreTestCase {
 		cleanupDicomFiles(dicomFile.getPatId());
 	}
 
+	@Test
+	void testExistRebuildsIndex() throws Exception {
+		DicomType dicomType = testDicomType.setup(true);
+		FileDicom dicomFile = testFileDicom.setup(dicomType, true);
+		fileSystemDicomManager.saveFile(dicomFile);
+		FileSystemUtils.deleteRecursively(new File("rsc-test/dicom/.index"));
+
+		assertThat(fileSystemDicomManager.exist(dicomFile)).isTrue();
+		assertThat(fileSystemDicomManager.getSeriesDetail(dicomFile.getPatId(), dicomFile.getDicomSeriesNumber())).hasSize(1);
+
+		cleanupDicomFiles(dicomFile.getPatId());
+	}
+
+	@Test
+	void testReadDicomData() throws Exception {
+		DicomType dicomType = testDicomType.setup(true);
+		FileDicom dicomFile = testFileDicom.setup(dicomType, true);
+		byte[] data = dicomFile.getDicomData().getData().getBytes(1, 100);
+		fileSystemDicomManager.saveFile(dicomFile);
+		long idFile = fileSystemDicomManager.getSeriesDetail(dicomFile.getPatId(), dicomFile.getDicomSeriesNumber())[0];
+
+		ByteBuffer range = fileSystemDicomManager.readDicomData(idFile, dicomFile.getPatId(), dicomFile.getDicomSeriesNumber(), 90, 20);
+		assertThat(range.remaining()).isEqualTo(10);
+		assertThat(range.get(0)).isEqualTo(data[90]);
+		assertThatThrownBy(() -> fileSystemDicomManager.readDicomData(idFile, dicomFile.getPatId(), dicomFile.getDicomSeriesNumber(), -1, 20))
+				.isInstanceOf(OHServiceException.class);
+
+		ByteBuffer all = ByteBuffer.allocate(200);
+		try (ReadableByteChannel channel = fileSystemDicomManager.openDicomData(idFile, dicomFile.getPatId(), dicomFile.getDicomSeriesNumber())) {
+			while (channel.read(all) > 0) {
+				// read to the end
+			}
+		}
+		assertThat(Arrays.copyOf(all.array(), all.position())).isEqualTo(data);
+
+		cleanupDicomFiles(dicomFile.getPatId());
+	}
+
 	@Test
 	void testExistWhenDicomFileNoExist() throws OHServiceException {
 		FileDicom dicomFile = new FileDicom();
@@ -487,6 +585,7 @@ class TestFileSystemDicomManager extends OHCoreTestCase {
 
 	private static void cleanupDicomFiles(int patientId) {
 		FileSystemUtils.deleteRecursively(new File("rsc-test/dicom/" + patientId));
+		FileSystemUtils.deleteRecursively(new File("rsc-test/dicom/.index"));
 		FileUtil.deleteContents(new File("rsc-test/dicom/dicom.storage"));
 	}
 }
@@ -28,10 +28,16 @@ import static org.assertj.core.api.Assertions.within;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.ParseException;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
 
 import javax.imageio.ImageIO;
 import javax.swing.JFrame;
@@ -44,6 +50,8 @@ import org.dcm4che3.io.DicomStreamException;
 import org.isf.OHCoreTestCase;
 import org.isf.dicom.manager.AbstractDicomLoader;
 import org.isf.dicom.manager.AbstractThumbnailViewGui;
+import org.isf.dicom.manager.DicomManagerFactory;
+import org.isf.dicom.manager.DicomManagerInterface;
 import org.isf.dicom.manager.SourceFiles;
 import org.isf.dicom.model.FileDicom;
 import org.isf.dicom.service.DicomIoOperationRepository;
@@ -57,6 +65,7 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.util.FileSystemUtils;
@@ -212,6 +221,49 @@ public class TestSourceFiles extends OHCoreTestCase {
 		assertThat(sourceFiles).isNotNull();
 	}
 
+	@Test
+	void testSourceFilesLoadDicomDir(@TempDir File directory) throws Exception {
+		long modified = LocalDateTime.of(2020, 1, 1, 10, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		for (String name : new String[] { "c.jpg", "a.jpg", "bad.dcm", "b.jpg" }) {
+			Path file = directory.toPath().resolve(name);
+			Files.copy(getFile(name.endsWith(".dcm") ? "BadDicomFile.dcm" : "image.0007.jpg").toPath(), file);
+			file.toFile().setLastModified(modified);
+			modified += 3_600_000;
+		}
+		List<String> expectedOrder;
+		try (Stream<Path> paths = Files.walk(directory.toPath())) {
+			expectedOrder = paths.filter(Files::isRegularFile).map(path -> path.getFileName().toString()).filter(name -> !"bad.dcm".equals(name)).toList();
+		}
+		DicomType dicomType = testDicomType.setup(true);
+		FileDicom details = testFileDicom.setup(dicomType, true);
+		details.setDicomInstanceUID(null);
+		details.setDicomSeriesDate(null);
+		details.setDicomStudyDate(null);
+		List<Integer> progress = new ArrayList<>();
+
+		// method is private not public thus use of reflection
+		Method method = SourceFiles.class.getDeclaredMethod("loadDicomDir", FileDicom.class, File.class, int.class, IntConsumer.class);
+		method.setAccessible(true);
+		method.invoke(null, details, directory, 3, (IntConsumer) progress::add);
+
+		// the bad file is skipped, the others are saved in the order they were read
+		assertThat(progress).containsExactly(1, 2, 3, 4);
+		DicomManagerInterface manager = DicomManagerFactory.getManager();
+		List<String> savedOrder = new ArrayList<>();
+		// every file is dated like the first one read
+		LocalDateTime firstDate = LocalDateTime.ofInstant(Files.getLastModifiedTime(directory.toPath().resolve(expectedOrder.get(0))).toInstant(),
+						ZoneId.systemDefault());
+		for (Long idFile : manager.getSeriesDetail(3, details.getDicomSeriesNumber())) {
+			FileDicom saved = manager.loadDetails(idFile, 3, details.getDicomSeriesNumber());
+			savedOrder.add(saved.getFileName());
+			assertThat(saved.getDicomSeriesDate()).isCloseTo(firstDate, within(1, ChronoUnit.SECONDS));
+			assertThat(saved.getDicomStudyDate()).isCloseTo(firstDate, within(1, ChronoUnit.SECONDS));
+		}
+		assertThat(savedOrder).isEqualTo(expectedOrder);
+
+		cleanupDicomFiles(3);
+	}
+
 	@Disabled
 	// Reason ignored when running CI it generates this error (runs fine locally)
 	//    java.awt.HeadlessException:
@@ -252,6 +304,7 @@ public class TestSourceFiles extends OHCoreTestCase {
 
 	private static void cleanupDicomFiles(int patientId) {
 		FileSystemUtils.deleteRecursively(new File("rsc-test/dicom/" + patientId));
+		FileSystemUtils.deleteRecursively(new File("rsc-test/dicom/.index"));
 		FileUtil.deleteContents(new File("rsc-test/dicom/dicom.storage"));
 	}
 
@@ -22,8 +22,12 @@
 package org.isf.dicom;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.text.ParseException;
+import java.util.Arrays;
 
 import org.isf.OHCoreTestCase;
 import org.isf.dicom.manager.DicomManagerFactory;
@@ -37,6 +41,7 @@ import org.isf.dicomtype.model.DicomType;
 import org.isf.dicomtype.service.DicomTypeIoOperationRepository;
 import org.isf.menu.manager.Context;
 import org.isf.utils.exception.OHException;
+import org.isf.utils.exception.OHServiceException;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -92,6 +97,31 @@ class Tests extends OHCoreTestCase {
 		assertThat(dicoms).hasSize(1);
 	}
 
+	@Test
+	void testIoReadDicomData() throws Exception {
+		DicomType dicomType = testDicomType.setup(true);
+		FileDicom dicom = testFileDicom.setup(dicomType, false);
+		dicom.getDicomData().setFileDicom(dicom);
+		byte[] data = dicom.getDicomData().getData().getBytes(1, 100);
+		dicomTypeIoOperationRepository.saveAndFlush(dicomType);
+		dicomIoOperationRepository.saveAndFlush(dicom);
+
+		ByteBuffer range = dicomIoOperation.readDicomData(dicom.getIdFile(), 10, 5);
+		assertThat(range.remaining()).isEqualTo(5);
+		assertThat(range.get(0)).isEqualTo(data[10]);
+		assertThat(dicomIoOperation.readDicomData(dicom.getIdFile(), 90, 20).remaining()).isEqualTo(10);
+		assertThat(dicomIoOperation.readDicomData(dicom.getIdFile(), 200, 20).remaining()).isZero();
+		assertThatThrownBy(() -> dicomIoOperation.readDicomData(dicom.getIdFile(), -1, 20)).isInstanceOf(OHServiceException.class);
+
+		ByteBuffer all = ByteBuffer.allocate(200);
+		try (ReadableByteChannel channel = dicomIoOperation.openDicomData(dicom.getIdFile())) {
+			while (channel.read(all) > 0) {
+				// read to the end
+			}
+		}
+		assertThat(Arrays.copyOf(all.array(), all.position())).isEqualTo(data);
+	}
+
 	@Test
 	void testIoDeleteSeries() throws Exception {
 		long code = setupTestFileDicom(false);
@@ -775,6 +775,34 @@ class Tests extends OHCoreTestCase {
 		assertThat(laboratories.get(0).getResult()).isEqualTo("angal.lab.multipleresults.txt,TestDescription");
 	}
 
+	@ParameterizedTest(name = "Test with LABEXTENDED={0}")
+	@MethodSource("labExtended")
+	void testMgrForEachLaboratoryForPrint(boolean labExtended) throws Exception {
+		GeneralData.LABEXTENDED = labExtended;
+		ExamType examType = testExamType.setup(false);
+		Exam exam = testExam.setup(examType, 2, false);
+		Patient patient = testPatient.setup(false);
+		examTypeIoOperationRepository.saveAndFlush(examType);
+		examIoOperationRepository.saveAndFlush(exam);
+		patientIoOperationRepository.saveAndFlush(patient);
+		Laboratory laboratory = testLaboratory.setup(exam, patient, false);
+		// TODO: if resource bundles are made available this setResults() needs to change
+		laboratory.setResult("angal.lab.multipleresults.txt");
+		labIoOperationRepository.saveAndFlush(laboratory);
+		labRowIoOperationRepository.saveAndFlush(testLaboratoryRow.setup(laboratory, false));
+		Laboratory negative = testLaboratory.setup(exam, patient, false);
+		negative.setResult("angal.lab.multipleresults.txt");
+		labIoOperationRepository.saveAndFlush(negative);
+
+		List<LaboratoryForPrint> laboratories = new ArrayList<>();
+		labManager.forEachLaboratoryForPrint(null, laboratory.getLabDate(), laboratory.getLabDate(), laboratories::add);
+
+		assertThat(laboratories).extracting(LaboratoryForPrint::getCode).containsExactly(laboratory.getCode(), negative.getCode());
+		// TODO: if resource bundles are made available these values need to change
+		assertThat(laboratories).extracting(LaboratoryForPrint::getResult)
+				.containsExactly("angal.lab.multipleresults.txt,TestDescription", "angal.lab.allnegative.txt");
+	}
+
 	@ParameterizedTest(name = "Test with LABEXTENDED={0}")
 	@MethodSource("labExtended")
 	void testMgrNewLaboratoryProcedureEquals1(boolean labExtended) throws Exception {
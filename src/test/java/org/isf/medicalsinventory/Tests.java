@@ -727,6 +727,55 @@ class Tests extends OHCoreTestCase {
 		assertThat(inventory.getStatus()).isEqualTo(status);
 	}
 	
+	@Test
+	void testActualizeMedicalInventoryRow() throws Exception {
+		Ward ward = testWard.setup(false);
+		wardIoOperationRepository.saveAndFlush(ward);
+		MovementType chargeType = new MovementType("inventory+", "Inventory+", "+", "non-operational");
+		chargeType = medicalDsrStockMovementTypeIoOperationRepository.save(chargeType);
+		Supplier supplier = new Supplier(1, "INVENTORY", null, null, null, null, null, null);
+		supplier = supplierIoOperationRepository.save(supplier);
+		MedicalInventory inventory = testMedicalInventory.setup(ward, false);
+		inventory.setInventoryDate(LocalDateTime.of(2000, 1, 1, 0, 0, 0));
+		inventory = medicalInventoryIoOperation.newMedicalInventory(inventory);
+		MedicalType medicalType = testMedicalType.setup(false);
+		medicalTypeIoOperationRepository.saveAndFlush(medicalType);
+		Medical medical = testMedical.setup(medicalType, false);
+		medical = medicalsIoOperationRepository.saveAndFlush(medical);
+		Lot inventoriedLot = testLot.setup(medical, false);
+		inventoriedLot.setCode("LOT-001");
+		inventoriedLot = lotIoOperationRepository.saveAndFlush(inventoriedLot);
+		Lot otherLot = testLot.setup(medical, false);
+		otherLot.setCode("LOT-002");
+		otherLot = lotIoOperationRepository.saveAndFlush(otherLot);
+		MedicalInventoryRow inventoryRow = testMedicalInventoryRow.setup(inventory, medical, inventoriedLot, false);
+		inventoryRow = medicalInventoryRowIoOperationRepository.saveAndFlush(inventoryRow);
+		// movements dated after the inventory date
+		Movement inventoriedLotMovement = testMovement.setup(medical, chargeType, ward, inventoriedLot, supplier, false);
+		inventoriedLotMovement.setQuantity(100);
+		medicalStockIoOperation.newMovement(inventoriedLotMovement);
+		Movement otherLotMovement = testMovement.setup(medical, chargeType, ward, otherLot, supplier, false);
+		otherLotMovement.setQuantity(30);
+		medicalStockIoOperation.newMovement(otherLotMovement);
+
+		medicalInventoryManager.actualizeMedicalInventoryRow(inventory);
+
+		List<MedicalInventoryRow> medicalInventoryRows = medicalInventoryRowManager.getMedicalInventoryRowByInventoryId(inventory.getId());
+		assertThat(medicalInventoryRows).hasSize(2);
+		MedicalInventoryRow updatedRow = medicalInventoryRows.stream()
+						.filter(row -> row.getLot().getCode().equals("LOT-001"))
+						.findFirst()
+						.orElseThrow();
+		assertThat(updatedRow.getId()).isEqualTo(inventoryRow.getId());
+		assertThat(updatedRow.getTheoreticQty()).isEqualTo(100);
+		MedicalInventoryRow newRow = medicalInventoryRows.stream()
+						.filter(row -> row.getLot().getCode().equals("LOT-002"))
+						.findFirst()
+						.orElseThrow();
+		assertThat(newRow.getTheoreticQty()).isEqualTo(30);
+		assertThat(newRow.getRealQty()).isEqualTo(30);
+	}
+
 	@Test
 	void testReferenceOfInventoryExist() throws Exception {
 		int id = setupTestMedicalInventory();
@@ -62,12 +62,14 @@ import org.isf.medstockmovtype.service.MedicalDsrStockMovementTypeIoOperationRep
 import org.isf.medtype.TestMedicalType;
 import org.isf.medtype.model.MedicalType;
 import org.isf.medtype.service.MedicalTypeIoOperationRepository;
+import org.isf.sequence.service.SequenceAllocator;
 import org.isf.supplier.TestSupplier;
 import org.isf.supplier.model.Supplier;
 import org.isf.supplier.service.SupplierIoOperationRepository;
 import org.isf.utils.exception.OHDataValidationException;
 import org.isf.utils.exception.OHException;
 import org.isf.utils.exception.OHServiceException;
+import org.isf.utils.pagination.PagedResponse;
 import org.isf.utils.time.TimeTools;
 import org.isf.ward.TestWard;
 import org.isf.ward.model.Ward;
@@ -108,6 +110,8 @@ class Tests extends OHCoreTestCase {
 	@Autowired
 	MedicalStockWardIoOperationRepository medicalStockWardIoOperationRepository;
 	@Autowired
+	SequenceAllocator sequenceAllocator;
+	@Autowired
 	MovementWardIoOperationRepository movementWardIoOperationRepository;
 	@Autowired
 	MedicalsIoOperationRepository medicalsIoOperationRepository;
@@ -436,6 +440,35 @@ class Tests extends OHCoreTestCase {
 		assertThat(foundMovement.getType().getType()).isEqualTo("-");
 	}
 
+	@ParameterizedTest(name = "Test with AUTOMATICLOT_IN={0}, AUTOMATICLOT_OUT={1}, AUTOMATICLOTWARD_TOWARD={2}")
+	@MethodSource("automaticlot")
+	void testIoNewMovements(boolean in, boolean out, boolean toward) throws Exception {
+		setGeneralData(in, out, toward);
+		int code = setupTestMovement(false);
+		Movement movement = movementIoOperationRepository.findById(code).orElse(null);
+		assertThat(movement).isNotNull();
+		Medical medical = movement.getMedical();
+		double inQuantity = medical.getInqty();
+		int balance = medicalStockIoOperationRepository.findByMedicalCodeOrderByBalanceDateDesc(medical.getCode()).get(0).getBalance();
+		Lot lot = new Lot(medical, "NEWLOT", movement.getLot().getPreparationDate(), movement.getLot().getDueDate(), movement.getLot().getCost());
+		LocalDateTime now = TimeTools.getNow();
+		List<Movement> movements = new ArrayList<>(2);
+		movements.add(new Movement(medical, movement.getType(), null, lot, now, 10, movement.getSupplier(), "newReference"));
+		movements.add(new Movement(medical, movement.getType(), null, lot, now, 20, movement.getSupplier(), "newReference"));
+		List<Movement> storedMovements = medicalStockIoOperation.newMovements(movements);
+		assertThat(storedMovements).hasSize(2);
+		assertThat(storedMovements).allMatch(storedMovement -> storedMovement.getLot().getCode().equals("NEWLOT"));
+		Lot foundLot = lotIoOperationRepository.findById("NEWLOT").orElse(null);
+		assertThat(foundLot).isNotNull();
+		assertThat(storedMovements).allMatch(storedMovement -> storedMovement.getLot() == foundLot);
+		Medical foundMedical = medicalsIoOperationRepository.findById(medical.getCode()).orElse(null);
+		assertThat(foundMedical).isNotNull();
+		assertThat(foundMedical.getInqty()).isEqualTo(inQuantity + 30);
+		List<MedicalStock> medicalStocks = medicalStockIoOperationRepository.findByMedicalCodeOrderByBalanceDateDesc(medical.getCode());
+		assertThat(medicalStocks.get(0).getBalanceDate()).isEqualTo(now.toLocalDate());
+		assertThat(medicalStocks.get(0).getBalance()).isEqualTo(balance + 30);
+	}
+
 	@ParameterizedTest(name = "Test with AUTOMATICLOT_IN={0}, AUTOMATICLOT_OUT={1}, AUTOMATICLOTWARD_TOWARD={2}")
 	@MethodSource("automaticlot")
 	void testIoPrepareChargingMovement(boolean in, boolean out, boolean toward) throws Exception {
@@ -518,6 +551,60 @@ class Tests extends OHCoreTestCase {
 		assertThat(movements.get(0).getCode()).isEqualTo(foundMovement.getCode());
 	}
 
+	@ParameterizedTest(name = "Test with AUTOMATICLOT_IN={0}, AUTOMATICLOT_OUT={1}, AUTOMATICLOTWARD_TOWARD={2}")
+	@MethodSource("automaticlot")
+	void testIoGetMovementsPageable(boolean in, boolean out, boolean toward) throws Exception {
+		setGeneralData(in, out, toward);
+		LocalDateTime fromDate = LocalDateTime.of(2000, 1, 1, 0, 0, 0);
+		LocalDateTime toDate = LocalDateTime.of(2000, 3, 3, 0, 0, 0);
+		int code = setupTestMovement(false);
+		Movement foundMovement = movementIoOperationRepository.findById(code).orElse(null);
+		assertThat(foundMovement).isNotNull();
+		PagedResponse<Movement> movements = medicalStockIoOperation.getMovementsPageable(
+			foundMovement.getMedical().getCode(),
+			null,
+			foundMovement.getWard().getCode(),
+			null,
+			fromDate,
+			toDate,
+			null,
+			null,
+			null,
+			null,
+			0,
+			10);
+		assertThat(movements.getData()).hasSize(1);
+		assertThat(movements.getData().get(0).getCode()).isEqualTo(foundMovement.getCode());
+		assertThat(movements.getData().get(0).getLot().getCode()).isEqualTo(foundMovement.getLot().getCode());
+		assertThat(movements.getPageInfo().getTotalNbOfElements()).isEqualTo(1);
+	}
+
+	@ParameterizedTest(name = "Test with AUTOMATICLOT_IN={0}, AUTOMATICLOT_OUT={1}, AUTOMATICLOTWARD_TOWARD={2}")
+	@MethodSource("automaticlot")
+	void testIoForEachMovement(boolean in, boolean out, boolean toward) throws Exception {
+		setGeneralData(in, out, toward);
+		LocalDateTime fromDate = LocalDateTime.of(2000, 1, 1, 0, 0, 0);
+		LocalDateTime toDate = LocalDateTime.of(2000, 3, 3, 0, 0, 0);
+		int code = setupTestMovement(false);
+		Movement foundMovement = movementIoOperationRepository.findById(code).orElse(null);
+		assertThat(foundMovement).isNotNull();
+		List<Movement> movements = new ArrayList<>();
+		medicalStockIoOperation.forEachMovement(
+			foundMovement.getMedical().getCode(),
+			null,
+			foundMovement.getWard().getCode(),
+			null,
+			fromDate,
+			toDate,
+			null,
+			null,
+			null,
+			null,
+			movements::add);
+		assertThat(movements).hasSize(1);
+		assertThat(movements.get(0).getCode()).isEqualTo(foundMovement.getCode());
+	}
+
 	@ParameterizedTest(name = "Test with AUTOMATICLOT_IN={0}, AUTOMATICLOT_OUT={1}, AUTOMATICLOTWARD_TOWARD={2}")
 	@MethodSource("automaticlot")
 	void testIoGetMovementForPrintDateOrder(boolean in, boolean out, boolean toward) throws Exception {
@@ -779,6 +866,22 @@ class Tests extends OHCoreTestCase {
 		assertThat(lots.get(0).getCode()).isEqualTo(foundMovement.getLot().getCode());
 	}
 
+	@ParameterizedTest(name = "Test with AUTOMATICLOT_IN={0}, AUTOMATICLOT_OUT={1}, AUTOMATICLOTWARD_TOWARD={2}")
+	@MethodSource("automaticlot")
+	void testMgrGetLotsMovedBetween(boolean in, boolean out, boolean toward) throws Exception {
+		setGeneralData(in, out, toward);
+		int code = setupTestMovement(false);
+		Movement foundMovement = movementIoOperationRepository.findById(code).orElse(null);
+		assertThat(foundMovement).isNotNull();
+		LocalDateTime date = foundMovement.getDate();
+		List<Lot> lots = movStockInsertingManager.getLotsMovedBetween(date.minusDays(1), date.plusDays(1));
+		assertThat(lots).hasSize(1);
+		assertThat(lots.get(0).getCode()).isEqualTo(foundMovement.getLot().getCode());
+		assertThat(lots.get(0).getMainStoreQuantity())
+						.isEqualTo(movStockInsertingManager.getLotByMedical(foundMovement.getMedical(), false).get(0).getMainStoreQuantity());
+		assertThat(movStockInsertingManager.getLotsMovedBetween(date.plusDays(1), date.plusDays(2))).isEmpty();
+	}
+
 	@ParameterizedTest(name = "Test with AUTOMATICLOT_IN={0}, AUTOMATICLOT_OUT={1}, AUTOMATICLOTWARD_TOWARD={2}")
 	@MethodSource("automaticlot")
 	void testMgrGetLotsByMedicalNull(boolean in, boolean out, boolean toward) throws Exception {
@@ -925,6 +1028,94 @@ class Tests extends OHCoreTestCase {
 		GeneralData.AUTOMATICLOT_OUT = automaticlotOut;
 	}
 
+	@ParameterizedTest(name = "Test with AUTOMATICLOT_IN={0}, AUTOMATICLOT_OUT={1}, AUTOMATICLOTWARD_TOWARD={2}")
+	@MethodSource("automaticlot")
+	void testMgrNewInventoryMovements(boolean in, boolean out, boolean toward) throws Exception {
+		setGeneralData(in, out, toward);
+		int code = setupTestMovement(false);
+		Movement movement = movementIoOperationRepository.findById(code).orElse(null);
+		assertThat(movement).isNotNull();
+		Medical medical = movement.getMedical();
+		Lot lot = movement.getLot();
+		MovementType dischargeType = new MovementType("ZZDISC", "TestDischarge", "-", "operational");
+		medicalDsrStockMovementTypeIoOperationRepository.saveAndFlush(dischargeType);
+		double inqty = medical.getInqty();
+		double outqty = medical.getOutqty();
+
+		// the discharge exceeds the lot quantity (10) alone, but not together with the charge before it
+		List<Movement> movements = new ArrayList<>(2);
+		movements.add(new Movement(medical, movement.getType(), null, lot, TimeTools.getNow(), 5, movement.getSupplier(), "inventory-charge"));
+		movements.add(new Movement(medical, dischargeType, movement.getWard(), lot, TimeTools.getNow(), 12, null, "inventory-discharge"));
+		List<Movement> inserted = movStockInsertingManager.newInventoryMovements(movements);
+		assertThat(inserted).hasSize(2);
+
+		assertThat(medicalStockIoOperation.getLot(lot.getCode()).getMainStoreQuantity()).isEqualTo(3);
+		Medical updatedMedical = medicalsIoOperationRepository.findById(medical.getCode()).orElse(null);
+		assertThat(updatedMedical).isNotNull();
+		assertThat(updatedMedical.getInqty()).isEqualTo(inqty + 5);
+		assertThat(updatedMedical.getOutqty()).isEqualTo(outqty + 12);
+		assertThat(movStockInsertingManager.newInventoryMovements(new ArrayList<>())).isEmpty();
+	}
+
+	@ParameterizedTest(name = "Test with AUTOMATICLOT_IN={0}, AUTOMATICLOT_OUT={1}, AUTOMATICLOTWARD_TOWARD={2}")
+	@MethodSource("automaticlot")
+	void testMgrNewInventoryMovementsOverdrawnLot(boolean in, boolean out, boolean toward) throws Exception {
+		setGeneralData(in, out, toward);
+		int code = setupTestMovement(false);
+		Movement movement = movementIoOperationRepository.findById(code).orElse(null);
+		assertThat(movement).isNotNull();
+		Medical medical = movement.getMedical();
+		Lot lot = movement.getLot();
+		MovementType dischargeType = new MovementType("ZZDISC", "TestDischarge", "-", "operational");
+		medicalDsrStockMovementTypeIoOperationRepository.saveAndFlush(dischargeType);
+		double inqty = medical.getInqty();
+		double outqty = medical.getOutqty();
+		long movementCount = movementIoOperationRepository.count();
+
+		// each discharge fits the lot quantity (10), both together do not
+		List<Movement> movements = new ArrayList<>(2);
+		movements.add(new Movement(medical, dischargeType, movement.getWard(), lot, TimeTools.getNow(), 6, null, "inventory-discharge"));
+		movements.add(new Movement(medical, dischargeType, movement.getWard(), lot, TimeTools.getNow(), 6, null, "inventory-discharge"));
+		assertThatThrownBy(() -> movStockInsertingManager.newInventoryMovements(movements))
+			.isInstanceOf(OHDataValidationException.class);
+
+		assertThat(movementIoOperationRepository.count()).isEqualTo(movementCount);
+		assertThat(medicalStockIoOperation.getLot(lot.getCode()).getMainStoreQuantity()).isEqualTo(10);
+		Medical unchangedMedical = medicalsIoOperationRepository.findById(medical.getCode()).orElse(null);
+		assertThat(unchangedMedical).isNotNull();
+		assertThat(unchangedMedical.getInqty()).isEqualTo(inqty);
+		assertThat(unchangedMedical.getOutqty()).isEqualTo(outqty);
+	}
+
+	@ParameterizedTest(name = "Test with AUTOMATICLOT_IN={0}, AUTOMATICLOT_OUT={1}, AUTOMATICLOTWARD_TOWARD={2}")
+	@MethodSource("automaticlot")
+	void testMgrNewInventoryMovementsReportsAllErrors(boolean in, boolean out, boolean toward) throws Exception {
+		setGeneralData(in, out, toward);
+		int code = setupTestMovement(false);
+		Movement movement = movementIoOperationRepository.findById(code).orElse(null);
+		assertThat(movement).isNotNull();
+		List<Movement> movements = new ArrayList<>(2);
+		movements.add(new Movement(movement.getMedical(), movement.getType(), null, movement.getLot(), TimeTools.getNow(), 0, movement.getSupplier(),
+						"inventory-charge"));
+		movements.add(new Movement(movement.getMedical(), movement.getType(), null, movement.getLot(), TimeTools.getNow(), 0, movement.getSupplier(),
+						"inventory-charge"));
+
+		// one error and the medical description for each movement
+		assertThatThrownBy(() -> movStockInsertingManager.newInventoryMovements(movements))
+			.isInstanceOf(OHDataValidationException.class)
+			.has(
+				new Condition<Throwable>(
+					e -> ((OHServiceException) e).getMessages().size() >= 4, "Expecting validation errors for every movement"));
+
+		// a reference number already used does not hide the errors of the movements
+		movements.forEach(mov -> mov.setRefNo(movement.getRefNo()));
+		assertThatThrownBy(() -> movStockInsertingManager.newInventoryMovements(movements))
+			.isInstanceOf(OHDataValidationException.class)
+			.has(
+				new Condition<Throwable>(
+					e -> ((OHServiceException) e).getMessages().size() >= 5, "Expecting the reference number and the movement errors"));
+	}
+
 	@ParameterizedTest(name = "Test with AUTOMATICLOT_IN={0}, AUTOMATICLOT_OUT={1}, AUTOMATICLOTWARD_TOWARD={2}")
 	@MethodSource("automaticlot")
 	void testMgrStoreLot(boolean in, boolean out, boolean toward) throws Exception {
@@ -1431,6 +1622,26 @@ class Tests extends OHCoreTestCase {
 		assertThat(followingMovement2).isNotPresent();
 	}
 
+	@ParameterizedTest(name = "Test with AUTOMATICLOT_IN={0}, AUTOMATICLOT_OUT={1}, AUTOMATICLOTWARD_TOWARD={2}")
+	@MethodSource("automaticlot")
+	void testIoRebuildMedicalStockTable(boolean in, boolean out, boolean toward) throws Exception {
+		setGeneralData(in, out, toward);
+		int code = setupTestMovement(false);
+		Movement movement = movementIoOperationRepository.findById(code).orElse(null);
+		assertThat(movement).isNotNull();
+		Medical medical = movement.getMedical();
+		MedicalStock medicalStock = medicalStockIoOperationRepository.findFirstByMedicalCodeOrderByBalanceDateDesc(medical.getCode());
+		medicalStock.setBalance(999);
+		medicalStockIoOperationRepository.saveAndFlush(medicalStock);
+
+		List<MedicalStock> rebuilt = medicalStockIoOperation.rebuildMedicalStockTable(medical.getCode(), LocalDate.of(2000, 1, 1));
+		assertThat(rebuilt).hasSize(1);
+		MedicalStock latest = medicalStockIoOperationRepository.findFirstByMedicalCodeOrderByBalanceDateDesc(medical.getCode());
+		assertThat(latest.getBalanceDate()).isEqualTo(movement.getDate().toLocalDate());
+		assertThat(latest.getBalance()).isEqualTo(movement.getQuantity());
+		assertThat(latest.getNextMovDate()).isNull();
+	}
+
 	@ParameterizedTest(name = "Test with AUTOMATICLOT_IN={0}, AUTOMATICLOT_OUT={1}, AUTOMATICLOTWARD_TOWARD={2}")
 	@MethodSource("automaticlot")
 	void testIoUpdateMedicalStockTableSameDate() throws Exception {
@@ -1443,7 +1654,7 @@ class Tests extends OHCoreTestCase {
 		int remainQuantity = quantity - quantity / 2; // to overcome tests with not even quantities
 
 		MedicalStockIoOperations medicalStockIoOperation = new MedicalStockIoOperations(movementIoOperationRepository, lotIoOperationRepository,
-			medicalsIoOperationRepository, medicalStockIoOperationRepository, medicalStockWardIoOperationRepository);
+			medicalsIoOperationRepository, medicalStockIoOperationRepository, medicalStockWardIoOperationRepository, sequenceAllocator);
 
 		Method method = medicalStockIoOperation.getClass().getDeclaredMethod("updateMedicalStockTable", Medical.class, LocalDate.class, int.class);
 		method.setAccessible(true);
@@ -1463,7 +1674,7 @@ class Tests extends OHCoreTestCase {
 		int quantity = movement.getQuantity();
 
 		MedicalStockIoOperations medicalStockIoOperation = new MedicalStockIoOperations(movementIoOperationRepository, lotIoOperationRepository,
-			medicalsIoOperationRepository, medicalStockIoOperationRepository, medicalStockWardIoOperationRepository);
+			medicalsIoOperationRepository, medicalStockIoOperationRepository, medicalStockWardIoOperationRepository, sequenceAllocator);
 
 		Method method = medicalStockIoOperation.getClass().getDeclaredMethod("updateMedicalStockTable", Medical.class, LocalDate.class, int.class);
 		method.setAccessible(true);
@@ -1493,7 +1704,7 @@ class Tests extends OHCoreTestCase {
 		int quantity = 10;
 
 		MedicalStockIoOperations medicalStockIoOperation = new MedicalStockIoOperations(movementIoOperationRepository, lotIoOperationRepository,
-			medicalsIoOperationRepository, medicalStockIoOperationRepository, medicalStockWardIoOperationRepository);
+			medicalsIoOperationRepository, medicalStockIoOperationRepository, medicalStockWardIoOperationRepository, sequenceAllocator);
 
 		Method method = medicalStockIoOperation.getClass().getDeclaredMethod("updateMedicalStockTable", Medical.class, LocalDate.class, int.class);
 		method.setAccessible(true);
@@ -1513,7 +1724,7 @@ class Tests extends OHCoreTestCase {
 			int quantity = -10;
 
 			MedicalStockIoOperations medicalStockIoOperation = new MedicalStockIoOperations(movementIoOperationRepository, lotIoOperationRepository,
-				medicalsIoOperationRepository, medicalStockIoOperationRepository, medicalStockWardIoOperationRepository);
+				medicalsIoOperationRepository, medicalStockIoOperationRepository, medicalStockWardIoOperationRepository, sequenceAllocator);
 
 			Method method = medicalStockIoOperation.getClass().getDeclaredMethod("updateMedicalStockTable", Medical.class, LocalDate.class, int.class);
 			method.setAccessible(true);
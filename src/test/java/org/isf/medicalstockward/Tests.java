@@ -28,6 +28,7 @@ import static org.assertj.core.data.Offset.offset;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.isf.OHCoreTestCase;
@@ -352,6 +353,38 @@ class Tests extends OHCoreTestCase {
 		assertThat(movementWard.getQuantity()).isEqualTo(quantity);
 	}
 
+	@Test
+	void testIoNewMovementWardArrayListSameLot() throws Exception {
+		MedicalType medicalType = testMedicalType.setup(false);
+		Medical medical = testMedical.setup(medicalType, false);
+		Ward ward = testWard.setup(false);
+		Patient patient = testPatient.setup(false);
+		Lot lot = testLot.setup(medical, false);
+
+		Ward wardTo = testWard.setup(false);
+		wardTo.setCode("X");
+
+		medicalTypeIoOperationRepository.saveAndFlush(medicalType);
+		medicalsIoOperationRepository.saveAndFlush(medical);
+		wardIoOperationRepository.saveAndFlush(ward);
+		wardIoOperationRepository.saveAndFlush(wardTo);
+		patientIoOperationRepository.saveAndFlush(patient);
+		lotIoOperationRepository.saveAndFlush(lot);
+
+		MedicalWard medicalWard = new MedicalWard(ward, medical, 100.0f, 0.0f, lot);
+		medicalStockWardIoOperationRepository.saveAndFlush(medicalWard);
+
+		List<MovementWard> movementWards = new ArrayList<>();
+		movementWards.add(testMovementWard.setup(ward, patient, medical, wardTo, null, lot, false));
+		movementWards.add(testMovementWard.setup(ward, patient, medical, wardTo, null, lot, false));
+
+		medicalStockWardIoOperations.newMovementWard(movementWards);
+
+		double moved = Math.abs(movementWards.get(0).getQuantity()) + Math.abs(movementWards.get(1).getQuantity());
+		assertThat((double) medicalStockWardIoOperations.getCurrentQuantityInWard(wardTo, medical)).isEqualTo(moved, offset(0.1));
+		assertThat((double) medicalStockWardIoOperations.getCurrentQuantityInWard(ward, medical)).isEqualTo(100.0 - moved, offset(0.1));
+	}
+
 	@Test
 	void testIoNewMovementWardArrayListWardToNull() throws Exception {
 		MedicalType medicalType = testMedicalType.setup(false);
@@ -470,6 +503,33 @@ class Tests extends OHCoreTestCase {
 		assertThat(medicalWards.get(0).getWard().getCode()).isEqualTo("X");
 	}
 
+	@Test
+	void testIoGetQuantitiesInWard() throws Exception {
+		MedicalType medicalType = testMedicalType.setup(false);
+		Medical medical = testMedical.setup(medicalType, false);
+		Ward ward = testWard.setup(false);
+		Patient patient = testPatient.setup(false);
+		Lot lot = testLot.setup(medical, false);
+
+		Ward wardTo = testWard.setup(false);
+		wardTo.setCode("X");
+
+		medicalTypeIoOperationRepository.saveAndFlush(medicalType);
+		medicalsIoOperationRepository.saveAndFlush(medical);
+		wardIoOperationRepository.saveAndFlush(ward);
+		wardIoOperationRepository.saveAndFlush(wardTo);
+		patientIoOperationRepository.saveAndFlush(patient);
+		lotIoOperationRepository.saveAndFlush(lot);
+
+		MovementWard movementWard = testMovementWard.setup(ward, patient, medical, wardTo, null, lot, false);
+
+		medicalStockWardIoOperations.newMovementWard(movementWard);
+
+		Map<Integer, Double> quantities = medicalStockWardIoOperations.getQuantitiesInWard("X");
+		assertThat(quantities).containsOnlyKeys(medical.getCode());
+		assertThat(quantities.get(medical.getCode())).isEqualTo(medicalStockWardIoOperations.getCurrentQuantityInWard(wardTo, medical), offset(0.1));
+	}
+
 	@Test
 	void testIoListenerShouldUpdatePatientToMergedWhenPatientMergedEventArrive() throws Exception {
 		// given:
@@ -23,10 +23,13 @@ package org.isf.patient;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
-import java.lang.reflect.Method;
-import java.sql.Blob;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+
+import javax.imageio.ImageIO;
 
 import org.isf.OHCoreTestCase;
+import org.isf.generaldata.GeneralData;
 import org.isf.patient.model.Patient;
 import org.isf.patient.service.FileSystemPatientPhotoRepository;
 import org.isf.patient.service.PatientIoOperationRepository;
@@ -73,16 +76,31 @@ class TestFileSystemPatientPhotoRepository extends OHCoreTestCase {
 
 	@Test
 	void testSaveAndDelete() throws Exception {
-		Blob blob = getBlob();
-		fileSystemPatientPhotoRepository.save("rsc-test/patient", 2, blob.getBytes(1, (int)blob.length()));
+		byte[] photo = fileSystemPatientPhotoRepository.load("rsc-test/patient", 1);
+		fileSystemPatientPhotoRepository.save("rsc-test/patient", 2, photo);
+		assertThat(fileSystemPatientPhotoRepository.load("rsc-test/patient", 2)).isEqualTo(photo);
 		fileSystemPatientPhotoRepository.delete("rsc-test/patient", 2);
+		assertThat(fileSystemPatientPhotoRepository.load("rsc-test/patient", 2)).isNull();
 	}
 
-	private Blob getBlob() throws Exception {
-		Method method = fileSystemPatientPhotoRepository.getClass().getDeclaredMethod("load", Integer.class, String.class);
-		method.setAccessible(true);
-		Blob blob = (Blob)method.invoke(fileSystemPatientPhotoRepository, 1, "rsc-test/patient");
-		return blob;
+	@Test
+	void testLoadIsCached() throws Exception {
+		byte[] photo = fileSystemPatientPhotoRepository.load("rsc-test/patient", 1);
+		assertThat(photo).isNotEmpty();
+		byte[] original = photo.clone();
+		photo[0]++;
+		assertThat(fileSystemPatientPhotoRepository.load("rsc-test/patient", 1)).isEqualTo(original);
+	}
+
+	@Test
+	void testLoadThumbnail() throws Exception {
+		byte[] thumbnail = fileSystemPatientPhotoRepository.loadThumbnail("rsc-test/patient", 1);
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(thumbnail));
+		assertThat(image.getWidth()).isLessThanOrEqualTo(GeneralData.IMAGE_THUMBNAIL_MAX_WIDTH);
+		byte[] original = thumbnail.clone();
+		thumbnail[0]++;
+		assertThat(fileSystemPatientPhotoRepository.loadThumbnail("rsc-test/patient", 1)).isEqualTo(original);
+		assertThat(fileSystemPatientPhotoRepository.loadThumbnail("rsc-test/patient", 3)).isNull();
 	}
 
 
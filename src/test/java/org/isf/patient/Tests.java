@@ -41,6 +41,7 @@ import org.isf.opd.TestOpd;
 import org.isf.opd.model.Opd;
 import org.isf.patient.manager.PatientBrowserManager;
 import org.isf.patient.model.Patient;
+import org.isf.patient.model.PatientDuplicate;
 import org.isf.patient.model.PatientProfilePhoto;
 import org.isf.patient.service.PatientIoOperationRepository;
 import org.isf.patient.service.PatientIoOperations;
@@ -190,6 +191,91 @@ class Tests extends OHCoreTestCase {
 		assertThat(patients).isEmpty();
 	}
 
+	@Test
+	void testIoGetPatientsByOneOfFieldsLikeSearchIndex() throws Exception {
+		Integer code = setupTestPatient(false);
+		Patient foundPatient = patientIoOperation.getPatient(code);
+		GeneralData.PATIENTSEARCHINDEX = true;
+		try {
+			assertThat(patientIoOperation.rebuildSearchIndex()).isEqualTo(1);
+			String firstName = foundPatient.getFirstName();
+			List<Patient> patients = patientIoOperation.getPatientsByOneOfFieldsLike(firstName.substring(0, firstName.length() - 2));
+			assertThat(patients).hasSize(1);
+			testPatient.check(patients.get(0));
+
+			PagedResponse<Patient> page = patientIoOperation.getPatientsByOneOfFieldsLikePageable(foundPatient.getTaxCode(), 0, 10);
+			assertThat(page.getData()).hasSize(1);
+			assertThat(page.getPageInfo().getTotalNbOfElements()).isEqualTo(1);
+
+			assertThat(patientIoOperation.getPatientsByOneOfFieldsLike("dupa")).isEmpty();
+
+			patientIoOperation.deletePatient(foundPatient);
+			assertThat(patientIoOperation.getPatientsByOneOfFieldsLike(firstName)).isEmpty();
+		} finally {
+			GeneralData.PATIENTSEARCHINDEX = false;
+		}
+	}
+
+	@Test
+	void testIoSavePatientUpdatesSearchIndex() throws Exception {
+		Patient patient = testPatient.setup(false);
+		patient.setNote("searchable remark");
+		GeneralData.PATIENTSEARCHINDEX = true;
+		try {
+			Patient savedPatient = patientIoOperation.savePatient(patient);
+			assertThat(patientIoOperation.getPatientsByOneOfFieldsLike("searcha rem")).extracting(Patient::getCode)
+					.containsExactly(savedPatient.getCode());
+			// only word prefixes are indexed
+			assertThat(patientIoOperation.getPatientsByOneOfFieldsLike("chab")).isEmpty();
+		} finally {
+			GeneralData.PATIENTSEARCHINDEX = false;
+		}
+	}
+
+	@Test
+	void testMgrGetDuplicatePatients() throws Exception {
+		Patient patient = patientIoOperation.savePatient(testPatient.setup(false));
+		Patient other = testPatient.setup(false);
+		other.setFirstName("Mario");
+		other.setSecondName("Rossi");
+		other.setBirthDate(LocalDate.of(2001, 3, 4));
+		other.setCity("Roma");
+		patientIoOperation.savePatient(other);
+
+		Patient newPatient = testPatient.setup(false);
+		newPatient.setFirstName(patient.getFirstName().substring(0, patient.getFirstName().length() - 1));
+		List<PatientDuplicate> duplicates = patientBrowserManager.getDuplicatePatients(newPatient);
+		assertThat(duplicates).extracting(duplicate -> duplicate.patient().getCode()).containsExactly(patient.getCode());
+		assertThat(duplicates.get(0).score()).isGreaterThan(0.9);
+
+		Patient duplicatedPatient = patientIoOperation.savePatient(newPatient);
+		assertThat(patientBrowserManager.getDuplicatePatients(duplicatedPatient)).extracting(duplicate -> duplicate.patient().getCode())
+				.containsExactly(patient.getCode());
+		assertThat(patientBrowserManager.getAllDuplicatePatients()).hasSize(1).first()
+				.satisfies(pair -> assertThat(List.of(pair.code(), pair.duplicateCode()))
+						.containsExactlyInAnyOrder(patient.getCode(), duplicatedPatient.getCode()));
+	}
+
+	@Test
+	void testMgrGetAllDuplicatePatientsSwappedNames() throws Exception {
+		Patient patient = testPatient.setup(false);
+		patient.setFirstName("Giuseppe");
+		patient.setSecondName("Verdi");
+		patient = patientIoOperation.savePatient(patient);
+		Patient swapped = testPatient.setup(false);
+		swapped.setFirstName("Verdi");
+		swapped.setSecondName("Giuseppe");
+		swapped = patientIoOperation.savePatient(swapped);
+		Patient other = testPatient.setup(false);
+		other.setFirstName("Mario");
+		other.setSecondName("Rossi");
+		patientIoOperation.savePatient(other);
+
+		List<Integer> codes = List.of(patient.getCode(), swapped.getCode());
+		assertThat(patientBrowserManager.getAllDuplicatePatients()).hasSize(1).first()
+				.satisfies(pair -> assertThat(List.of(pair.code(), pair.duplicateCode())).containsExactlyInAnyOrderElementsOf(codes));
+	}
+
 	@Test
 	void testIoGetPatientFromName() throws Exception {
 		Integer code = setupTestPatient(false);
@@ -0,0 +1,66 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2024 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.isf.sequence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.isf.OHCoreTestCase;
+import org.isf.sequence.model.Sequence;
+import org.isf.sequence.service.SequenceAllocator;
+import org.isf.sequence.service.SequenceIoOperationRepository;
+import org.isf.sequence.service.SequenceIoOperations;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+class Tests extends OHCoreTestCase {
+
+	@Autowired
+	SequenceIoOperations sequenceIoOperations;
+	@Autowired
+	SequenceIoOperationRepository sequenceIoOperationRepository;
+	@Autowired
+	SequenceAllocator sequenceAllocator;
+
+	@BeforeEach
+	void setUp() {
+		cleanH2InMemoryDb();
+	}
+
+	@Test
+	void testIoReserveBlock() throws Exception {
+		assertThat(sequenceIoOperations.reserveBlock("TEST", 10, 5)).isEqualTo(10);
+		assertThat(sequenceIoOperations.reserveBlock("TEST", 10, 5)).isEqualTo(15);
+		Sequence sequence = sequenceIoOperationRepository.findById("TEST").orElse(null);
+		assertThat(sequence).isNotNull();
+		assertThat(sequence.getNextValue()).isEqualTo(20);
+	}
+
+	@Test
+	void testMgrNext() throws Exception {
+		long first = sequenceAllocator.next("TEST_NEXT", 1, 3);
+		for (int i = 1; i <= 5; i++) {
+			assertThat(sequenceAllocator.next("TEST_NEXT", 1, 3)).isEqualTo(first + i);
+		}
+	}
+
+}
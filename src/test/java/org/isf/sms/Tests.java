@@ -24,6 +24,10 @@ package org.isf.sms;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.time.LocalDateTime;
@@ -395,6 +399,40 @@ class Tests extends OHCoreTestCase {
 		assertThat(dummySmsSenderOperatinos.terminate()).isFalse();
 	}
 
+	@Test
+	void testSmsSenderOperationsGetWorkers() throws Exception {
+		assertThat(smsSenderOperations.getWorkers()).isEqualTo(4);
+		assertThat(smsSenderOperations.getRateLimit()).isEqualTo(10.0);
+	}
+
+	@Test
+	void testSmsSenderOperationsGetWorkersNoGateway() throws Exception {
+		Environment newSmsProperties = new EnvironmentStub();
+		SmsSenderOperations dummySmsSenderOperatinos = new SmsSenderOperations(newSmsProperties, new ArrayList<>());
+		assertThat(dummySmsSenderOperatinos.getWorkers()).isZero();
+		assertThat(dummySmsSenderOperatinos.getRateLimit()).isZero();
+	}
+
+	@Test
+	void testSmsSenderParallelSmsSent() throws Exception {
+		when(applicationContextMock.getBean(SmsOperations.class)).thenReturn(smsOperationsMock);
+		when(applicationContextMock.getBean(SmsSenderOperations.class)).thenReturn(smsSenderOperationsMock);
+		List<Sms> smsList = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			smsList.add(testSms.setup(true));
+		}
+		when(smsOperationsMock.getList()).thenReturn(smsList);
+		when(smsSenderOperationsMock.initialize()).thenReturn(true);
+		when(smsSenderOperationsMock.getWorkers()).thenReturn(3);
+		when(smsSenderOperationsMock.sendSMS(any(Sms.class))).thenReturn(true);
+
+		SmsSender smsSender = new SmsSender();
+		new Thread(smsSender::run).start();
+		verify(smsOperationsMock, timeout(5000)).saveOrUpdate(anyList());
+		smsSender.setRunning(false);
+		assertThat(smsList).allMatch(sms -> sms.getSmsDateSent() != null);
+	}
+
 	@Test
 	void testSmsSenderNeverStarts() throws Exception {
 		assertDoesNotThrow(() -> {
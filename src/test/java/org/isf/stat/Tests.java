@@ -22,13 +22,24 @@
 package org.isf.stat;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import javax.sql.DataSource;
 
@@ -37,15 +48,20 @@ import org.isf.hospital.manager.HospitalBrowsingManager;
 import org.isf.hospital.model.Hospital;
 import org.isf.stat.dto.JasperReportResultDto;
 import org.isf.stat.manager.JasperReportsManager;
+import org.isf.utils.exception.OHServiceException;
+import org.isf.utils.exception.model.OHExceptionMessage;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.MockitoAnnotations;
 import org.mockito.stubbing.Answer;
 
+import net.sf.jasperreports.engine.JRDataset;
+import net.sf.jasperreports.engine.JRQuery;
 import net.sf.jasperreports.engine.JasperExportManager;
 import net.sf.jasperreports.engine.JasperFillManager;
 import net.sf.jasperreports.engine.JasperPrint;
@@ -120,6 +136,57 @@ class Tests extends OHCoreTestCase {
 		}
 	}
 
+	@Test
+	void testSubmitReport() throws Exception {
+		JasperReportsManager jasperReportsManager = new JasperReportsManager(hospitalBrowsingManager, dataSource);
+		try {
+			JasperReportResultDto expected = new JasperReportResultDto(jasperPrint, "rpt_base/examslist.jasper", "rpt_base/PDF/examslist.pdf");
+			CompletableFuture<JasperReportResultDto> future = jasperReportsManager.submitReport(() -> expected);
+			assertThat(future.get(10, TimeUnit.SECONDS)).isSameAs(expected);
+
+			CompletableFuture<JasperReportResultDto> failed = jasperReportsManager.submitReport(() -> {
+				throw new OHServiceException(new OHExceptionMessage("failure"));
+			});
+			assertThatThrownBy(() -> failed.get(10, TimeUnit.SECONDS))
+							.isInstanceOf(ExecutionException.class)
+							.hasCauseInstanceOf(OHServiceException.class);
+		} finally {
+			jasperReportsManager.shutdown();
+		}
+	}
+
+	@Test
+	void testGetGenericReportMYExcelBindsParameters(@TempDir File tempDir) throws Exception {
+		try (MockedStatic<JRLoader> mockedJRLoader = mockStatic(JRLoader.class)) {
+			JasperReportsManager jasperReportsManager = new JasperReportsManager(hospitalBrowsingManager, dataSource);
+
+			JRDataset dataset = mock(JRDataset.class);
+			JRQuery query = mock(JRQuery.class);
+			PreparedStatement statement = mock(PreparedStatement.class);
+			ResultSet resultSet = mock(ResultSet.class);
+			ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+			mockedJRLoader.when(() -> JRLoader.loadObject(any(File.class))).thenReturn(jasperReport);
+			when(jasperReport.getMainDataset()).thenReturn(dataset);
+			when(dataset.getQuery()).thenReturn(query);
+			when(query.getText()).thenReturn("SELECT * FROM OH_ADMISSION WHERE YEAR(ADM_DATE_ADM) = $P{year} AND MONTH(ADM_DATE_ADM) = $P{month}");
+			when(dataSource.getConnection()).thenReturn(connection);
+			when(connection.prepareStatement(anyString(), anyInt(), anyInt())).thenReturn(statement);
+			when(statement.executeQuery()).thenReturn(resultSet);
+			when(resultSet.getMetaData()).thenReturn(metaData);
+
+			File exportFile = new File(tempDir, "admissions.csv");
+			jasperReportsManager.getGenericReportMYExcel(3, 2024, "rpt_stat", "admissions", exportFile.getPath());
+
+			verify(connection).prepareStatement("SELECT * FROM OH_ADMISSION WHERE YEAR(ADM_DATE_ADM) = ? AND MONTH(ADM_DATE_ADM) = ?",
+							ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			verify(statement).setObject(1, 2024);
+			verify(statement).setObject(2, 3);
+			verify(resultSet).close();
+			verify(connection).close();
+			assertThat(exportFile).exists();
+		}
+	}
+
 	@Test
 	void testGetDiseasesListPdf() throws Exception {
 		try (MockedStatic<JRLoader> mockedJRLoader = mockStatic(JRLoader.class);
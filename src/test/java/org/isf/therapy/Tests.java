@@ -186,6 +186,27 @@ class Tests extends OHCoreTestCase {
 		assertThat(therapies.get(0).getNote()).isEqualTo("TestNote");
 	}
 
+	@Test
+	void testMgrGetTherapiesDates() throws Exception {
+		MedicalType medicalType = testMedicalType.setup(false);
+		Medical medical = testMedical.setup(medicalType, false);
+		Patient patient = testPatient.setup(false);
+		medicalTypeIoOperationRepository.saveAndFlush(medicalType);
+		medicalsIoOperationRepository.saveAndFlush(medical);
+		patientIoOperationRepository.saveAndFlush(patient);
+		LocalDateTime startDate = LocalDateTime.of(2020, 1, 1, 8, 0, 0);
+		List<TherapyRow> therapyRows = new ArrayList<>(2);
+		therapyRows.add(therapyManager.getTherapyRow(1, patient.getCode(), startDate, startDate.plusDays(9), medical, 1.0, 1, 1, 3,
+						"TestNote", false, false));
+		therapyRows.add(therapyManager.getTherapyRow(2, patient.getCode(), startDate, startDate.plusDays(9).plusHours(1), medical, 1.0, 1, 1, 3,
+						"TestNote", false, false));
+		List<Therapy> therapies = therapyManager.getTherapies(therapyRows);
+		assertThat(therapies).hasSize(2);
+		assertThat(therapies.get(0).getDates()).containsExactly(startDate, startDate.plusDays(3), startDate.plusDays(6), startDate.plusDays(9));
+		assertThat(therapies.get(1).getDates()).hasSize(5).endsWith(startDate.plusDays(12));
+		assertThat(therapies.get(1).getMedical()).isEqualTo(medical);
+	}
+
 	@Test
 	void testMgrNewTherapiesEmpty() throws Exception {
 		assertThat(therapyManager.newTherapies(new ArrayList<>())).isTrue();
@@ -242,6 +263,26 @@ class Tests extends OHCoreTestCase {
 		assertThat(smsOperations.getList().get(0).getSmsText()).hasSize(SmsManager.MAX_LENGTH);
 	}
 
+	@Test
+	void testMgrNewTherapiesWithSMSMultipleDays() throws Exception {
+		GeneralData.PATIENTPHOTOSTORAGE = "DB";
+		MedicalType medicalType = testMedicalType.setup(false);
+		Medical medical = testMedical.setup(medicalType, false);
+		Patient patient = testPatient.setup(false);
+		medicalTypeIoOperationRepository.saveAndFlush(medicalType);
+		medicalsIoOperationRepository.saveAndFlush(medical);
+		patientIoOperationRepository.saveAndFlush(patient);
+		LocalDateTime startDate = TimeTools.getNow();
+		List<TherapyRow> therapyRows = new ArrayList<>(2);
+		therapyRows.add(therapyManager.getTherapyRow(0, patient.getCode(), startDate, startDate.plusDays(4), medical, 1.0, 1, 1, 1,
+						"TestNote", true, true));
+		therapyRows.add(therapyManager.getTherapyRow(0, patient.getCode(), startDate, startDate.plusDays(4), medical, 1.0, 1, 1, 2,
+						"TestNote", true, true));
+		assertThat(therapyManager.newTherapies(therapyRows)).isTrue();
+		assertThat(therapyManager.getTherapyRows(patient.getCode())).hasSize(2);
+		assertThat(smsOperations.getList()).hasSize(6);
+	}
+
 	@Test
 	void testMgrNewTherapiesWithNoSMS() throws Exception {
 		MedicalType medicalType = testMedicalType.setup(false);
@@ -338,6 +379,24 @@ class Tests extends OHCoreTestCase {
 		assertThat(medicals).isEmpty();
 	}
 
+	@Test
+	void testMgrGetMedicalsOutOfStockNeedsSummedByMedical() throws Exception {
+		MedicalType medicalType = testMedicalType.setup(false);
+		Medical medical = testMedical.setup(medicalType, false);
+		Patient patient = testPatient.setup(false);
+		medicalTypeIoOperationRepository.saveAndFlush(medicalType);
+		medicalsIoOperationRepository.saveAndFlush(medical);
+		patientIoOperationRepository.saveAndFlush(patient);
+
+		LocalDateTime[] dates = { TimeTools.getNow(), TimeTools.getNow() };
+		List<Therapy> therapies = new ArrayList<>(2);
+		therapies.add(new Therapy(1, patient.getCode(), dates, medical, 3.0, "", 1, "TestNote", true, true));
+		assertThat(therapyManager.getMedicalsOutOfStock(therapies)).isEmpty();
+
+		therapies.add(new Therapy(2, patient.getCode(), dates, medical, 3.0, "", 1, "TestNote", true, true));
+		assertThat(therapyManager.getMedicalsOutOfStock(therapies)).containsExactly(medical);
+	}
+
 	@Test
 	void testMgrGetMedicalsOutOfStockDayCountEqualToZero() throws Exception {
 		MedicalType medicalType = testMedicalType.setup(false);
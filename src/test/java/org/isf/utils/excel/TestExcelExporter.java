@@ -33,10 +33,13 @@ import java.sql.Timestamp;
 import java.util.Collection;
 import java.util.GregorianCalendar;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import javax.swing.JTable;
 
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -129,6 +132,13 @@ class TestExcelExporter {
 		File outputFile = new File(tempDir, "exportResultSetToExcel");
 		excelExporter.exportResultsetToExcel(mockResultSet, outputFile);
 		assertThat(Files.exists(outputFile.toPath())).isTrue();
+		try (XSSFWorkbook workbook = new XSSFWorkbook(outputFile)) {
+			Sheet sheet = workbook.getSheetAt(0);
+			assertThat(sheet.getLastRowNum()).isEqualTo(5);
+			assertThat(sheet.getRow(0).getCell(0).getStringCellValue()).isEqualTo("name");
+			assertThat(sheet.getRow(5).getCell(0).getStringCellValue()).isEqualTo("Jane");
+			assertThat(sheet.getRow(5).getCell(2).getNumericCellValue()).isEqualTo(112.5);
+		}
 	}
 
 	@Test
@@ -161,6 +171,10 @@ class TestExcelExporter {
 		File outputFile = new File(tempDir, "exportResultSetToCSV");
 		excelExporter.exportResultsetToCSV(mockResultSet, outputFile);
 		assertThat(Files.exists(outputFile.toPath())).isTrue();
+		List<String> lines = Files.readAllLines(outputFile.toPath());
+		assertThat(lines).hasSize(6);
+		assertThat(lines.get(0)).endsWith("name;age;weight;empty;timestamp");
+		assertThat(lines.get(5)).startsWith("Jane;").doesNotEndWith(";");
 	}
 
 	@Test